@@ -1,6 +1,7 @@
 plugins {
     id("java")
     id("com.gradleup.shadow") version "8.3.0"
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 group = "me.barnaby.trial"
@@ -16,6 +17,9 @@ repositories {
 dependencies {
     testImplementation(platform("org.junit:junit-bom:5.10.0"))
     testImplementation("org.junit.jupiter:junit-jupiter")
+    // Tests load classes that reference the Spigot and Vault APIs, which are only compileOnly for the plugin.
+    testImplementation("org.spigotmc:spigot-api:1.21.4-R0.1-SNAPSHOT")
+    testImplementation("com.github.MilkBowl:VaultAPI:1.7")
 
     // MongoDB driver needed at runtime.
     implementation("org.mongodb:mongodb-driver-sync:4.10.2")
@@ -30,6 +34,9 @@ dependencies {
     // Explicitly add ASM dependencies that support Java 21/22.
     implementation("org.ow2.asm:asm:9.4")
     implementation("org.ow2.asm:asm-commons:9.4")
+
+    // Benchmarks run outside a server, so the Spigot API and its dependencies (Guava, SnakeYAML) are needed on their classpath.
+    jmh("org.spigotmc:spigot-api:1.21.4-R0.1-SNAPSHOT")
 }
 
 // Force any dependency on ASM to use version 9.4.
@@ -45,6 +52,26 @@ tasks.test {
     useJUnitPlatform()
 }
 
+// Microbenchmarks in src/jmh/java; run with ./gradlew jmh.
+// Results are written as JSON per version so runs can be compared across releases.
+jmh {
+    warmupIterations.set(3)
+    iterations.set(5)
+    fork.set(1)
+    resultFormat.set("JSON")
+    resultsFile.set(layout.buildDirectory.file("results/jmh/results-${project.version}.json"))
+}
+
+// The stub Bukkit server in src/stub/java runs item code outside Minecraft for both the tests and the benchmarks.
+sourceSets {
+    test {
+        java.srcDir("src/stub/java")
+    }
+    named("jmh") {
+        java.srcDir("src/stub/java")
+    }
+}
+
 java {
     // Set the toolchain to Java 23 (or a version you have installed).
     toolchain.languageVersion.set(JavaLanguageVersion.of(23))
@@ -0,0 +1,55 @@
+package me.barnaby.trial.benchmark;
+
+import me.barnaby.trial.discord.DiscordWebhookLogger;
+import me.barnaby.trial.stub.BukkitStub;
+import me.barnaby.trial.util.ListingUtil;
+import me.barnaby.trial.util.StringUtil;
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the string helpers called for every listing, purchase and transaction line.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FormattingBenchmark {
+
+    private ItemStack item;
+    private long timestamp;
+    private DiscordWebhookLogger webhookLogger;
+
+    @Setup
+    public void setup() {
+        BukkitStub.install();
+        item = new ItemStack(Material.NETHERITE_CHESTPLATE);
+        timestamp = System.currentTimeMillis();
+        // Defaults from config.yml; the payload is only built, so no dispatcher is needed.
+        webhookLogger = new DiscordWebhookLogger("Transaction Log",
+                "A purchase was made: %item% x%amount% for $%price% at %time% by %buyer% from %seller%",
+                "#00FF00", null);
+    }
+
+    @Benchmark
+    public String format() {
+        return StringUtil.format("&fSeller: &a%seller% &7(&a$%price%&7)");
+    }
+
+    @Benchmark
+    public String formatItem() {
+        return StringUtil.formatItem(item);
+    }
+
+    @Benchmark
+    public String formatTimestamp() {
+        return ListingUtil.formatTimestamp(timestamp);
+    }
+
+    @Benchmark
+    public String buildDiscordEmbed() {
+        return webhookLogger.buildEmbed("jeb_", "Notch", "Netherite Chestplate", 1, 2499.99, "2025-01-01 12:00:00");
+    }
+}
@@ -0,0 +1,88 @@
+package me.barnaby.trial.benchmark;
+
+import dev.s7a.base64.Base64ItemStack;
+import me.barnaby.trial.mongo.ItemCodec;
+import me.barnaby.trial.stub.BukkitStub;
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.Damageable;
+import org.bukkit.inventory.meta.ItemMeta;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the binary item encoding used for every listing and transaction
+ * document against the Base64 encoding it replaced.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ItemStackCodecBenchmark {
+
+    /**
+     * STACK is a plain stack of blocks, NAMED a renamed damaged tool and LORE a
+     * tool carrying the kind of lore custom items usually have.
+     */
+    @Param({"STACK", "NAMED", "LORE"})
+    public String kind;
+
+    private ItemStack item;
+    private String encoded;
+    private byte[] binary;
+
+    @Setup
+    public void setup() {
+        BukkitStub.install();
+        item = createItem(kind);
+        encoded = Base64ItemStack.encode(item);
+        binary = ItemCodec.encode(item);
+    }
+
+    @Benchmark
+    public String encode() {
+        return Base64ItemStack.encode(item);
+    }
+
+    @Benchmark
+    public ItemStack decode() {
+        return Base64ItemStack.decode(encoded);
+    }
+
+    @Benchmark
+    public byte[] binaryEncode() {
+        return ItemCodec.encode(item);
+    }
+
+    @Benchmark
+    public ItemStack binaryDecode() {
+        return ItemCodec.decode(binary);
+    }
+
+    /**
+     * Creates one of the benchmarked items.
+     *
+     * @param kind STACK, NAMED or LORE.
+     * @return A new item.
+     */
+    static ItemStack createItem(String kind) {
+        if (kind.equals("STACK")) return new ItemStack(Material.COBBLESTONE, 64);
+
+        ItemStack item = new ItemStack(Material.DIAMOND_SWORD);
+        ItemMeta meta = item.getItemMeta();
+        meta.setDisplayName("§b§lFrostbite");
+        ((Damageable) meta).setDamage(312);
+        if (kind.equals("LORE")) {
+            meta.setLore(List.of(
+                    "§7A blade forged in the northern wastes.",
+                    "",
+                    "§9+8 Attack Damage",
+                    "§9+1.6 Attack Speed",
+                    "",
+                    "§8Crafted by Notch"));
+        }
+        item.setItemMeta(meta);
+        return item;
+    }
+}
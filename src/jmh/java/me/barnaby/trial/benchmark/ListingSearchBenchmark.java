@@ -0,0 +1,82 @@
+package me.barnaby.trial.benchmark;
+
+import me.barnaby.trial.mongo.ListingIndex;
+import me.barnaby.trial.mongo.ListingQuery;
+import me.barnaby.trial.stub.BukkitStub;
+import me.barnaby.trial.util.StringUtil;
+import org.bson.Document;
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures answering marketplace searches from the listing index's secondary
+ * indexes, for a material, a name prefix and a price range.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ListingSearchBenchmark {
+
+    private static final Material[] MATERIALS = {
+            Material.DIAMOND, Material.DIAMOND_SWORD, Material.DIAMOND_PICKAXE, Material.IRON_INGOT,
+            Material.IRON_SWORD, Material.NETHERITE_CHESTPLATE, Material.OAK_LOG, Material.GOLDEN_APPLE
+    };
+
+    @Param({"1000", "10000", "100000"})
+    public int listings;
+
+    private ListingIndex listingIndex;
+    private ListingQuery materialQuery;
+    private ListingQuery namePrefixQuery;
+    private ListingQuery priceRangeQuery;
+
+    @Setup
+    public void setup() {
+        BukkitStub.install();
+        // Every listing carries its material and name, so nothing is decoded.
+        listingIndex = new ListingIndex(doc -> {
+            throw new IllegalStateException("listing without search fields");
+        });
+
+        Random random = new Random(42);
+        long now = System.currentTimeMillis();
+        List<Document> documents = new ArrayList<>(listings);
+        for (int i = 0; i < listings; i++) {
+            Material material = MATERIALS[random.nextInt(MATERIALS.length)];
+            documents.add(new Document("_id", i)
+                    .append("playerId", "069a79f4-44e9-4726-a5be-fca90e38aaf5")
+                    .append("sellerName", "Seller" + random.nextInt(100))
+                    .append("price", Math.round(random.nextDouble() * 10_000) / 100.0)
+                    .append("material", material.name())
+                    .append("itemName", StringUtil.formatItem(new ItemStack(material)))
+                    .append("isBlackMarket", false)
+                    .append("timestamp", now - i * 1000L));
+        }
+        listingIndex.load(documents);
+
+        materialQuery = new ListingQuery(false, "diamond_sword", 0, Double.MAX_VALUE, ListingQuery.Sort.LISTED);
+        namePrefixQuery = new ListingQuery(false, "sw", 0, Double.MAX_VALUE, ListingQuery.Sort.NEWEST);
+        priceRangeQuery = new ListingQuery(false, null, 10, 20, ListingQuery.Sort.PRICE_ASCENDING);
+    }
+
+    @Benchmark
+    public List<Document> searchMaterial() {
+        return listingIndex.search(materialQuery);
+    }
+
+    @Benchmark
+    public List<Document> searchNamePrefix() {
+        return listingIndex.search(namePrefixQuery);
+    }
+
+    @Benchmark
+    public List<Document> searchPriceRange() {
+        return listingIndex.search(priceRangeQuery);
+    }
+}
@@ -0,0 +1,59 @@
+package me.barnaby.trial.benchmark;
+
+import me.barnaby.trial.util.MessageTemplate;
+import me.barnaby.trial.util.StringUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares compiled message templates with formatting and replacing placeholders on every call.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MessageTemplateBenchmark {
+
+    // Default marketplace lore line and Discord description.
+    private static final String LORE = "&fSeller: &a%seller% &7(&a$%price%&7) &fListed: &a%listedTime%";
+    private static final String DESCRIPTION =
+            "A purchase was made: %item% x%amount% for $%price% at %time% by %buyer% from %seller%";
+
+    private MessageTemplate loreTemplate;
+    private MessageTemplate descriptionTemplate;
+
+    @Setup
+    public void setup() {
+        loreTemplate = MessageTemplate.colored(LORE, "price", "seller", "listedTime");
+        descriptionTemplate = MessageTemplate.of(DESCRIPTION, "item", "amount", "price", "time", "buyer", "seller");
+    }
+
+    @Benchmark
+    public String loreReplace() {
+        return StringUtil.format(LORE)
+                .replace("%price%", String.valueOf(149.99))
+                .replace("%seller%", "Notch")
+                .replace("%listedTime%", "2025-01-01 12:00:00");
+    }
+
+    @Benchmark
+    public String loreTemplate() {
+        return loreTemplate.render(149.99, "Notch", "2025-01-01 12:00:00");
+    }
+
+    @Benchmark
+    public String descriptionReplace() {
+        return DESCRIPTION
+                .replace("%item%", "Diamond Sword")
+                .replace("%amount%", String.valueOf(1))
+                .replace("%price%", String.valueOf(149.99))
+                .replace("%time%", "2025-01-01 12:00:00")
+                .replace("%buyer%", "jeb_")
+                .replace("%seller%", "Notch");
+    }
+
+    @Benchmark
+    public String descriptionTemplate() {
+        return descriptionTemplate.render("Diamond Sword", 1, 149.99, "2025-01-01 12:00:00", "jeb_", "Notch");
+    }
+}
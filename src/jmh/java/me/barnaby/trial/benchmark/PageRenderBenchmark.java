@@ -0,0 +1,81 @@
+package me.barnaby.trial.benchmark;
+
+import me.barnaby.trial.config.GuiLayout;
+import me.barnaby.trial.gui.MarketPageCache;
+import me.barnaby.trial.stub.BukkitStub;
+import me.barnaby.trial.util.ListingUtil;
+import org.bson.Document;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.inventory.ItemStack;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures building a marketplace page: rendering every listing on a cache
+ * miss, and picking the viewer's affordability variants on a cache hit.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PageRenderBenchmark {
+
+    private static final String[] KINDS = {"STACK", "NAMED", "LORE"};
+
+    @Param({"9", "27", "45"})
+    public int listings;
+
+    private GuiLayout layout;
+    // Items as the item cache hands them out; rendering clones them again.
+    private List<ItemStack> items;
+    private List<Document> documents;
+    private List<MarketPageCache.RenderedListing> renderedPage;
+    private double balance;
+
+    @Setup
+    public void setup() throws Exception {
+        BukkitStub.install();
+        try (Reader reader = new InputStreamReader(
+                PageRenderBenchmark.class.getResourceAsStream("/guis.yml"), StandardCharsets.UTF_8)) {
+            layout = GuiLayout.from(YamlConfiguration.loadConfiguration(reader), "marketplace-gui");
+        }
+
+        items = new ArrayList<>(listings);
+        documents = new ArrayList<>(listings);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < listings; i++) {
+            items.add(ItemStackCodecBenchmark.createItem(KINDS[i % KINDS.length]));
+            documents.add(new Document("playerId", "069a79f4-44e9-4726-a5be-fca90e38aaf5")
+                    .append("price", 50.0 + i * 12.5)
+                    .append("timestamp", now - i * 60_000L));
+        }
+        renderedPage = renderPage();
+        // Affords roughly half of the page.
+        balance = 50.0 + listings * 6.25;
+    }
+
+    @Benchmark
+    public List<MarketPageCache.RenderedListing> renderPage() {
+        List<MarketPageCache.RenderedListing> page = new ArrayList<>(listings);
+        for (int i = 0; i < listings; i++) {
+            ListingUtil.Listing listing = new ListingUtil.Listing(items.get(i).clone(), documents.get(i));
+            page.add(MarketPageCache.renderListing(layout, listing, "Notch"));
+        }
+        return page;
+    }
+
+    @Benchmark
+    public ItemStack[] selectCachedPage() {
+        ItemStack[] contents = new ItemStack[layout.rows() * 9];
+        for (int i = 0; i < renderedPage.size(); i++) {
+            MarketPageCache.RenderedListing rendered = renderedPage.get(i);
+            contents[layout.itemsStart() + i] = rendered.item(balance >= rendered.price());
+        }
+        return contents;
+    }
+}
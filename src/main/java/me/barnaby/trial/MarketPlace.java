@@ -5,19 +5,29 @@ import me.barnaby.trial.commands.MarketplaceCommand;
 import me.barnaby.trial.commands.SellCommand;
 import me.barnaby.trial.commands.TransactionsCommand;
 import me.barnaby.trial.config.ConfigManager;
-import me.barnaby.trial.config.ConfigType;
+import me.barnaby.trial.config.DiscordSettings;
+import me.barnaby.trial.discord.DiscordWebhookDispatcher;
 import me.barnaby.trial.discord.DiscordWebhookLogger;
+import me.barnaby.trial.gui.MarketPageCache;
+import me.barnaby.trial.gui.MarketViewerRegistry;
+import me.barnaby.trial.listener.ConnectionListeners;
 import me.barnaby.trial.listener.PlayerListeners;
+import me.barnaby.trial.market.MailboxDelivery;
+import me.barnaby.trial.market.PurchaseEngine;
 import me.barnaby.trial.mongo.MongoDBManager;
 import me.barnaby.trial.runnables.BlackMarketRunnable;
+import me.barnaby.trial.runnables.ListingExpiryRunnable;
+import me.barnaby.trial.runnables.TickMonitorRunnable;
 import net.milkbowl.vault.economy.Economy;
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
-import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.plugin.PluginManager;
 import org.bukkit.plugin.RegisteredServiceProvider;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import java.io.File;
+import java.util.concurrent.Executor;
+
 /**
  * Main class for the MarketPlace plugin.
  */
@@ -25,14 +35,26 @@ public class MarketPlace extends JavaPlugin {
 
     private final ConfigManager configManager = new ConfigManager(this);
     private final MongoDBManager mongoDBManager = new MongoDBManager(this);
+    private final PurchaseEngine purchaseEngine = new PurchaseEngine(this);
+    private final MailboxDelivery mailboxDelivery = new MailboxDelivery(this);
     private Economy economy;
     private DiscordWebhookLogger discordWebhookLogger;
+    private MarketPageCache marketPageCache;
+    // Runs tasks on the server thread; used to hop back from asynchronous MongoDB work.
+    private final Executor mainThreadExecutor = task -> Bukkit.getScheduler().runTask(this, task);
+    // Open marketplace pages, patched once per tick when their listings change.
+    private final MarketViewerRegistry marketViewers = new MarketViewerRegistry(this);
 
     @Override
     public void onEnable() {
         // Connect to MongoDB.
         mongoDBManager.connect();
 
+        // Rendered marketplace pages, re-rendered whenever their listings change.
+        marketPageCache = new MarketPageCache(this, configManager.getSettings().pageSizes().pageCacheSize());
+        // Whatever changes a listing, open pages showing it are patched on the next tick.
+        mongoDBManager.getListingIndex().setChangeListener(marketViewers::markDirty);
+
         // Register commands and event listeners.
         registerCommands();
         registerListeners();
@@ -44,14 +66,24 @@ public class MarketPlace extends JavaPlugin {
         // Register Discord webhook for transaction logging.
         registerDiscordHook();
 
-        new BlackMarketRunnable(this)
-                .runTaskTimer(this,0,
-                        configManager.getConfig(ConfigType.MAIN)
-                                .getLong("blackmarket.add-items-every") * 20);
+        // Rotations follow the schedule shared through MongoDB; this only checks whether one is due.
+        new BlackMarketRunnable(this).runTaskTimer(this, 20, BlackMarketRunnable.CHECK_INTERVAL_TICKS);
+
+        // Expired listings go to their sellers' mailboxes, delivered on join.
+        long expiryCheckTicks = configManager.getSettings().listingExpiry().checkEvery() * 20;
+        new ListingExpiryRunnable(this).runTaskTimer(this, 40, expiryCheckTicks);
+
+        // Report tick times and any MongoDB work left on the server thread.
+        int tickReportEvery = configManager.getSettings().tickReportEvery();
+        if (tickReportEvery > 0) {
+            new TickMonitorRunnable(this, tickReportEvery).runTaskTimer(this, 1, 1);
+        }
     }
 
     @Override
     public void onDisable() {
+        if (discordWebhookLogger != null) discordWebhookLogger.shutdown();
+        mongoDBManager.disconnect();
         sendDisableMessage();
     }
 
@@ -61,6 +93,7 @@ public class MarketPlace extends JavaPlugin {
     private void registerListeners() {
         PluginManager pm = Bukkit.getPluginManager();
         pm.registerEvents(new PlayerListeners(), this);
+        pm.registerEvents(new ConnectionListeners(this), this);
     }
 
     /**
@@ -77,15 +110,11 @@ public class MarketPlace extends JavaPlugin {
      * Initializes the Discord webhook logger from the configuration.
      */
     public void registerDiscordHook() {
-        ConfigurationSection discordConfig = getConfigManager()
-                .getConfig(ConfigType.MAIN)
-                .getConfigurationSection("discord");
-        String webhookUrl = discordConfig.getString("webhook");
-        String embedTitle = discordConfig.getString("embed.title", "Transaction Log");
-        String embedColor = discordConfig.getString("embed.color", "#00FF00");
-        String embedDescriptionTemplate = discordConfig.getString("embed.description",
-                "A purchase was made: %item% x%amount% for $%price% at %time% by %buyer% from %seller%");
-        discordWebhookLogger = new DiscordWebhookLogger(webhookUrl, embedTitle, embedDescriptionTemplate, embedColor);
+        DiscordSettings discord = configManager.getSettings().discord();
+        DiscordWebhookDispatcher dispatcher = new DiscordWebhookDispatcher(discord.webhook(), getLogger(),
+                new File(getDataFolder(), "discord-spill.jsonl"), discord.queueSize());
+        discordWebhookLogger = new DiscordWebhookLogger(discord.embedTitle(), discord.embedDescription(),
+                discord.embedColor(), dispatcher);
     }
 
     /**
@@ -106,6 +135,53 @@ public class MarketPlace extends JavaPlugin {
         return mongoDBManager;
     }
 
+    /**
+     * Returns an executor that runs tasks on the server thread.
+     * Results of asynchronous MongoDB calls should continue on this executor
+     * before they touch players or inventories.
+     *
+     * @return the main thread Executor.
+     */
+    public Executor getMainThreadExecutor() {
+        return mainThreadExecutor;
+    }
+
+    /**
+     * Returns the purchase engine.
+     *
+     * @return the PurchaseEngine instance.
+     */
+    public PurchaseEngine getPurchaseEngine() {
+        return purchaseEngine;
+    }
+
+    /**
+     * Returns the mailbox delivery.
+     *
+     * @return the MailboxDelivery instance.
+     */
+    public MailboxDelivery getMailboxDelivery() {
+        return mailboxDelivery;
+    }
+
+    /**
+     * Returns the cache of rendered marketplace pages.
+     *
+     * @return the MarketPageCache instance.
+     */
+    public MarketPageCache getMarketPageCache() {
+        return marketPageCache;
+    }
+
+    /**
+     * Returns the registry of open marketplace pages.
+     *
+     * @return the MarketViewerRegistry instance.
+     */
+    public MarketViewerRegistry getMarketViewers() {
+        return marketViewers;
+    }
+
     /**
      * Returns the Discord webhook logger.
      *
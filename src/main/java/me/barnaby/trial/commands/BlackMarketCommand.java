@@ -1,9 +1,8 @@
 package me.barnaby.trial.commands;
 
-import dev.s7a.base64.Base64ItemStack;
 import me.barnaby.trial.MarketPlace;
-import me.barnaby.trial.config.ConfigType;
 import me.barnaby.trial.gui.guis.MarketPlaceGUI;
+import me.barnaby.trial.mongo.ItemCodec;
 import org.bukkit.ChatColor;
 import org.bukkit.Material;
 import org.bukkit.command.Command;
@@ -12,7 +11,6 @@ import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
 
-import java.util.Objects;
 import java.util.Random;
 
 /**
@@ -35,8 +33,7 @@ public class BlackMarketCommand implements CommandExecutor {
 
         // If no arguments, default to opening the Black Market GUI
         if (args.length == 0 || args[0].equalsIgnoreCase("open")) {
-            if (!player.hasPermission(Objects.requireNonNull(marketPlace.getConfigManager().getConfig(ConfigType.MAIN)
-                    .getString("permissions.blackmarket.open")))) {
+            if (!player.hasPermission(marketPlace.getConfigManager().getSettings().permissions().blackMarketOpen())) {
                 player.sendMessage(ChatColor.RED + "You do not have permission to refresh the Black Market.");
                 return true;
             }
@@ -46,28 +43,33 @@ public class BlackMarketCommand implements CommandExecutor {
 
         // If player types "/blackmarket refresh"
         if (args[0].equalsIgnoreCase("refresh")) {
-            if (!player.hasPermission(Objects.requireNonNull(marketPlace.getConfigManager().getConfig(ConfigType.MAIN)
-                    .getString("permissions.blackmarket.refresh")))) {
+            if (!player.hasPermission(marketPlace.getConfigManager().getSettings().permissions().blackMarketRefresh())) {
                 player.sendMessage(ChatColor.RED + "You do not have permission to refresh the Black Market.");
                 return true;
             }
 
-            // Refresh the Black Market (move 5 items)
-            marketPlace.getMongoDBManager().moveItemsToBlackMarket();
-            player.sendMessage(ChatColor.GOLD + "The Black Market has been refreshed!");
+            // Refresh the Black Market (move items-count listings) off the server thread.
+            marketPlace.getMongoDBManager().getListingRepository().rotateBlackMarket()
+                    .thenAcceptAsync(rotation -> {
+                        marketPlace.getMongoDBManager().getBlackMarketRotation().notifySellers(rotation);
+                        player.sendMessage(ChatColor.GOLD + "The Black Market has been refreshed!");
+                    }, marketPlace.getMainThreadExecutor())
+                    .exceptionally(ex -> {
+                        marketPlace.getLogger().severe("Failed to refresh the Black Market: " + ex.getMessage());
+                        return null;
+                    });
 
             return true;
         }
 
         else if (args[0].equalsIgnoreCase("testitem")) {
             for (int i = 0; i< 5; i++) {
-                marketPlace.getMongoDBManager().insertItemListing(
-                        new org.bson.Document("playerId", player.getUniqueId().toString())
+                marketPlace.getMongoDBManager().getListingRepository().insert(
+                        ItemCodec.write(new org.bson.Document("playerId", player.getUniqueId().toString())
                                 .append("price", new Random().nextDouble() * 1000)
-                                .append("itemData", Base64ItemStack.encode(
-                                        new ItemStack(Material.values()[new Random().nextInt(Material.values().length)])
-                                ))
-                                .append("timestamp", System.currentTimeMillis())
+                                .append("isBlackMarket", false),
+                                new ItemStack(Material.values()[new Random().nextInt(Material.values().length)])
+                        ).append("timestamp", System.currentTimeMillis())
                 );
                 player.sendMessage("Added test item!");
             }
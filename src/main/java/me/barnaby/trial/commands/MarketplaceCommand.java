@@ -3,8 +3,9 @@ package me.barnaby.trial.commands;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoCursor;
 import me.barnaby.trial.MarketPlace;
-import me.barnaby.trial.config.ConfigType;
 import me.barnaby.trial.gui.guis.MarketPlaceGUI;
+import me.barnaby.trial.gui.guis.MyListingsGUI;
+import me.barnaby.trial.mongo.ListingQuery;
 import org.bson.Document;
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
@@ -17,9 +18,9 @@ import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.meta.ItemMeta;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 
 public class MarketplaceCommand implements CommandExecutor {
 
@@ -37,12 +38,69 @@ public class MarketplaceCommand implements CommandExecutor {
         }
 
         // Check perm
-        if (!player.hasPermission(Objects.requireNonNull(marketPlace.getConfigManager().getConfig(ConfigType.MAIN).getString("permissions.view")))) {
+        if (!player.hasPermission(marketPlace.getConfigManager().getSettings().permissions().view())) {
             player.sendMessage(ChatColor.RED + "You do not have permission to use this command.");
             return true;
         }
 
+        if (args.length > 0 && args[0].equalsIgnoreCase("search")) {
+            ListingQuery query = parseSearch(args);
+            if (query == null) {
+                player.sendMessage(ChatColor.RED + "Usage: /marketplace search <material|name> [min] [max]");
+                return true;
+            }
+            // Answered from the in-memory listing index, so no database query is made.
+            new MarketPlaceGUI(marketPlace, player, query, 1).open(player);
+            return true;
+        }
+
+        if (args.length > 0 && args[0].equalsIgnoreCase("mine")) {
+            // Read from the listing index's per-seller sets, so only the player's own listings are visited.
+            new MyListingsGUI(marketPlace, player, 1).open(player);
+            return true;
+        }
+
+        if (args.length > 0 && args[0].equalsIgnoreCase("mailbox")) {
+            // Collects items that did not fit when the player joined.
+            marketPlace.getMailboxDelivery().deliver(player, true);
+            return true;
+        }
+
         new MarketPlaceGUI(marketPlace, player, 1, false).open(player);
         return true;
     }
+
+    /**
+     * Parses "search &lt;material|name&gt; [min] [max]". The name may be several
+     * words; up to two trailing numbers are the price range.
+     *
+     * @param args The command arguments, starting with "search".
+     * @return The marketplace query, or null if the arguments are invalid.
+     */
+    private ListingQuery parseSearch(String[] args) {
+        int textEnd = args.length;
+        double[] bounds = {0, Double.MAX_VALUE};
+        int boundCount = 0;
+        while (textEnd > 2 && boundCount < 2 && isNumber(args[textEnd - 1])) {
+            textEnd--;
+            boundCount++;
+        }
+        if (textEnd < 2) return null;
+        for (int i = 0; i < boundCount; i++) {
+            bounds[i] = Double.parseDouble(args[textEnd + i]);
+        }
+        if (bounds[0] < 0 || bounds[0] > bounds[1]) return null;
+
+        String text = String.join(" ", Arrays.copyOfRange(args, 1, textEnd));
+        return new ListingQuery(false, text, bounds[0], bounds[1], ListingQuery.Sort.LISTED);
+    }
+
+    private static boolean isNumber(String arg) {
+        try {
+            double value = Double.parseDouble(arg);
+            return !Double.isNaN(value) && !Double.isInfinite(value);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
 }
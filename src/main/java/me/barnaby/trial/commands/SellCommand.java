@@ -1,9 +1,8 @@
 package me.barnaby.trial.commands;
 
 import me.barnaby.trial.MarketPlace;
-import me.barnaby.trial.config.ConfigType;
+import me.barnaby.trial.config.Settings;
 import me.barnaby.trial.gui.guis.SellGUI;
-import me.barnaby.trial.util.StringUtil;
 import org.bson.Document;
 import org.bukkit.ChatColor;
 import org.bukkit.Material;
@@ -13,8 +12,6 @@ import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
 
-import java.util.Objects;
-
 public class SellCommand implements CommandExecutor {
 
     private final MarketPlace marketPlace;
@@ -45,11 +42,20 @@ public class SellCommand implements CommandExecutor {
         }
 
         // Check perm
-        if (!player.hasPermission(Objects.requireNonNull(marketPlace.getConfigManager().getConfig(ConfigType.MAIN).getString("permissions.sell")))) {
+        Settings settings = marketPlace.getConfigManager().getSettings();
+        if (!player.hasPermission(settings.permissions().sell())) {
             player.sendMessage(ChatColor.RED + "You do not have permission to use this command.");
             return true;
         }
 
+        // Counted from the listing index's per-seller sets, so the check is constant time.
+        int limit = settings.listingLimits().limitFor(player);
+        if (limit >= 0 && marketPlace.getMongoDBManager().getListingIndex()
+                .countBySeller(player.getUniqueId().toString()) >= limit) {
+            player.sendMessage(settings.messages().listingLimitReached().render(limit));
+            return true;
+        }
+
         // Parse the price argument.
         double price;
         try {
@@ -60,9 +66,7 @@ public class SellCommand implements CommandExecutor {
         }
 
         if (price <= 0) {
-            String invalidMsg = marketPlace.getConfigManager().getConfig(ConfigType.MESSAGES)
-                    .getString("sell-messages.invalid-price", "&cPlease set a valid price first!");
-            player.sendMessage(StringUtil.format(invalidMsg));
+            player.sendMessage(marketPlace.getConfigManager().getSettings().messages().invalidPrice());
         }
 
         // Get the item in the player's main hand.
@@ -72,8 +76,7 @@ public class SellCommand implements CommandExecutor {
             return true;
         }
 
-        new SellGUI(marketPlace, player.getInventory().getItemInMainHand(), price, player,
-                marketPlace.getConfigManager().getConfig(ConfigType.GUI)).open(player);
+        new SellGUI(marketPlace, player.getInventory().getItemInMainHand(), price, player).open(player);
         return true;
     }
 }
@@ -1,8 +1,10 @@
 package me.barnaby.trial.commands;
 
-import dev.s7a.base64.Base64ItemStack;
 import me.barnaby.trial.MarketPlace;
-import me.barnaby.trial.config.ConfigType;
+import me.barnaby.trial.config.Messages;
+import me.barnaby.trial.config.Permissions;
+import me.barnaby.trial.mongo.TransactionHistoryPage;
+import me.barnaby.trial.util.MessageTemplate;
 import me.barnaby.trial.util.StringUtil;
 import org.bson.Document;
 import org.bukkit.Bukkit;
@@ -11,15 +13,18 @@ import org.bukkit.OfflinePlayer;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
-import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
 
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
-import java.util.Objects;
 
+/**
+ * Handles the /transactions [player] [page] command, showing one page of a
+ * player's transaction history at a time.
+ */
 public class TransactionsCommand implements CommandExecutor {
 
     private final MarketPlace plugin;
@@ -30,18 +35,34 @@ public class TransactionsCommand implements CommandExecutor {
 
     @Override
     public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
-        // Retrieve permission keys from the MAIN config.
-        FileConfiguration mainConfig = plugin.getConfigManager().getConfig(ConfigType.MAIN);
-        String selfPerm = mainConfig.getString("permissions.transactions.self");
-        String otherPerm = mainConfig.getString("permissions.transactions.other");
+        // Retrieve permission keys from the settings.
+        Permissions permissions = plugin.getConfigManager().getSettings().permissions();
+        String selfPerm = permissions.transactionsSelf();
+        String otherPerm = permissions.transactionsOther();
+
+        // Split the arguments into an optional player name and an optional page number.
+        String playerArg = null;
+        int page = 1;
+        if (args.length == 1 && parsePage(args[0]) > 0) {
+            page = parsePage(args[0]);
+        } else if (args.length >= 1) {
+            playerArg = args[0];
+            if (args.length >= 2) {
+                page = parsePage(args[1]);
+                if (page < 1) {
+                    sender.sendMessage(ChatColor.RED + "Usage: /transactions [player] [page]");
+                    return true;
+                }
+            }
+        }
 
         String targetId;
         String targetName;
         boolean isSelf = false;
 
         // Determine target based on arguments.
-        if (args.length == 0) {
-            // No argument provided: default to self.
+        if (playerArg == null) {
+            // No player provided: default to self.
             if (sender instanceof Player player) {
                 targetId = player.getUniqueId().toString();
                 targetName = player.getName();
@@ -52,15 +73,15 @@ public class TransactionsCommand implements CommandExecutor {
             }
         } else {
             // Attempt to find the specified player.
-            Player target = Bukkit.getPlayer(args[0]);
+            Player target = Bukkit.getPlayer(playerArg);
             if (target != null) {
                 targetId = target.getUniqueId().toString();
                 targetName = target.getName();
             } else {
                 // Fallback: use OfflinePlayer.
-                OfflinePlayer offlineTarget = Bukkit.getOfflinePlayer(args[0]);
+                OfflinePlayer offlineTarget = Bukkit.getOfflinePlayer(playerArg);
                 targetId = offlineTarget.getUniqueId().toString();
-                targetName = args[0];
+                targetName = playerArg;
             }
             // Check if the sender is looking up their own transactions.
             if (sender instanceof Player player && player.getUniqueId().toString().equals(targetId)) {
@@ -83,56 +104,106 @@ public class TransactionsCommand implements CommandExecutor {
             }
         }
 
-        // Retrieve the transactions from MongoDB.
-        List<Document> transactions = plugin.getMongoDBManager().getTransactionHistory(targetId);
-        if (transactions.isEmpty()) {
-            sender.sendMessage(ChatColor.YELLOW + "No transactions found for " + targetName + ".");
-            return true;
+        // Fetch and render the page off the server thread, then only send the lines on it.
+        final String historyId = targetId;
+        final String historyName = targetName;
+        final String nextPageCommand = "/" + label + (playerArg == null ? "" : " " + playerArg) + " " + (page + 1);
+        int pageSize = plugin.getConfigManager().getSettings().pageSizes().transactions();
+        plugin.getMongoDBManager().getTransactionRepository().findHistoryPage(historyId, page, pageSize)
+                .thenApply(historyPage -> renderHistory(historyId, historyName, historyPage, nextPageCommand))
+                .thenAcceptAsync(lines -> lines.forEach(sender::sendMessage), plugin.getMainThreadExecutor())
+                .exceptionally(ex -> {
+                    plugin.getLogger().severe("Failed to load transactions: " + ex.getMessage());
+                    plugin.getMainThreadExecutor().execute(() ->
+                            sender.sendMessage(ChatColor.RED + "Could not load transactions. Please try again later."));
+                    return null;
+                });
+        return true;
+    }
+
+    /**
+     * Builds the chat lines for one page of a player's transaction history.
+     *
+     * @param targetId        The UUID string of the player whose history is shown.
+     * @param targetName      The name of the player whose history is shown.
+     * @param historyPage     The page of transactions.
+     * @param nextPageCommand The command that shows the next page.
+     * @return The lines to send, in order.
+     */
+    private List<String> renderHistory(String targetId, String targetName, TransactionHistoryPage historyPage,
+                                       String nextPageCommand) {
+        List<String> lines = new ArrayList<>();
+        if (historyPage.outOfReach()) {
+            lines.add(ChatColor.YELLOW + "Page " + historyPage.page() + " is too far back to open directly; "
+                    + "page through from an earlier page instead.");
+            return lines;
+        }
+        if (historyPage.transactions().isEmpty()) {
+            lines.add(ChatColor.YELLOW + (historyPage.page() == 1
+                    ? "No transactions found for " + targetName + "."
+                    : "No more transactions found for " + targetName + "."));
+            return lines;
         }
 
-        // Send a header message.
-        sender.sendMessage(ChatColor.GOLD + "Transaction History for " + targetName + ":");
+        // Header message.
+        lines.add(ChatColor.GOLD + "Transaction History for " + targetName + " (page " + historyPage.page() + "):");
 
         // Format the timestamp.
         SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
 
-        // Load messages configuration.
-        FileConfiguration messagesConfig = plugin.getConfigManager().getConfig(ConfigType.MESSAGES);
+        // Transaction lines are compiled templates from messages.yml.
+        Messages messages = plugin.getConfigManager().getSettings().messages();
 
-        // Iterate through each transaction and display a formatted line.
-        for (Document doc : transactions) {
+        // Build a formatted line for each transaction.
+        for (Document doc : historyPage.transactions()) {
             String buyerId = doc.getString("buyerId");
             String sellerId = doc.getString("sellerId");
             double price = doc.getDouble("price");
 
-            // Decode the item from its Base64 string.
-            @SuppressWarnings("unchecked")
-            ItemStack item = Base64ItemStack.decode(doc.get("itemData", String.class));
-            int amount = item.getAmount();
-            String itemName = StringUtil.formatItem(item);
+            // Use the stored display fields; only transactions the backfill has not reached yet need decoding.
+            int amount;
+            String itemName;
+            if (doc.containsKey("itemName")) {
+                amount = doc.getInteger("amount", 1);
+                itemName = doc.getString("itemName");
+            } else {
+                ItemStack item = plugin.getMongoDBManager().decodeItem(doc);
+                amount = item.getAmount();
+                itemName = StringUtil.formatItem(item);
+            }
             String time = dateFormat.format(new Date(doc.getLong("timestamp")));
-            String template;
+            MessageTemplate template;
 
             // Choose template based on whether the target was buyer or seller.
             if (targetId.equals(buyerId)) {
-                template = messagesConfig.getString("transaction.buy", "Bought %item% x%amount% for $%price% on %time%");
+                template = messages.transactionBuy();
             } else if (targetId.equals(sellerId)) {
-                template = messagesConfig.getString("transaction.sell", "Sold %item% x%amount% for $%price% on %time%");
+                template = messages.transactionSell();
             } else {
                 continue; // Should not occur.
             }
 
-            // Replace placeholders.
-            String line = template
-                    .replace("%item%", itemName)
-                    .replace("%amount%", String.valueOf(amount))
-                    .replace("%price%", String.valueOf(price))
-                    .replace("%time%", time);
+            lines.add(ChatColor.GREEN + template.render(itemName, amount, price, time));
+        }
 
-            sender.sendMessage(ChatColor.GREEN + StringUtil.format(line));
+        if (historyPage.hasNext()) {
+            lines.add(ChatColor.GRAY + "Use " + nextPageCommand + " to see older transactions.");
         }
-        return true;
+        return lines;
     }
-}
-
 
+    /**
+     * Parses a page number argument.
+     *
+     * @param arg The argument.
+     * @return The page number, or -1 if the argument is not a positive number.
+     */
+    private int parsePage(String arg) {
+        try {
+            int page = Integer.parseInt(arg);
+            return page > 0 ? page : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
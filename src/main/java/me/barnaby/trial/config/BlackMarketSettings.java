@@ -0,0 +1,32 @@
+package me.barnaby.trial.config;
+
+import org.bukkit.configuration.file.FileConfiguration;
+
+/**
+ * Black market settings, read from the "blackmarket" section of config.yml.
+ *
+ * @param addItemsEvery Seconds between black market refreshes.
+ * @param priceModifier Multiplier applied to a listing's price when it moves to the black market.
+ * @param sellBonus     Multiplier applied to what the seller receives for a black market sale.
+ * @param itemsCount    The number of listings moved on each refresh.
+ * @param catchUpLimit  The most missed refreshes run at once after every server was down.
+ * @param duration      Seconds a listing stays on the black market before returning to the marketplace; 0 to keep it there.
+ */
+public record BlackMarketSettings(long addItemsEvery, double priceModifier, double sellBonus, int itemsCount,
+                                  int catchUpLimit, long duration) {
+
+    /**
+     * @param mainConfig The config.yml configuration.
+     * @return The black market settings.
+     */
+    public static BlackMarketSettings from(FileConfiguration mainConfig) {
+        return new BlackMarketSettings(
+                mainConfig.getLong("blackmarket.add-items-every"),
+                mainConfig.getDouble("blackmarket.price-modifier"),
+                mainConfig.getDouble("blackmarket.sell-bonus"),
+                mainConfig.getInt("blackmarket.items-count"),
+                mainConfig.getInt("blackmarket.catch-up-limit", 1),
+                mainConfig.getLong("blackmarket.duration", mainConfig.getLong("blackmarket.add-items-every"))
+        );
+    }
+}
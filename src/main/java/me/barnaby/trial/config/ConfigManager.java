@@ -19,6 +19,8 @@ public class ConfigManager {
     private final Map<ConfigType, FileConfiguration> configs = new EnumMap<>(ConfigType.class);
     // Map to hold File objects for each ConfigType
     private final Map<ConfigType, File> configFiles = new EnumMap<>(ConfigType.class);
+    // Typed settings built from the loaded files; replaced as a whole on reload
+    private volatile Settings settings;
 
     // Reference to the main plugin instance
     private final JavaPlugin plugin;
@@ -31,6 +33,7 @@ public class ConfigManager {
     public ConfigManager(JavaPlugin plugin) {
         this.plugin = plugin;
         initializeConfigs();
+        settings = buildSettings();
     }
 
     /**
@@ -66,12 +69,32 @@ public class ConfigManager {
         return configs.get(type);
     }
 
+    /**
+     * Returns the typed settings snapshot. Callers should read it once per
+     * operation so every value they use comes from the same snapshot.
+     *
+     * @return The current Settings.
+     */
+    public Settings getSettings() {
+        return settings;
+    }
+
     /**
      * Reloads a specific configuration file.
      *
      * @param type The type of configuration to reload.
      */
     public void reloadConfig(ConfigType type) {
+        loadConfig(type);
+        settings = buildSettings();
+    }
+
+    /**
+     * Reads a configuration file again and drops its compiled templates.
+     *
+     * @param type The type of configuration to load.
+     */
+    private void loadConfig(ConfigType type) {
         File file = configFiles.get(type);
         if (file != null) {
             FileConfiguration configuration = YamlConfiguration.loadConfiguration(file);
@@ -79,6 +102,31 @@ public class ConfigManager {
         }
     }
 
+    /**
+     * Builds the typed settings from the loaded files.
+     *
+     * @return A new Settings snapshot.
+     */
+    private Settings buildSettings() {
+        FileConfiguration mainConfig = configs.get(ConfigType.MAIN);
+        FileConfiguration guiConfig = configs.get(ConfigType.GUI);
+        return new Settings(
+                GuiLayout.from(guiConfig, "marketplace-gui"),
+                GuiLayout.from(guiConfig, "blackmarket-gui"),
+                ConfirmBuyLayout.from(guiConfig),
+                SellLayout.from(guiConfig),
+                MyListingsLayout.from(guiConfig),
+                PageSizes.from(mainConfig),
+                BlackMarketSettings.from(mainConfig),
+                Permissions.from(mainConfig),
+                ListingLimits.from(mainConfig),
+                ListingExpirySettings.from(mainConfig),
+                DiscordSettings.from(mainConfig),
+                mainConfig.getInt("monitor.tick-report-every", 0),
+                Messages.from(configs.get(ConfigType.MESSAGES))
+        );
+    }
+
     /**
      * Saves a specific configuration file.
      *
@@ -101,8 +149,9 @@ public class ConfigManager {
      */
     public void reloadAllConfigs() {
         for (ConfigType type : ConfigType.values()) {
-            reloadConfig(type);
+            loadConfig(type);
         }
+        settings = buildSettings();
     }
 
     /**
@@ -114,4 +163,3 @@ public class ConfigManager {
         }
     }
 }
-
@@ -0,0 +1,43 @@
+package me.barnaby.trial.config;
+
+import me.barnaby.trial.util.MessageTemplate;
+import me.barnaby.trial.util.StringUtil;
+import org.bukkit.Material;
+import org.bukkit.configuration.file.FileConfiguration;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The layout of the purchase confirmation GUI, read from the "confirmbuy-gui" section of guis.yml.
+ *
+ * @param title       The colour-translated inventory title.
+ * @param rows        The number of inventory rows.
+ * @param confirm     The confirm button; its lore is rendered from confirmLore instead.
+ * @param confirmLore The lore templates of the confirm button.
+ * @param cancel      The cancel button.
+ */
+public record ConfirmBuyLayout(String title, int rows, GuiLayout.Button confirm, List<MessageTemplate> confirmLore,
+                               GuiLayout.Button cancel) {
+
+    // Placeholders of the confirm lore templates, in the order their values are passed.
+    public static final String[] CONFIRM_LORE_PLACEHOLDERS = {"item", "amount", "price"};
+
+    /**
+     * @param guiConfig The guis.yml configuration.
+     * @return The layout.
+     */
+    public static ConfirmBuyLayout from(FileConfiguration guiConfig) {
+        return new ConfirmBuyLayout(
+                StringUtil.format(guiConfig.getString("confirmbuy-gui.name", "&aConfirm Purchase")),
+                guiConfig.getInt("confirmbuy-gui.rows", 3),
+                GuiLayout.Button.from(guiConfig, "confirmbuy-gui.confirm", 11,
+                        Material.GREEN_STAINED_GLASS_PANE, "&aConfirm Purchase"),
+                guiConfig.getStringList("confirmbuy-gui.confirm.lore").stream()
+                        .map(line -> MessageTemplate.colored(line, CONFIRM_LORE_PLACEHOLDERS))
+                        .collect(Collectors.toUnmodifiableList()),
+                GuiLayout.Button.from(guiConfig, "confirmbuy-gui.cancel", 15,
+                        Material.RED_STAINED_GLASS_PANE, "&cCancel")
+        );
+    }
+}
@@ -0,0 +1,31 @@
+package me.barnaby.trial.config;
+
+import org.bukkit.configuration.file.FileConfiguration;
+
+/**
+ * Discord transaction log settings, read from the "discord" section of config.yml.
+ *
+ * @param webhook          The webhook URL; missing or invalid disables the log.
+ * @param queueSize        Logs held in memory before they are spilled to disk.
+ * @param embedTitle       The embed title.
+ * @param embedColor       The embed colour, as a hex string.
+ * @param embedDescription The embed description template.
+ */
+public record DiscordSettings(String webhook, int queueSize, String embedTitle, String embedColor,
+                              String embedDescription) {
+
+    /**
+     * @param mainConfig The config.yml configuration.
+     * @return The Discord settings.
+     */
+    public static DiscordSettings from(FileConfiguration mainConfig) {
+        return new DiscordSettings(
+                mainConfig.getString("discord.webhook"),
+                mainConfig.getInt("discord.queue-size", 1000),
+                mainConfig.getString("discord.embed.title", "Transaction Log"),
+                mainConfig.getString("discord.embed.color", "#00FF00"),
+                mainConfig.getString("discord.embed.description",
+                        "A purchase was made: %item% x%amount% for $%price% at %time% by %buyer% from %seller%")
+        );
+    }
+}
@@ -0,0 +1,122 @@
+package me.barnaby.trial.config;
+
+import me.barnaby.trial.util.MessageTemplate;
+import me.barnaby.trial.util.StringUtil;
+import org.bukkit.Material;
+import org.bukkit.configuration.file.FileConfiguration;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The layout and item templates of the marketplace or black market GUI, read from guis.yml.
+ *
+ * @param title              The colour-translated inventory title.
+ * @param rows               The number of inventory rows.
+ * @param itemsStart         The first slot of the item area.
+ * @param itemsEnd           The last slot of the item area.
+ * @param nextPage           The next page button.
+ * @param previousPage       The previous page button.
+ * @param sort               The button that cycles the order listings are shown in.
+ * @param canAffordName      The item name template for listings the viewer can afford.
+ * @param cannotAffordName   The item name template for listings the viewer cannot afford.
+ * @param canAffordLore      The lore templates for listings the viewer can afford.
+ * @param cannotAffordLore   The lore templates for listings the viewer cannot afford.
+ * @param cannotAffordMessage The colour-translated message sent when clicking an unaffordable listing.
+ */
+public record GuiLayout(String title, int rows, int itemsStart, int itemsEnd,
+                        Button nextPage, Button previousPage, Button sort,
+                        MessageTemplate canAffordName, MessageTemplate cannotAffordName,
+                        List<MessageTemplate> canAffordLore, List<MessageTemplate> cannotAffordLore,
+                        String cannotAffordMessage) {
+
+    // Placeholders of the listing lore templates, in the order their values are passed.
+    public static final String[] LORE_PLACEHOLDERS = {"price", "seller", "listedTime"};
+
+    /**
+     * Reads a shop GUI section.
+     *
+     * @param guiConfig The guis.yml configuration.
+     * @param section   "marketplace-gui" or "blackmarket-gui".
+     * @return The layout.
+     */
+    public static GuiLayout from(FileConfiguration guiConfig, String section) {
+        String prefix = section + ".";
+        int rows = guiConfig.getInt(prefix + "rows", 6);
+        int totalSlots = rows * 9;
+        return new GuiLayout(
+                StringUtil.format(guiConfig.getString(prefix + "name", "&bMarketplace")),
+                rows,
+                guiConfig.getInt(prefix + "items-area.start-slot", 0),
+                guiConfig.getInt(prefix + "items-area.end-slot", totalSlots - 9 - 1),
+                Button.from(guiConfig, prefix + "next-page", totalSlots - 1, "&aNext Page"),
+                Button.from(guiConfig, prefix + "previous-page", totalSlots - 9, "&aPrevious Page"),
+                Button.from(guiConfig, prefix + "sort", totalSlots - 5, "&eSort"),
+                MessageTemplate.colored(guiConfig.getString(prefix + "can-afford-item-name", "&a&l%item-name%"), "item-name"),
+                MessageTemplate.colored(guiConfig.getString(prefix + "cannot-afford-item-name", "&c&l%item-name%"), "item-name"),
+                templates(guiConfig.getStringList(prefix + "can-afford-item-lore")),
+                templates(guiConfig.getStringList(prefix + "cannot-afford-item-lore")),
+                StringUtil.format(guiConfig.getString(prefix + "cannot-afford-message", "&cYou cannot afford this item!"))
+        );
+    }
+
+    /**
+     * @return The number of listings shown on one page.
+     */
+    public int itemsPerPage() {
+        return itemsEnd - itemsStart + 1;
+    }
+
+    private static List<MessageTemplate> templates(List<String> lines) {
+        return lines.stream()
+                .map(line -> MessageTemplate.colored(line, LORE_PLACEHOLDERS))
+                .collect(Collectors.toUnmodifiableList());
+    }
+
+    /**
+     * A navigation button.
+     *
+     * @param slot     The slot of the button.
+     * @param material The button material.
+     * @param name     The colour-translated display name.
+     * @param lore     The colour-translated lore.
+     */
+    public record Button(int slot, Material material, String name, List<String> lore) {
+
+        /**
+         * Reads a button section.
+         *
+         * @param guiConfig   The guis.yml configuration.
+         * @param path        The path of the button section.
+         * @param defaultSlot The slot used if none is configured.
+         * @param defaultName The name used if none is configured.
+         * @return The button.
+         */
+        public static Button from(FileConfiguration guiConfig, String path, int defaultSlot, String defaultName) {
+            return from(guiConfig, path, defaultSlot, Material.ARROW, defaultName);
+        }
+
+        /**
+         * Reads a button section.
+         *
+         * @param guiConfig       The guis.yml configuration.
+         * @param path            The path of the button section.
+         * @param defaultSlot     The slot used if none is configured.
+         * @param defaultMaterial The material used if none, or an unknown one, is configured.
+         * @param defaultName     The name used if none is configured.
+         * @return The button.
+         */
+        public static Button from(FileConfiguration guiConfig, String path, int defaultSlot,
+                                  Material defaultMaterial, String defaultName) {
+            Material material = Material.matchMaterial(guiConfig.getString(path + ".material", defaultMaterial.name()));
+            return new Button(
+                    guiConfig.getInt(path + ".slot", defaultSlot),
+                    material == null ? defaultMaterial : material,
+                    StringUtil.format(guiConfig.getString(path + ".name", defaultName)),
+                    guiConfig.getStringList(path + ".lore").stream()
+                            .map(StringUtil::format)
+                            .collect(Collectors.toUnmodifiableList())
+            );
+        }
+    }
+}
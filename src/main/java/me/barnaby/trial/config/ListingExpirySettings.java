@@ -0,0 +1,23 @@
+package me.barnaby.trial.config;
+
+import org.bukkit.configuration.file.FileConfiguration;
+
+/**
+ * Listing expiry settings, read from the "listing-expiry" section of config.yml.
+ *
+ * @param lifetime   Seconds a marketplace listing stays up before its item is returned to the seller; 0 to keep listings forever.
+ * @param checkEvery Seconds between sweeps for expired listings.
+ */
+public record ListingExpirySettings(long lifetime, long checkEvery) {
+
+    /**
+     * @param mainConfig The config.yml configuration.
+     * @return The listing expiry settings.
+     */
+    public static ListingExpirySettings from(FileConfiguration mainConfig) {
+        return new ListingExpirySettings(
+                mainConfig.getLong("listing-expiry.lifetime", 0),
+                Math.max(1, mainConfig.getLong("listing-expiry.check-every", 60))
+        );
+    }
+}
@@ -0,0 +1,54 @@
+package me.barnaby.trial.config;
+
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.permissions.Permissible;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Listing caps, read from the "listing-limits" section of config.yml. A player
+ * holding the permission of a group gets that group's cap instead of the
+ * default; if several groups apply, the highest cap wins.
+ *
+ * @param defaultLimit     The most listings a player may have at once; negative for no limit.
+ * @param permissionPrefix The permission of a group is this prefix followed by the group name.
+ * @param groups           The cap of each group; negative for no limit.
+ */
+public record ListingLimits(int defaultLimit, String permissionPrefix, Map<String, Integer> groups) {
+
+    /**
+     * @param mainConfig The config.yml configuration.
+     * @return The listing limits.
+     */
+    public static ListingLimits from(FileConfiguration mainConfig) {
+        Map<String, Integer> groups = new LinkedHashMap<>();
+        ConfigurationSection section = mainConfig.getConfigurationSection("listing-limits.groups");
+        if (section != null) {
+            for (String group : section.getKeys(false)) {
+                groups.put(group, section.getInt(group));
+            }
+        }
+        return new ListingLimits(
+                mainConfig.getInt("listing-limits.default", -1),
+                mainConfig.getString("listing-limits.permission-prefix", "marketplace.limit."),
+                Map.copyOf(groups)
+        );
+    }
+
+    /**
+     * @param player The player listing an item.
+     * @return The most listings the player may have at once, or -1 for no limit.
+     */
+    public int limitFor(Permissible player) {
+        if (defaultLimit < 0) return -1;
+        int limit = defaultLimit;
+        for (Map.Entry<String, Integer> group : groups.entrySet()) {
+            if (!player.hasPermission(permissionPrefix + group.getKey())) continue;
+            if (group.getValue() < 0) return -1;
+            limit = Math.max(limit, group.getValue());
+        }
+        return limit;
+    }
+}
@@ -0,0 +1,97 @@
+package me.barnaby.trial.config;
+
+import me.barnaby.trial.util.MessageTemplate;
+import me.barnaby.trial.util.StringUtil;
+import org.bukkit.configuration.file.FileConfiguration;
+
+/**
+ * Player messages, read from messages.yml. Plain messages are colour-translated
+ * and messages with placeholders are compiled templates.
+ *
+ * @param invalidPrice         Sent when /sell is given a price that is not positive.
+ * @param listingLimitReached  Sent when a player already has as many listings as allowed; placeholder: limit.
+ * @param saleSuccess          Sent when a listing is stored; placeholder: price.
+ * @param saleCancelled        Sent when the sell GUI is cancelled.
+ * @param soldMessage          Sent to the seller of a marketplace listing; see {@link #SALE_PLACEHOLDERS}.
+ * @param purchaseSuccess      Sent to the buyer of a marketplace listing.
+ * @param successSound         The sound played to both sides of a purchase.
+ * @param cannotAfford         Sent when the buyer cannot afford a listing.
+ * @param failureSound         The sound played when a purchase fails.
+ * @param purchaseCancelled    Sent when the confirm-buy GUI is cancelled.
+ * @param unavailable          Sent when a listing was bought or changed by someone else.
+ * @param paymentFailed        Sent when the economy refused a payment.
+ * @param transactionBuy       A /transactions line for a purchase; see {@link #TRANSACTION_PLACEHOLDERS}.
+ * @param transactionSell      A /transactions line for a sale; see {@link #TRANSACTION_PLACEHOLDERS}.
+ * @param blackMarketMoved     Sent to a seller whose listing moved to the black market; placeholder: item.
+ * @param blackMarketBought    Sent to the buyer of a black market listing; see {@link #SALE_PLACEHOLDERS}.
+ * @param blackMarketSold      Sent to the seller of a black market listing; see {@link #SALE_PLACEHOLDERS}.
+ * @param listingCancelled     Sent when a seller cancels a listing and gets the item back.
+ * @param listingRelisted      Sent when a seller relists a listing.
+ * @param cancelFailed         Sent when a listing could not be cancelled because of a database error.
+ * @param relistFailed         Sent when a listing could not be relisted because of a database error.
+ * @param blackMarketRelist    Sent when a seller tries to relist a black market listing.
+ * @param mailboxDelivered     Sent when items from expired listings are returned; placeholder: count.
+ * @param mailboxWaiting       Sent when returned items did not fit in the inventory; placeholder: count.
+ * @param mailboxEmpty         Sent when /marketplace mailbox finds nothing to deliver.
+ */
+public record Messages(String invalidPrice, MessageTemplate listingLimitReached, MessageTemplate saleSuccess, String saleCancelled, MessageTemplate soldMessage,
+                       String purchaseSuccess, String successSound, String cannotAfford, String failureSound,
+                       String purchaseCancelled, String unavailable, String paymentFailed,
+                       MessageTemplate transactionBuy, MessageTemplate transactionSell,
+                       MessageTemplate blackMarketMoved, MessageTemplate blackMarketBought, MessageTemplate blackMarketSold,
+                       String listingCancelled, String listingRelisted,
+                       String cancelFailed, String relistFailed, String blackMarketRelist,
+                       MessageTemplate mailboxDelivered, MessageTemplate mailboxWaiting, String mailboxEmpty) {
+
+    // Placeholders of the purchase and sale messages, in the order their values are passed.
+    public static final String[] SALE_PLACEHOLDERS = {"item", "amount", "oldprice", "price"};
+    // Placeholders of the transaction lines, in the order their values are passed.
+    public static final String[] TRANSACTION_PLACEHOLDERS = {"item", "amount", "price", "time"};
+
+    /**
+     * @param messagesConfig The messages.yml configuration.
+     * @return The messages.
+     */
+    public static Messages from(FileConfiguration messagesConfig) {
+        return new Messages(
+                StringUtil.format(messagesConfig.getString("sell-messages.invalid-price", "&cPlease set a valid price first!")),
+                MessageTemplate.colored(messagesConfig.getString("sell-messages.limit-reached",
+                        "&cYou already have %limit% listings. Cancel one with /marketplace mine first."), "limit"),
+                MessageTemplate.colored(messagesConfig.getString("sell-messages.sale-success", "&aItem listed for sale at $%price%"), "price"),
+                StringUtil.format(messagesConfig.getString("sell-messages.sale-cancelled", "&cSale cancelled.")),
+                MessageTemplate.colored(messagesConfig.getString("sell-messages.sold-message", "&aPurchase sold!"), SALE_PLACEHOLDERS),
+                StringUtil.format(messagesConfig.getString("buy-messages.success-message", "&aPurchase successful!")),
+                messagesConfig.getString("buy-messages.success-sound", "ENTITY_PLAYER_LEVELUP"),
+                StringUtil.format(messagesConfig.getString("buy-messages.failure-message", "&cYou cannot afford this item!")),
+                messagesConfig.getString("buy-messages.failure-sound", "ENTITY_VILLAGER_NO"),
+                StringUtil.format(messagesConfig.getString("buy-messages.cancel-message", "&cPurchase cancelled.")),
+                StringUtil.format(messagesConfig.getString("buy-messages.unavailable-message", "&cThis item is no longer for sale.")),
+                StringUtil.format(messagesConfig.getString("buy-messages.payment-failed-message",
+                        "&cThe purchase could not be completed. You have not been charged.")),
+                MessageTemplate.colored(messagesConfig.getString("transaction.buy",
+                        "Bought %item% x%amount% for $%price% on %time%"), TRANSACTION_PLACEHOLDERS),
+                MessageTemplate.colored(messagesConfig.getString("transaction.sell",
+                        "Sold %item% x%amount% for $%price% on %time%"), TRANSACTION_PLACEHOLDERS),
+                MessageTemplate.colored(messagesConfig.getString("blackmarket.black-market-item", ""), "item"),
+                MessageTemplate.colored(messagesConfig.getString("blackmarket.success-message",
+                        "&aPurchase &8> &fYou bought %item% for &c&m%oldprice%&f %price%!"), SALE_PLACEHOLDERS),
+                MessageTemplate.colored(messagesConfig.getString("blackmarket.sold-message",
+                        "&aPurchase &8> &fYou sold %item% for &a&m%oldprice%&f %price%!"), SALE_PLACEHOLDERS),
+                StringUtil.format(messagesConfig.getString("listing-messages.cancelled",
+                        "&aYour listing was cancelled and the item returned.")),
+                StringUtil.format(messagesConfig.getString("listing-messages.relisted",
+                        "&aYour listing was relisted with a new listing time.")),
+                StringUtil.format(messagesConfig.getString("listing-messages.cancel-failed",
+                        "&cYour listing could not be cancelled. Please try again.")),
+                StringUtil.format(messagesConfig.getString("listing-messages.relist-failed",
+                        "&cYour listing could not be relisted. Please try again.")),
+                StringUtil.format(messagesConfig.getString("listing-messages.black-market-relist",
+                        "&cBlack market listings cannot be relisted.")),
+                MessageTemplate.colored(messagesConfig.getString("mailbox-messages.delivered",
+                        "&aYou received %count% items from your expired listings."), "count"),
+                MessageTemplate.colored(messagesConfig.getString("mailbox-messages.waiting",
+                        "&e%count% more items are waiting in your mailbox. Make room and use /marketplace mailbox."), "count"),
+                StringUtil.format(messagesConfig.getString("mailbox-messages.empty", "&eYour mailbox is empty."))
+        );
+    }
+}
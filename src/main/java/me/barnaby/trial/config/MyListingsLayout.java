@@ -0,0 +1,67 @@
+package me.barnaby.trial.config;
+
+import me.barnaby.trial.util.MessageTemplate;
+import me.barnaby.trial.util.StringUtil;
+import org.bukkit.configuration.file.FileConfiguration;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The layout of the player's own listings GUI, read from the "mylistings-gui" section of guis.yml.
+ *
+ * @param title           The colour-translated inventory title.
+ * @param rows            The number of inventory rows.
+ * @param itemsStart      The first slot of the item area.
+ * @param itemsEnd        The last slot of the item area.
+ * @param nextPage        The next page button.
+ * @param previousPage    The previous page button.
+ * @param lore            The lore templates of a listing.
+ * @param marketplaceName The market placeholder value of a marketplace listing.
+ * @param blackMarketName The market placeholder value of a black market listing.
+ */
+public record MyListingsLayout(String title, int rows, int itemsStart, int itemsEnd,
+                               GuiLayout.Button nextPage, GuiLayout.Button previousPage,
+                               List<MessageTemplate> lore, String marketplaceName, String blackMarketName) {
+
+    // Placeholders of the listing lore templates, in the order their values are passed.
+    public static final String[] LORE_PLACEHOLDERS = {"price", "market", "listedTime"};
+    // Used when guis.yml predates this GUI.
+    private static final List<String> DEFAULT_LORE = List.of(
+            "&fPrice: &a$%price%",
+            "&fMarket: &a%market%",
+            "&fListed: &a%listedTime%",
+            "",
+            "&eLeft-click to cancel",
+            "&eRight-click to relist");
+
+    /**
+     * @param guiConfig The guis.yml configuration.
+     * @return The layout.
+     */
+    public static MyListingsLayout from(FileConfiguration guiConfig) {
+        int rows = guiConfig.getInt("mylistings-gui.rows", 6);
+        int totalSlots = rows * 9;
+        List<String> lore = guiConfig.getStringList("mylistings-gui.item-lore");
+        return new MyListingsLayout(
+                StringUtil.format(guiConfig.getString("mylistings-gui.name", "&bYour Listings")),
+                rows,
+                guiConfig.getInt("mylistings-gui.items-area.start-slot", 0),
+                guiConfig.getInt("mylistings-gui.items-area.end-slot", totalSlots - 9 - 1),
+                GuiLayout.Button.from(guiConfig, "mylistings-gui.next-page", totalSlots - 1, "&aNext Page"),
+                GuiLayout.Button.from(guiConfig, "mylistings-gui.previous-page", totalSlots - 9, "&aPrevious Page"),
+                (lore.isEmpty() ? DEFAULT_LORE : lore).stream()
+                        .map(line -> MessageTemplate.colored(line, LORE_PLACEHOLDERS))
+                        .collect(Collectors.toUnmodifiableList()),
+                StringUtil.format(guiConfig.getString("mylistings-gui.market-names.marketplace", "Marketplace")),
+                StringUtil.format(guiConfig.getString("mylistings-gui.market-names.black-market", "Black Market"))
+        );
+    }
+
+    /**
+     * @return The number of listings shown on one page.
+     */
+    public int itemsPerPage() {
+        return itemsEnd - itemsStart + 1;
+    }
+}
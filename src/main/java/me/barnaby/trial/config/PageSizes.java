@@ -0,0 +1,23 @@
+package me.barnaby.trial.config;
+
+import org.bukkit.configuration.file.FileConfiguration;
+
+/**
+ * Page sizes and page caching, read from config.yml.
+ *
+ * @param pageCacheSize The number of rendered marketplace and black market pages kept in memory.
+ * @param transactions  The number of transactions shown per page of /transactions.
+ */
+public record PageSizes(int pageCacheSize, int transactions) {
+
+    /**
+     * @param mainConfig The config.yml configuration.
+     * @return The page sizes.
+     */
+    public static PageSizes from(FileConfiguration mainConfig) {
+        return new PageSizes(
+                Math.max(1, mainConfig.getInt("gui.page-cache-size", 64)),
+                Math.max(1, mainConfig.getInt("transactions.page-size", 10))
+        );
+    }
+}
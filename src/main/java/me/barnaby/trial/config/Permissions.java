@@ -0,0 +1,32 @@
+package me.barnaby.trial.config;
+
+import org.bukkit.configuration.file.FileConfiguration;
+
+/**
+ * Permission nodes, read from the "permissions" section of config.yml.
+ *
+ * @param sell               Permission to list an item with /sell.
+ * @param view               Permission to open the marketplace.
+ * @param blackMarketOpen    Permission to open the black market.
+ * @param blackMarketRefresh Permission to force a black market refresh.
+ * @param transactionsSelf   Permission to view one's own transactions.
+ * @param transactionsOther  Permission to view other players' transactions.
+ */
+public record Permissions(String sell, String view, String blackMarketOpen, String blackMarketRefresh,
+                          String transactionsSelf, String transactionsOther) {
+
+    /**
+     * @param mainConfig The config.yml configuration.
+     * @return The permission nodes.
+     */
+    public static Permissions from(FileConfiguration mainConfig) {
+        return new Permissions(
+                mainConfig.getString("permissions.sell", "marketplace.sell"),
+                mainConfig.getString("permissions.view", "marketplace.view"),
+                mainConfig.getString("permissions.blackmarket.open", "marketplace.blackmarket.view"),
+                mainConfig.getString("permissions.blackmarket.refresh", "marketplace.blackmarket.refresh"),
+                mainConfig.getString("permissions.transactions.self", "marketplace.transactions.self"),
+                mainConfig.getString("permissions.transactions.other", "marketplace.transactions.other")
+        );
+    }
+}
@@ -0,0 +1,32 @@
+package me.barnaby.trial.config;
+
+import me.barnaby.trial.util.MessageTemplate;
+import org.bukkit.Material;
+import org.bukkit.configuration.file.FileConfiguration;
+
+/**
+ * The layout of the sell GUI, read from the "sellgui" section of guis.yml.
+ *
+ * @param title   The inventory title template, with the item and amount placeholders.
+ * @param rows    The number of inventory rows.
+ * @param confirm The confirm button.
+ * @param cancel  The cancel button.
+ * @param price   The price display; the price is appended to its name.
+ */
+public record SellLayout(MessageTemplate title, int rows, GuiLayout.Button confirm, GuiLayout.Button cancel,
+                         GuiLayout.Button price) {
+
+    /**
+     * @param guiConfig The guis.yml configuration.
+     * @return The layout.
+     */
+    public static SellLayout from(FileConfiguration guiConfig) {
+        return new SellLayout(
+                MessageTemplate.colored(guiConfig.getString("sellgui.name", "&fSell &b%item% &3x%amount%"), "item", "amount"),
+                guiConfig.getInt("sellgui.rows", 4),
+                GuiLayout.Button.from(guiConfig, "sellgui.confirm", 27, Material.GREEN_STAINED_GLASS_PANE, "&aConfirm"),
+                GuiLayout.Button.from(guiConfig, "sellgui.cancel", 35, Material.RED_STAINED_GLASS_PANE, "&cCancel"),
+                GuiLayout.Button.from(guiConfig, "sellgui.price", 31, Material.OAK_SIGN, "&ePrice: $")
+        );
+    }
+}
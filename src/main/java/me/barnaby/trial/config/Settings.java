@@ -0,0 +1,35 @@
+package me.barnaby.trial.config;
+
+/**
+ * An immutable snapshot of the settings read on hot paths. ConfigManager
+ * builds a new snapshot whenever a file is loaded and swaps it in at once,
+ * so a reader never sees settings from two different versions of a file.
+ *
+ * @param marketplaceGui The marketplace GUI layout.
+ * @param blackMarketGui The black market GUI layout.
+ * @param confirmBuyGui  The purchase confirmation GUI layout.
+ * @param sellGui        The sell GUI layout.
+ * @param myListingsGui  The layout of the player's own listings GUI.
+ * @param pageSizes      The page sizes and page cache size.
+ * @param blackMarket    The black market settings.
+ * @param permissions    The permission nodes.
+ * @param listingLimits  The caps on how many listings a player may have.
+ * @param listingExpiry  How long marketplace listings stay up.
+ * @param discord        The Discord transaction log settings.
+ * @param tickReportEvery Ticks between tick time reports in the console; 0 disables them.
+ * @param messages       The player messages.
+ */
+public record Settings(GuiLayout marketplaceGui, GuiLayout blackMarketGui, ConfirmBuyLayout confirmBuyGui,
+                       SellLayout sellGui, MyListingsLayout myListingsGui, PageSizes pageSizes,
+                       BlackMarketSettings blackMarket, Permissions permissions, ListingLimits listingLimits,
+                       ListingExpirySettings listingExpiry, DiscordSettings discord, int tickReportEvery,
+                       Messages messages) {
+
+    /**
+     * @param blackMarket True for the black market GUI.
+     * @return The layout of the requested shop GUI.
+     */
+    public GuiLayout gui(boolean blackMarket) {
+        return blackMarket ? blackMarketGui : marketplaceGui;
+    }
+}
@@ -0,0 +1,289 @@
+package me.barnaby.trial.discord;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Delivers Discord embeds from a bounded queue on a background thread.
+ *
+ * Embeds are packed up to Discord's limit of 10 per message and sent over a
+ * keep-alive HttpClient. Rate limits (HTTP 429) are honoured using the
+ * Retry-After header, up to {@link #MAX_RATE_LIMITED_ATTEMPTS} times per
+ * message. Embeds that do not fit in the queue, and messages that could not
+ * be delivered, are spilled to disk by the worker and re-queued the next time
+ * the dispatcher starts.
+ *
+ * A missing or malformed webhook URL disables the dispatcher: embeds are
+ * dropped and no worker thread is started.
+ */
+public class DiscordWebhookDispatcher {
+
+    // Discord accepts at most 10 embeds per webhook message.
+    public static final int MAX_EMBEDS_PER_MESSAGE = 10;
+    private static final int MAX_ATTEMPTS = 3;
+    // A webhook that keeps answering 429 must not hold up the queue behind it forever.
+    private static final int MAX_RATE_LIMITED_ATTEMPTS = 5;
+    private static final Pattern RETRY_AFTER_BODY = Pattern.compile("\"retry_after\"\\s*:\\s*([0-9.]+)");
+
+    private final URI webhookUri;
+    private final Logger logger;
+    private final File spillFile;
+    private final BlockingQueue<String> queue;
+    // Embeds that did not fit in the queue, written to the spill file by the worker.
+    private final Queue<String> overflow = new ConcurrentLinkedQueue<>();
+    private final HttpClient httpClient;
+    private final Thread worker;
+
+    private volatile boolean running = true;
+
+    /**
+     * Constructs and starts a dispatcher.
+     *
+     * @param webhookUrl    The webhook URL to post to; null or invalid disables the dispatcher.
+     * @param logger        The logger used for delivery failures.
+     * @param spillFile     The file overflowing embeds are written to, one JSON object per line.
+     * @param queueCapacity The maximum number of embeds held in memory.
+     */
+    public DiscordWebhookDispatcher(String webhookUrl, Logger logger, File spillFile, int queueCapacity) {
+        this.webhookUri = parseWebhookUri(webhookUrl);
+        this.logger = logger;
+        this.spillFile = spillFile;
+        this.queue = new ArrayBlockingQueue<>(Math.max(MAX_EMBEDS_PER_MESSAGE, queueCapacity));
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+
+        if (webhookUri == null) {
+            logger.warning("The Discord webhook URL is missing or invalid; purchase logs are not sent to Discord.");
+            running = false;
+            this.worker = null;
+            return;
+        }
+
+        restoreSpilled();
+
+        this.worker = new Thread(this::run, "MarketPlace-Discord");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Queues an embed for delivery. Never blocks while the dispatcher runs;
+     * if the queue is full the worker spills the embed to disk. Once
+     * {@link #shutdown} has begun the embed is spilled directly.
+     *
+     * @param embedJson A single embed as a JSON object.
+     */
+    public void enqueue(String embedJson) {
+        if (webhookUri == null) return;
+        if (!running) {
+            spill(List.of(embedJson));
+        } else if (!queue.offer(embedJson)) {
+            overflow.add(embedJson);
+        }
+    }
+
+    /**
+     * Stops the dispatcher, delivering whatever is queued until the timeout
+     * elapses. Anything left over is spilled to disk.
+     *
+     * @param timeout The maximum time to spend flushing.
+     * @param unit    The unit of the timeout.
+     */
+    public void shutdown(long timeout, TimeUnit unit) {
+        running = false;
+        if (worker == null) return;
+        try {
+            // The worker notices the flag within a second and then drains the queue.
+            worker.join(unit.toMillis(timeout));
+            if (worker.isAlive()) {
+                worker.interrupt();
+                worker.join(1000L);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        spillOverflow();
+        List<String> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            spill(remaining);
+        }
+    }
+
+    /**
+     * @return False if the webhook URL was missing or invalid and embeds are dropped.
+     */
+    public boolean isEnabled() {
+        return webhookUri != null;
+    }
+
+    /**
+     * @return The number of embeds waiting to be delivered.
+     */
+    public int getQueuedCount() {
+        return queue.size();
+    }
+
+    private void run() {
+        List<String> batch = new ArrayList<>(MAX_EMBEDS_PER_MESSAGE);
+        while (running || !queue.isEmpty()) {
+            try {
+                spillOverflow();
+                String first = running ? queue.poll(1, TimeUnit.SECONDS) : queue.poll();
+                if (first == null) continue;
+
+                batch.add(first);
+                queue.drainTo(batch, MAX_EMBEDS_PER_MESSAGE - 1);
+                deliver(batch);
+            } catch (InterruptedException e) {
+                // Only interrupted when shutdown timed out; keep the unsent batch for the next start.
+                if (!batch.isEmpty()) spill(new ArrayList<>(batch));
+                return;
+            } catch (RuntimeException e) {
+                // Ending the worker would leave every later purchase spilling to disk on the server thread.
+                logger.log(Level.WARNING, "Failed to deliver Discord embeds.", e);
+                if (!batch.isEmpty()) spill(new ArrayList<>(batch));
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Sends one message containing the given embeds, retrying on rate limits and transient failures.
+     */
+    private void deliver(List<String> embeds) throws InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(webhookUri)
+                .timeout(Duration.ofSeconds(10))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(buildPayload(embeds), StandardCharsets.UTF_8))
+                .build();
+
+        int attempts = 0;
+        int rateLimited = 0;
+        while (attempts < MAX_ATTEMPTS) {
+            try {
+                HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+                int status = response.statusCode();
+                if (status == 200 || status == 204) return;
+
+                if (status == 429) {
+                    // Rate limits have their own cap rather than counting as failed attempts.
+                    if (++rateLimited >= MAX_RATE_LIMITED_ATTEMPTS) {
+                        logger.warning("Discord kept rate limiting the webhook; the message is kept for the next start.");
+                        break;
+                    }
+                    Thread.sleep(retryAfterMillis(response));
+                    spillOverflow();
+                    continue;
+                }
+                if (status < 500) {
+                    logger.warning("Discord rejected webhook message. Response code: " + status);
+                    return;
+                }
+                logger.warning("Failed to send Discord webhook. Response code: " + status);
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Failed to send Discord webhook.", e);
+            }
+            attempts++;
+            if (attempts < MAX_ATTEMPTS) Thread.sleep(1000L * attempts);
+            spillOverflow();
+        }
+        // Keep the embeds for the next start rather than losing them.
+        spill(embeds);
+    }
+
+    /**
+     * Parses a webhook URL.
+     *
+     * @param webhookUrl The configured URL.
+     * @return The URL, or null if it is missing or not an absolute http(s) URL.
+     */
+    static URI parseWebhookUri(String webhookUrl) {
+        if (webhookUrl == null || webhookUrl.isBlank()) return null;
+        try {
+            URI uri = new URI(webhookUrl.trim());
+            String scheme = uri.getScheme();
+            if (scheme == null || uri.getHost() == null) return null;
+            return scheme.equalsIgnoreCase("https") || scheme.equalsIgnoreCase("http") ? uri : null;
+        } catch (URISyntaxException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Builds a webhook payload carrying the given embeds.
+     *
+     * @param embeds The embeds as JSON objects.
+     * @return The JSON payload.
+     */
+    static String buildPayload(List<String> embeds) {
+        return "{\"embeds\":[" + String.join(",", embeds) + "]}";
+    }
+
+    private long retryAfterMillis(HttpResponse<String> response) {
+        String header = response.headers().firstValue("Retry-After").orElse(null);
+        try {
+            if (header != null) return (long) Math.ceil(Double.parseDouble(header) * 1000);
+            Matcher matcher = RETRY_AFTER_BODY.matcher(response.body());
+            if (matcher.find()) return (long) Math.ceil(Double.parseDouble(matcher.group(1)) * 1000);
+        } catch (NumberFormatException ignored) {
+        }
+        return 1000L;
+    }
+
+    private void spillOverflow() {
+        List<String> embeds = new ArrayList<>();
+        String embed;
+        while ((embed = overflow.poll()) != null) embeds.add(embed);
+        if (!embeds.isEmpty()) spill(embeds);
+    }
+
+    private synchronized void spill(List<String> embeds) {
+        try {
+            Files.write(spillFile.toPath(), embeds, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            logger.warning("Dropped " + embeds.size() + " Discord embeds: " + e.getMessage());
+        }
+    }
+
+    private synchronized void restoreSpilled() {
+        if (!spillFile.exists()) return;
+        try {
+            List<String> lines = Files.readAllLines(spillFile.toPath(), StandardCharsets.UTF_8);
+            Files.delete(spillFile.toPath());
+
+            List<String> overflow = new ArrayList<>();
+            for (String line : lines) {
+                if (line.isBlank()) continue;
+                if (!queue.offer(line)) overflow.add(line);
+            }
+            if (!overflow.isEmpty()) spill(overflow);
+        } catch (IOException e) {
+            logger.warning("Could not restore spilled Discord embeds: " + e.getMessage());
+        }
+    }
+}
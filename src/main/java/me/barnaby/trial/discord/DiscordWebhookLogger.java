@@ -1,36 +1,48 @@
 package me.barnaby.trial.discord;
 
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import me.barnaby.trial.util.MessageTemplate;
+
+import java.util.concurrent.TimeUnit;
 
 /**
  * Handles sending purchase transaction logs to a Discord webhook.
  */
 public class DiscordWebhookLogger {
 
-    private final String webhookUrl;
-    private final String embedTitle;
-    private final String embedDescriptionTemplate;
-    private final String embedColor; // Hex color code (e.g., "#00FF00")
+    private final MessageTemplate embedDescriptionTemplate;
+    // Title and color never change, so the JSON around the description is built once.
+    private final String payloadPrefix;
+    private final String payloadSuffix;
+    private final DiscordWebhookDispatcher dispatcher;
 
     /**
      * Constructs a DiscordWebhookLogger.
      *
-     * @param webhookUrl              The webhook URL to send messages to.
      * @param embedTitle              The title of the Discord embed.
      * @param embedDescriptionTemplate The description template with placeholders.
      * @param embedColor              The hex color code of the embed.
+     * @param dispatcher              The dispatcher that delivers the embeds.
      */
-    public DiscordWebhookLogger(String webhookUrl, String embedTitle, String embedDescriptionTemplate, String embedColor) {
-        this.webhookUrl = webhookUrl;
-        this.embedTitle = embedTitle;
-        this.embedDescriptionTemplate = embedDescriptionTemplate;
-        this.embedColor = embedColor;
+    public DiscordWebhookLogger(String embedTitle, String embedDescriptionTemplate, String embedColor,
+                                DiscordWebhookDispatcher dispatcher) {
+        this.embedDescriptionTemplate = MessageTemplate.of(embedDescriptionTemplate,
+                "item", "amount", "price", "time", "buyer", "seller");
+        this.dispatcher = dispatcher;
+
+        // Convert embed color from hex (e.g., "#00FF00") to an integer value
+        int colorValue;
+        try {
+            colorValue = Integer.parseInt(embedColor.replace("#", ""), 16);
+        } catch (NumberFormatException e) {
+            colorValue = 0xFFFFFF; // Default to white if parsing fails
+        }
+        this.payloadPrefix = "{\"title\":\"" + escapeJson(embedTitle) + "\",\"description\":\"";
+        this.payloadSuffix = "\",\"color\":" + colorValue + "}";
     }
 
     /**
-     * Sends a purchase transaction log to Discord via a webhook.
+     * Queues a purchase transaction log for delivery to Discord via a webhook.
+     * Never blocks on the network.
      *
      * @param buyerName Name of the player who bought the item.
      * @param sellerName Name of the player who sold the item.
@@ -40,48 +52,32 @@ public class DiscordWebhookLogger {
      * @param time The timestamp of the transaction.
      */
     public void sendPurchaseLog(String buyerName, String sellerName, String itemName, int amount, double price, String time) {
-        // Convert embed color from hex (e.g., "#00FF00") to an integer value
-        int colorValue;
-        try {
-            colorValue = Integer.parseInt(embedColor.replace("#", ""), 16);
-        } catch (NumberFormatException e) {
-            colorValue = 0xFFFFFF; // Default to white if parsing fails
-        }
-
-        // Replace placeholders in the embed description template
-        String description = embedDescriptionTemplate
-                .replace("%item%", itemName)
-                .replace("%amount%", String.valueOf(amount))
-                .replace("%price%", String.valueOf(price))
-                .replace("%time%", time)
-                .replace("%buyer%", buyerName)
-                .replace("%seller%", sellerName);
-
-        // Construct the JSON payload for the Discord webhook
-        String jsonPayload = "{\"embeds\":[{" +
-                "\"title\":\"" + escapeJson(embedTitle) + "\"," +
-                "\"description\":\"" + escapeJson(description) + "\"," +
-                "\"color\":" + colorValue +
-                "}]}";
-
-        try {
-            URL url = new URL(webhookUrl);
-            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-            connection.setRequestMethod("POST");
-            connection.setDoOutput(true);
-            connection.addRequestProperty("Content-Type", "application/json");
+        // Hand the embed to the dispatcher; delivery happens off the server thread.
+        dispatcher.enqueue(buildEmbed(buyerName, sellerName, itemName, amount, price, time));
+    }
 
-            try (OutputStream os = connection.getOutputStream()) {
-                os.write(jsonPayload.getBytes("UTF-8"));
-            }
+    /**
+     * Builds the JSON embed for a purchase transaction.
+     *
+     * @param buyerName Name of the player who bought the item.
+     * @param sellerName Name of the player who sold the item.
+     * @param itemName Name of the purchased item.
+     * @param amount Quantity of the purchased item.
+     * @param price Price of the item.
+     * @param time The timestamp of the transaction.
+     * @return The embed JSON object.
+     */
+    public String buildEmbed(String buyerName, String sellerName, String itemName, int amount, double price, String time) {
+        // Fill in the embed description template
+        String description = embedDescriptionTemplate.render(itemName, amount, price, time, buyerName, sellerName);
+        return payloadPrefix + escapeJson(description) + payloadSuffix;
+    }
 
-            int responseCode = connection.getResponseCode();
-            if (responseCode != HttpURLConnection.HTTP_NO_CONTENT && responseCode != HttpURLConnection.HTTP_OK) {
-                System.err.println("Failed to send Discord webhook. Response code: " + responseCode);
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+    /**
+     * Flushes queued logs and stops the dispatcher. Called when the plugin is disabled.
+     */
+    public void shutdown() {
+        dispatcher.shutdown(5, TimeUnit.SECONDS);
     }
 
     /**
@@ -92,6 +88,6 @@ public class DiscordWebhookLogger {
      */
     private String escapeJson(String text) {
         if (text == null) return "";
-        return text.replace("\\", "\\\\").replace("\"", "\\\"");
+        return text.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
     }
 }
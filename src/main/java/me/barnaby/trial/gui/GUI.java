@@ -8,6 +8,7 @@ import org.bukkit.event.inventory.InventoryDragEvent;
 import org.bukkit.event.inventory.InventoryOpenEvent;
 import org.bukkit.inventory.Inventory;
 import org.bukkit.inventory.InventoryHolder;
+import org.bukkit.inventory.ItemStack;
 
 public class GUI implements InventoryHolder {
     private final String name;
@@ -56,6 +57,22 @@ public class GUI implements InventoryHolder {
         inventory.setItem(index, guiItem.item());
     }
 
+    // Sets what a slot does when clicked without changing what it shows.
+    public void setClickHandler(int index, GUIItem handler) {
+        items[index] = handler;
+    }
+
+    // Sets what a slot shows without changing its click handler. The inventory keeps its own copy.
+    public void setDisplayItem(int index, ItemStack item) {
+        inventory.setItem(index, item);
+    }
+
+    public void clearItem(int index) {
+        items[index] = null;
+
+        inventory.setItem(index, null);
+    }
+
     public void addItem(GUIItem guiItem) {
         int index = inventory.firstEmpty();
         items[index] = guiItem;
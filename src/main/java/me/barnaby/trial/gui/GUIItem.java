@@ -18,7 +18,7 @@ public class GUIItem {
     }
 
     public ItemStack item() {
-        return itemStack.clone();
+        return itemStack == null ? null : itemStack.clone();
     }
 
     public void onClick(InventoryClickEvent event) {
@@ -0,0 +1,228 @@
+package me.barnaby.trial.gui;
+
+import me.barnaby.trial.MarketPlace;
+import me.barnaby.trial.config.GuiLayout;
+import me.barnaby.trial.mongo.ItemCodec;
+import me.barnaby.trial.mongo.ListingIndex;
+import me.barnaby.trial.mongo.ListingQuery;
+import me.barnaby.trial.util.ListingUtil;
+import me.barnaby.trial.util.MessageTemplate;
+import me.barnaby.trial.util.StringUtil;
+import org.bson.Document;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.ItemMeta;
+
+import java.util.*;
+import java.util.logging.Level;
+
+import static me.barnaby.trial.util.ListingUtil.formatTimestamp;
+
+/**
+ * MarketPageCache keeps rendered marketplace and black market pages so that
+ * opening a page does not clone, decorate and format every listing again.
+ *
+ * Each listing is rendered once in its can-afford and its cannot-afford form;
+ * a viewer only picks the form matching their balance. Pages are tagged with
+ * the version of their listing index partition and the layout they were
+ * rendered with, and are re-rendered once either changes. Pages of a search
+ * are sliced from its results, which are kept until the partition changes
+ * so paging through them does not search again.
+ * Cached items are shared templates and must never be modified.
+ */
+public class MarketPageCache {
+
+    private final MarketPlace marketPlace;
+    private final int maxPages;
+    private final Map<PageKey, RenderedPage> pages = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<ListingQuery, SearchResult> searches = new LinkedHashMap<>(16, 0.75f, true);
+    // Navigation buttons; they only depend on the configuration.
+    private final Map<GuiLayout.Button, ItemStack> buttons = new HashMap<>();
+
+    /**
+     * @param marketPlace The main plugin instance.
+     * @param maxPages    The maximum number of rendered pages, and of search results, to keep.
+     */
+    public MarketPageCache(MarketPlace marketPlace, int maxPages) {
+        this.marketPlace = marketPlace;
+        this.maxPages = maxPages;
+    }
+
+    /**
+     * Returns a rendered page of a whole partition, in listing order.
+     *
+     * @param blackMarket True for the black market.
+     * @param page        The page number (1-indexed).
+     * @param layout      The layout of the GUI showing the page.
+     * @return The rendered page.
+     */
+    public RenderedPage getPage(boolean blackMarket, int page, GuiLayout layout) {
+        return getPage(ListingQuery.all(blackMarket), page, layout);
+    }
+
+    /**
+     * Returns a rendered page of the listings matching a query, rendering it
+     * if it is missing, its partition changed or it was rendered with a
+     * layout from before a reload.
+     *
+     * @param query  The query; {@link ListingQuery#all(boolean)} for the whole partition.
+     * @param page   The page number (1-indexed).
+     * @param layout The layout of the GUI showing the page.
+     * @return The rendered page.
+     */
+    public synchronized RenderedPage getPage(ListingQuery query, int page, GuiLayout layout) {
+        ListingIndex listingIndex = marketPlace.getMongoDBManager().getListingIndex();
+        // Read the version before the listings: a change in between only makes the page look stale.
+        long version = listingIndex.getVersion(query.blackMarket());
+
+        int itemsPerPage = layout.itemsPerPage();
+        PageKey key = new PageKey(query, page, itemsPerPage);
+        RenderedPage cached = pages.get(key);
+        if (cached != null && cached.version() == version && cached.layout() == layout && cached.complete()) {
+            return cached;
+        }
+
+        int startIndex = (page - 1) * itemsPerPage;
+        List<Document> docs;
+        int totalListings;
+        if (query.isUnfiltered()) {
+            docs = listingIndex.getPage(query.blackMarket(), startIndex, itemsPerPage);
+            totalListings = listingIndex.size(query.blackMarket());
+        } else {
+            List<Document> results = search(listingIndex, query, version);
+            docs = startIndex >= results.size() ? List.of()
+                    : results.subList(startIndex, Math.min(results.size(), startIndex + itemsPerPage));
+            totalListings = results.size();
+        }
+
+        RenderedPage rendered = render(docs, version, layout, totalListings);
+        pages.put(key, rendered);
+        evictEldest(pages);
+        return rendered;
+    }
+
+    /**
+     * Returns the item for a navigation button.
+     *
+     * @param button The button from a GUI layout.
+     * @return The shared button item.
+     */
+    public synchronized ItemStack getButton(GuiLayout.Button button) {
+        return buttons.computeIfAbsent(button, b -> {
+            ItemStack item = new ItemStack(b.material());
+            ItemMeta meta = item.getItemMeta();
+            if (meta != null) {
+                meta.setDisplayName(b.name());
+                meta.setLore(b.lore());
+                item.setItemMeta(meta);
+            }
+            return item;
+        });
+    }
+
+    private List<Document> search(ListingIndex listingIndex, ListingQuery query, long version) {
+        SearchResult cached = searches.get(query);
+        if (cached != null && cached.version() == version) return cached.listings();
+
+        List<Document> listings = listingIndex.search(query);
+        searches.put(query, new SearchResult(version, listings));
+        evictEldest(searches);
+        return listings;
+    }
+
+    private void evictEldest(Map<?, ?> cache) {
+        if (cache.size() > maxPages) {
+            Iterator<?> iterator = cache.values().iterator();
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    private RenderedPage render(List<Document> docs, long version, GuiLayout layout, int totalListings) {
+        List<RenderedListing> listings = new ArrayList<>();
+        boolean complete = true;
+        for (Document doc : docs) {
+            if (!ItemCodec.hasItem(doc)) continue;
+            ItemStack item;
+            try {
+                item = marketPlace.getMongoDBManager().decodeItem(doc);
+            } catch (Exception e) {
+                marketPlace.getLogger().log(Level.WARNING, "Could not decode the item of listing " + doc.get("_id"), e);
+                continue;
+            }
+
+            String playerId = doc.getString("playerId");
+            String sellerName = marketPlace.getMongoDBManager().getNameCache().getName(playerId);
+            // The name cache answers with the UUID until the name is resolved; render the page again next time.
+            if (sellerName == null || sellerName.equals(playerId)) complete = false;
+
+            listings.add(renderListing(layout, new ListingUtil.Listing(item, doc), sellerName));
+        }
+        return new RenderedPage(version, layout, totalListings, listings, complete);
+    }
+
+    /**
+     * Renders a listing in both its affordability variants.
+     *
+     * @param layout     The layout of the GUI showing the listing.
+     * @param listing    The decoded listing.
+     * @param sellerName The name shown as the seller.
+     * @return The rendered listing.
+     */
+    public static RenderedListing renderListing(GuiLayout layout, ListingUtil.Listing listing, String sellerName) {
+        double price = listing.doc.getDouble("price");
+        String listedTime = formatTimestamp(listing.doc.getLong("timestamp"));
+        return new RenderedListing(listing, price,
+                decorate(listing.item, layout.canAffordName(), layout.canAffordLore(), price, sellerName, listedTime),
+                decorate(listing.item, layout.cannotAffordName(), layout.cannotAffordLore(), price, sellerName, listedTime));
+    }
+
+    private static ItemStack decorate(ItemStack item, MessageTemplate name, List<MessageTemplate> lore,
+                               double price, String sellerName, String listedTime) {
+        ItemStack displayItem = item.clone();
+        ItemMeta meta = displayItem.getItemMeta();
+        if (meta != null) {
+            String defaultItemName = meta.hasDisplayName() ? meta.getDisplayName() : StringUtil.formatItem(displayItem);
+            meta.setDisplayName(name.render(defaultItemName));
+            List<String> lines = new ArrayList<>(lore.size());
+            for (MessageTemplate line : lore) {
+                lines.add(line.render(price, sellerName, listedTime));
+            }
+            meta.setLore(lines);
+            displayItem.setItemMeta(meta);
+        }
+        return displayItem;
+    }
+
+    private record PageKey(ListingQuery query, int page, int itemsPerPage) {
+    }
+
+    private record SearchResult(long version, List<Document> listings) {
+    }
+
+    /**
+     * A rendered page of listings.
+     *
+     * @param version       The listing index version the page was rendered from.
+     * @param layout        The layout the page was rendered with.
+     * @param totalListings The number of listings in the partition, or matching the query, at that version.
+     * @param listings      The listings on the page, in slot order.
+     * @param complete      False if a seller name was not resolved yet.
+     */
+    public record RenderedPage(long version, GuiLayout layout, int totalListings, List<RenderedListing> listings, boolean complete) {
+    }
+
+    /**
+     * A listing rendered in both its affordability variants.
+     */
+    public record RenderedListing(ListingUtil.Listing listing, double price,
+                                  ItemStack canAffordItem, ItemStack cannotAffordItem) {
+
+        /**
+         * @param canAfford Whether the viewer can afford the listing.
+         * @return The shared display item for the viewer.
+         */
+        public ItemStack item(boolean canAfford) {
+            return canAfford ? canAffordItem : cannotAffordItem;
+        }
+    }
+}
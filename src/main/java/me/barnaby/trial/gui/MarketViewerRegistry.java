@@ -0,0 +1,83 @@
+package me.barnaby.trial.gui;
+
+import me.barnaby.trial.MarketPlace;
+import me.barnaby.trial.gui.guis.MarketPlaceGUI;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * MarketViewerRegistry tracks which marketplace or black market page each
+ * player has open, so open pages can be patched when their listings change
+ * instead of players reopening the GUI to see what sold.
+ *
+ * Listing changes only mark their partition dirty; at most one update per
+ * tick then asks every view of a dirty partition to patch the slots whose
+ * listing changed. Views are registered and removed on the server thread.
+ */
+public class MarketViewerRegistry {
+
+    private final MarketPlace marketPlace;
+    private final Map<UUID, MarketPlaceGUI> views = new HashMap<>();
+    private final AtomicBoolean marketDirty = new AtomicBoolean();
+    private final AtomicBoolean blackMarketDirty = new AtomicBoolean();
+    private final AtomicBoolean updateQueued = new AtomicBoolean();
+
+    public MarketViewerRegistry(MarketPlace marketPlace) {
+        this.marketPlace = marketPlace;
+    }
+
+    /**
+     * Records that a player opened a marketplace page.
+     *
+     * @param player The viewer.
+     * @param view   The GUI they opened.
+     */
+    public void register(Player player, MarketPlaceGUI view) {
+        views.put(player.getUniqueId(), view);
+    }
+
+    /**
+     * Records that a player closed a marketplace page. Does nothing if they
+     * already have another page open, as happens while paging.
+     *
+     * @param player The viewer.
+     * @param view   The GUI they closed.
+     */
+    public void unregister(Player player, MarketPlaceGUI view) {
+        views.remove(player.getUniqueId(), view);
+    }
+
+    /**
+     * Marks a partition as changed and schedules an update for the next tick.
+     * Safe to call from any thread.
+     *
+     * @param blackMarket True if a black market listing changed.
+     */
+    public void markDirty(boolean blackMarket) {
+        (blackMarket ? blackMarketDirty : marketDirty).set(true);
+        if (!marketPlace.isEnabled() || !updateQueued.compareAndSet(false, true)) return;
+        Bukkit.getScheduler().runTask(marketPlace, this::update);
+    }
+
+    /**
+     * @return The number of players with a marketplace page open.
+     */
+    public int size() {
+        return views.size();
+    }
+
+    private void update() {
+        updateQueued.set(false);
+        boolean market = marketDirty.getAndSet(false);
+        boolean blackMarket = blackMarketDirty.getAndSet(false);
+
+        for (MarketPlaceGUI view : views.values()) {
+            if (view.isBlackMarket() ? blackMarket : market) view.refresh();
+        }
+    }
+}
@@ -1,27 +1,26 @@
 package me.barnaby.trial.gui.guis;
 
 import me.barnaby.trial.MarketPlace;
-import me.barnaby.trial.config.ConfigType;
+import me.barnaby.trial.config.GuiLayout;
+import me.barnaby.trial.config.Messages;
+import me.barnaby.trial.config.Settings;
 import me.barnaby.trial.gui.GUI;
 import me.barnaby.trial.gui.GUIItem;
 import me.barnaby.trial.util.ListingUtil;
+import me.barnaby.trial.util.MessageTemplate;
 import me.barnaby.trial.util.StringUtil;
-import org.bson.Document;
 import org.bukkit.Bukkit;
 import org.bukkit.OfflinePlayer;
-import org.bukkit.Material;
 import org.bukkit.Sound;
-import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.meta.ItemMeta;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
-import java.util.stream.Collectors;
 
 import static me.barnaby.trial.util.ListingUtil.formatTimestamp;
-import static me.barnaby.trial.util.ListingUtil.getSellerName;
 
 /**
  * GUI for confirming a purchase.
@@ -32,9 +31,13 @@ public class ConfirmBuyGUI extends GUI {
     private final Player player;
     // The listing being purchased (contains the item and its original Document)
     private final ListingUtil.Listing listing;
+    // What the buyer pays, as listed.
+    private final double buyingPrice;
+    // The seller's asking price; differs from the buying price on the black market.
     private final double price;
-    private final FileConfiguration guiConfig;
-    private final FileConfiguration messagesConfig;
+    // Settings snapshot taken when the GUI opened, so a purchase uses one consistent set of values.
+    private final Settings settings;
+    private final Messages messages;
     private final boolean isBlackMarket;
 
     /**
@@ -43,22 +46,25 @@ public class ConfirmBuyGUI extends GUI {
      * @param marketPlace  The main plugin instance.
      * @param player       The player buying the item.
      * @param listing      The listing (item + document) being purchased.
-     * @param price        The price of the item.
+     * @param price        The listed price the buyer pays.
      * @param isBlackMarket Whether this is a black market purchase.
      */
     public ConfirmBuyGUI(MarketPlace marketPlace, Player player, ListingUtil.Listing listing, double price, boolean isBlackMarket) {
-        super(StringUtil.format(marketPlace.getConfigManager().getConfig(ConfigType.GUI)
-                        .getString("confirmbuy-gui.name", "&aConfirm Purchase")),
-                marketPlace.getConfigManager().getConfig(ConfigType.GUI).getInt("confirmbuy-gui.rows", 3),
-                player);
+        this(marketPlace, player, listing, price, isBlackMarket, marketPlace.getConfigManager().getSettings());
+    }
+
+    private ConfirmBuyGUI(MarketPlace marketPlace, Player player, ListingUtil.Listing listing, double price,
+                          boolean isBlackMarket, Settings settings) {
+        super(settings.confirmBuyGui().title(), settings.confirmBuyGui().rows(), player);
         this.marketPlace = marketPlace;
         this.player = player;
         this.listing = listing;
-        this.price = price / marketPlace.getConfigManager().getConfig(ConfigType.MAIN)
-                .getDouble("blackmarket.price-modifier");
+        this.settings = settings;
+        this.messages = settings.messages();
+        this.buyingPrice = price;
+        // Black market listings keep the price they were listed at before moving.
+        this.price = isBlackMarket ? listing.doc.get("originalPrice", price) : price;
         this.isBlackMarket = isBlackMarket;
-        this.guiConfig = marketPlace.getConfigManager().getConfig(ConfigType.GUI);
-        this.messagesConfig = marketPlace.getConfigManager().getConfig(ConfigType.MESSAGES);
         setupGUI();
     }
 
@@ -76,22 +82,19 @@ public class ConfirmBuyGUI extends GUI {
      * Sets up the confirm button in the GUI.
      */
     private void setupConfirmButton() {
-        int confirmSlot = guiConfig.getInt("confirmbuy-gui.confirm.slot", 11);
-        Material confirmMat = Material.matchMaterial(guiConfig.getString("confirmbuy-gui.confirm.material", "GREEN_STAINED_GLASS_PANE"));
-        ItemStack confirmItem = new ItemStack(confirmMat);
+        GuiLayout.Button confirm = settings.confirmBuyGui().confirm();
+        ItemStack confirmItem = marketPlace.getMarketPageCache().getButton(confirm).clone();
         ItemMeta confirmMeta = confirmItem.getItemMeta();
         if (confirmMeta != null) {
-            confirmMeta.setDisplayName(StringUtil.format(guiConfig.getString("confirmbuy-gui.confirm.name", "&aConfirm Purchase")));
-            List<String> confirmLore = guiConfig.getStringList("confirmbuy-gui.confirm.lore")
-                    .stream().map(s -> StringUtil.format(
-                            s.replace("%item%", StringUtil.formatItem(listing.item))
-                                    .replace("%amount%", String.valueOf(listing.item.getAmount()))
-                                    .replace("%price%", String.valueOf(price))
-                    )).collect(Collectors.toList());
+            String itemName = StringUtil.formatItem(listing.item);
+            List<String> confirmLore = new ArrayList<>();
+            for (MessageTemplate line : settings.confirmBuyGui().confirmLore()) {
+                confirmLore.add(line.render(itemName, listing.item.getAmount(), price));
+            }
             confirmMeta.setLore(confirmLore);
             confirmItem.setItemMeta(confirmMeta);
         }
-        setItem(confirmSlot, new GUIItem(confirmItem, e -> {
+        setItem(confirm.slot(), new GUIItem(confirmItem, e -> {
             e.setCancelled(true);
             processPurchase();
         }));
@@ -101,21 +104,10 @@ public class ConfirmBuyGUI extends GUI {
      * Sets up the cancel button in the GUI.
      */
     private void setupCancelButton() {
-        int cancelSlot = guiConfig.getInt("confirmbuy-gui.cancel.slot", 15);
-        Material cancelMat = Material.matchMaterial(guiConfig.getString("confirmbuy-gui.cancel.material", "RED_STAINED_GLASS_PANE"));
-        ItemStack cancelItem = new ItemStack(cancelMat);
-        ItemMeta cancelMeta = cancelItem.getItemMeta();
-        if (cancelMeta != null) {
-            cancelMeta.setDisplayName(StringUtil.format(guiConfig.getString("confirmbuy-gui.cancel.name", "&cCancel")));
-            List<String> cancelLore = guiConfig.getStringList("confirmbuy-gui.cancel.lore")
-                    .stream().map(StringUtil::format).collect(Collectors.toList());
-            cancelMeta.setLore(cancelLore);
-            cancelItem.setItemMeta(cancelMeta);
-        }
-        setItem(cancelSlot, new GUIItem(cancelItem, e -> {
+        GuiLayout.Button cancel = settings.confirmBuyGui().cancel();
+        setItem(cancel.slot(), new GUIItem(marketPlace.getMarketPageCache().getButton(cancel), e -> {
             e.setCancelled(true);
-            String cancelMsg = messagesConfig.getString("confirmbuy-gui.cancel-message", "&cPurchase cancelled.");
-            player.sendMessage(StringUtil.format(cancelMsg));
+            player.sendMessage(messages.purchaseCancelled());
             // Return to marketplace GUI.
             new MarketPlaceGUI(marketPlace, player, 1, isBlackMarket).open(player);
         }));
@@ -123,52 +115,34 @@ public class ConfirmBuyGUI extends GUI {
 
     /**
      * Processes the purchase when the confirm button is clicked.
-     * Checks for balance, withdraws funds, gives the item, records the transaction,
-     * logs to Discord, and removes the listing.
+     * Checks for balance, then hands the purchase to the PurchaseEngine, which
+     * claims the listing before any money moves.
      */
     private void processPurchase() {
         // Check if the player can afford the purchase.
-        if (marketPlace.getEconomy().getBalance(player) < price) {
+        if (marketPlace.getEconomy().getBalance(player) < buyingPrice) {
             sendFailureFeedback();
         } else {
-            // Process purchase: update economy, deliver item, record transaction, etc.
+            // Process purchase: claim listing, update economy, deliver item, record transaction, etc.
             player.closeInventory();
-            // Calculate modified prices if black market.
-            double newBuyingPrice = price;
-            double newSellingPrice = price;
-            if (isBlackMarket) {
-                // Round new buying price to two decimals.
-                newBuyingPrice = Math.round(price * marketPlace.getConfigManager().getConfig(ConfigType.MAIN)
-                        .getDouble("blackmarket.price-modifier") * 100.0) / 100.0;
-                newSellingPrice *= marketPlace.getConfigManager().getConfig(ConfigType.MAIN)
-                        .getDouble("blackmarket.sell-bonus");
-            }
-            // Update economy: deduct from buyer, deposit to seller.
-            marketPlace.getEconomy().withdrawPlayer(player, newBuyingPrice);
-            OfflinePlayer seller = Bukkit.getOfflinePlayer(UUID.fromString(listing.doc.getString("playerId")));
-            marketPlace.getEconomy().depositPlayer(seller, newSellingPrice);
-            // Give the item to the buyer.
-            player.getInventory().addItem(listing.item);
-            // Send success message and sound.
-            sendSuccessFeedback(newBuyingPrice, newSellingPrice, seller.getPlayer());
-            // Record the transaction.
-            marketPlace.getMongoDBManager().recordTransaction(
-                    player.getUniqueId().toString(),
-                    listing.doc.getString("playerId"),
-                    listing.item,
-                    price
-            );
-            // Log purchase to Discord.
-            marketPlace.getDiscordWebhookLogger().sendPurchaseLog(
-                    player.getName(),
-                    getSellerName(listing.doc.getString("playerId")),
-                    StringUtil.formatItem(listing.item),
-                    listing.item.getAmount(),
-                    price,
-                    ListingUtil.formatTimestamp(listing.doc.getLong("timestamp"))
-            );
-            // Remove the listing from the marketplace.
-            marketPlace.getMongoDBManager().deleteValue("itemListings", new Document("_id", listing.doc.get("_id")));
+            // The black market seller gets a bonus on their original price.
+            final double sellingPrice = isBlackMarket ? price * settings.blackMarket().sellBonus() : price;
+            marketPlace.getPurchaseEngine().purchase(player, listing, buyingPrice, sellingPrice, price)
+                    .thenAccept(result -> {
+                        switch (result) {
+                            case SUCCESS -> {
+                                OfflinePlayer seller = Bukkit.getOfflinePlayer(UUID.fromString(listing.doc.getString("playerId")));
+                                sendSuccessFeedback(buyingPrice, sellingPrice, seller.getPlayer());
+                            }
+                            case INSUFFICIENT_FUNDS -> sendFailureFeedback();
+                            case LISTING_UNAVAILABLE -> player.sendMessage(messages.unavailable());
+                            case PAYMENT_FAILED -> player.sendMessage(messages.paymentFailed());
+                        }
+                    })
+                    .exceptionally(ex -> {
+                        marketPlace.getLogger().severe("Failed to process purchase: " + ex.getMessage());
+                        return null;
+                    });
         }
     }
 
@@ -176,9 +150,8 @@ public class ConfirmBuyGUI extends GUI {
      * Sends failure feedback when the player cannot afford the item.
      */
     private void sendFailureFeedback() {
-        String failMsg = messagesConfig.getString("confirmbuy-gui.failure-message", "&cYou cannot afford this item!");
-        player.sendMessage(StringUtil.format(failMsg));
-        String failSound = messagesConfig.getString("confirmbuy-gui.failure-sound", "ENTITY_VILLAGER_NO");
+        player.sendMessage(messages.cannotAfford());
+        String failSound = messages.failureSound();
         try {
             player.playSound(player.getLocation(), Sound.valueOf(failSound.toUpperCase()), 1.0f, 1.0f);
         } catch (IllegalArgumentException ex) {
@@ -192,35 +165,20 @@ public class ConfirmBuyGUI extends GUI {
      * @param newBuyingPrice The modified buying price.
      */
     private void sendSuccessFeedback(double newBuyingPrice, double newSellingPrice, Player seller) {
+        String itemName = StringUtil.formatItem(listing.item);
+        int amount = listing.item.getAmount();
         String successMsg;
-        String sellMsg;
+        MessageTemplate sellMsg;
         if (isBlackMarket) {
-            successMsg = messagesConfig.getString("blackmarket.success-message",
-                            "&aPurchase &8> &fYou bought %item% for &c&m%oldprice%&f %price%!")
-                    .replace("%item%", StringUtil.formatItem(listing.item))
-                    .replace("%amount%", String.valueOf(listing.item.getAmount()))
-                    .replace("%oldprice%", String.valueOf(price))
-                    .replace("%price%", String.valueOf(newBuyingPrice));
-
-            sellMsg = messagesConfig.getString("blackmarket.sold-message",
-                            "&aPurchase &8> &fYou sold %item% for &a&m%oldprice%&f %price%!")
-                    .replace("%item%", StringUtil.formatItem(listing.item))
-                    .replace("%amount%", String.valueOf(listing.item.getAmount()))
-                    .replace("%oldprice%", String.valueOf(price))
-                    .replace("%price%", String.valueOf(newSellingPrice));
-
-
+            successMsg = messages.blackMarketBought().render(itemName, amount, price, newBuyingPrice);
+            sellMsg = messages.blackMarketSold();
         } else {
-            successMsg = messagesConfig.getString("buy-messages.success-message", "&aPurchase successful!");
-            sellMsg = messagesConfig.getString("sell-messages.sold-message", "&aPurchase sold!");
+            successMsg = messages.purchaseSuccess();
+            sellMsg = messages.soldMessage();
         }
-        player.sendMessage(StringUtil.format(successMsg));
-        String successSound = messagesConfig.getString("confirmbuy-gui.success-sound", "ENTITY_PLAYER_LEVELUP");
-        if (seller != null) seller.sendMessage(StringUtil.format(sellMsg)
-                .replace("%item%", StringUtil.formatItem(listing.item))
-                .replace("%amount%", String.valueOf(listing.item.getAmount()))
-                .replace("%oldprice%", String.valueOf(price))
-                .replace("%price%", String.valueOf(newSellingPrice)));
+        player.sendMessage(successMsg);
+        String successSound = messages.successSound();
+        if (seller != null) seller.sendMessage(sellMsg.render(itemName, amount, price, newSellingPrice));
 
         try {
             player.playSound(player.getLocation(), Sound.valueOf(successSound.toUpperCase()), 1.0f, 1.0f);
@@ -1,38 +1,51 @@
 package me.barnaby.trial.gui.guis;
 
-import dev.s7a.base64.Base64ItemStack;
 import me.barnaby.trial.MarketPlace;
-import me.barnaby.trial.config.ConfigType;
+import me.barnaby.trial.config.GuiLayout;
 import me.barnaby.trial.gui.GUI;
 import me.barnaby.trial.gui.GUIItem;
+import me.barnaby.trial.gui.MarketPageCache;
+import me.barnaby.trial.mongo.ListingQuery;
 import me.barnaby.trial.util.ListingUtil;
-import me.barnaby.trial.util.StringUtil;
-import org.bson.Document;
 import org.bukkit.ChatColor;
-import org.bukkit.Material;
-import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.entity.Player;
+import org.bukkit.event.inventory.InventoryClickEvent;
+import org.bukkit.event.inventory.InventoryCloseEvent;
+import org.bukkit.event.inventory.InventoryOpenEvent;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.meta.ItemMeta;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
-
-import static me.barnaby.trial.util.ListingUtil.formatTimestamp;
+import java.util.Objects;
 
 /**
  * GUI for displaying and interacting with the marketplace listings.
  * Supports both regular and black market modes and is paginated based on the guis.yml configuration.
+ *
+ * One GUI is a player's browsing session: paging rewrites the slots of the
+ * open inventory instead of opening a new one, and every slot keeps a single
+ * click handler that looks up what the slot currently shows. While open, the
+ * GUI is registered with the {@link me.barnaby.trial.gui.MarketViewerRegistry}
+ * and patched in place when its listings change; closing it ends the session.
+ * The GUI shows the results of a {@link ListingQuery}, the whole partition
+ * by default, and its sort button cycles the order of the results.
  */
 public class MarketPlaceGUI extends GUI {
 
     private final MarketPlace marketPlace;
     private final Player player;
-    private final int page;
     private final boolean isBlackMarket;
-    private final FileConfiguration guiConfig;
-    private final List<ListingUtil.Listing> marketplaceListings;
+    private final GuiLayout layout;
+    private ListingQuery query;
+    private int page;
+    // The page currently shown; the page cache hands out a new one once its listings change.
+    private MarketPageCache.RenderedPage renderedPage;
+    // What each item slot shows, so a changed page only updates the slots that differ.
+    private final MarketPageCache.RenderedListing[] shownListings;
+    private final boolean[] shownAffordable;
+    private boolean nextPageShown;
+    private boolean previousPageShown;
 
     /**
      * Constructs a paginated marketplace GUI.
@@ -43,162 +56,173 @@ public class MarketPlaceGUI extends GUI {
      * @param isBlackMarket If true, displays only black market items.
      */
     public MarketPlaceGUI(MarketPlace marketPlace, Player player, int page, boolean isBlackMarket) {
-        super(StringUtil.format(marketPlace.getConfigManager().getConfig(ConfigType.GUI)
-                        .getString(isBlackMarket ? "blackmarket-gui.name" : "marketplace-gui.name", "&bMarketplace")),
-                marketPlace.getConfigManager().getConfig(ConfigType.GUI)
-                        .getInt(isBlackMarket ? "blackmarket-gui.rows" : "marketplace-gui.rows", 6),
-                player);
+        this(marketPlace, player, ListingQuery.all(isBlackMarket), page);
+    }
+
+    /**
+     * Constructs a GUI showing the listings matching a query.
+     *
+     * @param marketPlace The main plugin instance.
+     * @param player      The player viewing the marketplace.
+     * @param query       The listings to show; its partition decides between marketplace and black market.
+     * @param page        The current page number (1-indexed).
+     */
+    public MarketPlaceGUI(MarketPlace marketPlace, Player player, ListingQuery query, int page) {
+        this(marketPlace, player, query, page, marketPlace.getConfigManager().getSettings().gui(query.blackMarket()));
+    }
+
+    private MarketPlaceGUI(MarketPlace marketPlace, Player player, ListingQuery query, int page, GuiLayout layout) {
+        super(layout.title(), layout.rows(), player);
         this.marketPlace = marketPlace;
         this.player = player;
-        this.page = page;
-        this.isBlackMarket = isBlackMarket;
-        this.guiConfig = marketPlace.getConfigManager().getConfig(ConfigType.GUI);
-        this.marketplaceListings = loadMarketplaceListings();
+        this.isBlackMarket = query.blackMarket();
+        this.layout = layout;
+        this.query = query;
+        this.shownListings = new MarketPageCache.RenderedListing[layout.itemsPerPage()];
+        this.shownAffordable = new boolean[layout.itemsPerPage()];
         setupGUI();
+        showPage(page);
     }
 
     /**
-     * Loads only marketplace listings for the normal shop and only black market listings for the black market.
-     *
-     * @return A list of Listing objects filtered based on shop type.
+     * Registers the click handler of every slot. Handlers live as long as the
+     * GUI and read the slot's current contents when clicked.
      */
-    private List<ListingUtil.Listing> loadMarketplaceListings() {
-        List<Document> docs = marketPlace.getMongoDBManager().getAllItemListings(); // Get all listings
-        List<ListingUtil.Listing> listings = new ArrayList<>();
-        for (Document doc : docs) {
-            boolean isListingBlackMarket = doc.getBoolean("isBlackMarket", false);
-            // Ensure only black market items load in Black Market and only normal items in the normal shop.
-            if (isBlackMarket != isListingBlackMarket) continue;
-            String itemData = doc.getString("itemData");
-            if (itemData != null) {
-                try {
-                    ItemStack item = Base64ItemStack.decode(itemData);
-                    listings.add(new ListingUtil.Listing(item, doc));
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
-            }
+    private void setupGUI() {
+        for (int index = 0; index < shownListings.length; index++) {
+            int listingIndex = index;
+            setClickHandler(layout.itemsStart() + index, new GUIItem(null, e -> onListingClick(e, listingIndex)));
         }
-        return listings;
+        setClickHandler(layout.nextPage().slot(), new GUIItem(null, e -> {
+            e.setCancelled(true);
+            if (nextPageShown) showPage(page + 1);
+        }));
+        setClickHandler(layout.previousPage().slot(), new GUIItem(null, e -> {
+            e.setCancelled(true);
+            if (previousPageShown) showPage(page - 1);
+        }));
+        setClickHandler(layout.sort().slot(), new GUIItem(null, e -> {
+            e.setCancelled(true);
+            query = query.withSort(query.sort().next());
+            showSortButton();
+            showPage(1);
+        }));
+        showSortButton();
     }
 
     /**
-     * Sets up the GUI layout, populating it with items and navigation buttons.
+     * Shows the sort button with the current order added to its lore.
      */
-    private void setupGUI() {
-        // Total slots based on configured rows.
-        int totalRows = guiConfig.getInt(isBlackMarket ? "blackmarket-gui.rows" : "marketplace-gui.rows", 6);
-        int totalSlots = totalRows * 9;
-
-        // Determine the item area from configuration.
-        int itemsStart = guiConfig.getInt(isBlackMarket ? "blackmarket-gui.items-area.start-slot" : "marketplace-gui.items-area.start-slot", 0);
-        int itemsEnd = guiConfig.getInt(isBlackMarket ? "blackmarket-gui.items-area.end-slot" : "marketplace-gui.items-area.end-slot", totalSlots - 9 - 1);
-        int itemsPerPage = itemsEnd - itemsStart + 1;
-        int startIndex = (page - 1) * itemsPerPage;
-
-        // Populate item area.
-        for (int slot = itemsStart; slot <= itemsEnd; slot++) {
-            int listingIndex = startIndex + (slot - itemsStart);
-            if (listingIndex < marketplaceListings.size()) {
-                ListingUtil.Listing listing = marketplaceListings.get(listingIndex);
-                ItemStack displayItem = listing.item.clone();
-                ItemMeta meta = displayItem.getItemMeta();
-                double listingPrice = listing.doc.getDouble("price");
-                boolean canAfford = marketPlace.getEconomy().getBalance(player) >= listingPrice;
-
-                if (meta != null) {
-                    String defaultItemName = meta.hasDisplayName() ? meta.getDisplayName() : StringUtil.formatItem(displayItem);
-                    String displayName = canAfford
-                            ? guiConfig.getString(isBlackMarket ? "blackmarket-gui.can-afford-item-name" : "marketplace-gui.can-afford-item-name", "&a&l%item-name%")
-                            : guiConfig.getString(isBlackMarket ? "blackmarket-gui.cannot-afford-item-name" : "marketplace-gui.cannot-afford-item-name", "&c&l%item-name%");
-                    meta.setDisplayName(StringUtil.format(displayName.replace("%item-name%", defaultItemName)));
-
-                    // Choose lore based on affordability.
-
-                    List<String> extraLore = canAfford
-                            ? guiConfig.getStringList(isBlackMarket ? "blackmarket-gui.can-afford-item-lore" : "marketplace-gui.can-afford-item-lore")
-                            : guiConfig.getStringList(isBlackMarket ? "blackmarket-gui.cannot-afford-item-lore" : "marketplace-gui.cannot-afford-item-lore");
-                    extraLore = extraLore.stream()
-                            .map(StringUtil::format)
-                            .map(line -> line.replace("%price%", String.valueOf(listingPrice))
-                                    .replace("%seller%", ListingUtil.getSellerName(listing.doc.getString("playerId")))
-                                    .replace("%listedTime%", formatTimestamp(listing.doc.getLong("timestamp"))))
-                            .collect(Collectors.toList());
-                    meta.setLore(extraLore);
-                    displayItem.setItemMeta(meta);
-                }
-                setItem(slot, new GUIItem(displayItem, e -> {
-                    e.setCancelled(true);
-                    if (listing.doc.getString("playerId").equals(player.getUniqueId().toString())) {
-                        player.sendMessage(ChatColor.RED + "This is your own market listing!");
-                        return;
-                    }
-
-
-                    if (!canAfford) {
-                        // Send cannot-afford message.
-                        String msg = guiConfig.getString(isBlackMarket ? "blackmarket-gui.cannot-afford-message" : "marketplace-gui.cannot-afford-message", "&cYou cannot afford this item!");
-                        player.sendMessage(StringUtil.format(msg));
-                    } else {
-                        // For normal items, open the ConfirmBuyGUI.
-                        new ConfirmBuyGUI(marketPlace, player, listing, listingPrice, isBlackMarket).open(player);
-                    }
-                }));
-            }
+    private void showSortButton() {
+        ItemStack button = marketPlace.getMarketPageCache().getButton(layout.sort()).clone();
+        ItemMeta meta = button.getItemMeta();
+        if (meta != null) {
+            List<String> lore = new ArrayList<>(layout.sort().lore());
+            lore.add(ChatColor.GRAY + "Sorted by: " + ChatColor.WHITE + query.sort().label());
+            meta.setLore(lore);
+            button.setItemMeta(meta);
         }
-
-        // Add navigation buttons in the bottom row.
-        addNavigationButtons(totalSlots, itemsPerPage, startIndex);
+        setDisplayItem(layout.sort().slot(), button);
     }
 
     /**
-     * Adds next and previous page navigation buttons to the GUI.
+     * Shows another page in the open inventory.
      *
-     * @param totalSlots   Total slots in the GUI.
-     * @param itemsPerPage Number of item slots per page.
-     * @param startIndex   Index of the first item on the current page.
+     * @param page The page number (1-indexed).
+     */
+    public void showPage(int page) {
+        this.page = page;
+        showPage(marketPlace.getMarketPageCache().getPage(query, page, layout));
+    }
+
+    /**
+     * Patches the GUI if its page changed since it was shown, for example after
+     * one of its listings was bought. Only slots showing a different listing,
+     * or a listing the viewer can no longer afford, are updated.
+     * Must be called on the server thread.
      */
-    private void addNavigationButtons(int totalSlots, int itemsPerPage, int startIndex) {
-        // Next Page Button.
-        int nextPageSlot = guiConfig.getInt(isBlackMarket ? "blackmarket-gui.next-page.slot" : "marketplace-gui.next-page.slot", totalSlots - 1);
-        Material nextMat = Material.matchMaterial(guiConfig.getString(isBlackMarket ? "blackmarket-gui.next-page.material" : "marketplace-gui.next-page.material", "ARROW"));
-        ItemStack nextItem = new ItemStack(nextMat);
-        ItemMeta nextMeta = nextItem.getItemMeta();
-        if (nextMeta != null) {
-            String nextName = guiConfig.getString(isBlackMarket ? "blackmarket-gui.next-page.name" : "marketplace-gui.next-page.name", "&aNext Page");
-            nextMeta.setDisplayName(StringUtil.format(nextName));
-            List<String> nextLore = guiConfig.getStringList(isBlackMarket ? "blackmarket-gui.next-page.lore" : "marketplace-gui.next-page.lore")
-                    .stream().map(StringUtil::format).collect(Collectors.toList());
-            nextMeta.setLore(nextLore);
-            nextItem.setItemMeta(nextMeta);
+    public void refresh() {
+        MarketPageCache.RenderedPage current = marketPlace.getMarketPageCache().getPage(query, page, layout);
+        if (current != renderedPage) showPage(current);
+    }
+
+    /**
+     * @return True if this GUI shows the black market.
+     */
+    public boolean isBlackMarket() {
+        return isBlackMarket;
+    }
+
+    @Override
+    public void onOpen(InventoryOpenEvent event) {
+        marketPlace.getMarketViewers().register(player, this);
+    }
+
+    @Override
+    public void onClose(InventoryCloseEvent event) {
+        marketPlace.getMarketViewers().unregister(player, this);
+    }
+
+    private void showPage(MarketPageCache.RenderedPage renderedPage) {
+        this.renderedPage = renderedPage;
+        // The page is shared by every viewer; only the affordability variant is chosen per player.
+        double balance = marketPlace.getEconomy().getBalance(player);
+
+        for (int index = 0; index < shownListings.length; index++) {
+            MarketPageCache.RenderedListing rendered = index < renderedPage.listings().size()
+                    ? renderedPage.listings().get(index) : null;
+            boolean canAfford = rendered != null && balance >= rendered.price();
+            if (sameSlot(shownListings[index], shownAffordable[index], rendered, canAfford)) continue;
+
+            shownListings[index] = rendered;
+            shownAffordable[index] = canAfford;
+            setDisplayItem(layout.itemsStart() + index, rendered == null ? null : rendered.item(canAfford));
         }
-        // Only show next page if there are more items.
-        if (startIndex + itemsPerPage < marketplaceListings.size()) {
-            setItem(nextPageSlot, new GUIItem(nextItem, e -> {
-                e.setCancelled(true);
-                new MarketPlaceGUI(marketPlace, player, page + 1, isBlackMarket).open(player);
-            }));
+
+        // Only show next page if there are more items, and previous page if page > 1.
+        boolean hasNextPage = page * layout.itemsPerPage() < renderedPage.totalListings();
+        if (hasNextPage != nextPageShown) {
+            nextPageShown = hasNextPage;
+            setDisplayItem(layout.nextPage().slot(),
+                    hasNextPage ? marketPlace.getMarketPageCache().getButton(layout.nextPage()) : null);
+        }
+        boolean hasPreviousPage = page > 1;
+        if (hasPreviousPage != previousPageShown) {
+            previousPageShown = hasPreviousPage;
+            setDisplayItem(layout.previousPage().slot(),
+                    hasPreviousPage ? marketPlace.getMarketPageCache().getButton(layout.previousPage()) : null);
         }
+    }
 
-        // Previous Page Button.
-        int prevPageSlot = guiConfig.getInt(isBlackMarket ? "blackmarket-gui.previous-page.slot" : "marketplace-gui.previous-page.slot", totalSlots - 9);
-        Material prevMat = Material.matchMaterial(guiConfig.getString(isBlackMarket ? "blackmarket-gui.previous-page.material" : "marketplace-gui.previous-page.material", "ARROW"));
-        ItemStack prevItem = new ItemStack(prevMat);
-        ItemMeta prevMeta = prevItem.getItemMeta();
-        if (prevMeta != null) {
-            String prevName = guiConfig.getString(isBlackMarket ? "blackmarket-gui.previous-page.name" : "marketplace-gui.previous-page.name", "&aPrevious Page");
-            prevMeta.setDisplayName(StringUtil.format(prevName));
-            List<String> prevLore = guiConfig.getStringList(isBlackMarket ? "blackmarket-gui.previous-page.lore" : "marketplace-gui.previous-page.lore")
-                    .stream().map(StringUtil::format).collect(Collectors.toList());
-            prevMeta.setLore(prevLore);
-            prevItem.setItemMeta(prevMeta);
+    private void onListingClick(InventoryClickEvent e, int index) {
+        e.setCancelled(true);
+        MarketPageCache.RenderedListing rendered = shownListings[index];
+        if (rendered == null) return;
+
+        ListingUtil.Listing listing = rendered.listing();
+        if (listing.doc.getString("playerId").equals(player.getUniqueId().toString())) {
+            player.sendMessage(ChatColor.RED + "This is your own market listing! Manage it with /marketplace mine.");
+            return;
         }
-        // Only show previous page if page > 1.
-        if (page > 1) {
-            setItem(prevPageSlot, new GUIItem(prevItem, e -> {
-                e.setCancelled(true);
-                new MarketPlaceGUI(marketPlace, player, page - 1, isBlackMarket).open(player);
-            }));
+
+        if (!shownAffordable[index]) {
+            // Send cannot-afford message.
+            player.sendMessage(layout.cannotAffordMessage());
+        } else {
+            // For normal items, open the ConfirmBuyGUI.
+            new ConfirmBuyGUI(marketPlace, player, listing, rendered.price(), isBlackMarket).open(player);
         }
     }
+
+    /**
+     * Whether a slot already shows the given listing. Re-rendered pages hold new
+     * item instances, so listings are compared by _id and displayed item.
+     */
+    private static boolean sameSlot(MarketPageCache.RenderedListing shown, boolean shownAffordable,
+                                    MarketPageCache.RenderedListing rendered, boolean canAfford) {
+        if (shown == null || rendered == null) return shown == rendered;
+        return shownAffordable == canAfford
+                && Objects.equals(shown.listing().doc.get("_id"), rendered.listing().doc.get("_id"))
+                && shown.item(shownAffordable).equals(rendered.item(canAfford));
+    }
 }
@@ -0,0 +1,189 @@
+package me.barnaby.trial.gui.guis;
+
+import me.barnaby.trial.MarketPlace;
+import me.barnaby.trial.config.Messages;
+import me.barnaby.trial.config.MyListingsLayout;
+import me.barnaby.trial.config.Settings;
+import me.barnaby.trial.gui.GUI;
+import me.barnaby.trial.gui.GUIItem;
+import me.barnaby.trial.mongo.ItemCodec;
+import me.barnaby.trial.mongo.ListingRepository;
+import me.barnaby.trial.util.MessageTemplate;
+import org.bson.Document;
+import org.bukkit.entity.Player;
+import org.bukkit.event.inventory.InventoryClickEvent;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.ItemMeta;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static me.barnaby.trial.util.ListingUtil.formatTimestamp;
+
+/**
+ * GUI showing a player's own listings on the marketplace and the black market.
+ *
+ * Left-clicking a listing cancels it and returns the item; right-clicking a
+ * marketplace listing relists it with a new listing time. The listings are
+ * read from the listing index's per-seller sets, so opening the GUI never
+ * looks at anyone else's listings.
+ */
+public class MyListingsGUI extends GUI {
+
+    private final MarketPlace marketPlace;
+    private final Player player;
+    private final MyListingsLayout layout;
+    private final Messages messages;
+    // What each item slot shows.
+    private final Document[] shownListings;
+    private int page;
+    private int lastPage;
+    // Set while a cancel or relist is in flight, so a listing is not acted on twice.
+    private boolean pending;
+
+    /**
+     * Constructs the GUI.
+     *
+     * @param marketPlace The main plugin instance.
+     * @param player      The seller.
+     * @param page        The page number (1-indexed).
+     */
+    public MyListingsGUI(MarketPlace marketPlace, Player player, int page) {
+        this(marketPlace, player, page, marketPlace.getConfigManager().getSettings());
+    }
+
+    private MyListingsGUI(MarketPlace marketPlace, Player player, int page, Settings settings) {
+        super(settings.myListingsGui().title(), settings.myListingsGui().rows(), player);
+        this.marketPlace = marketPlace;
+        this.player = player;
+        this.layout = settings.myListingsGui();
+        this.messages = settings.messages();
+        this.shownListings = new Document[layout.itemsPerPage()];
+
+        setupGUI();
+        showPage(page);
+    }
+
+    private void setupGUI() {
+        for (int index = 0; index < shownListings.length; index++) {
+            int listingIndex = index;
+            setClickHandler(layout.itemsStart() + index, new GUIItem(null, e -> onListingClick(e, listingIndex)));
+        }
+        setClickHandler(layout.nextPage().slot(), new GUIItem(null, e -> {
+            e.setCancelled(true);
+            if (page < lastPage) showPage(page + 1);
+        }));
+        setClickHandler(layout.previousPage().slot(), new GUIItem(null, e -> {
+            e.setCancelled(true);
+            if (page > 1) showPage(page - 1);
+        }));
+    }
+
+    /**
+     * Shows a page of the player's current listings in the open inventory.
+     *
+     * @param page The page number (1-indexed); clamped to the last page.
+     */
+    public void showPage(int page) {
+        List<Document> listings = marketPlace.getMongoDBManager().getListingIndex()
+                .getBySeller(player.getUniqueId().toString());
+        lastPage = Math.max(1, (listings.size() + shownListings.length - 1) / shownListings.length);
+        this.page = Math.max(1, Math.min(page, lastPage));
+
+        int start = (this.page - 1) * shownListings.length;
+        for (int index = 0; index < shownListings.length; index++) {
+            Document listing = start + index < listings.size() ? listings.get(start + index) : null;
+            ItemStack item = listing == null ? null : render(listing);
+            shownListings[index] = item == null ? null : listing;
+            setDisplayItem(layout.itemsStart() + index, item);
+        }
+
+        setDisplayItem(layout.nextPage().slot(), this.page < lastPage
+                ? marketPlace.getMarketPageCache().getButton(layout.nextPage()) : null);
+        setDisplayItem(layout.previousPage().slot(), this.page > 1
+                ? marketPlace.getMarketPageCache().getButton(layout.previousPage()) : null);
+    }
+
+    private ItemStack render(Document listing) {
+        ItemStack item;
+        try {
+            item = marketPlace.getMongoDBManager().decodeItem(listing);
+        } catch (Exception e) {
+            marketPlace.getLogger().warning("Could not decode listing " + listing.get("_id") + ": " + e.getMessage());
+            return null;
+        }
+
+        ItemMeta meta = item.getItemMeta();
+        if (meta != null) {
+            String market = listing.getBoolean("isBlackMarket", false)
+                    ? layout.blackMarketName() : layout.marketplaceName();
+            String listedTime = formatTimestamp(listing.getLong("timestamp"));
+            List<String> lines = new ArrayList<>(layout.lore().size());
+            for (MessageTemplate line : layout.lore()) {
+                lines.add(line.render(listing.getDouble("price"), market, listedTime));
+            }
+            meta.setLore(lines);
+            item.setItemMeta(meta);
+        }
+        return item;
+    }
+
+    private void onListingClick(InventoryClickEvent e, int index) {
+        e.setCancelled(true);
+        Document listing = shownListings[index];
+        if (listing == null || pending) return;
+
+        if (e.isLeftClick()) {
+            cancel(listing);
+        } else if (e.isRightClick()) {
+            if (listing.getBoolean("isBlackMarket", false)) {
+                player.sendMessage(messages.blackMarketRelist());
+                return;
+            }
+            relist(listing);
+        }
+    }
+
+    /**
+     * Claims the listing like a purchase would, so it cannot be both bought
+     * and cancelled, then hands the item back.
+     */
+    private void cancel(Document listing) {
+        pending = true;
+        ListingRepository listingRepository = marketPlace.getMongoDBManager().getListingRepository();
+        listingRepository.claim(listing.get("_id"), listing.getDouble("price"))
+                .whenCompleteAsync((claimed, ex) -> {
+                    pending = false;
+                    if (ex != null) {
+                        marketPlace.getLogger().severe("Failed to cancel listing: " + ex.getMessage());
+                        player.sendMessage(messages.cancelFailed());
+                    } else if (claimed == null) {
+                        player.sendMessage(messages.unavailable());
+                    } else if (!player.isOnline()) {
+                        // The item has nowhere to go; keep it listed.
+                        listingRepository.restore(claimed);
+                        return;
+                    } else {
+                        player.getInventory().addItem(ItemCodec.read(claimed)).values()
+                                .forEach(left -> player.getWorld().dropItem(player.getLocation(), left));
+                        player.sendMessage(messages.listingCancelled());
+                    }
+                    showPage(page);
+                }, marketPlace.getMainThreadExecutor());
+    }
+
+    private void relist(Document listing) {
+        pending = true;
+        marketPlace.getMongoDBManager().getListingRepository().relist(listing.get("_id"), listing.getLong("timestamp"))
+                .whenCompleteAsync((relisted, ex) -> {
+                    pending = false;
+                    if (ex != null) {
+                        marketPlace.getLogger().severe("Failed to relist listing: " + ex.getMessage());
+                        player.sendMessage(messages.relistFailed());
+                    } else {
+                        player.sendMessage(relisted == null ? messages.unavailable() : messages.listingRelisted());
+                    }
+                    showPage(page);
+                }, marketPlace.getMainThreadExecutor());
+    }
+}
@@ -1,26 +1,25 @@
 package me.barnaby.trial.gui.guis;
 
-import dev.s7a.base64.Base64ItemStack;
 import me.barnaby.trial.MarketPlace;
-import me.barnaby.trial.config.ConfigType;
+import me.barnaby.trial.config.Messages;
+import me.barnaby.trial.config.SellLayout;
 import me.barnaby.trial.gui.GUI;
 import me.barnaby.trial.gui.GUIItem;
-import me.barnaby.trial.util.StringUtil;
+import me.barnaby.trial.mongo.ItemCodec;
+import me.barnaby.trial.util.ListingUtil;
+import org.bukkit.ChatColor;
 import org.bukkit.Material;
-import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.meta.ItemMeta;
 
-import java.util.List;
-import java.util.stream.Collectors;
-
 public class SellGUI extends GUI {
 
     private final MarketPlace marketPlace;
     private final ItemStack itemStack;
     private final double price; // Price is provided via /sell <price>
     private final Player player;
+    private final SellLayout layout;
 
     /**
      * Constructs the SellGUI.
@@ -29,15 +28,15 @@ public class SellGUI extends GUI {
      * @param itemStack   The item to be sold.
      * @param price       The sale price provided as a command argument.
      * @param player      The player selling the item.
-     * @param guiConfig   The configuration for the GUI.
      */
-    public SellGUI(MarketPlace marketPlace, ItemStack itemStack, double price, Player player, FileConfiguration guiConfig) {
-        super(StringUtil.format(
-                guiConfig.getString("sellgui.name")
-                        .replace("%item%", itemStack.getType().name())
-                        .replace("%amount%", String.valueOf(itemStack.getAmount()))
-        ), guiConfig.getInt("sellgui.rows"), player);
+    public SellGUI(MarketPlace marketPlace, ItemStack itemStack, double price, Player player) {
+        this(marketPlace, itemStack, price, player, marketPlace.getConfigManager().getSettings().sellGui());
+    }
+
+    private SellGUI(MarketPlace marketPlace, ItemStack itemStack, double price, Player player, SellLayout layout) {
+        super(layout.title().render(itemStack.getType().name(), itemStack.getAmount()), layout.rows(), player);
         this.marketPlace = marketPlace;
+        this.layout = layout;
         this.itemStack = itemStack;
         this.price = price;
         this.player = player;
@@ -45,79 +44,63 @@ public class SellGUI extends GUI {
     }
 
     private void setupGUI() {
-        FileConfiguration guiConfig = marketPlace.getConfigManager().getConfig(ConfigType.GUI);
-        FileConfiguration messagesConfig = marketPlace.getConfigManager().getConfig(ConfigType.MESSAGES);
+        Messages messages = marketPlace.getConfigManager().getSettings().messages();
 
         // Display the item being sold at a fixed slot (slot 4).
         setItem(4, new GUIItem(itemStack, e -> e.setCancelled(true)));
 
         // --- Confirm Button ---
-        Material confirmMat = Material.matchMaterial(guiConfig.getString("sellgui.confirm.material", "GREEN_STAINED_GLASS_PANE"));
-        ItemStack confirmItem = new ItemStack(confirmMat);
-        ItemMeta confirmMeta = confirmItem.getItemMeta();
-        if (confirmMeta != null) {
-            confirmMeta.setDisplayName(StringUtil.format(guiConfig.getString("sellgui.confirm.name", "&aConfirm")));
-            List<String> confirmLore = guiConfig.getStringList("sellgui.confirm.lore")
-                    .stream()
-                    .map(StringUtil::format)
-                    .collect(Collectors.toList());
-            confirmMeta.setLore(confirmLore);
-            confirmItem.setItemMeta(confirmMeta);
-        }
-        // For a 4-row GUI (36 slots), use a slot number within 0-35.
-        int confirmSlot = guiConfig.getInt("sellgui.confirm.slot", 27);
-        setItem(confirmSlot, new GUIItem(confirmItem, e -> {
+        setItem(layout.confirm().slot(), new GUIItem(marketPlace.getMarketPageCache().getButton(layout.confirm()), e -> {
             e.setCancelled(true);
-            marketPlace.getMongoDBManager().insertItemListing(
-                    new org.bson.Document("playerId", player.getUniqueId().toString())
-                            .append("price", price)
-                            .append("itemData", Base64ItemStack.encode(itemStack))
-                            .append("timestamp", System.currentTimeMillis())
-            );
-            String successMsg = messagesConfig.getString("sell-messages.sale-success", "&aItem listed for sale at $%price%");
-            successMsg = successMsg.replace("%price%", String.valueOf(price));
-            player.sendMessage(StringUtil.format(successMsg));
+            // Serialize before the item leaves the player's hand.
+            org.bson.Document listing = ItemCodec.write(new org.bson.Document("playerId", player.getUniqueId().toString())
+                    .append("sellerName", player.getName())
+                    .append("price", price)
+                    .append("isBlackMarket", false), itemStack)
+                    // Stored alongside the item data so listings can be searched without decoding them.
+                    .append("material", itemStack.getType().name())
+                    .append("itemName", ListingUtil.searchName(itemStack))
+                    .append("timestamp", System.currentTimeMillis());
+            ItemStack soldItem = itemStack.clone();
             // Remove the item from the player's main hand.
             player.getInventory().setItemInMainHand(new ItemStack(Material.AIR));
             player.closeInventory();
+
+            // Checked again against MongoDB, as listings may have been made since /sell, here or on another server.
+            int limit = marketPlace.getConfigManager().getSettings().listingLimits().limitFor(player);
+            marketPlace.getMongoDBManager().getListingRepository().insert(listing, limit)
+                    .whenCompleteAsync((inserted, ex) -> {
+                        if (ex != null || inserted == null) {
+                            // The listing was not stored, so hand the item back.
+                            player.getInventory().addItem(soldItem).values()
+                                    .forEach(left -> player.getWorld().dropItem(player.getLocation(), left));
+                            if (ex == null) {
+                                player.sendMessage(messages.listingLimitReached().render(limit));
+                                return;
+                            }
+                            marketPlace.getLogger().severe("Failed to store listing: " + ex.getMessage());
+                            player.sendMessage(ChatColor.RED + "Your item could not be listed. Please try again.");
+                            return;
+                        }
+                        player.sendMessage(messages.saleSuccess().render(price));
+                    }, marketPlace.getMainThreadExecutor());
         }));
 
         // --- Cancel Button ---
-        Material cancelMat = Material.matchMaterial(guiConfig.getString("sellgui.cancel.material", "RED_STAINED_GLASS_PANE"));
-        ItemStack cancelItem = new ItemStack(cancelMat);
-        ItemMeta cancelMeta = cancelItem.getItemMeta();
-        if (cancelMeta != null) {
-            cancelMeta.setDisplayName(StringUtil.format(guiConfig.getString("sellgui.cancel.name", "&cCancel")));
-            List<String> cancelLore = guiConfig.getStringList("sellgui.cancel.lore")
-                    .stream()
-                    .map(StringUtil::format)
-                    .collect(Collectors.toList());
-            cancelMeta.setLore(cancelLore);
-            cancelItem.setItemMeta(cancelMeta);
-        }
-        int cancelSlot = guiConfig.getInt("sellgui.cancel.slot", 35);
-        setItem(cancelSlot, new GUIItem(cancelItem, e -> {
+        setItem(layout.cancel().slot(), new GUIItem(marketPlace.getMarketPageCache().getButton(layout.cancel()), e -> {
             e.setCancelled(true);
-            String cancelMsg = messagesConfig.getString("sell-messages.sale-cancelled", "&cSale cancelled.");
-            player.sendMessage(StringUtil.format(cancelMsg));
+            player.sendMessage(messages.saleCancelled());
             player.closeInventory();
         }));
 
         // --- Price Display (Sign) ---
-        Material priceMat = Material.matchMaterial(guiConfig.getString("sellgui.price.material", "OAK_SIGN"));
-        ItemStack priceItem = new ItemStack(priceMat);
+        ItemStack priceItem = marketPlace.getMarketPageCache().getButton(layout.price()).clone();
         ItemMeta priceMeta = priceItem.getItemMeta();
         if (priceMeta != null) {
-            priceMeta.setDisplayName(StringUtil.format(guiConfig.getString("sellgui.price.name", "&ePrice: $") + price));
-            List<String> priceLore = guiConfig.getStringList("sellgui.price.lore")
-                    .stream()
-                    .map(StringUtil::format)
-                    .collect(Collectors.toList());
-            priceMeta.setLore(priceLore);
+            priceMeta.setDisplayName(layout.price().name() + price);
             priceItem.setItemMeta(priceMeta);
         }
-        int priceSlot = guiConfig.getInt("sellgui.price.slot", 31);
         // The price display is informational and non-interactive.
-        setItem(priceSlot, new GUIItem(priceItem, e -> e.setCancelled(true)));
+        setItem(layout.price().slot(), new GUIItem(priceItem, e -> e.setCancelled(true)));
     }
 }
@@ -0,0 +1,25 @@
+package me.barnaby.trial.listener;
+
+import me.barnaby.trial.MarketPlace;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+
+public class ConnectionListeners implements Listener {
+
+    private final MarketPlace marketPlace;
+
+    public ConnectionListeners(MarketPlace marketPlace) {
+        this.marketPlace = marketPlace;
+    }
+
+    @EventHandler
+    public void onJoin(PlayerJoinEvent event) {
+        // Keep the name cache current so listings never need an OfflinePlayer lookup.
+        Player player = event.getPlayer();
+        marketPlace.getMongoDBManager().getNameCache().put(player.getUniqueId(), player.getName());
+        // Items of listings that expired while the player was away.
+        marketPlace.getMailboxDelivery().deliver(player, false);
+    }
+}
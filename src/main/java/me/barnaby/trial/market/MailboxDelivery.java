@@ -0,0 +1,100 @@
+package me.barnaby.trial.market;
+
+import me.barnaby.trial.MarketPlace;
+import me.barnaby.trial.config.Messages;
+import me.barnaby.trial.mongo.ItemCodec;
+import me.barnaby.trial.mongo.MailboxRepository;
+import org.bson.Document;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * MailboxDelivery hands the items in a player's mailbox to the player.
+ *
+ * Only as many items are taken as the inventory has empty slots for; the rest
+ * stay in the mailbox until the player makes room. Mail taken for a player who
+ * left before it arrived is put back, and mail is only deleted once its items
+ * are in the inventory.
+ */
+public class MailboxDelivery {
+
+    private final MarketPlace marketPlace;
+    // Players with a delivery in flight; only touched on the server thread.
+    private final Set<UUID> delivering = new HashSet<>();
+
+    public MailboxDelivery(MarketPlace marketPlace) {
+        this.marketPlace = marketPlace;
+    }
+
+    /**
+     * Delivers what fits of a player's mailbox. Must be called on the server thread.
+     *
+     * @param player      The player.
+     * @param reportEmpty True to tell the player when there is nothing to deliver.
+     */
+    public void deliver(Player player, boolean reportEmpty) {
+        if (!delivering.add(player.getUniqueId())) return;
+
+        MailboxRepository mailboxRepository = marketPlace.getMongoDBManager().getMailboxRepository();
+        mailboxRepository.take(player.getUniqueId().toString(), freeSlots(player))
+                .whenCompleteAsync((batch, ex) -> {
+                    delivering.remove(player.getUniqueId());
+                    if (ex != null) {
+                        marketPlace.getLogger().severe("Failed to read the mailbox of " + player.getName() + ": " + ex.getMessage());
+                        return;
+                    }
+                    if (!player.isOnline()) {
+                        mailboxRepository.restore(batch.mail());
+                        return;
+                    }
+
+                    Messages messages = marketPlace.getConfigManager().getSettings().messages();
+                    List<Document> delivered = new ArrayList<>();
+                    List<Document> undeliverable = new ArrayList<>();
+                    for (Document mail : batch.mail()) {
+                        ItemStack item;
+                        try {
+                            item = ItemCodec.read(mail);
+                        } catch (Exception e) {
+                            marketPlace.getLogger().warning("Could not decode mail " + mail.get("_id") + ": " + e.getMessage());
+                            undeliverable.add(mail);
+                            continue;
+                        }
+                        player.getInventory().addItem(item).values()
+                                .forEach(left -> player.getWorld().dropItem(player.getLocation(), left));
+                        delivered.add(mail);
+                    }
+                    // Deleted only now the items are in the inventory; if this fails they are delivered again.
+                    if (!delivered.isEmpty()) {
+                        mailboxRepository.delivered(delivered).exceptionally(failure -> {
+                            marketPlace.getLogger().severe("Failed to clear delivered mail of " + player.getName()
+                                    + ": " + failure.getMessage());
+                            return null;
+                        });
+                    }
+                    // Kept for an admin to look at rather than lost.
+                    if (!undeliverable.isEmpty()) mailboxRepository.restore(undeliverable);
+
+                    if (!delivered.isEmpty()) player.sendMessage(messages.mailboxDelivered().render(delivered.size()));
+                    if (batch.waiting() > 0) {
+                        player.sendMessage(messages.mailboxWaiting().render(batch.waiting()));
+                    } else if (delivered.isEmpty() && reportEmpty) {
+                        player.sendMessage(messages.mailboxEmpty());
+                    }
+                }, marketPlace.getMainThreadExecutor());
+    }
+
+    private static int freeSlots(Player player) {
+        int free = 0;
+        for (ItemStack item : player.getInventory().getStorageContents()) {
+            if (item == null || item.getType().isAir()) free++;
+        }
+        return free;
+    }
+}
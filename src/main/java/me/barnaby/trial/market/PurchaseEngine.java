@@ -0,0 +1,121 @@
+package me.barnaby.trial.market;
+
+import me.barnaby.trial.MarketPlace;
+import me.barnaby.trial.mongo.ListingRepository;
+import me.barnaby.trial.util.ListingUtil;
+import me.barnaby.trial.util.StringUtil;
+import net.milkbowl.vault.economy.Economy;
+import net.milkbowl.vault.economy.EconomyResponse;
+import org.bson.Document;
+import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * PurchaseEngine runs a purchase as claim, pay, deliver.
+ *
+ * The listing is claimed first with an atomic findOneAndDelete that also
+ * matches the price the buyer saw, so only one buyer on any server sharing the
+ * database can win it. Money only moves after the claim succeeds and while the
+ * buyer is still online, and if either economy step fails the money is
+ * returned and the listing is put back.
+ */
+public class PurchaseEngine {
+
+    private final MarketPlace marketPlace;
+
+    public PurchaseEngine(MarketPlace marketPlace) {
+        this.marketPlace = marketPlace;
+    }
+
+    /**
+     * Attempts to buy a listing. Must be called on the server thread; the
+     * returned future also completes on the server thread.
+     *
+     * @param buyer        The buying player.
+     * @param listing      The listing as the buyer saw it.
+     * @param buyingPrice  The amount charged to the buyer.
+     * @param sellingPrice The amount paid to the seller.
+     * @param loggedPrice  The price stored in the transaction history and Discord log.
+     * @return A future completed with the outcome of the purchase.
+     */
+    public CompletableFuture<PurchaseResult> purchase(Player buyer, ListingUtil.Listing listing,
+                                                      double buyingPrice, double sellingPrice, double loggedPrice) {
+        ListingRepository listingRepository = marketPlace.getMongoDBManager().getListingRepository();
+        return listingRepository.claim(listing.doc.get("_id"), listing.doc.getDouble("price"))
+                .thenApplyAsync(claimed -> {
+                    if (claimed == null) return PurchaseResult.LISTING_UNAVAILABLE;
+                    return settle(buyer, listing, claimed, buyingPrice, sellingPrice, loggedPrice);
+                }, marketPlace.getMainThreadExecutor());
+    }
+
+    /**
+     * Moves the money and the item for a claimed listing, undoing the claim if payment fails.
+     */
+    private PurchaseResult settle(Player buyer, ListingUtil.Listing listing, Document claimed,
+                                  double buyingPrice, double sellingPrice, double loggedPrice) {
+        Economy economy = marketPlace.getEconomy();
+        ListingRepository listingRepository = marketPlace.getMongoDBManager().getListingRepository();
+
+        // The buyer may have logged out while the claim was in flight; the item would have nowhere to go.
+        if (!buyer.isOnline()) {
+            restore(listingRepository, claimed);
+            return PurchaseResult.LISTING_UNAVAILABLE;
+        }
+
+        // The buyer may have spent money while the claim was in flight.
+        EconomyResponse withdrawal = economy.withdrawPlayer(buyer, buyingPrice);
+        if (!withdrawal.transactionSuccess()) {
+            restore(listingRepository, claimed);
+            return PurchaseResult.INSUFFICIENT_FUNDS;
+        }
+
+        String sellerId = claimed.getString("playerId");
+        OfflinePlayer seller = Bukkit.getOfflinePlayer(UUID.fromString(sellerId));
+        EconomyResponse deposit = economy.depositPlayer(seller, sellingPrice);
+        if (!deposit.transactionSuccess()) {
+            economy.depositPlayer(buyer, buyingPrice);
+            restore(listingRepository, claimed);
+            marketPlace.getLogger().warning("Could not pay seller " + sellerId + ": " + deposit.errorMessage);
+            return PurchaseResult.PAYMENT_FAILED;
+        }
+
+        // Give the item to the buyer, dropping anything that does not fit.
+        ItemStack item = listing.item.clone();
+        buyer.getInventory().addItem(item).values()
+                .forEach(left -> buyer.getWorld().dropItem(buyer.getLocation(), left));
+
+        String sellerName = marketPlace.getMongoDBManager().getNameCache().getName(sellerId);
+        marketPlace.getMongoDBManager().getTransactionRepository().record(
+                buyer.getUniqueId().toString(),
+                buyer.getName(),
+                sellerId,
+                sellerName,
+                item,
+                loggedPrice
+        ).exceptionally(ex -> {
+            marketPlace.getLogger().severe("Failed to record transaction: " + ex.getMessage());
+            return null;
+        });
+        marketPlace.getDiscordWebhookLogger().sendPurchaseLog(
+                buyer.getName(),
+                sellerName,
+                StringUtil.formatItem(item),
+                item.getAmount(),
+                loggedPrice,
+                ListingUtil.formatTimestamp(claimed.getLong("timestamp"))
+        );
+        return PurchaseResult.SUCCESS;
+    }
+
+    private void restore(ListingRepository listingRepository, Document claimed) {
+        listingRepository.restore(claimed).exceptionally(ex -> {
+            marketPlace.getLogger().severe("Failed to restore listing " + claimed.get("_id") + ": " + ex.getMessage());
+            return null;
+        });
+    }
+}
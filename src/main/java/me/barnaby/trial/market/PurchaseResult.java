@@ -0,0 +1,15 @@
+package me.barnaby.trial.market;
+
+/**
+ * Outcome of a purchase attempted through {@link PurchaseEngine}.
+ */
+public enum PurchaseResult {
+    /** The listing was claimed, paid for and delivered. */
+    SUCCESS,
+    /** The listing was already bought, removed or repriced by someone else. */
+    LISTING_UNAVAILABLE,
+    /** The buyer could not be charged; the listing was restored. */
+    INSUFFICIENT_FUNDS,
+    /** The seller could not be paid; the buyer was refunded and the listing restored. */
+    PAYMENT_FAILED
+}
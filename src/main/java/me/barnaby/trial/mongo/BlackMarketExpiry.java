@@ -0,0 +1,132 @@
+package me.barnaby.trial.mongo;
+
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.WriteModel;
+import me.barnaby.trial.MarketPlace;
+import me.barnaby.trial.config.BlackMarketSettings;
+import org.bson.Document;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BlackMarketExpiry returns black market listings to the marketplace once
+ * their time on the black market is up.
+ *
+ * A rotation stores the listing's original price and the time it leaves the
+ * black market. Each sweep finds the expired listings with a range query on
+ * the black market expiry index and restores them with one unordered bulk
+ * write per batch. Every update only matches the placement it read, so
+ * servers sweeping at the same time never restore a listing twice.
+ */
+public class BlackMarketExpiry {
+
+    private static final int SWEEP_BATCH = 500;
+
+    private final MarketPlace plugin;
+    private final MongoDBManager mongoDBManager;
+
+    public BlackMarketExpiry(MarketPlace plugin, MongoDBManager mongoDBManager) {
+        this.plugin = plugin;
+        this.mongoDBManager = mongoDBManager;
+    }
+
+    /**
+     * Gives black market listings stored before expiry existed an original
+     * price and an expiry time. The original price of those listings can only
+     * be recovered from the current price modifier, so this is done once, in
+     * the database, rather than on every purchase. Blocking.
+     *
+     * @return The number of listings updated.
+     */
+    public long backfill() {
+        BlackMarketSettings settings = plugin.getConfigManager().getSettings().blackMarket();
+        Document set = new Document("originalPrice", new Document("$round",
+                List.of(new Document("$divide", List.of("$price", settings.priceModifier())), 2)))
+                .append(ListingSync.UPDATED_AT_FIELD, System.currentTimeMillis());
+        if (settings.duration() > 0) {
+            set.append("blackMarketUntil", System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(settings.duration()));
+        }
+        return mongoDBManager.getCollection("itemListings").updateMany(
+                Filters.and(Filters.eq("isBlackMarket", true), Filters.exists("originalPrice", false)),
+                List.of(new Document("$set", set))).getModifiedCount();
+    }
+
+    /**
+     * Returns every expired black market listing to the marketplace at its
+     * original price. Blocking; call it off the server thread, e.g. through
+     * {@link ListingRepository#expireBlackMarket()}.
+     *
+     * @return The number of listings returned to the marketplace.
+     */
+    public int sweep() {
+        long now = System.currentTimeMillis();
+        MongoCollection<Document> listings = mongoDBManager.getCollection("itemListings");
+        int restored = 0;
+        List<Document> expired;
+        do {
+            expired = listings.find(Filters.and(Filters.eq("isBlackMarket", true), Filters.lte("blackMarketUntil", now)))
+                    .projection(Projections.include("price", "originalPrice", "blackMarketUntil"))
+                    .limit(SWEEP_BATCH)
+                    .into(new ArrayList<>());
+            if (expired.isEmpty()) break;
+            restored += restore(listings, expired);
+        } while (expired.size() == SWEEP_BATCH);
+        return restored;
+    }
+
+    private int restore(MongoCollection<Document> listings, List<Document> expired) {
+        long now = System.currentTimeMillis();
+        Map<Object, Double> originalPrices = new LinkedHashMap<>();
+        List<WriteModel<Document>> updates = new ArrayList<>(expired.size());
+        for (Document listing : expired) {
+            Object id = listing.get("_id");
+            double originalPrice = listing.get("originalPrice", listing.getDouble("price"));
+            originalPrices.put(id, originalPrice);
+            // Only the placement that was read: a listing bought or moved again in the meantime is skipped.
+            updates.add(new UpdateOneModel<>(
+                    Filters.and(Filters.eq("_id", id), Filters.eq("isBlackMarket", true),
+                            Filters.eq("blackMarketUntil", listing.get("blackMarketUntil"))),
+                    Updates.combine(
+                            Updates.set("price", originalPrice),
+                            Updates.set("isBlackMarket", false),
+                            Updates.unset("originalPrice"),
+                            Updates.unset("blackMarketUntil"),
+                            Updates.set(ListingSync.UPDATED_AT_FIELD, now))));
+        }
+
+        BulkWriteResult result = listings.bulkWrite(updates, new BulkWriteOptions().ordered(false));
+
+        ListingIndex listingIndex = mongoDBManager.getListingIndex();
+        if (result.getMatchedCount() == originalPrices.size()) {
+            for (Map.Entry<Object, Double> entry : originalPrices.entrySet()) {
+                Document indexed = listingIndex.get(entry.getKey());
+                if (indexed == null) continue;
+                // Copy the indexed document so the index only ever sees the saved state.
+                Document listing = new Document(indexed)
+                        .append("price", entry.getValue())
+                        .append("isBlackMarket", false);
+                listing.remove("originalPrice");
+                listing.remove("blackMarketUntil");
+                listingIndex.update(listing);
+            }
+        } else {
+            // The bulk result does not say which listings were skipped; read back what is stored now.
+            Set<Object> missing = new HashSet<>(originalPrices.keySet());
+            for (Document stored : mongoDBManager.getListings(new ArrayList<>(originalPrices.keySet()))) {
+                missing.remove(stored.get("_id"));
+                listingIndex.addIfChanged(stored);
+            }
+            for (Object id : missing) {
+                listingIndex.remove(id);
+            }
+        }
+        return result.getMatchedCount();
+    }
+}
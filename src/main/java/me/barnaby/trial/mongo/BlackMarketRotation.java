@@ -0,0 +1,143 @@
+package me.barnaby.trial.mongo;
+
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.WriteModel;
+import me.barnaby.trial.MarketPlace;
+import me.barnaby.trial.config.BlackMarketSettings;
+import me.barnaby.trial.util.MessageTemplate;
+import me.barnaby.trial.util.StringUtil;
+import org.bson.Document;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BlackMarketRotation moves random marketplace listings to the black market.
+ *
+ * Listings are sampled from the in-memory listing index, so every pick is a
+ * distinct marketplace listing and sampling does not depend on the number of
+ * listings. Each moved listing keeps its original price and the time it
+ * returns to the marketplace, see {@link BlackMarketExpiry}. Prices are changed with a single unordered bulk write that skips
+ * listings another server moved in the meantime. Seller notifications are
+ * prepared with the rotation and sent in one pass on the server thread.
+ */
+public class BlackMarketRotation {
+
+    private final MarketPlace plugin;
+    private final MongoDBManager mongoDBManager;
+
+    public BlackMarketRotation(MarketPlace plugin, MongoDBManager mongoDBManager) {
+        this.plugin = plugin;
+        this.mongoDBManager = mongoDBManager;
+    }
+
+    /**
+     * Moves {@code items-count} random marketplace listings to the black market,
+     * multiplying their price by the price modifier. Blocking; call it off the
+     * server thread, e.g. through {@link ListingRepository#rotateBlackMarket()}.
+     *
+     * @return The listings that were moved.
+     */
+    public Result rotate() {
+        // Read once so every listing moved in this rotation uses the same settings.
+        BlackMarketSettings settings = plugin.getConfigManager().getSettings().blackMarket();
+        ListingIndex listingIndex = mongoDBManager.getListingIndex();
+        List<Document> picked = listingIndex.sample(false, settings.itemsCount(), ThreadLocalRandom.current());
+        if (picked.isEmpty()) return new Result(List.of(), Map.of());
+        long now = System.currentTimeMillis();
+        Long blackMarketUntil = settings.duration() > 0
+                ? now + TimeUnit.SECONDS.toMillis(settings.duration()) : null;
+
+        // Copy the indexed documents so the index only ever sees the saved state.
+        Map<Object, Document> candidates = new LinkedHashMap<>();
+        List<WriteModel<Document>> updates = new ArrayList<>(picked.size());
+        for (Document indexed : picked) {
+            double originalPrice = indexed.getDouble("price");
+            double blackMarketPrice = Math.round(originalPrice * settings.priceModifier() * 100.0) / 100.0;
+            Document listing = new Document(indexed)
+                    .append("price", blackMarketPrice)
+                    .append("originalPrice", originalPrice)
+                    .append("isBlackMarket", true);
+            if (blackMarketUntil != null) listing.append("blackMarketUntil", blackMarketUntil);
+            candidates.put(listing.get("_id"), listing);
+            // No upsert, and only from the marketplace: a listing bought or moved in the meantime is skipped.
+            updates.add(new UpdateOneModel<>(
+                    Filters.and(Filters.eq("_id", listing.get("_id")), Filters.ne("isBlackMarket", true)),
+                    Updates.combine(
+                            Updates.set("price", blackMarketPrice),
+                            Updates.set("originalPrice", originalPrice),
+                            Updates.set("isBlackMarket", true),
+                            Updates.set(ListingSync.UPDATED_AT_FIELD, now),
+                            blackMarketUntil != null
+                                    ? Updates.set("blackMarketUntil", blackMarketUntil)
+                                    : Updates.unset("blackMarketUntil"))));
+        }
+
+        BulkWriteResult result = mongoDBManager.getCollection("itemListings")
+                .bulkWrite(updates, new BulkWriteOptions().ordered(false));
+
+        List<Document> moved = new ArrayList<>(candidates.size());
+        if (result.getMatchedCount() == candidates.size()) {
+            for (Document listing : candidates.values()) {
+                listingIndex.update(listing);
+                moved.add(listing);
+            }
+        } else {
+            // The bulk result does not say which listings were skipped; read back what is stored now.
+            Set<Object> missing = new HashSet<>(candidates.keySet());
+            for (Document stored : mongoDBManager.getListings(new ArrayList<>(candidates.keySet()))) {
+                Object id = stored.get("_id");
+                missing.remove(id);
+                listingIndex.addIfChanged(stored);
+                Document candidate = candidates.get(id);
+                if (stored.getBoolean("isBlackMarket", false)
+                        && Objects.equals(stored.get("price"), candidate.get("price"))) {
+                    moved.add(candidate);
+                }
+            }
+            for (Object id : missing) {
+                listingIndex.remove(id);
+            }
+        }
+
+        Map<String, List<String>> itemNamesBySeller = new HashMap<>();
+        for (Document listing : moved) {
+            itemNamesBySeller.computeIfAbsent(listing.getString("playerId"), id -> new ArrayList<>())
+                    .add(StringUtil.formatItem(mongoDBManager.decodeItem(listing)));
+        }
+        return new Result(moved, itemNamesBySeller);
+    }
+
+    /**
+     * Tells the online sellers of the moved listings that their items were moved
+     * to the black market. Must be called on the server thread.
+     *
+     * @param result The result of {@link #rotate()}.
+     */
+    public void notifySellers(Result result) {
+        MessageTemplate message = plugin.getConfigManager().getSettings().messages().blackMarketMoved();
+        for (Map.Entry<String, List<String>> seller : result.itemNamesBySeller().entrySet()) {
+            Player player = Bukkit.getPlayer(UUID.fromString(seller.getKey()));
+            if (player == null) continue;
+            for (String itemName : seller.getValue()) {
+                player.sendMessage(message.render(itemName));
+            }
+        }
+    }
+
+    /**
+     * The outcome of a rotation.
+     *
+     * @param moved             The listings moved to the black market, as now stored.
+     * @param itemNamesBySeller The display names of the moved items, keyed by seller UUID.
+     */
+    public record Result(List<Document> moved, Map<String, List<String>> itemNamesBySeller) {
+    }
+}
@@ -0,0 +1,130 @@
+package me.barnaby.trial.mongo;
+
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoWriteException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
+import me.barnaby.trial.MarketPlace;
+import me.barnaby.trial.config.BlackMarketSettings;
+import org.bson.Document;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BlackMarketSchedule decides when black market rotations run across every
+ * server sharing the database.
+ *
+ * The schedule is a document in the "schedules" collection holding the time
+ * of the next rotation and a lease. A server only rotates after taking the
+ * lease of a due schedule with an atomic findOneAndUpdate, so each rotation
+ * runs on exactly one server. The next rotation is then moved forward by
+ * whole intervals, keeping the schedule's phase across restarts. Rotations
+ * missed while every server was down are caught up, up to the configured
+ * limit. If a server dies while holding the lease, another one takes over
+ * once the lease expires.
+ *
+ * Times are compared with each server's clock, so servers are expected to
+ * keep their clocks in sync.
+ */
+public class BlackMarketSchedule {
+
+    private static final String SCHEDULE_ID = "blackmarket-rotation";
+    // Far longer than a rotation takes; only matters if the lease holder dies.
+    private static final long LEASE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final MarketPlace plugin;
+    private final MongoDBManager mongoDBManager;
+    // Identifies this server as the lease owner.
+    private final String nodeId = UUID.randomUUID().toString();
+    // Last known time of the next rotation, so checks before it do not query MongoDB.
+    private volatile long knownNextRunAt = Long.MIN_VALUE;
+    private volatile boolean created;
+
+    public BlackMarketSchedule(MarketPlace plugin, MongoDBManager mongoDBManager) {
+        this.plugin = plugin;
+        this.mongoDBManager = mongoDBManager;
+    }
+
+    /**
+     * Runs the black market rotations that are due, if this server wins the
+     * lease. Blocking; call it off the server thread.
+     *
+     * @return The results of the rotations run; empty if none was due or another server ran them.
+     */
+    public List<BlackMarketRotation.Result> runIfDue() {
+        long now = System.currentTimeMillis();
+        if (now < knownNextRunAt) return List.of();
+
+        BlackMarketSettings settings = plugin.getConfigManager().getSettings().blackMarket();
+        long interval = TimeUnit.SECONDS.toMillis(Math.max(1, settings.addItemsEvery()));
+        MongoCollection<Document> schedules = mongoDBManager.getCollection("schedules");
+        if (!created) createSchedule(schedules, now + interval);
+
+        Document lease = schedules.findOneAndUpdate(
+                Filters.and(Filters.eq("_id", SCHEDULE_ID), Filters.lte("nextRunAt", now), Filters.lt("leaseUntil", now)),
+                Updates.combine(Updates.set("leaseOwner", nodeId), Updates.set("leaseUntil", now + LEASE_MILLIS)),
+                new FindOneAndUpdateOptions().returnDocument(ReturnDocument.AFTER));
+        if (lease == null) {
+            // Not due yet, or another server holds the lease; remember when to look again.
+            Document schedule = schedules.find(Filters.eq("_id", SCHEDULE_ID)).first();
+            if (schedule == null) {
+                created = false;
+            } else {
+                knownNextRunAt = schedule.getLong("nextRunAt");
+            }
+            return List.of();
+        }
+
+        long nextRunAt = lease.getLong("nextRunAt");
+        long missed = (now - nextRunAt) / interval + 1;
+        long rotations = Math.min(missed, Math.max(1, settings.catchUpLimit()));
+        List<BlackMarketRotation.Result> results = new ArrayList<>();
+        try {
+            for (int i = 0; i < rotations; i++) {
+                results.add(mongoDBManager.getBlackMarketRotation().rotate());
+            }
+        } catch (RuntimeException e) {
+            // Give the lease back without moving the schedule, so the rotation is retried.
+            schedules.updateOne(Filters.and(Filters.eq("_id", SCHEDULE_ID), Filters.eq("leaseOwner", nodeId)),
+                    Updates.combine(Updates.set("leaseUntil", 0L), Updates.unset("leaseOwner")));
+            throw e;
+        }
+
+        // Skip every interval that has passed, including those beyond the catch-up limit.
+        long next = nextRunAt + missed * interval;
+        schedules.updateOne(Filters.and(Filters.eq("_id", SCHEDULE_ID), Filters.eq("leaseOwner", nodeId)),
+                Updates.combine(
+                        Updates.set("nextRunAt", next),
+                        Updates.set("lastRunAt", now),
+                        Updates.set("leaseUntil", 0L),
+                        Updates.unset("leaseOwner")));
+        knownNextRunAt = next;
+        if (missed > 1) {
+            plugin.getLogger().info("Caught up on " + rotations + " of " + missed + " missed black market rotations.");
+        }
+        return results;
+    }
+
+    /**
+     * Creates the schedule the first time any server starts, with the first
+     * rotation one interval away rather than immediately.
+     */
+    private void createSchedule(MongoCollection<Document> schedules, long firstRunAt) {
+        try {
+            schedules.updateOne(Filters.eq("_id", SCHEDULE_ID),
+                    Updates.combine(Updates.setOnInsert("nextRunAt", firstRunAt), Updates.setOnInsert("leaseUntil", 0L)),
+                    new UpdateOptions().upsert(true));
+        } catch (MongoWriteException e) {
+            // Another server created it at the same time.
+            if (e.getError().getCategory() != ErrorCategory.DUPLICATE_KEY) throw e;
+        }
+        created = true;
+    }
+}
@@ -0,0 +1,164 @@
+package me.barnaby.trial.mongo;
+
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.IndexModel;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.Sorts;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * IndexBootstrap creates the indexes the plugin relies on and then checks,
+ * using explain(), that none of the plugin's query shapes fall back to a
+ * collection scan.
+ *
+ * Every query the plugin runs against a growing collection should have a
+ * matching entry in {@link #INDEXES} and {@link #QUERY_SHAPES}.
+ */
+public class IndexBootstrap {
+
+    private static final Map<String, List<IndexModel>> INDEXES = Map.of(
+            "itemListings", List.of(
+                    // Paged listing queries and listing expiry: equality on isBlackMarket, then the listing order.
+                    new IndexModel(Indexes.ascending("isBlackMarket", "timestamp", "_id"),
+                            new IndexOptions().name("listing_page")),
+                    // A seller's listings: equality on the seller, then the listing order.
+                    new IndexModel(Indexes.ascending("playerId", "timestamp", "_id"),
+                            new IndexOptions().name("seller_listings")),
+                    new IndexModel(Indexes.ascending("itemId"),
+                            new IndexOptions().name("listing_item_id").sparse(true)),
+                    // Expiry sweeps: equality on isBlackMarket, then a range on the expiry time.
+                    new IndexModel(Indexes.ascending("isBlackMarket", "blackMarketUntil"),
+                            new IndexOptions().name("blackmarket_expiry")),
+                    // Listing sync polls: a range on the change time, then _id for keyset pages.
+                    new IndexModel(Indexes.ascending(ListingSync.UPDATED_AT_FIELD, "_id"),
+                            new IndexOptions().name("listing_changes"))
+            ),
+            "mailbox", List.of(
+                    // Delivery takes a player's oldest mail first.
+                    new IndexModel(Indexes.ascending("playerId", "createdAt", "_id"),
+                            new IndexOptions().name("mailbox_player"))
+            ),
+            "transactions", List.of(
+                    // Each side of the transaction history $or gets its own index in history order, newest first.
+                    new IndexModel(Indexes.compoundIndex(Indexes.ascending("sellerId"), Indexes.descending("timestamp", "_id")),
+                            new IndexOptions().name("transaction_seller")),
+                    new IndexModel(Indexes.compoundIndex(Indexes.ascending("buyerId"), Indexes.descending("timestamp", "_id")),
+                            new IndexOptions().name("transaction_buyer"))
+            )
+    );
+
+    // Representative values are used; only the shape of the query matters to the planner.
+    private static final String SAMPLE_ID = "00000000-0000-0000-0000-000000000000";
+    private static final ObjectId SAMPLE_OBJECT_ID = new ObjectId("000000000000000000000000");
+    private static final List<QueryShape> QUERY_SHAPES = List.of(
+            new QueryShape("listing page", "itemListings",
+                    Filters.and(Filters.eq("isBlackMarket", true), Filters.gt("timestamp", 0L)),
+                    Sorts.ascending("timestamp", "_id")),
+            new QueryShape("listings by seller", "itemListings",
+                    Filters.eq("playerId", SAMPLE_ID), Sorts.ascending("timestamp", "_id")),
+            new QueryShape("listing by item id", "itemListings",
+                    Filters.eq("itemId", SAMPLE_ID), null),
+            new QueryShape("black market listings", "itemListings",
+                    Filters.eq("isBlackMarket", true), null),
+            new QueryShape("black market expiry", "itemListings",
+                    Filters.and(Filters.eq("isBlackMarket", true), Filters.lte("blackMarketUntil", 0L)), null),
+            new QueryShape("listing expiry", "itemListings",
+                    Filters.and(Filters.in("isBlackMarket", false, null), Filters.lte("timestamp", 0L)), null),
+            new QueryShape("listing changes", "itemListings",
+                    Filters.gte(ListingSync.UPDATED_AT_FIELD, 0L), Sorts.ascending(ListingSync.UPDATED_AT_FIELD, "_id")),
+            new QueryShape("listing reconcile page", "itemListings",
+                    Filters.gt("_id", SAMPLE_OBJECT_ID), Sorts.ascending("_id")),
+            new QueryShape("mailbox", "mailbox",
+                    MongoDBManager.availableMail(SAMPLE_ID, 0L), Sorts.ascending("createdAt", "_id")),
+            new QueryShape("transaction history", "transactions",
+                    Filters.or(Filters.eq("sellerId", SAMPLE_ID), Filters.eq("buyerId", SAMPLE_ID)),
+                    Sorts.descending("timestamp", "_id")),
+            new QueryShape("transaction history keyset page", "transactions",
+                    Filters.or(
+                            Filters.and(Filters.eq("sellerId", SAMPLE_ID), Filters.lte("timestamp", 0L),
+                                    Filters.or(Filters.lt("timestamp", 0L), Filters.lt("_id", SAMPLE_ID))),
+                            Filters.and(Filters.eq("buyerId", SAMPLE_ID), Filters.lte("timestamp", 0L),
+                                    Filters.or(Filters.lt("timestamp", 0L), Filters.lt("_id", SAMPLE_ID)))),
+                    Sorts.descending("timestamp", "_id"))
+    );
+
+    private final MongoDatabase database;
+    private final Logger logger;
+
+    public IndexBootstrap(MongoDatabase database, Logger logger) {
+        this.database = database;
+        this.logger = logger;
+    }
+
+    /**
+     * Creates every index in {@link #INDEXES}. Creating an index that already exists is a no-op.
+     */
+    public void createIndexes() {
+        for (Map.Entry<String, List<IndexModel>> entry : INDEXES.entrySet()) {
+            database.getCollection(entry.getKey()).createIndexes(entry.getValue());
+        }
+    }
+
+    /**
+     * Explains every query shape and reports those whose winning plan contains a COLLSCAN stage.
+     *
+     * @param failOnCollectionScan If true, throws instead of logging a warning.
+     * @throws IllegalStateException If a collection scan is found and {@code failOnCollectionScan} is set.
+     */
+    public void verifyQueryPlans(boolean failOnCollectionScan) {
+        List<String> scans = new ArrayList<>();
+        for (QueryShape shape : QUERY_SHAPES) {
+            FindIterable<Document> find = database.getCollection(shape.collection()).find(shape.filter());
+            if (shape.sort() != null) find = find.sort(shape.sort());
+
+            Document explain = find.explain();
+            Document queryPlanner = explain.get("queryPlanner", Document.class);
+            Document winningPlan = queryPlanner == null ? null : queryPlanner.get("winningPlan", Document.class);
+            if (containsCollectionScan(winningPlan)) {
+                scans.add(shape.name() + " (" + shape.collection() + ")");
+            }
+        }
+
+        if (scans.isEmpty()) {
+            logger.info("Verified " + QUERY_SHAPES.size() + " MongoDB query plans; none use a collection scan.");
+            return;
+        }
+
+        String message = "MongoDB queries using a collection scan: " + String.join(", ", scans);
+        if (failOnCollectionScan) throw new IllegalStateException(message);
+        logger.warning(message);
+    }
+
+    /**
+     * Walks a plan tree looking for a COLLSCAN stage. Single-child stages use
+     * "inputStage"; stages such as OR use "inputStages". Newer servers nest the
+     * classic plan under "queryPlan".
+     */
+    private boolean containsCollectionScan(Document plan) {
+        if (plan == null) return false;
+        if ("COLLSCAN".equals(plan.getString("stage"))) return true;
+        if (containsCollectionScan(plan.get("queryPlan", Document.class))) return true;
+        if (containsCollectionScan(plan.get("inputStage", Document.class))) return true;
+
+        List<Document> inputStages = plan.getList("inputStages", Document.class);
+        if (inputStages != null) {
+            for (Document stage : inputStages) {
+                if (containsCollectionScan(stage)) return true;
+            }
+        }
+        return false;
+    }
+
+    private record QueryShape(String name, String collection, Bson filter, Bson sort) {
+    }
+}
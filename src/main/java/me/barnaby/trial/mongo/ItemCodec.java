@@ -0,0 +1,359 @@
+package me.barnaby.trial.mongo;
+
+import dev.s7a.base64.Base64ItemStack;
+import org.bson.Document;
+import org.bson.types.Binary;
+import org.bukkit.configuration.serialization.ConfigurationSerializable;
+import org.bukkit.configuration.serialization.ConfigurationSerialization;
+import org.bukkit.inventory.ItemStack;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * ItemCodec stores items as compact BSON binary instead of Base64 text.
+ *
+ * An item is written as the map {@link ItemStack#serialize()} returns, with
+ * one type tag per value, variable length numbers, and each distinct string
+ * written once and referred to by index afterwards. The first byte is the
+ * format version, so later formats can be read next to this one; large
+ * items are deflated.
+ *
+ * Documents keep the item in the "item" field. Documents stored before this
+ * codec existed keep Base64 text in "itemData", and both are read.
+ */
+public final class ItemCodec {
+
+    /** The field holding the binary item. */
+    public static final String FIELD = "item";
+    /** The field holding the Base64 item of documents stored before the binary format. */
+    public static final String LEGACY_FIELD = "itemData";
+
+    private static final byte FORMAT_PLAIN = 1;
+    private static final byte FORMAT_DEFLATED = 2;
+    // Setting up a deflater costs more than decoding a small item, so only long lore or book pages are deflated.
+    private static final int DEFLATE_THRESHOLD = 1024;
+
+    private static final int NULL = 0;
+    private static final int STRING = 1;
+    private static final int STRING_REF = 2;
+    private static final int INT = 3;
+    private static final int LONG = 4;
+    private static final int DOUBLE = 5;
+    private static final int FLOAT = 6;
+    private static final int SHORT = 7;
+    private static final int BYTE = 8;
+    private static final int TRUE = 9;
+    private static final int FALSE = 10;
+    private static final int LIST = 11;
+    private static final int MAP = 12;
+
+    private ItemCodec() {
+    }
+
+    /**
+     * Stores an item in a document, in the binary format when it can be
+     * encoded and as Base64 otherwise.
+     *
+     * @param doc  The listing or transaction document.
+     * @param item The item.
+     * @return The document.
+     */
+    public static Document write(Document doc, ItemStack item) {
+        try {
+            return doc.append(FIELD, new Binary(encode(item)));
+        } catch (IllegalArgumentException e) {
+            // Meta holding a value the format has no tag for still round-trips through Bukkit's streams.
+            return doc.append(LEGACY_FIELD, Base64ItemStack.encode(item));
+        }
+    }
+
+    /**
+     * Returns the stored item data of a document, in whichever format it was stored.
+     *
+     * @param doc The listing or transaction document.
+     * @return A {@link Binary} or a Base64 String, or null if the document holds no item.
+     */
+    public static Object data(Document doc) {
+        Object item = doc.get(FIELD);
+        if (item instanceof Binary) return item;
+        if (item instanceof byte[] bytes) return new Binary(bytes);
+        return doc.getString(LEGACY_FIELD);
+    }
+
+    /**
+     * @param doc The listing or transaction document.
+     * @return True if the document holds an item in either format.
+     */
+    public static boolean hasItem(Document doc) {
+        return data(doc) != null;
+    }
+
+    /**
+     * Decodes the item of a document.
+     *
+     * @param doc The listing or transaction document.
+     * @return The item.
+     */
+    public static ItemStack read(Document doc) {
+        return decode(data(doc));
+    }
+
+    /**
+     * Decodes item data returned by {@link #data(Document)}.
+     *
+     * @param data A {@link Binary} or a Base64 String.
+     * @return The item.
+     */
+    public static ItemStack decode(Object data) {
+        if (data instanceof Binary binary) return decode(binary.getData());
+        if (data instanceof String base64) return Base64ItemStack.decode(base64);
+        throw new IllegalArgumentException("No item data");
+    }
+
+    /**
+     * @param data A {@link Binary} or a Base64 String.
+     * @return The size of the data, in bytes or characters.
+     */
+    public static int size(Object data) {
+        if (data instanceof Binary binary) return binary.length();
+        return data instanceof String base64 ? base64.length() : 0;
+    }
+
+    /**
+     * Encodes an item in the binary format.
+     *
+     * @param item The item.
+     * @return The encoded item.
+     * @throws IllegalArgumentException If the item's meta holds a value the format cannot store.
+     */
+    public static byte[] encode(ItemStack item) {
+        try {
+            ByteArrayOutputStream plain = new ByteArrayOutputStream(128);
+            plain.write(FORMAT_PLAIN);
+            new Writer(new DataOutputStream(plain)).writeValue(item);
+            if (plain.size() < DEFLATE_THRESHOLD) return plain.toByteArray();
+
+            byte[] body = plain.toByteArray();
+            ByteArrayOutputStream deflated = new ByteArrayOutputStream(body.length / 2);
+            deflated.write(FORMAT_DEFLATED);
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try (DeflaterOutputStream out = new DeflaterOutputStream(deflated, deflater)) {
+                out.write(body, 1, body.length - 1);
+            } finally {
+                deflater.end();
+            }
+            return deflated.size() < body.length ? deflated.toByteArray() : body;
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Decodes an item written by {@link #encode(ItemStack)}.
+     *
+     * @param encoded The encoded item.
+     * @return The item.
+     * @throws IllegalArgumentException If the data is not in a known format.
+     */
+    public static ItemStack decode(byte[] encoded) {
+        if (encoded.length == 0) throw new IllegalArgumentException("Empty item data");
+        InputStream body = new ByteArrayInputStream(encoded, 1, encoded.length - 1);
+        if (encoded[0] == FORMAT_DEFLATED) {
+            body = new InflaterInputStream(body);
+        } else if (encoded[0] != FORMAT_PLAIN) {
+            throw new IllegalArgumentException("Unknown item format " + encoded[0]);
+        }
+
+        // Closing the stream releases the inflater's native memory.
+        try (DataInputStream in = new DataInputStream(body)) {
+            Object value = new Reader(in).readValue();
+            if (!(value instanceof ItemStack item)) throw new IllegalArgumentException("Item data holds no item");
+            return item;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Corrupt item data", e);
+        }
+    }
+
+    private static final class Writer {
+        private final DataOutputStream out;
+        private final Map<String, Integer> strings = new HashMap<>();
+
+        Writer(DataOutputStream out) {
+            this.out = out;
+        }
+
+        void writeValue(Object value) throws IOException {
+            switch (value) {
+                case null -> out.writeByte(NULL);
+                case String string -> writeString(string);
+                case Integer number -> {
+                    out.writeByte(INT);
+                    writeVarLong(number);
+                }
+                case Long number -> {
+                    out.writeByte(LONG);
+                    writeVarLong(number);
+                }
+                case Double number -> {
+                    out.writeByte(DOUBLE);
+                    out.writeDouble(number);
+                }
+                case Float number -> {
+                    out.writeByte(FLOAT);
+                    out.writeFloat(number);
+                }
+                case Short number -> {
+                    out.writeByte(SHORT);
+                    out.writeShort(number);
+                }
+                case Byte number -> {
+                    out.writeByte(BYTE);
+                    out.writeByte(number);
+                }
+                case Boolean bool -> out.writeByte(bool ? TRUE : FALSE);
+                case Collection<?> collection -> {
+                    out.writeByte(LIST);
+                    writeVarLong(collection.size());
+                    for (Object element : collection) {
+                        writeValue(element);
+                    }
+                }
+                case Map<?, ?> map -> {
+                    out.writeByte(MAP);
+                    writeVarLong(map.size());
+                    for (Map.Entry<?, ?> entry : map.entrySet()) {
+                        // Keys are read back as strings, so any other key would come back changed.
+                        if (!(entry.getKey() instanceof String key)) {
+                            throw new IllegalArgumentException("Cannot encode map key " + entry.getKey());
+                        }
+                        writeString(key);
+                        writeValue(entry.getValue());
+                    }
+                }
+                case ConfigurationSerializable serializable -> {
+                    // Written like Bukkit's own streams write it, as its values plus the alias it is read back by.
+                    Map<String, Object> values = serializable.serialize();
+                    out.writeByte(MAP);
+                    writeVarLong(values.size() + 1);
+                    writeString(ConfigurationSerialization.SERIALIZED_TYPE_KEY);
+                    writeString(ConfigurationSerialization.getAlias(serializable.getClass()));
+                    for (Map.Entry<String, Object> entry : values.entrySet()) {
+                        writeString(entry.getKey());
+                        writeValue(entry.getValue());
+                    }
+                }
+                default -> throw new IllegalArgumentException("Cannot encode " + value.getClass().getName());
+            }
+        }
+
+        private void writeString(String string) throws IOException {
+            Integer index = strings.get(string);
+            if (index != null) {
+                out.writeByte(STRING_REF);
+                writeVarLong(index);
+                return;
+            }
+            strings.put(string, strings.size());
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            out.writeByte(STRING);
+            writeVarLong(bytes.length);
+            out.write(bytes);
+        }
+
+        // Zigzag encoded, so small negative numbers stay short too.
+        private void writeVarLong(long value) throws IOException {
+            long zigzag = (value << 1) ^ (value >> 63);
+            while ((zigzag & ~0x7FL) != 0) {
+                out.writeByte((int) (zigzag & 0x7F) | 0x80);
+                zigzag >>>= 7;
+            }
+            out.writeByte((int) zigzag);
+        }
+    }
+
+    private static final class Reader {
+        private final DataInputStream in;
+        private final List<String> strings = new ArrayList<>();
+
+        Reader(DataInputStream in) {
+            this.in = in;
+        }
+
+        Object readValue() throws IOException {
+            int tag = in.readUnsignedByte();
+            return switch (tag) {
+                case NULL -> null;
+                case STRING -> {
+                    byte[] bytes = new byte[readLength()];
+                    in.readFully(bytes);
+                    String string = new String(bytes, StandardCharsets.UTF_8);
+                    strings.add(string);
+                    yield string;
+                }
+                case STRING_REF -> {
+                    int index = readLength();
+                    if (index >= strings.size()) throw new IOException("Unknown string " + index);
+                    yield strings.get(index);
+                }
+                case INT -> (int) readVarLong();
+                case LONG -> readVarLong();
+                case DOUBLE -> in.readDouble();
+                case FLOAT -> in.readFloat();
+                case SHORT -> in.readShort();
+                case BYTE -> in.readByte();
+                case TRUE -> true;
+                case FALSE -> false;
+                case LIST -> {
+                    int size = readLength();
+                    List<Object> list = new ArrayList<>(Math.min(size, 64));
+                    for (int i = 0; i < size; i++) {
+                        list.add(readValue());
+                    }
+                    yield list;
+                }
+                case MAP -> readMap();
+                default -> throw new IOException("Unknown tag " + tag);
+            };
+        }
+
+        private Object readMap() throws IOException {
+            int size = readLength();
+            Map<String, Object> map = new LinkedHashMap<>(Math.min(size, 64) * 2);
+            for (int i = 0; i < size; i++) {
+                Object key = readValue();
+                map.put(String.valueOf(key), readValue());
+            }
+            if (!map.containsKey(ConfigurationSerialization.SERIALIZED_TYPE_KEY)) return map;
+
+            ConfigurationSerializable object = ConfigurationSerialization.deserializeObject(map);
+            if (object == null) throw new IOException("Cannot read " + map.get(ConfigurationSerialization.SERIALIZED_TYPE_KEY));
+            return object;
+        }
+
+        private int readLength() throws IOException {
+            long length = readVarLong();
+            if (length < 0 || length > Integer.MAX_VALUE) throw new IOException("Bad length " + length);
+            return (int) length;
+        }
+
+        private long readVarLong() throws IOException {
+            long zigzag = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = in.readUnsignedByte();
+                zigzag |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return (zigzag >>> 1) ^ -(zigzag & 1);
+            }
+            throw new IOException("Malformed number");
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package me.barnaby.trial.mongo;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.WriteModel;
+import dev.s7a.base64.Base64ItemStack;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.Binary;
+import org.bukkit.inventory.ItemStack;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Background migration that rewrites the Base64 items of listings and
+ * transactions in the binary format of {@link ItemCodec}.
+ *
+ * Documents are walked in _id order in bounded batches and updated with one
+ * unordered bulk write per batch. Each update only matches the item data it
+ * read, so a document changed in the meantime is left alone. Both formats are
+ * read, so the plugin works normally while the migration runs. The Base64
+ * data is only dropped once the binary copy decodes to the same item, so items
+ * the binary format cannot hold, or does not hold exactly, keep it. Completion
+ * is recorded in the "migrations" collection so the walk only happens once.
+ */
+public class ItemFormatMigration implements Runnable {
+
+    private static final String MIGRATION_ID = "item-binary-format";
+    private static final String[] COLLECTIONS = {"itemListings", "transactions"};
+    private static final int BATCH_SIZE = 500;
+
+    private final MongoDBManager mongoDBManager;
+    private final Logger logger;
+    private volatile boolean cancelled;
+    // Items left in Base64 because their binary copy did not read back the same; only touched by the migration thread.
+    private long kept;
+
+    public ItemFormatMigration(MongoDBManager mongoDBManager, Logger logger) {
+        this.mongoDBManager = mongoDBManager;
+        this.logger = logger;
+    }
+
+    /**
+     * Stops the migration after the current batch. It resumes from the start on the next run.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    @Override
+    public void run() {
+        MongoCollection<Document> migrations = mongoDBManager.getCollection("migrations");
+        if (migrations.find(Filters.eq("_id", MIGRATION_ID)).first() != null) return;
+
+        long[] migrated = new long[COLLECTIONS.length];
+        try {
+            for (int i = 0; i < COLLECTIONS.length && !cancelled; i++) {
+                migrated[i] = migrate(COLLECTIONS[i]);
+            }
+        } catch (Exception e) {
+            logger.warning("Item format migration stopped: " + e.getMessage());
+            return;
+        }
+
+        if (cancelled) return;
+        migrations.updateOne(Filters.eq("_id", MIGRATION_ID),
+                Updates.set("completedAt", System.currentTimeMillis()), new UpdateOptions().upsert(true));
+        if (migrated[0] + migrated[1] > 0) {
+            logger.info("Moved " + migrated[0] + " listings and " + migrated[1]
+                    + " transactions to the binary item format.");
+        }
+        if (kept > 0) {
+            logger.warning(kept + " items did not read back the same from the binary item format and were kept as Base64.");
+        }
+    }
+
+    private long migrate(String collectionName) {
+        MongoCollection<Document> collection = mongoDBManager.getCollection(collectionName);
+        boolean listings = collectionName.equals("itemListings");
+        Object lastId = null;
+        long migrated = 0;
+
+        while (!cancelled) {
+            Bson filter = Filters.exists(ItemCodec.LEGACY_FIELD);
+            if (lastId != null) filter = Filters.and(Filters.gt("_id", lastId), filter);
+            List<Document> batch = collection.find(filter)
+                    .projection(Projections.include(ItemCodec.LEGACY_FIELD))
+                    .sort(Sorts.ascending("_id"))
+                    .limit(BATCH_SIZE)
+                    .into(new ArrayList<>());
+            if (batch.isEmpty()) break;
+            lastId = batch.get(batch.size() - 1).get("_id");
+
+            List<WriteModel<Document>> updates = new ArrayList<>();
+            List<Migrated> converted = new ArrayList<>();
+            for (Document doc : batch) {
+                String legacy = doc.getString(ItemCodec.LEGACY_FIELD);
+                Binary item;
+                try {
+                    ItemStack original = Base64ItemStack.decode(legacy);
+                    byte[] encoded = ItemCodec.encode(original);
+                    // Only replace the Base64 data with a copy that reads back as the same item.
+                    if (!original.equals(ItemCodec.decode(encoded))) {
+                        kept++;
+                        continue;
+                    }
+                    item = new Binary(encoded);
+                } catch (Exception e) {
+                    // Undecodable items, and items the binary format cannot hold, stay as they are.
+                    continue;
+                }
+                updates.add(new UpdateOneModel<>(
+                        Filters.and(Filters.eq("_id", doc.get("_id")), Filters.eq(ItemCodec.LEGACY_FIELD, legacy)),
+                        Updates.combine(Updates.set(ItemCodec.FIELD, item), Updates.unset(ItemCodec.LEGACY_FIELD))));
+                converted.add(new Migrated(doc.get("_id"), legacy, item));
+            }
+            if (updates.isEmpty()) continue;
+
+            migrated += collection.bulkWrite(updates, new BulkWriteOptions().ordered(false)).getModifiedCount();
+            if (listings) {
+                // Keep the index in step so the change stream echo of this write is not a change.
+                for (Migrated listing : converted) {
+                    mongoDBManager.getListingIndex().migrateItem(listing.id(), listing.legacy(), listing.item());
+                }
+            }
+        }
+        return migrated;
+    }
+
+    private record Migrated(Object id, String legacy, Binary item) {
+    }
+}
@@ -0,0 +1,115 @@
+package me.barnaby.trial.mongo;
+
+import org.bukkit.inventory.ItemStack;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ItemStackCache keeps decoded ItemStack templates keyed by document _id so
+ * item data only has to be deserialized once per listing or transaction.
+ *
+ * The cache is bounded by the total length of the cached item data and evicts
+ * the least recently used entries first. Callers always receive a clone, so the
+ * cached templates are never modified.
+ */
+public class ItemStackCache {
+
+    private final long maxWeight;
+    private final Map<Object, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private long weight;
+
+    /**
+     * @param maxWeight The maximum total size of cached item data, in bytes or Base64 characters.
+     */
+    public ItemStackCache(long maxWeight) {
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * Returns a copy of the item stored under the given key, decoding and caching it on a miss.
+     * The cached entry is only used if it was decoded from the same item data.
+     *
+     * @param key      The _id of the document holding the item.
+     * @param itemData The item data of the document, as returned by {@link ItemCodec#data}.
+     * @return A clone of the decoded item.
+     */
+    public ItemStack get(Object key, Object itemData) {
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && Objects.equals(entry.itemData, itemData)) {
+                hits.increment();
+                return entry.item.clone();
+            }
+        }
+
+        misses.increment();
+        // Decode outside the lock so other threads are not held up by deserialization.
+        ItemStack item = ItemCodec.decode(itemData);
+        if (key != null) put(key, itemData, item);
+        return item.clone();
+    }
+
+    /**
+     * Removes the entry for a document that was deleted or updated.
+     *
+     * @param key The _id of the document.
+     */
+    public synchronized void invalidate(Object key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) weight -= ItemCodec.size(removed.itemData);
+    }
+
+    /**
+     * Removes every entry.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    /**
+     * @return The number of lookups served from the cache.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return The number of lookups that had to decode the item.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return The number of cached items.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private synchronized void put(Object key, Object itemData, ItemStack item) {
+        // Items larger than the whole cache are never stored.
+        int size = ItemCodec.size(itemData);
+        if (size > maxWeight) return;
+
+        Entry previous = entries.put(key, new Entry(itemData, item));
+        if (previous != null) weight -= ItemCodec.size(previous.itemData);
+        weight += size;
+
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (weight > maxWeight && iterator.hasNext()) {
+            weight -= ItemCodec.size(iterator.next().itemData);
+            iterator.remove();
+        }
+    }
+
+    private record Entry(Object itemData, ItemStack item) {
+    }
+}
@@ -0,0 +1,118 @@
+package me.barnaby.trial.mongo;
+
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Updates;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ListingExpiry ends marketplace listings that have been up for longer than
+ * the configured lifetime and sends their items to the sellers' mailboxes.
+ *
+ * A listing's lifetime runs from its listing time, so each sweep finds the
+ * expired listings with a range query on the listing page index and handles
+ * them in bounded batches. A batch is first marked with a token unique to the
+ * sweep in a single update; purchases, cancels and relists skip marked
+ * listings, so an item can never be both sold and returned. The marked
+ * listings are then copied to the "mailbox" collection and deleted, one bulk
+ * write each. Mail keeps the _id of its listing, so a batch interrupted after
+ * mailing is mailed only once when a later sweep takes over its mark.
+ *
+ * Black market listings are left alone until they return to the marketplace.
+ */
+public class ListingExpiry {
+
+    /** Holds the token of the sweep that is expiring a listing. */
+    static final String MARK_FIELD = "expiringBy";
+    private static final String MARKED_AT_FIELD = "expiringAt";
+    private static final int SWEEP_BATCH = 500;
+    // A mark this old belongs to a server that stopped mid-sweep.
+    private static final long STALE_MARK_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    private static final Bson MAIL_PROJECTION = Projections.include(
+            "playerId", ItemCodec.FIELD, ItemCodec.LEGACY_FIELD, "material", "itemName", "price", "timestamp");
+
+    private final MongoDBManager mongoDBManager;
+
+    public ListingExpiry(MongoDBManager mongoDBManager) {
+        this.mongoDBManager = mongoDBManager;
+    }
+
+    /**
+     * Moves every expired marketplace listing to its seller's mailbox.
+     * Blocking; call it off the server thread, e.g. through
+     * {@link ListingRepository#expireListings(long)}.
+     *
+     * @param lifetimeMillis How long a listing stays up.
+     * @return The UUID strings of the sellers who received mail.
+     */
+    public Set<String> sweep(long lifetimeMillis) {
+        long now = System.currentTimeMillis();
+        MongoCollection<Document> listings = mongoDBManager.getCollection("itemListings");
+        // Listings written before isBlackMarket was always set have no such field.
+        Bson expired = Filters.and(
+                Filters.in("isBlackMarket", false, null),
+                Filters.lte("timestamp", now - lifetimeMillis),
+                Filters.or(Filters.exists(MARK_FIELD, false), Filters.lte(MARKED_AT_FIELD, now - STALE_MARK_MILLIS)));
+
+        Set<String> sellers = new HashSet<>();
+        List<Object> ids;
+        do {
+            ids = listings.find(expired)
+                    .projection(Projections.include("_id"))
+                    .limit(SWEEP_BATCH)
+                    .map(listing -> listing.get("_id"))
+                    .into(new ArrayList<>());
+            if (ids.isEmpty()) break;
+            expire(listings, ids, expired, now, sellers);
+        } while (ids.size() == SWEEP_BATCH);
+        return sellers;
+    }
+
+    private void expire(MongoCollection<Document> listings, List<Object> ids, Bson expired, long now, Set<String> sellers) {
+        String token = UUID.randomUUID().toString();
+        Bson marked = Filters.and(Filters.in("_id", ids), Filters.eq(MARK_FIELD, token));
+        // Re-checks the expiry, so listings bought, relisted or marked by another server since the read are skipped.
+        listings.updateMany(Filters.and(Filters.in("_id", ids), expired),
+                Updates.combine(Updates.set(MARK_FIELD, token), Updates.set(MARKED_AT_FIELD, now)));
+
+        List<Document> mail = new ArrayList<>();
+        for (Document listing : listings.find(marked).projection(MAIL_PROJECTION)) {
+            Document letter = new Document("_id", listing.get("_id"))
+                    .append("playerId", listing.getString("playerId"))
+                    .append("material", listing.getString("material"))
+                    .append("itemName", listing.getString("itemName"))
+                    .append("price", listing.get("price"))
+                    .append("listedAt", listing.get("timestamp"))
+                    .append("createdAt", now);
+            Object item = ItemCodec.data(listing);
+            letter.append(item instanceof String ? ItemCodec.LEGACY_FIELD : ItemCodec.FIELD, item);
+            mail.add(letter);
+        }
+        if (mail.isEmpty()) return;
+
+        try {
+            mongoDBManager.getCollection("mailbox").insertMany(mail, new InsertManyOptions().ordered(false));
+        } catch (MongoBulkWriteException e) {
+            // Mail already sent by an interrupted sweep of the same listings is kept as it is.
+            boolean onlyDuplicates = e.getWriteErrors().stream()
+                    .allMatch(error -> ErrorCategory.fromErrorCode(error.getCode()) == ErrorCategory.DUPLICATE_KEY);
+            if (!onlyDuplicates) throw e;
+        }
+        listings.deleteMany(marked);
+
+        for (Document letter : mail) {
+            Object id = letter.get("_id");
+            mongoDBManager.getListingIndex().remove(id);
+            mongoDBManager.getItemCache().invalidate(id);
+            sellers.add(letter.getString("playerId"));
+        }
+    }
+}
@@ -0,0 +1,348 @@
+package me.barnaby.trial.mongo;
+
+import org.bson.Document;
+import org.bson.types.Binary;
+import org.bukkit.inventory.ItemStack;
+
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * ListingIndex keeps every item listing in memory so the GUIs never have to
+ * scan the "itemListings" collection to render a page.
+ *
+ * Listings are split into a marketplace and a black market partition, each
+ * kept sorted by listing time (then by _id) so a page is a simple slice.
+ * Each partition has a version that changes whenever its contents do, so
+ * anything rendered from a partition can tell when it is stale. Searches by
+ * material, item name and price are answered from the secondary indexes of
+ * a {@link ListingSearchIndex} kept in step with the partitions, and each
+ * seller's listings are kept together so they can be counted and shown
+ * without a scan. All access is synchronized on the index itself.
+ */
+public class ListingIndex {
+
+    // Orders listings by timestamp, falling back to the _id for listings created in the same millisecond.
+    static final Comparator<Document> LISTING_ORDER = Comparator
+            .comparingLong((Document doc) -> doc.get("timestamp", 0L))
+            .thenComparing(doc -> String.valueOf(doc.get("_id")));
+    // Fields that are rendered, sorted on or paid out; two copies of a listing that agree on these are the same.
+    private static final String[] CONTENT_FIELDS = {"playerId", "price", "originalPrice", "item", "itemData", "timestamp"};
+
+    private final Map<Object, Document> listingsById = new HashMap<>();
+    private final List<Document> marketListings = new ArrayList<>();
+    private final List<Document> blackMarketListings = new ArrayList<>();
+    // Every listing of each seller, from both partitions, in listing order.
+    private final Map<String, NavigableSet<Document>> listingsBySeller = new HashMap<>();
+    private long marketVersion;
+    private long blackMarketVersion;
+    private final ListingSearchIndex searchIndex;
+    // Told which partition changed; called while the index is locked, so it must not block.
+    private volatile Consumer<Boolean> changeListener = blackMarket -> { };
+
+    /**
+     * @param itemDecoder Decodes the item of a listing stored without its
+     *                    material and item name, so it can still be searched.
+     */
+    public ListingIndex(Function<Document, ItemStack> itemDecoder) {
+        this.searchIndex = new ListingSearchIndex(itemDecoder);
+    }
+
+    /**
+     * Sets the listener told about every change. It receives true when the
+     * black market partition changed, and is called while the index is locked,
+     * so it must return quickly and must not call back into the index.
+     *
+     * @param changeListener The listener.
+     */
+    public void setChangeListener(Consumer<Boolean> changeListener) {
+        this.changeListener = changeListener;
+    }
+
+    /**
+     * Replaces the contents of the index with the given listings.
+     *
+     * @param listings Every listing currently stored in MongoDB.
+     */
+    public synchronized void load(Collection<Document> listings) {
+        listingsById.clear();
+        marketListings.clear();
+        blackMarketListings.clear();
+        listingsBySeller.clear();
+        searchIndex.clear();
+
+        for (Document listing : listings) {
+            if (listing.get("_id") == null) continue;
+            listingsById.put(listing.get("_id"), listing);
+            partition(listing).add(listing);
+            addToSeller(listing);
+            searchIndex.add(listing);
+        }
+        marketListings.sort(LISTING_ORDER);
+        blackMarketListings.sort(LISTING_ORDER);
+        marketVersion++;
+        blackMarketVersion++;
+        changeListener.accept(false);
+        changeListener.accept(true);
+    }
+
+    /**
+     * Adds a listing to the index, replacing any listing with the same _id.
+     *
+     * @param listing The listing document. Must contain an _id.
+     */
+    public synchronized void add(Document listing) {
+        Object id = listing.get("_id");
+        if (id == null) return;
+
+        remove(id);
+        listingsById.put(id, listing);
+
+        List<Document> partition = partition(listing);
+        int position = Collections.binarySearch(partition, listing, LISTING_ORDER);
+        partition.add(position < 0 ? -position - 1 : position, listing);
+        addToSeller(listing);
+        searchIndex.add(listing);
+        bumpVersion(listing);
+    }
+
+    /**
+     * Adds or replaces a listing unless the indexed copy already has the same
+     * content, so echoes of this server's own writes do not invalidate pages.
+     *
+     * @param listing The listing document. Must contain an _id.
+     * @return True if the index changed.
+     */
+    public synchronized boolean addIfChanged(Document listing) {
+        Document existing = listingsById.get(listing.get("_id"));
+        if (existing != null && sameContent(existing, listing)) return false;
+        add(listing);
+        return true;
+    }
+
+    /**
+     * Replaces a listing after it has been updated in MongoDB.
+     * The listing is moved between partitions if its black market flag changed.
+     *
+     * @param listing The updated listing document.
+     */
+    public synchronized void update(Document listing) {
+        add(listing);
+    }
+
+    /**
+     * Removes a listing from the index.
+     *
+     * @param id The _id of the listing.
+     * @return The removed listing, or null if it was not indexed.
+     */
+    public synchronized Document remove(Object id) {
+        Document existing = listingsById.remove(id);
+        if (existing == null) return null;
+
+        List<Document> partition = partition(existing);
+        int position = Collections.binarySearch(partition, existing, LISTING_ORDER);
+        if (position >= 0) {
+            partition.remove(position);
+        } else {
+            // The stored document was mutated in a way that changed its sort key; fall back to a scan.
+            partition.remove(existing);
+        }
+        removeFromSeller(existing);
+        searchIndex.remove(existing);
+        bumpVersion(existing);
+        return existing;
+    }
+
+    /**
+     * Swaps the Base64 item of an indexed listing for the same item in the
+     * binary format. What the listing renders is unchanged, so its pages are
+     * kept, and the echo of the migration's own write is ignored.
+     *
+     * @param id     The _id of the listing.
+     * @param legacy The Base64 item data the listing was migrated from.
+     * @param item   The migrated item data.
+     */
+    public synchronized void migrateItem(Object id, String legacy, Binary item) {
+        Document listing = listingsById.get(id);
+        if (listing == null || !legacy.equals(listing.get(ItemCodec.LEGACY_FIELD))) return;
+
+        // Indexed documents are read outside the lock, so the copy replaces the original rather than editing it.
+        Document migrated = new Document(listing);
+        migrated.remove(ItemCodec.LEGACY_FIELD);
+        migrated.put(ItemCodec.FIELD, item);
+        List<Document> partition = partition(listing);
+        int position = Collections.binarySearch(partition, listing, LISTING_ORDER);
+        if (position < 0 || partition.get(position) != listing) return;
+        partition.set(position, migrated);
+        listingsById.put(id, migrated);
+        removeFromSeller(listing);
+        addToSeller(migrated);
+        searchIndex.remove(listing);
+        searchIndex.add(migrated);
+    }
+
+    /**
+     * Retrieves a listing by its _id.
+     *
+     * @param id The _id of the listing.
+     * @return The listing document, or null if it is not indexed.
+     */
+    public synchronized Document get(Object id) {
+        return listingsById.get(id);
+    }
+
+    /**
+     * Returns the _id of every indexed listing.
+     *
+     * @return A copy of the indexed ids.
+     */
+    public synchronized Set<Object> getIds() {
+        return new HashSet<>(listingsById.keySet());
+    }
+
+    /**
+     * Returns one page of listings from the requested partition.
+     *
+     * @param blackMarket True for the black market partition.
+     * @param offset      Index of the first listing to return.
+     * @param limit       Maximum number of listings to return.
+     * @return A copy of the requested slice; empty if the offset is past the end.
+     */
+    public synchronized List<Document> getPage(boolean blackMarket, int offset, int limit) {
+        List<Document> partition = blackMarket ? blackMarketListings : marketListings;
+        if (offset < 0 || offset >= partition.size() || limit <= 0) return Collections.emptyList();
+        return new ArrayList<>(partition.subList(offset, Math.min(partition.size(), offset + limit)));
+    }
+
+    /**
+     * Returns a snapshot of every listing in the requested partition.
+     *
+     * @param blackMarket True for the black market partition.
+     * @return A copy of the partition in listing order.
+     */
+    public synchronized List<Document> getAll(boolean blackMarket) {
+        return new ArrayList<>(blackMarket ? blackMarketListings : marketListings);
+    }
+
+    /**
+     * Finds the listings of a partition matching a query, using the secondary
+     * indexes rather than scanning the partition where it can.
+     *
+     * @param query The query.
+     * @return The matching listings in the query's order.
+     */
+    public synchronized List<Document> search(ListingQuery query) {
+        return searchIndex.search(query, query.blackMarket() ? blackMarketListings : marketListings);
+    }
+
+    /**
+     * Returns the number of listings a seller has, on the marketplace and the
+     * black market together. Takes constant time.
+     *
+     * @param playerId The UUID string of the seller.
+     * @return The number of listings.
+     */
+    public synchronized int countBySeller(String playerId) {
+        NavigableSet<Document> listings = listingsBySeller.get(playerId);
+        return listings == null ? 0 : listings.size();
+    }
+
+    /**
+     * Returns every listing of a seller, on the marketplace and the black market.
+     *
+     * @param playerId The UUID string of the seller.
+     * @return A copy of the seller's listings in listing order.
+     */
+    public synchronized List<Document> getBySeller(String playerId) {
+        NavigableSet<Document> listings = listingsBySeller.get(playerId);
+        return listings == null ? new ArrayList<>() : new ArrayList<>(listings);
+    }
+
+    /**
+     * Picks distinct listings uniformly at random from a partition. Uses
+     * Floyd's algorithm, so it takes O(count) time whatever the partition size.
+     *
+     * @param blackMarket True for the black market partition.
+     * @param count       The number of listings wanted.
+     * @param random      The source of randomness.
+     * @return Up to {@code count} listings; fewer only if the partition is smaller.
+     */
+    public synchronized List<Document> sample(boolean blackMarket, int count, Random random) {
+        List<Document> partition = blackMarket ? blackMarketListings : marketListings;
+        int size = partition.size();
+        int sampleSize = Math.min(Math.max(count, 0), size);
+
+        Set<Integer> picked = new LinkedHashSet<>(sampleSize * 2);
+        for (int bound = size - sampleSize; bound < size; bound++) {
+            int position = random.nextInt(bound + 1);
+            if (!picked.add(position)) picked.add(bound);
+        }
+
+        List<Document> sample = new ArrayList<>(sampleSize);
+        for (int position : picked) {
+            sample.add(partition.get(position));
+        }
+        return sample;
+    }
+
+    /**
+     * Returns the number of listings in the requested partition.
+     *
+     * @param blackMarket True for the black market partition.
+     * @return The partition size.
+     */
+    public synchronized int size(boolean blackMarket) {
+        return blackMarket ? blackMarketListings.size() : marketListings.size();
+    }
+
+    /**
+     * Returns the version of the requested partition. It changes every time a
+     * listing is added to or removed from the partition.
+     *
+     * @param blackMarket True for the black market partition.
+     * @return The partition version.
+     */
+    public synchronized long getVersion(boolean blackMarket) {
+        return blackMarket ? blackMarketVersion : marketVersion;
+    }
+
+    private void bumpVersion(Document listing) {
+        boolean blackMarket = listing.getBoolean("isBlackMarket", false);
+        if (blackMarket) {
+            blackMarketVersion++;
+        } else {
+            marketVersion++;
+        }
+        changeListener.accept(blackMarket);
+    }
+
+    private void addToSeller(Document listing) {
+        String playerId = listing.getString("playerId");
+        if (playerId == null) return;
+        listingsBySeller.computeIfAbsent(playerId, k -> new TreeSet<>(LISTING_ORDER)).add(listing);
+    }
+
+    private void removeFromSeller(Document listing) {
+        String playerId = listing.getString("playerId");
+        NavigableSet<Document> listings = playerId == null ? null : listingsBySeller.get(playerId);
+        if (listings == null) return;
+        if (!listings.remove(listing)) {
+            // The stored document was mutated in a way that changed its sort key; fall back to a scan.
+            listings.removeIf(indexed -> indexed == listing);
+        }
+        if (listings.isEmpty()) listingsBySeller.remove(playerId);
+    }
+
+    private static boolean sameContent(Document a, Document b) {
+        for (String field : CONTENT_FIELDS) {
+            if (!Objects.equals(a.get(field), b.get(field))) return false;
+        }
+        return a.getBoolean("isBlackMarket", false) == b.getBoolean("isBlackMarket", false);
+    }
+
+    private List<Document> partition(Document listing) {
+        return listing.getBoolean("isBlackMarket", false) ? blackMarketListings : marketListings;
+    }
+}
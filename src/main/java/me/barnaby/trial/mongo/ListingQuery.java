@@ -0,0 +1,70 @@
+package me.barnaby.trial.mongo;
+
+/**
+ * A search over one partition of the listing index, answered by
+ * {@link ListingIndex#search(ListingQuery)}.
+ *
+ * @param blackMarket True to search the black market.
+ * @param text        A material or words of the item name, or null to match every listing.
+ * @param minPrice    The lowest price matched.
+ * @param maxPrice    The highest price matched.
+ * @param sort        The order of the results.
+ */
+public record ListingQuery(boolean blackMarket, String text, double minPrice, double maxPrice, Sort sort) {
+
+    /**
+     * @param blackMarket True for the black market.
+     * @return A query matching every listing of the partition, in listing order.
+     */
+    public static ListingQuery all(boolean blackMarket) {
+        return new ListingQuery(blackMarket, null, 0, Double.MAX_VALUE, Sort.LISTED);
+    }
+
+    /**
+     * @param sort The new order.
+     * @return This query with another order.
+     */
+    public ListingQuery withSort(Sort sort) {
+        return new ListingQuery(blackMarket, text, minPrice, maxPrice, sort);
+    }
+
+    /**
+     * @return True if the query returns the whole partition in listing order,
+     *         so its pages can be sliced straight from the partition.
+     */
+    public boolean isUnfiltered() {
+        return text == null && minPrice <= 0 && maxPrice == Double.MAX_VALUE && sort == Sort.LISTED;
+    }
+
+    /**
+     * The orders search results can be shown in.
+     */
+    public enum Sort {
+        LISTED("Oldest first"),
+        NEWEST("Newest first"),
+        PRICE_ASCENDING("Price: low to high"),
+        PRICE_DESCENDING("Price: high to low"),
+        SELLER("Seller");
+
+        private final String label;
+
+        Sort(String label) {
+            this.label = label;
+        }
+
+        /**
+         * @return The name shown to players.
+         */
+        public String label() {
+            return label;
+        }
+
+        /**
+         * @return The order after this one, wrapping around.
+         */
+        public Sort next() {
+            Sort[] sorts = values();
+            return sorts[(ordinal() + 1) % sorts.length];
+        }
+    }
+}
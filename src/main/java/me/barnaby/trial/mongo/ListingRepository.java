@@ -0,0 +1,147 @@
+package me.barnaby.trial.mongo;
+
+import org.bson.Document;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * ListingRepository exposes the item listing operations of {@link MongoDBManager}
+ * as CompletableFutures that run on the MongoDB executor, so callers on the
+ * server thread never wait on a database round trip.
+ *
+ * Callers that touch players or inventories with the result should continue on
+ * {@link me.barnaby.trial.MarketPlace#getMainThreadExecutor()}.
+ */
+public class ListingRepository {
+
+    private final MongoDBManager mongoDBManager;
+    private final Executor executor;
+
+    public ListingRepository(MongoDBManager mongoDBManager, Executor executor) {
+        this.mongoDBManager = mongoDBManager;
+        this.executor = executor;
+    }
+
+    /**
+     * Inserts a new item listing.
+     *
+     * @param listing The listing document to insert.
+     * @return A future completed with the inserted document, including its _id.
+     */
+    public CompletableFuture<Document> insert(Document listing) {
+        return CompletableFuture.supplyAsync(() -> {
+            mongoDBManager.insertItemListing(listing);
+            return listing;
+        }, executor);
+    }
+
+    /**
+     * Inserts a new item listing unless its seller already has as many as allowed.
+     * The seller's listings are counted in MongoDB, so listings made on other
+     * servers count too; two listings made at the same moment can still both pass.
+     *
+     * @param listing The listing document to insert.
+     * @param limit   The most listings the seller may have; negative for no limit.
+     * @return A future completed with the inserted document, or null if the seller is at the limit.
+     */
+    public CompletableFuture<Document> insert(Document listing, int limit) {
+        return CompletableFuture.supplyAsync(() -> {
+            if (limit >= 0 && mongoDBManager.countItemListings(listing.getString("playerId"), limit) >= limit) {
+                return null;
+            }
+            mongoDBManager.insertItemListing(listing);
+            return listing;
+        }, executor);
+    }
+
+    /**
+     * Deletes an item listing. The listing is removed from the listing index
+     * straight away so it disappears from the GUIs, and the delete is batched
+     * with other writes on the write-behind queue.
+     *
+     * @param id The _id of the listing.
+     * @return A future completed once the listing has been deleted.
+     * @see MongoDBManager#deleteItemListing(Object)
+     */
+    public CompletableFuture<Void> delete(Object id) {
+        return mongoDBManager.deleteItemListing(id);
+    }
+
+    /**
+     * Atomically claims a listing for a purchase.
+     *
+     * @param id            The _id of the listing.
+     * @param expectedPrice The price the buyer agreed to.
+     * @return A future completed with the claimed listing, or null if it was already taken or repriced.
+     * @see MongoDBManager#claimItemListing(Object, double)
+     */
+    public CompletableFuture<Document> claim(Object id, double expectedPrice) {
+        return CompletableFuture.supplyAsync(() -> mongoDBManager.claimItemListing(id, expectedPrice), executor);
+    }
+
+    /**
+     * Gives a marketplace listing a new listing time.
+     *
+     * @param id       The _id of the listing.
+     * @param listedAt The listing time the seller saw.
+     * @return A future completed with the relisted listing, or null if it was bought, moved or changed.
+     * @see MongoDBManager#relistItemListing(Object, long)
+     */
+    public CompletableFuture<Document> relist(Object id, long listedAt) {
+        return CompletableFuture.supplyAsync(() -> mongoDBManager.relistItemListing(id, listedAt), executor);
+    }
+
+    /**
+     * Puts a claimed listing back after a purchase could not be completed.
+     *
+     * @param listing The claimed listing.
+     * @return A future completed once the listing has been restored.
+     */
+    public CompletableFuture<Void> restore(Document listing) {
+        return CompletableFuture.runAsync(() -> mongoDBManager.restoreItemListing(listing), executor);
+    }
+
+    /**
+     * Moves random marketplace listings to the black market.
+     * Pass the result to {@link BlackMarketRotation#notifySellers} on the server thread.
+     *
+     * @return A future completed with the outcome of the rotation.
+     */
+    public CompletableFuture<BlackMarketRotation.Result> rotateBlackMarket() {
+        return CompletableFuture.supplyAsync(mongoDBManager.getBlackMarketRotation()::rotate, executor);
+    }
+
+    /**
+     * Returns expired black market listings to the marketplace at their original price.
+     *
+     * @return A future completed with the number of listings returned.
+     * @see BlackMarketExpiry#sweep()
+     */
+    public CompletableFuture<Integer> expireBlackMarket() {
+        return CompletableFuture.supplyAsync(mongoDBManager.getBlackMarketExpiry()::sweep, executor);
+    }
+
+    /**
+     * Moves expired marketplace listings to their sellers' mailboxes.
+     *
+     * @param lifetimeMillis How long a listing stays up.
+     * @return A future completed with the UUID strings of the sellers who received mail.
+     * @see ListingExpiry#sweep(long)
+     */
+    public CompletableFuture<Set<String>> expireListings(long lifetimeMillis) {
+        return CompletableFuture.supplyAsync(() -> mongoDBManager.getListingExpiry().sweep(lifetimeMillis), executor);
+    }
+
+    /**
+     * Runs the scheduled black market rotations that are due, if this server wins the schedule's lease.
+     *
+     * @return A future completed with the rotations that ran; empty if none did.
+     * @see BlackMarketSchedule#runIfDue()
+     */
+    public CompletableFuture<List<BlackMarketRotation.Result>> runDueBlackMarketRotations() {
+        return CompletableFuture.supplyAsync(mongoDBManager.getBlackMarketSchedule()::runIfDue, executor);
+    }
+}
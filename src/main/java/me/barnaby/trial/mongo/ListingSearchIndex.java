@@ -0,0 +1,262 @@
+package me.barnaby.trial.mongo;
+
+import me.barnaby.trial.util.ListingUtil;
+import org.bson.Document;
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * ListingSearchIndex holds the secondary indexes {@link ListingIndex} uses to
+ * answer searches without scanning a partition: listings by material, by
+ * word of their item name, and by price.
+ *
+ * Words are kept sorted, so a query word matches every indexed word it is a
+ * prefix of. The listings of a material or word are kept in listing order,
+ * so most searches only visit the listings they return. Not thread safe;
+ * the listing index calls it while locked.
+ */
+class ListingSearchIndex {
+
+    private static final Comparator<Document> PRICE_ORDER = Comparator
+            .comparingDouble((Document doc) -> doc.get("price", 0.0))
+            .thenComparing(ListingIndex.LISTING_ORDER);
+
+    // Decodes listings stored before their material and item name were.
+    private final Function<Document, ItemStack> itemDecoder;
+    private final Map<Object, Keys> keysById = new HashMap<>();
+    private final Partition market = new Partition();
+    private final Partition blackMarket = new Partition();
+
+    ListingSearchIndex(Function<Document, ItemStack> itemDecoder) {
+        this.itemDecoder = itemDecoder;
+    }
+
+    void clear() {
+        keysById.clear();
+        market.clear();
+        blackMarket.clear();
+    }
+
+    void add(Document listing) {
+        Keys keys = keys(listing);
+        keysById.put(listing.get("_id"), keys);
+        partition(listing).add(listing, keys);
+    }
+
+    void remove(Document listing) {
+        Keys keys = keysById.remove(listing.get("_id"));
+        if (keys != null) partition(listing).remove(listing, keys);
+    }
+
+    /**
+     * Runs a query against its partition.
+     *
+     * @param query    The query.
+     * @param inOrder  Every listing of the partition in listing order.
+     * @return The matching listings in the query's order.
+     */
+    List<Document> search(ListingQuery query, List<Document> inOrder) {
+        Partition partition = query.blackMarket() ? blackMarket : market;
+        List<Document> results = new ArrayList<>();
+        if (query.text() == null) {
+            // The whole partition is already ordered by listing time and by price.
+            switch (query.sort()) {
+                case LISTED, NEWEST -> {
+                    for (Document listing : query.sort() == ListingQuery.Sort.NEWEST ? inOrder.reversed() : inOrder) {
+                        if (inPriceRange(listing, query)) results.add(listing);
+                    }
+                    return results;
+                }
+                case PRICE_ASCENDING, PRICE_DESCENDING -> {
+                    // Only the listings within the price range are visited.
+                    NavigableSet<Document> range = partition.byPrice.subSet(
+                            new Document("price", query.minPrice()).append("timestamp", Long.MIN_VALUE), true,
+                            new Document("price", query.maxPrice()).append("timestamp", Long.MAX_VALUE), true);
+                    results.addAll(query.sort() == ListingQuery.Sort.PRICE_DESCENDING ? range.descendingSet() : range);
+                    return results;
+                }
+                default -> {
+                    for (Document listing : inOrder) {
+                        if (inPriceRange(listing, query)) results.add(listing);
+                    }
+                    return sort(results, query.sort());
+                }
+            }
+        }
+
+        // Matches are kept in listing order, so only the other orders need a sort.
+        NavigableSet<Document> matches = partition.match(query.text());
+        for (Document listing : query.sort() == ListingQuery.Sort.NEWEST ? matches.descendingSet() : matches) {
+            if (inPriceRange(listing, query)) results.add(listing);
+        }
+        if (query.sort() == ListingQuery.Sort.LISTED || query.sort() == ListingQuery.Sort.NEWEST) return results;
+        return sort(results, query.sort());
+    }
+
+    private static boolean inPriceRange(Document listing, ListingQuery query) {
+        double price = listing.get("price", 0.0);
+        return price >= query.minPrice() && price <= query.maxPrice();
+    }
+
+    /**
+     * Sorts listings by a key read once per listing, so comparisons do not
+     * look fields up; ties fall back to listing order.
+     */
+    private static List<Document> sort(List<Document> listings, ListingQuery.Sort sort) {
+        List<SortEntry> entries = new ArrayList<>(listings.size());
+        for (Document listing : listings) {
+            entries.add(switch (sort) {
+                case LISTED, NEWEST -> new SortEntry(listing, listing.get("timestamp", 0L), null);
+                // Prices are never negative, so their bits sort in the same order as the prices.
+                case PRICE_ASCENDING, PRICE_DESCENDING ->
+                        new SortEntry(listing, Double.doubleToLongBits(listing.get("price", 0.0)), null);
+                case SELLER -> new SortEntry(listing, 0, String.valueOf(
+                        listing.get("sellerName", listing.getString("playerId"))).toLowerCase(Locale.ROOT));
+            });
+        }
+
+        Comparator<SortEntry> order = Comparator.comparingLong(SortEntry::key);
+        if (sort == ListingQuery.Sort.SELLER) {
+            order = Comparator.comparing(SortEntry::text).thenComparing(entry -> entry.listing().get("price", 0.0));
+        }
+        order = order.thenComparing(SortEntry::listing, ListingIndex.LISTING_ORDER);
+        if (sort == ListingQuery.Sort.NEWEST || sort == ListingQuery.Sort.PRICE_DESCENDING) order = order.reversed();
+        entries.sort(order);
+
+        List<Document> sorted = new ArrayList<>(entries.size());
+        for (SortEntry entry : entries) {
+            sorted.add(entry.listing());
+        }
+        return sorted;
+    }
+
+    private Keys keys(Document listing) {
+        String material = listing.getString("material");
+        String itemName = listing.getString("itemName");
+        if (material == null || itemName == null) {
+            try {
+                ItemStack item = itemDecoder.apply(listing);
+                material = item.getType().name();
+                itemName = ListingUtil.searchName(item);
+            } catch (Exception e) {
+                // Undecodable listings can still be found by price.
+                material = Material.AIR.name();
+                itemName = "";
+            }
+        }
+
+        Set<String> words = new HashSet<>(words(itemName));
+        words.addAll(words(material));
+        return new Keys(material, words);
+    }
+
+    /**
+     * Splits text into lower case words.
+     *
+     * @param text The text.
+     * @return The words, in order.
+     */
+    static List<String> words(String text) {
+        List<String> words = new ArrayList<>();
+        for (String word : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) words.add(word);
+        }
+        return words;
+    }
+
+    private Partition partition(Document listing) {
+        return listing.getBoolean("isBlackMarket", false) ? blackMarket : market;
+    }
+
+    private record Keys(String material, Set<String> words) {
+    }
+
+    private record SortEntry(Document listing, long key, String text) {
+    }
+
+    private static final class Partition {
+        private final Map<String, NavigableSet<Document>> byMaterial = new HashMap<>();
+        private final NavigableMap<String, NavigableSet<Document>> byWord = new TreeMap<>();
+        private final NavigableSet<Document> byPrice = new TreeSet<>(PRICE_ORDER);
+
+        void clear() {
+            byMaterial.clear();
+            byWord.clear();
+            byPrice.clear();
+        }
+
+        void add(Document listing, Keys keys) {
+            byMaterial.computeIfAbsent(keys.material(), k -> new TreeSet<>(ListingIndex.LISTING_ORDER)).add(listing);
+            for (String word : keys.words()) {
+                byWord.computeIfAbsent(word, k -> new TreeSet<>(ListingIndex.LISTING_ORDER)).add(listing);
+            }
+            byPrice.add(listing);
+        }
+
+        void remove(Document listing, Keys keys) {
+            removeFrom(byMaterial, keys.material(), listing);
+            for (String word : keys.words()) {
+                removeFrom(byWord, word, listing);
+            }
+            removeFrom(byPrice, listing);
+        }
+
+        /**
+         * Finds the listings of a material, or else the listings whose name
+         * has a word starting with each word of the text, in listing order.
+         * The returned set may be one of the index's own and must not be modified.
+         */
+        NavigableSet<Document> match(String text) {
+            Material material = Material.matchMaterial(text);
+            if (material != null) return byMaterial.getOrDefault(material.name(), Collections.emptyNavigableSet());
+
+            NavigableSet<Document> matches = null;
+            for (String word : words(text)) {
+                NavigableSet<Document> wordMatches = prefixMatch(word);
+                if (matches == null) {
+                    matches = wordMatches;
+                } else {
+                    // Probe the larger set with the members of the smaller one.
+                    NavigableSet<Document> smaller = matches.size() <= wordMatches.size() ? matches : wordMatches;
+                    NavigableSet<Document> larger = smaller == matches ? wordMatches : matches;
+                    NavigableSet<Document> both = new TreeSet<>(ListingIndex.LISTING_ORDER);
+                    for (Document listing : smaller) {
+                        if (larger.contains(listing)) both.add(listing);
+                    }
+                    matches = both;
+                }
+                if (matches.isEmpty()) break;
+            }
+            return matches == null ? Collections.emptyNavigableSet() : matches;
+        }
+
+        private NavigableSet<Document> prefixMatch(String word) {
+            Collection<NavigableSet<Document>> listings =
+                    byWord.subMap(word, true, word + Character.MAX_VALUE, false).values();
+            // A whole word usually matches one entry; share it rather than copying.
+            if (listings.size() == 1) return listings.iterator().next();
+            NavigableSet<Document> union = new TreeSet<>(ListingIndex.LISTING_ORDER);
+            for (NavigableSet<Document> wordListings : listings) {
+                union.addAll(wordListings);
+            }
+            return union;
+        }
+
+        private static void removeFrom(Map<String, NavigableSet<Document>> index, String key, Document listing) {
+            NavigableSet<Document> listings = index.get(key);
+            if (listings == null) return;
+            removeFrom(listings, listing);
+            if (listings.isEmpty()) index.remove(key);
+        }
+
+        private static void removeFrom(NavigableSet<Document> listings, Document listing) {
+            if (!listings.remove(listing)) {
+                // The document was mutated in a way that changed its sort key; fall back to a scan.
+                listings.removeIf(indexed -> indexed == listing);
+            }
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package me.barnaby.trial.mongo;
+
+import com.mongodb.MongoCommandException;
+import com.mongodb.MongoException;
+import com.mongodb.client.ChangeStreamIterable;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentReader;
+import org.bson.BsonTimestamp;
+import org.bson.Document;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.DocumentCodec;
+import org.bson.conversions.Bson;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * ListingSync keeps the listing index in step with listings written by other
+ * servers sharing the database.
+ *
+ * On a replica set it follows a change stream on "itemListings" and resumes
+ * from the last seen event after a network error. Standalone servers do not
+ * support change streams, so it falls back to polling. Every write to a listing
+ * sets {@link #UPDATED_AT_FIELD}, so each poll reads only the fields that can
+ * change of listings changed since the last one, and only listings that are
+ * new to this server are fetched in full. Deletes leave nothing to poll for;
+ * a rarer reconcile reads every listing in one pass in _id order and removes
+ * the listings that are gone. It runs on its own interval, and sooner when the
+ * number of stored listings no longer matches the index.
+ */
+public class ListingSync implements Runnable {
+
+    /** Holds when a listing was inserted or last had a field the index holds changed. */
+    static final String UPDATED_AT_FIELD = "updatedAt";
+
+    // Returned by standalone servers for $changeStream.
+    private static final int CHANGE_STREAMS_UNSUPPORTED = 40573;
+    // The resume point fell off the oplog; the index has to be rebuilt.
+    private static final Set<Integer> HISTORY_LOST = Set.of(280, 286);
+    // The fields of a listing that can change after it is inserted.
+    private static final List<String> POLL_FIELDS =
+            List.of("price", "originalPrice", "isBlackMarket", "blackMarketUntil", "timestamp");
+    private static final Bson POLL_PROJECTION = Projections.include(POLL_FIELDS);
+    private static final Bson CHANGES_PROJECTION = Projections.fields(POLL_PROJECTION, Projections.include(UPDATED_AT_FIELD));
+    // Change times come from the clock of the server that wrote them; polls look this far back to allow for skew.
+    private static final long CLOCK_SKEW_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    // The soonest a reconcile runs again when the listing count disagrees with the index.
+    private static final long EARLY_RECONCILE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    private static final int POLL_BATCH = 1000;
+    private static final DocumentCodec DOCUMENT_CODEC = new DocumentCodec();
+
+    private final MongoDBManager mongoDBManager;
+    private final Logger logger;
+    private final long pollIntervalMillis;
+    private final long reconcileIntervalMillis;
+    private volatile boolean running;
+    private Thread thread;
+    // Where the change stream continues; only touched by the sync thread.
+    private BsonDocument resumeToken;
+    private BsonTimestamp startAt;
+    // Where polling continues; only touched by the sync thread. Negative until the first reconcile.
+    private long changedSince = -1;
+    private long reconciledAt;
+
+    /**
+     * @param mongoDBManager          The MongoDB manager owning the listing index.
+     * @param logger                  The plugin logger.
+     * @param pollIntervalMillis      The delay between polls, and between retries after an error.
+     * @param reconcileIntervalMillis The delay between full reads of the listings when polling.
+     */
+    public ListingSync(MongoDBManager mongoDBManager, Logger logger, long pollIntervalMillis, long reconcileIntervalMillis) {
+        this.mongoDBManager = mongoDBManager;
+        this.logger = logger;
+        this.pollIntervalMillis = pollIntervalMillis;
+        this.reconcileIntervalMillis = reconcileIntervalMillis;
+    }
+
+    /**
+     * Starts syncing on a background thread.
+     *
+     * @param loadedAt The operation time read before the listing index was loaded,
+     *                 or null if unknown. Changes from that point on are replayed.
+     */
+    public synchronized void start(BsonTimestamp loadedAt) {
+        if (running) return;
+        startAt = loadedAt;
+        running = true;
+        thread = new Thread(this, "MarketPlace-ListingSync");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops syncing and waits briefly for the sync thread to finish.
+     */
+    public synchronized void stop() {
+        running = false;
+        if (thread == null) return;
+        thread.interrupt();
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(2));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+    }
+
+    @Override
+    public void run() {
+        boolean changeStreams = true;
+        while (running) {
+            try {
+                if (changeStreams) {
+                    watch();
+                } else {
+                    sleep(pollIntervalMillis);
+                    if (running) poll();
+                }
+            } catch (MongoCommandException e) {
+                if (e.getErrorCode() == CHANGE_STREAMS_UNSUPPORTED) {
+                    logger.info("MongoDB is not a replica set; polling item listings every "
+                            + pollIntervalMillis / 1000.0 + "s instead of using a change stream.");
+                    changeStreams = false;
+                    continue;
+                }
+                if (HISTORY_LOST.contains(e.getErrorCode())) {
+                    resumeToken = null;
+                    startAt = null;
+                }
+                retryLater(e);
+            } catch (MongoException e) {
+                retryLater(e);
+            } catch (RuntimeException e) {
+                // A malformed listing must not end the sync thread.
+                retryLater(e);
+            }
+        }
+    }
+
+    /**
+     * Follows the change stream until stopped. Without a resume point the
+     * index is rebuilt once the stream is open, so nothing written in between is missed.
+     */
+    private void watch() {
+        ChangeStreamIterable<Document> stream = mongoDBManager.getCollection("itemListings")
+                .watch(List.of(Aggregates.match(Filters.in("operationType", "insert", "update", "replace", "delete"))))
+                .fullDocument(FullDocument.UPDATE_LOOKUP)
+                .maxAwaitTime(1, TimeUnit.SECONDS);
+        boolean resync = false;
+        if (resumeToken != null) {
+            stream = stream.resumeAfter(resumeToken);
+        } else if (startAt != null) {
+            stream = stream.startAtOperationTime(startAt);
+        } else {
+            resync = true;
+        }
+
+        try (MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor = stream.cursor()) {
+            if (resync) reconcile();
+            startAt = null;
+            while (running) {
+                ChangeStreamDocument<Document> change = cursor.tryNext();
+                if (change != null) apply(change);
+                BsonDocument token = cursor.getResumeToken();
+                if (token != null) resumeToken = token;
+            }
+        }
+    }
+
+    private void apply(ChangeStreamDocument<Document> change) {
+        ListingIndex listingIndex = mongoDBManager.getListingIndex();
+        switch (change.getOperationType()) {
+            case INSERT, UPDATE, REPLACE -> {
+                Document listing = change.getFullDocument();
+                // Deleted before the lookup; its delete event follows.
+                if (listing == null) return;
+                // Deleted by this server but still queued; its delete event follows too.
+                if (mongoDBManager.getWriteBehind().isDeletePending(listing.get("_id"))) return;
+                listingIndex.addIfChanged(listing);
+                mongoDBManager.getNameCache().remember(listing.getString("playerId"), listing.getString("sellerName"));
+            }
+            case DELETE -> {
+                Object id = DOCUMENT_CODEC.decode(new BsonDocumentReader(change.getDocumentKey()),
+                        DecoderContext.builder().build()).get("_id");
+                listingIndex.remove(id);
+                mongoDBManager.getItemCache().invalidate(id);
+            }
+            default -> {
+            }
+        }
+    }
+
+    /**
+     * Applies the changes made since the last poll, reconciling instead when one is due.
+     */
+    void poll() {
+        long now = System.currentTimeMillis();
+        if (changedSince < 0 || now - reconciledAt >= reconcileIntervalMillis) {
+            reconcile();
+            return;
+        }
+        pollChanges();
+
+        // Only a reconcile sees deletes; a count that differs from the index means some were missed.
+        ListingIndex listingIndex = mongoDBManager.getListingIndex();
+        if (now - reconciledAt >= Math.min(reconcileIntervalMillis, EARLY_RECONCILE_MILLIS)
+                && mongoDBManager.countListings() != listingIndex.size(false) + listingIndex.size(true)) {
+            reconcile();
+        }
+    }
+
+    /**
+     * Applies the listings changed since the last poll or reconcile.
+     */
+    void pollChanges() {
+        long startedAt = System.currentTimeMillis();
+
+        Map<Object, Document> changed = new HashMap<>();
+        Document after = null;
+        List<Document> page;
+        do {
+            page = mongoDBManager.getChangedListings(changedSince, after, POLL_BATCH, CHANGES_PROJECTION);
+            for (Document state : page) changed.put(state.get("_id"), state);
+            if (!page.isEmpty()) after = page.get(page.size() - 1);
+        } while (page.size() == POLL_BATCH);
+
+        // This server deletes a listing, or queues its delete, before removing it from the index,
+        // so a listing it removed while the changes were read is not fetched again; no snapshot is needed.
+        applyStates(changed.values(), Set.of());
+        changedSince = startedAt - CLOCK_SKEW_MILLIS;
+    }
+
+    /**
+     * Reconciles the index with the collection, reading both partitions in one
+     * pass. Listings this server added or removed while the collection was
+     * being read are left alone.
+     */
+    void reconcile() {
+        long startedAt = System.currentTimeMillis();
+        ListingIndex listingIndex = mongoDBManager.getListingIndex();
+        Set<Object> indexedBefore = listingIndex.getIds();
+
+        Map<Object, Document> stored = new HashMap<>();
+        Object after = null;
+        List<Document> page;
+        do {
+            page = mongoDBManager.getListingsById(after, POLL_BATCH, POLL_PROJECTION);
+            for (Document state : page) stored.put(state.get("_id"), state);
+            if (!page.isEmpty()) after = page.get(page.size() - 1).get("_id");
+        } while (page.size() == POLL_BATCH);
+
+        applyStates(stored.values(), indexedBefore);
+        for (Object id : indexedBefore) {
+            if (stored.containsKey(id)) continue;
+            listingIndex.remove(id);
+            mongoDBManager.getItemCache().invalidate(id);
+        }
+        changedSince = startedAt - CLOCK_SKEW_MILLIS;
+        reconciledAt = startedAt;
+    }
+
+    /**
+     * Brings indexed listings up to date with their stored state and fetches listings new to this server.
+     *
+     * @param states        The stored listings, projected to the fields that can change.
+     * @param indexedBefore The listings indexed before the states were read.
+     */
+    private void applyStates(Collection<Document> states, Set<Object> indexedBefore) {
+        ListingIndex listingIndex = mongoDBManager.getListingIndex();
+        List<Object> added = new ArrayList<>();
+        for (Document state : states) {
+            Object id = state.get("_id");
+            Document indexed = listingIndex.get(id);
+            if (indexed == null) {
+                // Indexed before but gone now means this server removed it while we were reading.
+                if (!indexedBefore.contains(id) && !mongoDBManager.getWriteBehind().isDeletePending(id)) added.add(id);
+                continue;
+            }
+            Document updated = new Document(indexed);
+            for (String field : POLL_FIELDS) {
+                // A field missing from the stored listing was unset, e.g. when it left the black market.
+                if (state.containsKey(field)) {
+                    updated.put(field, state.get(field));
+                } else {
+                    updated.remove(field);
+                }
+            }
+            listingIndex.addIfChanged(updated);
+        }
+        for (int from = 0; from < added.size(); from += POLL_BATCH) {
+            for (Document listing : mongoDBManager.getListings(added.subList(from, Math.min(added.size(), from + POLL_BATCH)))) {
+                listingIndex.addIfChanged(listing);
+                mongoDBManager.getNameCache().remember(listing.getString("playerId"), listing.getString("sellerName"));
+            }
+        }
+    }
+
+    private void retryLater(RuntimeException e) {
+        if (!running) return;
+        logger.warning("Item listing sync failed, retrying: " + e.getMessage());
+        sleep(pollIntervalMillis);
+    }
+
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            // stop() interrupts the thread; the loop checks running.
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+}
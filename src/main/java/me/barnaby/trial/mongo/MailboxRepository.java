@@ -0,0 +1,73 @@
+package me.barnaby.trial.mongo;
+
+import org.bson.Document;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * MailboxRepository exposes the mailbox operations of {@link MongoDBManager}
+ * as CompletableFutures that run on the MongoDB executor.
+ *
+ * The mailbox holds the items of expired listings until their seller is
+ * online to receive them.
+ */
+public class MailboxRepository {
+
+    private final MongoDBManager mongoDBManager;
+    private final Executor executor;
+
+    public MailboxRepository(MongoDBManager mongoDBManager, Executor executor) {
+        this.mongoDBManager = mongoDBManager;
+        this.executor = executor;
+    }
+
+    /**
+     * Takes up to {@code max} of a player's oldest items out of their mailbox.
+     * Taken mail stays in the mailbox under a lease, so it must be passed to
+     * {@link #delivered} once it is in the player's inventory, or to
+     * {@link #restore}; mail that is neither is taken again once the lease runs out.
+     *
+     * @param playerId The UUID string of the player.
+     * @param max      The most items to take.
+     * @return A future completed with the taken mail and how many items are still waiting.
+     */
+    public CompletableFuture<Batch> take(String playerId, int max) {
+        return CompletableFuture.supplyAsync(() -> {
+            List<Document> mail = mongoDBManager.takeMail(playerId, max);
+            // A short batch already proved the rest of the mailbox empty.
+            long waiting = mail.size() < max ? 0 : mongoDBManager.countMail(playerId);
+            return new Batch(mail, waiting);
+        }, executor);
+    }
+
+    /**
+     * Deletes mail that has been delivered.
+     *
+     * @param mail The mail returned by {@link #take}.
+     * @return A future completed once the mail has been deleted.
+     */
+    public CompletableFuture<Void> delivered(List<Document> mail) {
+        return CompletableFuture.runAsync(() -> mongoDBManager.deleteMail(mail), executor);
+    }
+
+    /**
+     * Puts taken mail back after it could not be delivered.
+     *
+     * @param mail The mail returned by {@link #take}.
+     * @return A future completed once the mail has been restored.
+     */
+    public CompletableFuture<Void> restore(List<Document> mail) {
+        return CompletableFuture.runAsync(() -> mongoDBManager.returnMail(mail), executor);
+    }
+
+    /**
+     * Mail taken out of a mailbox.
+     *
+     * @param mail    The taken mail, oldest first.
+     * @param waiting The number of items left in the mailbox.
+     */
+    public record Batch(List<Document> mail, long waiting) {
+    }
+}
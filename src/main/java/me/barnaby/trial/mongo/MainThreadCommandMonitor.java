@@ -0,0 +1,59 @@
+package me.barnaby.trial.mongo;
+
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandSucceededEvent;
+import org.bukkit.Bukkit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records every MongoDB command that completes on the server thread.
+ *
+ * The sync driver notifies command listeners on the thread that issued the
+ * command, so anything counted here is time the server thread spent waiting on MongoDB.
+ */
+public class MainThreadCommandMonitor implements CommandListener {
+
+    private final LongAdder commands = new LongAdder();
+    private final LongAdder nanos = new LongAdder();
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+        record(event.getElapsedTime(TimeUnit.NANOSECONDS));
+    }
+
+    @Override
+    public void commandFailed(CommandFailedEvent event) {
+        record(event.getElapsedTime(TimeUnit.NANOSECONDS));
+    }
+
+    private void record(long elapsedNanos) {
+        if (!Bukkit.isPrimaryThread()) return;
+        commands.increment();
+        nanos.add(elapsedNanos);
+    }
+
+    /**
+     * @return The number of commands run on the server thread since the last reset.
+     */
+    public long getCommands() {
+        return commands.sum();
+    }
+
+    /**
+     * @return The time in nanoseconds the server thread spent on MongoDB since the last reset.
+     */
+    public long getNanos() {
+        return nanos.sum();
+    }
+
+    /**
+     * Clears the counters.
+     */
+    public void reset() {
+        commands.reset();
+        nanos.reset();
+    }
+}
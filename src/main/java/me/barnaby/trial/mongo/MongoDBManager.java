@@ -6,21 +6,35 @@ import com.mongodb.MongoCredential;
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoClients;
 import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
 import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.CountOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.Sorts;
 import com.mongodb.client.model.UpdateOptions;
-import dev.s7a.base64.Base64ItemStack;
+import com.mongodb.client.model.Updates;
 import me.barnaby.trial.MarketPlace;
 import me.barnaby.trial.config.ConfigType;
 import me.barnaby.trial.util.StringUtil;
+import org.bson.BsonTimestamp;
 import org.bson.Document;
 import org.bson.codecs.configuration.CodecRegistry;
 import org.bson.codecs.pojo.PojoCodecProvider;
-import org.bukkit.Bukkit;
+import org.bson.conversions.Bson;
 import org.bukkit.configuration.file.FileConfiguration;
-import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
 
+import java.io.File;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
 
 import static org.bson.codecs.configuration.CodecRegistries.fromProviders;
 import static org.bson.codecs.configuration.CodecRegistries.fromRegistries;
@@ -35,9 +49,59 @@ import static org.bson.codecs.configuration.CodecRegistries.fromRegistries;
  *   database: "marketplace"
  */
 public class MongoDBManager {
+    // Fields needed to index and render a listing; everything else is left on the server.
+    private static final Bson LISTING_PROJECTION =
+            Projections.include("playerId", "sellerName", "price", "originalPrice", "item", "itemData",
+                    "material", "itemName", "timestamp", "isBlackMarket", "blackMarketUntil");
+    // Stable listing order used by paged queries, backed by the listing page index.
+    private static final Bson LISTING_SORT = Sorts.ascending("timestamp", "_id");
+    // Order of listings changed since a poll, backed by the listing changes index.
+    private static final Bson CHANGED_LISTING_SORT = Sorts.ascending(ListingSync.UPDATED_AT_FIELD, "_id");
+    private static final int LISTING_LOAD_BATCH = 1000;
+    // Newest first, with _id breaking ties so keyset pages never skip or repeat a transaction.
+    private static final Bson HISTORY_SORT = Sorts.descending("timestamp", "_id");
+    // How far an offset page may skip when the page before it has no remembered cursor.
+    private static final int MAX_HISTORY_SKIP = 10_000;
+    private static final int MAX_HISTORY_CURSORS = 1024;
+    // Oldest mail first, backed by the mailbox index.
+    private static final Bson MAIL_SORT = Sorts.ascending("createdAt", "_id");
+    /** Holds the token of the take that is delivering a piece of mail. */
+    static final String MAIL_TAKEN_FIELD = "takenBy";
+    static final String MAIL_TAKEN_AT_FIELD = "takenAt";
+    // Taken mail not delivered by then belongs to a server that stopped mid-delivery.
+    static final long MAIL_LEASE_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
     private final MarketPlace plugin;
     private MongoClient mongoClient;
     private MongoDatabase database;
+    private final ListingIndex listingIndex = new ListingIndex(this::decodeItem);
+    private final MainThreadCommandMonitor commandMonitor = new MainThreadCommandMonitor();
+    // The last transaction of each recently served history page, by player, page size and page.
+    private final Map<String, Document> historyCursors = Collections.synchronizedMap(
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Document> eldest) {
+                    return size() > MAX_HISTORY_CURSORS;
+                }
+            });
+    private ItemStackCache itemCache;
+
+    // Executor that runs all asynchronous MongoDB work off the server thread.
+    private ExecutorService executor;
+    // Single low-priority thread for one-off migrations, so they never hold up repository calls.
+    private ExecutorService maintenanceExecutor;
+    private TransactionBackfill transactionBackfill;
+    private ItemFormatMigration itemFormatMigration;
+    private PlayerNameCache nameCache;
+    private ListingRepository listingRepository;
+    private ListingSync listingSync;
+    private BlackMarketRotation blackMarketRotation;
+    private BlackMarketSchedule blackMarketSchedule;
+    private BlackMarketExpiry blackMarketExpiry;
+    private ListingExpiry listingExpiry;
+    private MailboxRepository mailboxRepository;
+    private WriteBehind writeBehind;
+    private TransactionRepository transactionRepository;
 
     // File configuration for mongo.yml
     private FileConfiguration mongoConfig;
@@ -69,6 +133,7 @@ public class MongoDBManager {
             settings = MongoClientSettings.builder()
                     .applyConnectionString(new ConnectionString(uri))
                     .credential(credential)
+                    .addCommandListener(commandMonitor)
                     .build();
         } else {
             CodecRegistry pojoCodecRegistry = fromRegistries(MongoClientSettings.getDefaultCodecRegistry(),
@@ -77,6 +142,7 @@ public class MongoDBManager {
             settings = MongoClientSettings.builder()
                     .applyConnectionString(new ConnectionString(uri))
                     .codecRegistry(pojoCodecRegistry)
+                    .addCommandListener(commandMonitor)
                     .build();
         }
 
@@ -85,6 +151,108 @@ public class MongoDBManager {
         database = mongoClient.getDatabase(dbName);
 
         plugin.getLogger().info("Connected to MongoDB database: " + dbName);
+
+        // Bounded pool for asynchronous repository calls.
+        int threads = Math.max(1, mongoConfig.getInt("executor-threads", 4));
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "MarketPlace-Mongo-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        maintenanceExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "MarketPlace-Mongo-Maintenance");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        listingRepository = new ListingRepository(this, executor);
+        blackMarketRotation = new BlackMarketRotation(plugin, this);
+        blackMarketSchedule = new BlackMarketSchedule(plugin, this);
+        blackMarketExpiry = new BlackMarketExpiry(plugin, this);
+        listingExpiry = new ListingExpiry(this);
+        transactionRepository = new TransactionRepository(this, executor);
+        mailboxRepository = new MailboxRepository(this, executor);
+
+        // Names are read from the playerNames collection in the background.
+        nameCache = new PlayerNameCache(this, executor, plugin.getLogger());
+        CompletableFuture<Void> namesLoaded = CompletableFuture.runAsync(nameCache::load, executor);
+
+        // Add display fields to transactions recorded before they existed, once the stored names are known.
+        transactionBackfill = new TransactionBackfill(this, nameCache, plugin.getLogger());
+        namesLoaded.whenCompleteAsync((ignored, ex) -> transactionBackfill.run(), maintenanceExecutor);
+
+        // Decoded items are cached by document _id, bounded by the size of their item data.
+        itemCache = new ItemStackCache(mongoConfig.getLong("item-cache-max-size", 16L * 1024 * 1024));
+
+        // Create the indexes every query relies on, then make sure none of them scan a collection.
+        IndexBootstrap indexBootstrap = new IndexBootstrap(database, plugin.getLogger());
+        indexBootstrap.createIndexes();
+        indexBootstrap.verifyQueryPlans(mongoConfig.getBoolean("fail-on-collection-scan", false));
+
+        // Transactions and listing deletes are batched; writes journaled before a crash are replayed
+        // before the listings are loaded, so a replayed delete is never indexed.
+        writeBehind = new WriteBehind(this, plugin.getLogger(), new File(plugin.getDataFolder(), "write-behind.jsonl"),
+                Math.max(1, mongoConfig.getLong("write-behind.flush-interval", 250)),
+                Math.max(1, mongoConfig.getInt("write-behind.batch-size", 200)));
+        writeBehind.start();
+
+        // Black market listings from before expiry existed need an original price before they are indexed.
+        long backfilled = blackMarketExpiry.backfill();
+        if (backfilled > 0) {
+            plugin.getLogger().info("Stored the original price of " + backfilled + " black market listings.");
+        }
+
+        // Load every listing into memory once so the GUIs never scan the collection.
+        // The operation time is read first so the change stream replays anything written during the load.
+        BsonTimestamp loadedAt = getOperationTime();
+        List<Document> listings = loadAllListingsPaged();
+        // Only left if the replay could not reach MongoDB.
+        listings.removeIf(listing -> writeBehind.isDeletePending(listing.get("_id")));
+        listingIndex.load(listings);
+        for (Document listing : listings) {
+            nameCache.remember(listing.getString("playerId"), listing.getString("sellerName"));
+        }
+        plugin.getLogger().info("Indexed " + (listingIndex.size(false) + listingIndex.size(true)) + " item listings.");
+
+        // Move Base64 items to the binary format once the index holds the listings it swaps them in;
+        // both formats are read until it finishes.
+        itemFormatMigration = new ItemFormatMigration(this, plugin.getLogger());
+        maintenanceExecutor.execute(itemFormatMigration);
+
+        // Follow listings written by other servers sharing the database.
+        if (mongoConfig.getBoolean("listing-sync.enabled", true)) {
+            long pollInterval = Math.max(1, mongoConfig.getLong("listing-sync.poll-interval", 5));
+            long reconcileInterval = Math.max(pollInterval, mongoConfig.getLong("listing-sync.reconcile-interval", 300));
+            listingSync = new ListingSync(this, plugin.getLogger(), TimeUnit.SECONDS.toMillis(pollInterval),
+                    TimeUnit.SECONDS.toMillis(reconcileInterval));
+            listingSync.start(loadedAt);
+        }
+    }
+
+    /**
+     * Uses an already opened database instead of connecting, with an unstarted
+     * write-behind queue that keeps writes in memory. Lets tests run the
+     * MongoDB code against a stand-in database.
+     *
+     * @param database The database to use.
+     * @param logger   The logger for the caches and the write-behind queue.
+     */
+    void useDatabase(MongoDatabase database, Logger logger) {
+        this.database = database;
+        itemCache = new ItemStackCache(16L * 1024 * 1024);
+        nameCache = new PlayerNameCache(this, Runnable::run, logger);
+        writeBehind = new WriteBehind(this, logger, null, 250, 200);
+    }
+
+    /**
+     * Reads the server's current operation time.
+     *
+     * @return The operation time, or null on a standalone server, which does not report one.
+     */
+    private BsonTimestamp getOperationTime() {
+        Object operationTime = database.runCommand(new Document("ping", 1)).get("operationTime");
+        return operationTime instanceof BsonTimestamp timestamp ? timestamp : null;
     }
 
 
@@ -92,12 +260,166 @@ public class MongoDBManager {
      * Disconnects from MongoDB.
      */
     public void disconnect() {
+        if (listingSync != null) listingSync.stop();
+        if (transactionBackfill != null) transactionBackfill.cancel();
+        if (itemFormatMigration != null) itemFormatMigration.cancel();
+        if (maintenanceExecutor != null) {
+            // A cancelled migration stops after its current batch.
+            maintenanceExecutor.shutdown();
+            try {
+                if (!maintenanceExecutor.awaitTermination(10, TimeUnit.SECONDS)) {
+                    plugin.getLogger().warning("Timed out waiting for MongoDB migrations to stop.");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (executor != null) {
+            // Let queued writes finish before the client is closed.
+            executor.shutdown();
+            try {
+                if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                    plugin.getLogger().warning("Timed out waiting for pending MongoDB tasks.");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // Queued tasks may have added writes, so this runs once the executor is done.
+        if (writeBehind != null) writeBehind.close();
         if (mongoClient != null) {
             mongoClient.close();
             plugin.getLogger().info("Disconnected from MongoDB.");
         }
     }
 
+    /**
+     * Gets the in-memory listing index.
+     *
+     * @return The ListingIndex instance.
+     */
+    public ListingIndex getListingIndex() {
+        return listingIndex;
+    }
+
+    /**
+     * Gets the decoded ItemStack cache.
+     *
+     * @return The ItemStackCache instance.
+     */
+    public ItemStackCache getItemCache() {
+        return itemCache;
+    }
+
+    /**
+     * Gets the player name cache.
+     *
+     * @return The PlayerNameCache instance.
+     */
+    public PlayerNameCache getNameCache() {
+        return nameCache;
+    }
+
+    /**
+     * Decodes the item stored in a listing or transaction document, using the item cache.
+     *
+     * @param doc A document with an _id and an item in either stored format.
+     * @return A copy of the stored item that the caller may modify.
+     */
+    public ItemStack decodeItem(Document doc) {
+        return itemCache.get(doc.get("_id"), ItemCodec.data(doc));
+    }
+
+    /**
+     * Gets the asynchronous listing repository.
+     *
+     * @return The ListingRepository instance.
+     */
+    public ListingRepository getListingRepository() {
+        return listingRepository;
+    }
+
+    /**
+     * Gets the black market rotation.
+     *
+     * @return The BlackMarketRotation instance.
+     */
+    public BlackMarketRotation getBlackMarketRotation() {
+        return blackMarketRotation;
+    }
+
+    /**
+     * Gets the shared black market rotation schedule.
+     *
+     * @return The BlackMarketSchedule instance.
+     */
+    public BlackMarketSchedule getBlackMarketSchedule() {
+        return blackMarketSchedule;
+    }
+
+    /**
+     * Gets the black market expiry sweep.
+     *
+     * @return The BlackMarketExpiry instance.
+     */
+    public BlackMarketExpiry getBlackMarketExpiry() {
+        return blackMarketExpiry;
+    }
+
+    /**
+     * Gets the listing expiry sweep.
+     *
+     * @return The ListingExpiry instance.
+     */
+    public ListingExpiry getListingExpiry() {
+        return listingExpiry;
+    }
+
+    /**
+     * Gets the asynchronous mailbox repository.
+     *
+     * @return The MailboxRepository instance.
+     */
+    public MailboxRepository getMailboxRepository() {
+        return mailboxRepository;
+    }
+
+    /**
+     * Gets the write-behind queue for transactions and listing deletes.
+     *
+     * @return The WriteBehind instance.
+     */
+    public WriteBehind getWriteBehind() {
+        return writeBehind;
+    }
+
+    /**
+     * Gets the asynchronous transaction repository.
+     *
+     * @return The TransactionRepository instance.
+     */
+    public TransactionRepository getTransactionRepository() {
+        return transactionRepository;
+    }
+
+    /**
+     * Gets the executor used for asynchronous MongoDB work.
+     *
+     * @return The MongoDB executor.
+     */
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Gets the monitor recording MongoDB commands run on the server thread.
+     *
+     * @return The MainThreadCommandMonitor instance.
+     */
+    public MainThreadCommandMonitor getCommandMonitor() {
+        return commandMonitor;
+    }
+
     /**
      * Gets the MongoDatabase instance.
      *
@@ -159,7 +481,175 @@ public class MongoDBManager {
      */
     public void insertItemListing(Document itemData) {
         MongoCollection<Document> collection = getCollection("itemListings");
+        itemData.put(ListingSync.UPDATED_AT_FIELD, System.currentTimeMillis());
         collection.insertOne(itemData);
+        // insertOne assigns the _id, so the document can be indexed directly.
+        listingIndex.add(itemData);
+    }
+
+    /**
+     * Removes an item listing from the listing index and queues its delete
+     * from the "itemListings" collection on the write-behind queue.
+     *
+     * @param id The _id of the listing.
+     * @return A future completed once the listing is deleted from MongoDB.
+     */
+    public CompletableFuture<Void> deleteItemListing(Object id) {
+        CompletableFuture<Void> deleted = writeBehind.delete("itemListings", id);
+        listingIndex.remove(id);
+        itemCache.invalidate(id);
+        return deleted;
+    }
+
+    /**
+     * Atomically claims a listing for a purchase by deleting it, but only if it
+     * still has the price the buyer saw and is not being expired. At most one
+     * caller across all servers sharing the database receives the document.
+     *
+     * @param id            The _id of the listing.
+     * @param expectedPrice The price the buyer agreed to.
+     * @return The claimed listing, or null if it was already taken or repriced.
+     */
+    public Document claimItemListing(Object id, double expectedPrice) {
+        // Deleted by this server, just not written yet.
+        if (writeBehind.isDeletePending(id)) return null;
+        Document claimed = getCollection("itemListings")
+                .findOneAndDelete(Filters.and(Filters.eq("_id", id), Filters.eq("price", expectedPrice),
+                        Filters.exists(ListingExpiry.MARK_FIELD, false)));
+        if (claimed != null) {
+            listingIndex.remove(id);
+            itemCache.invalidate(id);
+        }
+        return claimed;
+    }
+
+    /**
+     * Puts a claimed listing back after a purchase could not be completed.
+     *
+     * @param listing The document returned by {@link #claimItemListing}.
+     */
+    public void restoreItemListing(Document listing) {
+        // A new change time, so servers that saw the listing go pick it up again.
+        listing.put(ListingSync.UPDATED_AT_FIELD, System.currentTimeMillis());
+        getCollection("itemListings").insertOne(listing);
+        listingIndex.add(listing);
+    }
+
+    /**
+     * Counts a seller's listings in MongoDB using the seller index, stopping
+     * once {@code limit} are found, so the count costs the same however many
+     * listings the seller has.
+     *
+     * @param playerId The UUID string of the seller.
+     * @param limit    The most listings to count.
+     * @return The number of listings, at most {@code limit}.
+     */
+    public long countItemListings(String playerId, int limit) {
+        return getCollection("itemListings").countDocuments(Filters.eq("playerId", playerId),
+                new CountOptions().limit(limit));
+    }
+
+    /**
+     * Gives a marketplace listing a new listing time, as if it had just been
+     * listed. Only matches the listing time the seller saw, so a listing that
+     * was bought, moved to the black market or relisted elsewhere is left alone.
+     *
+     * @param id       The _id of the listing.
+     * @param listedAt The listing time the seller saw.
+     * @return The relisted listing, or null if it no longer matched.
+     */
+    public Document relistItemListing(Object id, long listedAt) {
+        if (writeBehind.isDeletePending(id)) return null;
+        long now = System.currentTimeMillis();
+        Document relisted = getCollection("itemListings").findOneAndUpdate(
+                Filters.and(Filters.eq("_id", id), Filters.ne("isBlackMarket", true), Filters.eq("timestamp", listedAt),
+                        Filters.exists(ListingExpiry.MARK_FIELD, false)),
+                Updates.combine(Updates.set("timestamp", now), Updates.set(ListingSync.UPDATED_AT_FIELD, now)),
+                new FindOneAndUpdateOptions().projection(LISTING_PROJECTION).returnDocument(ReturnDocument.AFTER));
+        if (relisted != null) listingIndex.update(relisted);
+        return relisted;
+    }
+
+    /**
+     * Takes up to {@code max} of a player's oldest items out of their mailbox
+     * by marking them with a lease in a single update. Marked mail is skipped
+     * by every other take until the lease runs out, so an item is delivered
+     * once however many servers the player joins, and mail is only deleted by
+     * {@link #deleteMail} once it has been delivered. Mail whose server stopped
+     * before delivering it is taken again when its lease runs out.
+     *
+     * @param playerId The UUID string of the player.
+     * @param max      The most items to take.
+     * @return The taken mail, oldest first.
+     */
+    public List<Document> takeMail(String playerId, int max) {
+        if (max <= 0) return new ArrayList<>();
+        MongoCollection<Document> mailbox = getCollection("mailbox");
+        long now = System.currentTimeMillis();
+        Bson available = availableMail(playerId, now);
+        List<Object> ids = mailbox.find(available)
+                .sort(MAIL_SORT)
+                .projection(Projections.include("_id"))
+                .limit(max)
+                .map(mail -> mail.get("_id"))
+                .into(new ArrayList<>());
+        if (ids.isEmpty()) return new ArrayList<>();
+
+        String token = UUID.randomUUID().toString();
+        // Re-checks the lease, so mail taken by another server since the read is skipped.
+        mailbox.updateMany(Filters.and(Filters.in("_id", ids), available),
+                Updates.combine(Updates.set(MAIL_TAKEN_FIELD, token), Updates.set(MAIL_TAKEN_AT_FIELD, now)));
+        return mailbox.find(Filters.and(Filters.in("_id", ids), Filters.eq(MAIL_TAKEN_FIELD, token)))
+                .sort(MAIL_SORT)
+                .into(new ArrayList<>());
+    }
+
+    /**
+     * Counts the items waiting in a player's mailbox, leaving out mail that is
+     * being delivered.
+     *
+     * @param playerId The UUID string of the player.
+     * @return The number of items.
+     */
+    public long countMail(String playerId) {
+        return getCollection("mailbox").countDocuments(availableMail(playerId, System.currentTimeMillis()));
+    }
+
+    /**
+     * Deletes mail that has been delivered.
+     *
+     * @param mail The documents returned by {@link #takeMail(String, int)}.
+     */
+    public void deleteMail(List<Document> mail) {
+        if (!mail.isEmpty()) getCollection("mailbox").deleteMany(takenMail(mail));
+    }
+
+    /**
+     * Puts taken mail back after it could not be delivered by clearing its lease.
+     *
+     * @param mail The documents returned by {@link #takeMail(String, int)}.
+     */
+    public void returnMail(List<Document> mail) {
+        if (mail.isEmpty()) return;
+        getCollection("mailbox").updateMany(takenMail(mail),
+                Updates.combine(Updates.unset(MAIL_TAKEN_FIELD), Updates.unset(MAIL_TAKEN_AT_FIELD)));
+    }
+
+    // Mail of a player that is not leased, or whose lease has run out.
+    static Bson availableMail(String playerId, long now) {
+        return Filters.and(Filters.eq("playerId", playerId),
+                Filters.or(Filters.exists(MAIL_TAKEN_FIELD, false), Filters.lte(MAIL_TAKEN_AT_FIELD, now - MAIL_LEASE_MILLIS)));
+    }
+
+    // Only mail still under the lease it was taken with; mail taken over by another server is left to it.
+    private static Bson takenMail(List<Document> mail) {
+        List<Object> ids = new ArrayList<>(mail.size());
+        Set<String> tokens = new HashSet<>();
+        for (Document letter : mail) {
+            ids.add(letter.get("_id"));
+            tokens.add(letter.getString(MAIL_TAKEN_FIELD));
+        }
+        return Filters.and(Filters.in("_id", ids), Filters.in(MAIL_TAKEN_FIELD, tokens));
     }
 
     /**
@@ -184,18 +674,71 @@ public class MongoDBManager {
     }
 
     /**
-     * Retrieves the transaction history for a given player.
+     * Retrieves one page of a player's transaction history, newest first.
+     *
+     * Pages are read with keyset pagination on (timestamp, _id): the last
+     * transaction of each page served is remembered, so the next page starts
+     * right after it on the transaction indexes however deep it is. A page
+     * whose predecessor was not served recently starts after the nearest
+     * earlier page that was and skips the pages in between; without one it
+     * skips from the newest transaction. Either skip is capped at
+     * {@link #MAX_HISTORY_SKIP} transactions.
      *
      * @param playerId The player's unique identifier.
-     * @return A list of Documents representing the player's transaction history.
+     * @param page     The page number (1-indexed).
+     * @param pageSize The number of transactions per page.
+     * @return The requested page, or an out of reach page if it lies past the skip cap.
      */
-    public List<Document> getTransactionHistory(String playerId) {
-        MongoCollection<Document> collection = getCollection("transactions");
-        Document query = new Document("$or", Arrays.asList(
-                new Document("sellerId", playerId),
-                new Document("buyerId", playerId)
-        ));
-        return collection.find(query).into(new ArrayList<>());
+    public TransactionHistoryPage getTransactionHistoryPage(String playerId, int page, int pageSize) {
+        Document after = null;
+        int known = page - 1;
+        // Only pages close enough to skip from are worth looking up.
+        for (; known > 0 && (long) (page - 1 - known) * pageSize <= MAX_HISTORY_SKIP; known--) {
+            after = historyCursors.get(historyCursorKey(playerId, pageSize, known));
+            if (after != null) break;
+        }
+        long skip = (long) (page - 1 - (after == null ? 0 : known)) * pageSize;
+        if (skip > MAX_HISTORY_SKIP) return TransactionHistoryPage.outOfReach(page);
+
+        Bson seller = Filters.eq("sellerId", playerId);
+        Bson buyer = Filters.eq("buyerId", playerId);
+        if (after != null) {
+            // Repeated in each branch, so both sides of the $or keep a range on their own index.
+            long timestamp = after.getLong("timestamp");
+            Bson older = Filters.and(Filters.lte("timestamp", timestamp), Filters.or(
+                    Filters.lt("timestamp", timestamp), Filters.lt("_id", after.get("_id"))));
+            seller = Filters.and(seller, older);
+            buyer = Filters.and(buyer, older);
+        }
+
+        List<Document> transactions = new ArrayList<>(pageSize);
+        boolean hasNext = false;
+        // One extra document tells us whether there is a next page.
+        try (MongoCursor<Document> cursor = getCollection("transactions").find(Filters.or(seller, buyer))
+                .sort(HISTORY_SORT)
+                .skip((int) skip)
+                .limit(pageSize + 1)
+                .batchSize(pageSize + 1)
+                .iterator()) {
+            while (cursor.hasNext()) {
+                Document transaction = cursor.next();
+                if (transactions.size() == pageSize) {
+                    hasNext = true;
+                    break;
+                }
+                transactions.add(transaction);
+            }
+        }
+        if (hasNext) {
+            Document last = transactions.get(transactions.size() - 1);
+            historyCursors.put(historyCursorKey(playerId, pageSize, page),
+                    new Document("timestamp", last.getLong("timestamp")).append("_id", last.get("_id")));
+        }
+        return new TransactionHistoryPage(transactions, page, hasNext, false);
+    }
+
+    private static String historyCursorKey(String playerId, int pageSize, int page) {
+        return playerId + ':' + pageSize + ':' + page;
     }
 
     /**
@@ -209,69 +752,164 @@ public class MongoDBManager {
     }
 
     /**
-     * Records a transaction between a buyer and a seller.
+     * Retrieves one page of listings using keyset pagination. Each call is a
+     * single query on the listing page index that returns at most {@code limit}
+     * documents, projected to the fields needed to render them.
      *
-     * @param buyerId  The UUID string of the buyer.
-     * @param sellerId The UUID string of the seller.
-     * @param item     The item purchased.
-     * @param price    The price of the item.
+     * @param blackMarket True to page through black market listings.
+     * @param after       The last listing of the previous page, or null for the first page.
+     * @param limit       The maximum number of listings to return.
+     * @return The listings following {@code after}, in listing order.
      */
-    public void recordTransaction(String buyerId, String sellerId, ItemStack item, double price) {
-        Document transaction = new Document();
-        transaction.append("buyerId", buyerId)
-                .append("sellerId", sellerId)
-                .append("itemData", Base64ItemStack.encode(item))
-                .append("price", price)
-                .append("timestamp", System.currentTimeMillis());
-        insertTransaction(transaction);
+    public List<Document> getListingPage(boolean blackMarket, Document after, int limit) {
+        return getListingPage(blackMarket, after, limit, LISTING_PROJECTION);
     }
 
     /**
-     * Moves 5 random items from the marketplace to the black market.
-     * - Halves their price
-     * - Doubles seller's profits
-     * - Marks them as `isBlackMarket: true`
+     * Retrieves one page of listings using keyset pagination, projected to the given fields.
+     *
+     * @param blackMarket True to page through black market listings.
+     * @param after       The last listing of the previous page, or null for the first page.
+     * @param limit       The maximum number of listings to return.
+     * @param projection  The fields to return; must include timestamp.
+     * @return The listings following {@code after}, in listing order.
      */
-    public void moveItemsToBlackMarket() {
-        List<Document> allListings = getAllItemListings();
-        if (allListings.isEmpty()) return;
-
-        int itemsToMove = Math.min(
-                plugin.getConfigManager().getConfig(ConfigType.MAIN)
-                        .getInt("blackmarket.items-count"), allListings.size());
-
-        for (int i = 0; i < itemsToMove; i++) {
-            Document listing = allListings.get(new Random().nextInt(allListings.size()));
-
-            // Ensure the item is not already black market
-            if (listing.getBoolean("isBlackMarket", false)) continue;
+    public List<Document> getListingPage(boolean blackMarket, Document after, int limit, Bson projection) {
+        // Listings written before isBlackMarket was always set have no such field.
+        Bson partition = blackMarket
+                ? Filters.eq("isBlackMarket", true)
+                : Filters.in("isBlackMarket", false, null);
+
+        Bson filter = partition;
+        if (after != null) {
+            long timestamp = after.getLong("timestamp");
+            filter = Filters.and(partition, Filters.or(
+                    Filters.gt("timestamp", timestamp),
+                    Filters.and(Filters.eq("timestamp", timestamp), Filters.gt("_id", after.get("_id")))
+            ));
+        }
 
-            String sellerId = listing.getString("playerId");
+        return getCollection("itemListings")
+                .find(filter)
+                .projection(projection)
+                .sort(LISTING_SORT)
+                .limit(limit)
+                .into(new ArrayList<>());
+    }
 
-                double originalPrice = listing.getDouble("price");
-                double blackMarketPrice = originalPrice *
-                        plugin.getConfigManager().getConfig(ConfigType.MAIN).getDouble("blackmarket.price-modifier");
-                blackMarketPrice = Math.round(blackMarketPrice * 100.0) / 100.0;
+    /**
+     * Retrieves one page of the listings changed since a time, oldest change first.
+     *
+     * @param since      The earliest change time to return.
+     * @param after      The last listing of the previous page, or null for the first page.
+     * @param limit      The maximum number of listings to return.
+     * @param projection The fields to return; must include the change time.
+     * @return The listings changed at or after {@code since}, following {@code after}.
+     */
+    public List<Document> getChangedListings(long since, Document after, int limit, Bson projection) {
+        Bson filter = Filters.gte(ListingSync.UPDATED_AT_FIELD, since);
+        if (after != null) {
+            long updatedAt = after.getLong(ListingSync.UPDATED_AT_FIELD);
+            filter = Filters.or(
+                    Filters.gt(ListingSync.UPDATED_AT_FIELD, updatedAt),
+                    Filters.and(Filters.eq(ListingSync.UPDATED_AT_FIELD, updatedAt), Filters.gt("_id", after.get("_id"))));
+        }
+        return getCollection("itemListings")
+                .find(filter)
+                .projection(projection)
+                .sort(CHANGED_LISTING_SORT)
+                .limit(limit)
+                .into(new ArrayList<>());
+    }
 
+    /**
+     * Retrieves one page of every listing, marketplace and black market alike,
+     * in _id order. A listing moving between them while the pages are read is
+     * still returned exactly once, as its _id does not change.
+     *
+     * @param after      The _id of the last listing of the previous page, or null for the first page.
+     * @param limit      The maximum number of listings to return.
+     * @param projection The fields to return.
+     * @return The listings following {@code after}.
+     */
+    public List<Document> getListingsById(Object after, int limit, Bson projection) {
+        return getCollection("itemListings")
+                .find(after == null ? new Document() : Filters.gt("_id", after))
+                .projection(projection)
+                .sort(Sorts.ascending("_id"))
+                .limit(limit)
+                .into(new ArrayList<>());
+    }
 
-                // Update listing to black market
-                listing.put("price", blackMarketPrice);
-            listing.put("isBlackMarket", true);
+    /**
+     * @return The number of listings stored, from the collection metadata.
+     */
+    public long countListings() {
+        return getCollection("itemListings").estimatedDocumentCount();
+    }
 
-            Player player = Bukkit.getPlayer(UUID.fromString(sellerId));
-            if (player != null) {
-                player.sendMessage(
-                        StringUtil.format(plugin.getConfigManager().getConfig(ConfigType.MESSAGES)
-                                .getString("blackmarket.black-market-item")
-                                .replace("%item%",
-                                        StringUtil.formatItem(
-                                                Base64ItemStack.decode(listing.getString("itemData")))))
-                );
-            }
+    /**
+     * Retrieves listings by _id, projected to the fields needed to index and render them.
+     *
+     * @param ids The _ids of the listings.
+     * @return The listings that still exist, in no particular order.
+     */
+    public List<Document> getListings(Collection<Object> ids) {
+        if (ids.isEmpty()) return new ArrayList<>();
+        return getCollection("itemListings")
+                .find(Filters.in("_id", ids))
+                .projection(LISTING_PROJECTION)
+                .into(new ArrayList<>());
+    }
 
-            // Save updated listing
-            setValue("itemListings", new Document("_id", listing.get("_id")), listing);
+    /**
+     * Loads every listing by walking both partitions with {@link #getListingPage},
+     * so the collection is read in bounded, indexed batches.
+     *
+     * @return Every listing, marketplace listings first.
+     */
+    private List<Document> loadAllListingsPaged() {
+        List<Document> listings = new ArrayList<>();
+        for (boolean blackMarket : new boolean[]{false, true}) {
+            Document after = null;
+            List<Document> page;
+            do {
+                page = getListingPage(blackMarket, after, LISTING_LOAD_BATCH);
+                listings.addAll(page);
+                if (!page.isEmpty()) after = page.get(page.size() - 1);
+            } while (page.size() == LISTING_LOAD_BATCH);
         }
+        return listings;
+    }
+
+    /**
+     * Records a transaction between a buyer and a seller on the write-behind
+     * queue, so purchases share bulk writes instead of each making a round trip.
+     * Display fields are stored alongside the item data so the history can be
+     * rendered without decoding the item.
+     *
+     * @param buyerId    The UUID string of the buyer.
+     * @param buyerName  The buyer's name at the time of sale.
+     * @param sellerId   The UUID string of the seller.
+     * @param sellerName The seller's name at the time of sale.
+     * @param item       The item purchased.
+     * @param price      The price of the item.
+     * @return A future completed once the transaction is stored.
+     */
+    public CompletableFuture<Void> recordTransaction(String buyerId, String buyerName, String sellerId, String sellerName,
+                                  ItemStack item, double price) {
+        Document transaction = new Document();
+        transaction.append("buyerId", buyerId)
+                .append("buyerName", buyerName)
+                .append("sellerId", sellerId)
+                .append("sellerName", sellerName);
+        ItemCodec.write(transaction, item)
+                .append("material", item.getType().name())
+                .append("amount", item.getAmount())
+                .append("itemName", StringUtil.formatItem(item))
+                .append("price", price)
+                .append("timestamp", System.currentTimeMillis());
+        return writeBehind.insert("transactions", transaction);
     }
 
     /**
@@ -0,0 +1,112 @@
+package me.barnaby.trial.mongo;
+
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
+import org.bson.Document;
+import org.bukkit.Bukkit;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.logging.Logger;
+
+/**
+ * PlayerNameCache maps player UUIDs to their last known names so rendering a
+ * listing never has to look up an OfflinePlayer.
+ *
+ * Names are warmed when players join, read from listing documents and
+ * persisted to the "playerNames" collection. Lookups never block: unknown
+ * UUIDs are resolved in the background and the UUID is returned until then.
+ */
+public class PlayerNameCache {
+
+    private final MongoDBManager mongoDBManager;
+    private final Executor executor;
+    private final Logger logger;
+    private final Map<String, String> names = new ConcurrentHashMap<>();
+    // UUIDs currently being resolved, so each unknown UUID is only looked up once at a time.
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+    public PlayerNameCache(MongoDBManager mongoDBManager, Executor executor, Logger logger) {
+        this.mongoDBManager = mongoDBManager;
+        this.executor = executor;
+        this.logger = logger;
+    }
+
+    /**
+     * Loads every persisted name. Blocking; call it off the server thread.
+     */
+    public void load() {
+        for (Document doc : mongoDBManager.getCollection("playerNames").find()) {
+            String name = doc.getString("name");
+            if (name != null) names.putIfAbsent(doc.getString("_id"), name);
+        }
+    }
+
+    /**
+     * Returns the name for a UUID without blocking.
+     *
+     * @param uuidStr The player's UUID as a string.
+     * @return The cached name, or the UUID if no name is known yet.
+     */
+    public String getName(String uuidStr) {
+        if (uuidStr == null) return null;
+        String name = names.get(uuidStr);
+        if (name != null) return name;
+
+        refresh(uuidStr);
+        return uuidStr;
+    }
+
+    /**
+     * Records a player's current name, persisting it if it changed.
+     *
+     * @param uuid The player's UUID.
+     * @param name The player's name.
+     */
+    public void put(UUID uuid, String name) {
+        String uuidStr = uuid.toString();
+        if (name.equals(names.put(uuidStr, name))) return;
+
+        executor.execute(() -> {
+            try {
+                mongoDBManager.getCollection("playerNames").updateOne(Filters.eq("_id", uuidStr),
+                        Updates.set("name", name), new UpdateOptions().upsert(true));
+            } catch (Exception e) {
+                logger.warning("Failed to store name for " + uuidStr + ": " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Remembers a name found on a stored document, such as a listing's seller name,
+     * without overriding a name that is already known.
+     *
+     * @param uuidStr The player's UUID as a string.
+     * @param name    The stored name, may be null.
+     */
+    public void remember(String uuidStr, String name) {
+        if (uuidStr != null && name != null) names.putIfAbsent(uuidStr, name);
+    }
+
+    /**
+     * Resolves a UUID's name in the background.
+     */
+    private void refresh(String uuidStr) {
+        if (!pending.add(uuidStr)) return;
+        executor.execute(() -> {
+            try {
+                String name = Bukkit.getOfflinePlayer(UUID.fromString(uuidStr)).getName();
+                if (name != null) put(UUID.fromString(uuidStr), name);
+            } catch (IllegalArgumentException e) {
+                // Not a UUID; remember it as its own name so it is not looked up again.
+                names.put(uuidStr, uuidStr);
+            } finally {
+                pending.remove(uuidStr);
+            }
+        });
+    }
+}
@@ -0,0 +1,130 @@
+package me.barnaby.trial.mongo;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.WriteModel;
+import me.barnaby.trial.util.StringUtil;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bukkit.inventory.ItemStack;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Background migration that adds the display fields written by
+ * {@link MongoDBManager#recordTransaction} to transactions stored before they existed.
+ *
+ * Only transactions missing a display field are read. They are walked in _id
+ * order in bounded batches and updated with one unordered bulk write per
+ * batch. Names come from the {@link PlayerNameCache}, falling back to the
+ * UUID, so the walk never looks up a player. Completion is recorded in the
+ * "migrations" collection so the walk only happens once.
+ */
+public class TransactionBackfill implements Runnable {
+
+    private static final String MIGRATION_ID = "transaction-display-fields";
+    private static final int BATCH_SIZE = 500;
+
+    private static final Bson MISSING_FIELDS = Filters.or(
+            Filters.exists("itemName", false),
+            Filters.exists("buyerName", false),
+            Filters.exists("sellerName", false));
+
+    private final MongoDBManager mongoDBManager;
+    private final PlayerNameCache nameCache;
+    private final Logger logger;
+    private volatile boolean cancelled;
+
+    public TransactionBackfill(MongoDBManager mongoDBManager, PlayerNameCache nameCache, Logger logger) {
+        this.mongoDBManager = mongoDBManager;
+        this.nameCache = nameCache;
+        this.logger = logger;
+    }
+
+    /**
+     * Stops the migration after the current batch. It resumes from the start on the next run.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    @Override
+    public void run() {
+        MongoCollection<Document> migrations = mongoDBManager.getCollection("migrations");
+        if (migrations.find(Filters.eq("_id", MIGRATION_ID)).first() != null) return;
+
+        MongoCollection<Document> transactions = mongoDBManager.getCollection("transactions");
+        Object lastId = null;
+        long updated = 0;
+
+        try {
+            while (!cancelled) {
+                Bson filter = lastId == null ? MISSING_FIELDS : Filters.and(Filters.gt("_id", lastId), MISSING_FIELDS);
+                List<Document> batch = transactions.find(filter)
+                        .projection(Projections.include(ItemCodec.FIELD, ItemCodec.LEGACY_FIELD,
+                                "buyerId", "sellerId", "itemName", "buyerName", "sellerName"))
+                        .sort(Sorts.ascending("_id"))
+                        .limit(BATCH_SIZE)
+                        .into(new ArrayList<>());
+                if (batch.isEmpty()) break;
+                lastId = batch.get(batch.size() - 1).get("_id");
+
+                List<WriteModel<Document>> updates = new ArrayList<>();
+                for (Document transaction : batch) {
+                    updates.add(new UpdateOneModel<>(Filters.eq("_id", transaction.get("_id")),
+                            displayFields(transaction)));
+                }
+                if (!updates.isEmpty()) {
+                    transactions.bulkWrite(updates, new BulkWriteOptions().ordered(false));
+                    updated += updates.size();
+                }
+            }
+        } catch (Exception e) {
+            logger.warning("Transaction backfill stopped: " + e.getMessage());
+            return;
+        }
+
+        if (cancelled) return;
+        migrations.updateOne(Filters.eq("_id", MIGRATION_ID),
+                Updates.set("completedAt", System.currentTimeMillis()), new UpdateOptions().upsert(true));
+        if (updated > 0) logger.info("Backfilled display fields on " + updated + " transactions.");
+    }
+
+    /**
+     * Builds the update that sets the display fields a transaction is missing.
+     */
+    private Bson displayFields(Document transaction) {
+        List<Bson> fields = new ArrayList<>();
+        if (!transaction.containsKey("itemName")) {
+            String material = "AIR";
+            int amount = 0;
+            // Items that can no longer be decoded still get fields, so they are not retried forever.
+            String itemName = "Unknown Item";
+            try {
+                ItemStack item = ItemCodec.read(transaction);
+                material = item.getType().name();
+                amount = item.getAmount();
+                itemName = StringUtil.formatItem(item);
+            } catch (Exception ignored) {
+            }
+            fields.add(Updates.set("material", material));
+            fields.add(Updates.set("amount", amount));
+            fields.add(Updates.set("itemName", itemName));
+        }
+        if (!transaction.containsKey("buyerName")) {
+            fields.add(Updates.set("buyerName", nameCache.getName(transaction.getString("buyerId"))));
+        }
+        if (!transaction.containsKey("sellerName")) {
+            fields.add(Updates.set("sellerName", nameCache.getName(transaction.getString("sellerId"))));
+        }
+        return Updates.combine(fields);
+    }
+}
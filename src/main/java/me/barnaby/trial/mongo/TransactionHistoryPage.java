@@ -0,0 +1,24 @@
+package me.barnaby.trial.mongo;
+
+import org.bson.Document;
+
+import java.util.List;
+
+/**
+ * One page of a player's transaction history.
+ *
+ * @param transactions The transactions on the page, newest first.
+ * @param page         The page number (1-indexed).
+ * @param hasNext      Whether older transactions exist past this page.
+ * @param outOfReach   Whether the page is too deep to read without paging to it.
+ */
+public record TransactionHistoryPage(List<Document> transactions, int page, boolean hasNext, boolean outOfReach) {
+
+    /**
+     * @param page The page number (1-indexed).
+     * @return An empty page that could not be read because it is too deep.
+     */
+    public static TransactionHistoryPage outOfReach(int page) {
+        return new TransactionHistoryPage(List.of(), page, false, true);
+    }
+}
@@ -0,0 +1,55 @@
+package me.barnaby.trial.mongo;
+
+import org.bukkit.inventory.ItemStack;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * TransactionRepository exposes the transaction operations of {@link MongoDBManager}
+ * as CompletableFutures that run on the MongoDB executor.
+ */
+public class TransactionRepository {
+
+    private final MongoDBManager mongoDBManager;
+    private final Executor executor;
+
+    public TransactionRepository(MongoDBManager mongoDBManager, Executor executor) {
+        this.mongoDBManager = mongoDBManager;
+        this.executor = executor;
+    }
+
+    /**
+     * Records a transaction between a buyer and a seller.
+     *
+     * @param buyerId    The UUID string of the buyer.
+     * @param buyerName  The buyer's name at the time of sale.
+     * @param sellerId   The UUID string of the seller.
+     * @param sellerName The seller's name at the time of sale.
+     * @param item       The item purchased. It is cloned before leaving the calling thread.
+     * @param price      The price of the item.
+     * @return A future completed once the transaction has been stored, which may be a flush interval later.
+     */
+    public CompletableFuture<Void> record(String buyerId, String buyerName, String sellerId, String sellerName,
+                                          ItemStack item, double price) {
+        ItemStack snapshot = item.clone();
+        // Encoding the item and journaling the write stay off the calling thread.
+        return CompletableFuture.supplyAsync(() ->
+                mongoDBManager.recordTransaction(buyerId, buyerName, sellerId, sellerName, snapshot, price), executor)
+                .thenCompose(Function.identity());
+    }
+
+    /**
+     * Retrieves one page of the transaction history for a given player.
+     *
+     * @param playerId The player's unique identifier.
+     * @param page     The page number (1-indexed).
+     * @param pageSize The number of transactions per page.
+     * @return A future completed with the requested page.
+     */
+    public CompletableFuture<TransactionHistoryPage> findHistoryPage(String playerId, int page, int pageSize) {
+        return CompletableFuture.supplyAsync(() ->
+                mongoDBManager.getTransactionHistoryPage(playerId, page, pageSize), executor);
+    }
+}
@@ -0,0 +1,391 @@
+package me.barnaby.trial.mongo;
+
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.DeleteOneModel;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.WriteModel;
+import org.bson.Document;
+import org.bson.json.JsonMode;
+import org.bson.json.JsonWriterSettings;
+import org.bson.types.ObjectId;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * WriteBehind queues writes nobody waits on, such as transaction inserts and
+ * listing deletes, and sends them to MongoDB in unordered bulk writes, one per
+ * collection, every flush interval or as soon as a batch fills up.
+ *
+ * Each write is appended to a local journal before it is queued, and the
+ * journal is replayed when the plugin starts, so a write accepted before the
+ * server process died is still stored. Inserts carry their _id and deletes
+ * match by _id, so replaying a write that already reached MongoDB changes
+ * nothing. The journal is emptied whenever the queue is, and rewritten with
+ * only the queued writes once it grows past {@link #COMPACT_BYTES}.
+ */
+public class WriteBehind {
+
+    // Extended JSON keeps longs, binaries and ObjectIds their own type through the journal.
+    private static final JsonWriterSettings JOURNAL_JSON = JsonWriterSettings.builder().outputMode(JsonMode.EXTENDED).build();
+    private static final long COMPACT_BYTES = 1024 * 1024;
+    private static final long MAX_RETRY_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    private final MongoDBManager mongoDBManager;
+    private final Logger logger;
+    private final File journalFile;
+    private final long flushIntervalMillis;
+    private final int batchSize;
+
+    // Guards the queue and the journal, so both always hold the same writes in the same order.
+    private final Object lock = new Object();
+    private final ArrayDeque<Write> queue = new ArrayDeque<>();
+    private BufferedWriter journal;
+    private long journalBytes;
+    // Held while flushing; only the front of the queue is flushed, and only the flusher removes it.
+    private final Object flushLock = new Object();
+    // Deletes that have not reached MongoDB yet, so readers can treat those documents as gone.
+    private final Set<Object> pendingDeletes = ConcurrentHashMap.newKeySet();
+    private volatile boolean running;
+    private Thread thread;
+
+    /**
+     * @param mongoDBManager      The MongoDB manager.
+     * @param logger              The plugin logger.
+     * @param journalFile         The journal, one JSON write per line.
+     * @param flushIntervalMillis The longest a write waits before it is sent.
+     * @param batchSize           The number of queued writes that are sent without waiting.
+     */
+    public WriteBehind(MongoDBManager mongoDBManager, Logger logger, File journalFile,
+                       long flushIntervalMillis, int batchSize) {
+        this.mongoDBManager = mongoDBManager;
+        this.logger = logger;
+        this.journalFile = journalFile;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Replays the journal left by the previous run, then starts flushing on a
+     * background thread. Blocking. Writes that cannot be replayed now stay
+     * queued and are retried by the background thread.
+     */
+    public void start() {
+        int replayed = readJournal();
+        try {
+            openJournal(true);
+        } catch (IOException e) {
+            logger.warning("Could not open the write-behind journal; queued writes are kept in memory only: " + e.getMessage());
+        }
+        if (replayed > 0) {
+            try {
+                flush();
+                logger.info("Replayed " + replayed + " journaled MongoDB writes.");
+            } catch (MongoException e) {
+                logger.warning("Could not replay " + replayed + " journaled MongoDB writes yet: " + e.getMessage());
+            }
+        }
+
+        running = true;
+        thread = new Thread(this::run, "MarketPlace-WriteBehind");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the background thread and flushes every queued write before
+     * returning. Writes that cannot be flushed stay in the journal for the next start.
+     */
+    public void close() {
+        running = false;
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+        if (thread != null) {
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        try {
+            flush();
+        } catch (MongoException e) {
+            logger.warning("Could not flush " + getQueuedCount() + " MongoDB writes; they are replayed on the next start: "
+                    + e.getMessage());
+        }
+        synchronized (lock) {
+            closeJournal();
+        }
+    }
+
+    /**
+     * Queues a document insert. The document is given an _id if it has none,
+     * so a replayed insert is recognised as a duplicate.
+     *
+     * @param collection The collection name.
+     * @param document   The document; it must not be changed afterwards.
+     * @return A future completed once the document is stored.
+     */
+    public CompletableFuture<Void> insert(String collection, Document document) {
+        if (!document.containsKey("_id")) document.put("_id", new ObjectId());
+        return enqueue(new Write(collection, false, document, new CompletableFuture<>()));
+    }
+
+    /**
+     * Queues the delete of a document by _id.
+     *
+     * @param collection The collection name.
+     * @param id         The _id of the document.
+     * @return A future completed once the document is deleted.
+     */
+    public CompletableFuture<Void> delete(String collection, Object id) {
+        pendingDeletes.add(id);
+        return enqueue(new Write(collection, true, new Document("_id", id), new CompletableFuture<>()));
+    }
+
+    /**
+     * @param id The _id of a document.
+     * @return True if a delete of the document is queued but not yet stored.
+     */
+    public boolean isDeletePending(Object id) {
+        return pendingDeletes.contains(id);
+    }
+
+    /**
+     * @return The number of writes waiting to be sent.
+     */
+    public int getQueuedCount() {
+        synchronized (lock) {
+            return queue.size();
+        }
+    }
+
+    private CompletableFuture<Void> enqueue(Write write) {
+        synchronized (lock) {
+            appendToJournal(write);
+            queue.add(write);
+            // Wake the flusher when it is idle, and again when a batch is full.
+            if (queue.size() == 1 || queue.size() >= batchSize) lock.notifyAll();
+        }
+        return write.done();
+    }
+
+    private void run() {
+        int failures = 0;
+        while (running) {
+            try {
+                synchronized (lock) {
+                    if (queue.isEmpty() && running) lock.wait();
+                    // Give the first write of a batch up to one interval to be joined by others.
+                    if (queue.size() < batchSize && running) lock.wait(flushIntervalMillis);
+                }
+                flush();
+                failures = 0;
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                // Anything else, e.g. a document the driver cannot encode, must not end the flusher either.
+                failures++;
+                logger.warning("Flushing " + getQueuedCount() + " MongoDB writes failed, retrying: " + e.getMessage());
+                try {
+                    Thread.sleep(Math.min(MAX_RETRY_MILLIS, flushIntervalMillis << Math.min(failures, 10)));
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends every queued write, a batch at a time.
+     *
+     * @throws MongoException If MongoDB could not be reached; the unsent writes stay queued.
+     */
+    private void flush() {
+        synchronized (flushLock) {
+            while (true) {
+                List<Write> batch = new ArrayList<>(batchSize);
+                synchronized (lock) {
+                    Iterator<Write> queued = queue.iterator();
+                    while (batch.size() < batchSize && queued.hasNext()) batch.add(queued.next());
+                }
+                if (batch.isEmpty()) return;
+
+                Map<Write, String> rejected = send(batch);
+                synchronized (lock) {
+                    for (int i = 0; i < batch.size(); i++) queue.poll();
+                    if (queue.isEmpty()) {
+                        resetJournal(List.of());
+                    } else if (journalBytes > COMPACT_BYTES) {
+                        resetJournal(new ArrayList<>(queue));
+                    }
+                }
+                for (Write write : batch) {
+                    if (write.delete()) pendingDeletes.remove(write.document().get("_id"));
+                    String error = rejected.get(write);
+                    if (error == null) {
+                        write.done().complete(null);
+                    } else {
+                        write.done().completeExceptionally(new IllegalStateException(error));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends a batch as one unordered bulk write per collection.
+     *
+     * @return The writes MongoDB rejected for good, with the reason.
+     */
+    private Map<Write, String> send(List<Write> batch) {
+        Map<String, List<Write>> byCollection = new LinkedHashMap<>();
+        for (Write write : batch) {
+            byCollection.computeIfAbsent(write.collection(), name -> new ArrayList<>()).add(write);
+        }
+
+        // Writes are told apart by identity; two deletes of the same _id are still two writes.
+        Map<Write, String> rejected = new IdentityHashMap<>();
+        for (Map.Entry<String, List<Write>> entry : byCollection.entrySet()) {
+            List<Write> writes = entry.getValue();
+            List<WriteModel<Document>> models = new ArrayList<>(writes.size());
+            for (Write write : writes) {
+                models.add(write.delete()
+                        ? new DeleteOneModel<>(Filters.eq("_id", write.document().get("_id")))
+                        : new InsertOneModel<>(write.document()));
+            }
+            try {
+                mongoDBManager.getCollection(entry.getKey()).bulkWrite(models, new BulkWriteOptions().ordered(false));
+            } catch (MongoBulkWriteException e) {
+                if (e.getWriteConcernError() != null) throw e;
+                for (BulkWriteError error : e.getWriteErrors()) {
+                    // Already inserted before a replay; anything else would fail the same way every retry.
+                    if (ErrorCategory.fromErrorCode(error.getCode()) == ErrorCategory.DUPLICATE_KEY) continue;
+                    Write write = writes.get(error.getIndex());
+                    logger.severe("MongoDB rejected a write to " + entry.getKey() + ": " + error.getMessage());
+                    rejected.put(write, error.getMessage());
+                }
+            }
+        }
+        return rejected;
+    }
+
+    private int readJournal() {
+        if (!journalFile.exists()) return 0;
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(journalFile.toPath(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            logger.warning("Could not read the write-behind journal: " + e.getMessage());
+            return 0;
+        }
+
+        int replayed = 0;
+        for (String line : lines) {
+            if (line.isBlank()) continue;
+            try {
+                Document entry = Document.parse(line);
+                Write write = new Write(entry.getString("collection"), "delete".equals(entry.getString("op")),
+                        entry.get("document", Document.class), new CompletableFuture<>());
+                if (write.delete()) pendingDeletes.add(write.document().get("_id"));
+                queue.add(write);
+                replayed++;
+            } catch (RuntimeException e) {
+                // Only the line being written when the process died can be cut short.
+                logger.warning("Skipped an unreadable write-behind journal entry: " + e.getMessage());
+            }
+        }
+        return replayed;
+    }
+
+    private void appendToJournal(Write write) {
+        if (journal == null) return;
+        String line = new Document("collection", write.collection())
+                .append("op", write.delete() ? "delete" : "insert")
+                .append("document", write.document())
+                .toJson(JOURNAL_JSON);
+        try {
+            journal.write(line);
+            journal.newLine();
+            // Flushed to the operating system, so the write survives the server process dying.
+            journal.flush();
+            journalBytes += line.length() + 1;
+        } catch (IOException e) {
+            logger.warning("Could not journal a MongoDB write; it is kept in memory only: " + e.getMessage());
+        }
+    }
+
+    private void resetJournal(List<Write> queued) {
+        if (journal == null) return;
+        closeJournal();
+        try {
+            if (queued.isEmpty()) {
+                openJournal(false);
+                return;
+            }
+            // Written aside and moved over the journal, so a crash mid-rewrite leaves the old journal whole.
+            File rewritten = new File(journalFile.getPath() + ".tmp");
+            journal = Files.newBufferedWriter(rewritten.toPath(), StandardCharsets.UTF_8);
+            journalBytes = 0;
+            for (Write write : queued) appendToJournal(write);
+            closeJournal();
+            Files.move(rewritten.toPath(), journalFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            openJournal(true);
+        } catch (IOException e) {
+            logger.warning("Could not rewrite the write-behind journal: " + e.getMessage());
+            closeJournal();
+            try {
+                openJournal(true);
+            } catch (IOException reopen) {
+                logger.warning("Could not reopen the write-behind journal; queued writes are kept in memory only: "
+                        + reopen.getMessage());
+            }
+        }
+    }
+
+    private void openJournal(boolean append) throws IOException {
+        journalFile.getParentFile().mkdirs();
+        journal = Files.newBufferedWriter(journalFile.toPath(), StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING);
+        journalBytes = append ? journalFile.length() : 0;
+    }
+
+    private void closeJournal() {
+        if (journal == null) return;
+        try {
+            journal.close();
+        } catch (IOException e) {
+            logger.warning("Could not close the write-behind journal: " + e.getMessage());
+        }
+        journal = null;
+    }
+
+    /**
+     * A queued write.
+     *
+     * @param collection The collection name.
+     * @param delete     True for a delete by _id, false for an insert.
+     * @param document   The document to insert, or a document holding only the _id to delete.
+     * @param done       Completed once MongoDB has the write.
+     */
+    private record Write(String collection, boolean delete, Document document, CompletableFuture<Void> done) {
+    }
+}
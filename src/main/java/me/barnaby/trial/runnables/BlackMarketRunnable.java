@@ -1,17 +1,49 @@
 package me.barnaby.trial.runnables;
 
 import me.barnaby.trial.MarketPlace;
+import me.barnaby.trial.mongo.BlackMarketRotation;
+import me.barnaby.trial.mongo.ListingRepository;
 import org.bukkit.scheduler.BukkitRunnable;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Returns expired black market listings to the marketplace, then checks whether
+ * a scheduled black market rotation is due and runs it off the server thread if
+ * this server wins the schedule's lease.
+ */
 public class BlackMarketRunnable extends BukkitRunnable {
 
+    public static final long CHECK_INTERVAL_TICKS = 200;
+
     private final MarketPlace marketPlace;
+    // Set while a check is running, so a slow database never stacks up checks.
+    private final AtomicBoolean checking = new AtomicBoolean();
+
     public BlackMarketRunnable(MarketPlace marketPlace) {
         this.marketPlace = marketPlace;
     }
 
     @Override
     public void run() {
-        marketPlace.getMongoDBManager().moveItemsToBlackMarket();
+        if (!checking.compareAndSet(false, true)) return;
+
+        ListingRepository listingRepository = marketPlace.getMongoDBManager().getListingRepository();
+        BlackMarketRotation rotation = marketPlace.getMongoDBManager().getBlackMarketRotation();
+        // Expiry and rotation fail independently, so a failing sweep never holds up a rotation.
+        CompletableFuture<Void> expiry = listingRepository.expireBlackMarket()
+                .thenAccept(restored -> { })
+                .exceptionally(ex -> {
+                    marketPlace.getLogger().severe("Failed to expire Black Market listings: " + ex.getMessage());
+                    return null;
+                });
+        CompletableFuture<Void> rotations = listingRepository.runDueBlackMarketRotations()
+                .thenAcceptAsync(results -> results.forEach(rotation::notifySellers), marketPlace.getMainThreadExecutor())
+                .exceptionally(ex -> {
+                    marketPlace.getLogger().severe("Failed to refresh the Black Market: " + ex.getMessage());
+                    return null;
+                });
+        CompletableFuture.allOf(expiry, rotations).whenComplete((ignored, ex) -> checking.set(false));
     }
 }
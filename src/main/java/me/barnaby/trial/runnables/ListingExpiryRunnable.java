@@ -0,0 +1,45 @@
+package me.barnaby.trial.runnables;
+
+import me.barnaby.trial.MarketPlace;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitRunnable;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Moves expired marketplace listings to their sellers' mailboxes off the
+ * server thread, then delivers the mail of sellers who are online.
+ */
+public class ListingExpiryRunnable extends BukkitRunnable {
+
+    private final MarketPlace marketPlace;
+    // Set while a sweep is running, so a slow database never stacks up sweeps.
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+
+    public ListingExpiryRunnable(MarketPlace marketPlace) {
+        this.marketPlace = marketPlace;
+    }
+
+    @Override
+    public void run() {
+        // Read on every run, so a reload can change or turn off the lifetime.
+        long lifetime = marketPlace.getConfigManager().getSettings().listingExpiry().lifetime();
+        if (lifetime <= 0 || !sweeping.compareAndSet(false, true)) return;
+
+        marketPlace.getMongoDBManager().getListingRepository().expireListings(TimeUnit.SECONDS.toMillis(lifetime))
+                .thenAcceptAsync(sellers -> {
+                    for (String seller : sellers) {
+                        Player player = Bukkit.getPlayer(UUID.fromString(seller));
+                        if (player != null) marketPlace.getMailboxDelivery().deliver(player, false);
+                    }
+                }, marketPlace.getMainThreadExecutor())
+                .exceptionally(ex -> {
+                    marketPlace.getLogger().severe("Failed to expire listings: " + ex.getMessage());
+                    return null;
+                })
+                .whenComplete((ignored, ex) -> sweeping.set(false));
+    }
+}
@@ -0,0 +1,59 @@
+package me.barnaby.trial.runnables;
+
+import me.barnaby.trial.MarketPlace;
+import me.barnaby.trial.mongo.ItemStackCache;
+import me.barnaby.trial.mongo.MainThreadCommandMonitor;
+import org.bukkit.scheduler.BukkitRunnable;
+
+/**
+ * Measures server tick times and reports them alongside the time the server
+ * thread spent waiting on MongoDB. Runs every tick and logs a summary once per report interval.
+ */
+public class TickMonitorRunnable extends BukkitRunnable {
+
+    private final MarketPlace marketPlace;
+    private final int reportEveryTicks;
+
+    private long lastTick = -1;
+    private int ticks;
+    private long totalNanos;
+    private long maxNanos;
+
+    public TickMonitorRunnable(MarketPlace marketPlace, int reportEveryTicks) {
+        this.marketPlace = marketPlace;
+        this.reportEveryTicks = reportEveryTicks;
+    }
+
+    @Override
+    public void run() {
+        long now = System.nanoTime();
+        if (lastTick != -1) {
+            long tickNanos = now - lastTick;
+            ticks++;
+            totalNanos += tickNanos;
+            maxNanos = Math.max(maxNanos, tickNanos);
+        }
+        lastTick = now;
+
+        if (ticks < reportEveryTicks) return;
+
+        MainThreadCommandMonitor monitor = marketPlace.getMongoDBManager().getCommandMonitor();
+        ItemStackCache itemCache = marketPlace.getMongoDBManager().getItemCache();
+        marketPlace.getLogger().info(String.format(
+                "Tick monitor: avg %.2f ms, max %.2f ms over %d ticks; MongoDB on server thread: %d commands, %.2f ms; "
+                        + "item cache: %d items, %d hits, %d misses",
+                totalNanos / (double) ticks / 1_000_000.0,
+                maxNanos / 1_000_000.0,
+                ticks,
+                monitor.getCommands(),
+                monitor.getNanos() / 1_000_000.0,
+                itemCache.size(),
+                itemCache.getHits(),
+                itemCache.getMisses()));
+
+        monitor.reset();
+        ticks = 0;
+        totalNanos = 0;
+        maxNanos = 0;
+    }
+}
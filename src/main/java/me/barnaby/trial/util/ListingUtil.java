@@ -1,13 +1,13 @@
 package me.barnaby.trial.util;
 
 import org.bson.Document;
-import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
 import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.ItemMeta;
 
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
-import java.util.UUID;
 
 public class ListingUtil {
     /**
@@ -23,18 +23,16 @@ public class ListingUtil {
     }
 
     /**
-     * Retrieves the seller's name given their UUID string.
+     * Returns the name a listing is found by in marketplace searches: the
+     * item's display name without colours, or its formatted material.
      *
-     * @param uuidStr The seller's UUID as a string.
-     * @return The seller's name, or the UUID if no name is found.
+     * @param item The listed item.
+     * @return The searchable item name.
      */
-    public static String getSellerName(String uuidStr) {
-        try {
-            UUID uuid = UUID.fromString(uuidStr);
-            return Bukkit.getOfflinePlayer(uuid).getName() != null ? Bukkit.getOfflinePlayer(uuid).getName() : uuidStr;
-        } catch (Exception e) {
-            return uuidStr;
-        }
+    public static String searchName(ItemStack item) {
+        ItemMeta meta = item.getItemMeta();
+        if (meta != null && meta.hasDisplayName()) return ChatColor.stripColor(meta.getDisplayName());
+        return StringUtil.formatItem(item);
     }
 
     /**
@@ -0,0 +1,126 @@
+package me.barnaby.trial.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A message template parsed once into literal and placeholder segments.
+ *
+ * Placeholders are written as %name% and are bound to argument positions when
+ * the template is compiled, so rendering is a single pass that appends each
+ * segment to a StringBuilder. Placeholders that were not declared are kept as
+ * literal text, just like an unmatched String.replace would leave them.
+ */
+public final class MessageTemplate {
+
+    // Reused by render(Object...) so each call only allocates the resulting String.
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(128));
+
+    private final String source;
+    private final String[] literals;
+    // Argument index of the placeholder following each literal; one shorter than literals, as nothing follows the last.
+    private final int[] arguments;
+
+    private MessageTemplate(String source, String[] literals, int[] arguments) {
+        this.source = source;
+        this.literals = literals;
+        this.arguments = arguments;
+    }
+
+    /**
+     * Compiles a template without translating colour codes.
+     *
+     * @param template     The raw template, e.g. "Bought %item% x%amount%".
+     * @param placeholders The placeholder names without percent signs, in argument order.
+     * @return The compiled template.
+     */
+    public static MessageTemplate of(String template, String... placeholders) {
+        return parse(template == null ? "" : template, placeholders);
+    }
+
+    /**
+     * Compiles a template after translating its &amp; colour codes.
+     *
+     * @param template     The raw template, e.g. "&aSold %item% for &f%price%".
+     * @param placeholders The placeholder names without percent signs, in argument order.
+     * @return The compiled template.
+     */
+    public static MessageTemplate colored(String template, String... placeholders) {
+        return parse(template == null ? "" : StringUtil.format(template), placeholders);
+    }
+
+    /**
+     * Renders the template.
+     *
+     * @param args The placeholder values, in the order the placeholders were declared.
+     * @return The rendered message.
+     */
+    public String render(Object... args) {
+        if (arguments.length == 0) return source;
+        StringBuilder buffer = BUFFER.get();
+        buffer.setLength(0);
+        appendTo(buffer, args);
+        return buffer.toString();
+    }
+
+    /**
+     * Appends the rendered template to a builder.
+     *
+     * @param out  The builder to append to.
+     * @param args The placeholder values, in the order the placeholders were declared.
+     * @return The builder.
+     */
+    public StringBuilder appendTo(StringBuilder out, Object... args) {
+        for (int i = 0; i < literals.length; i++) {
+            out.append(literals[i]);
+            if (i < arguments.length) out.append(args[arguments[i]]);
+        }
+        return out;
+    }
+
+    /**
+     * @return The template text after colour translation, with its placeholders.
+     */
+    public String getSource() {
+        return source;
+    }
+
+    private static MessageTemplate parse(String template, String[] placeholders) {
+        List<String> literals = new ArrayList<>();
+        List<Integer> arguments = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+
+        int position = 0;
+        while (position < template.length()) {
+            int start = template.indexOf('%', position);
+            int end = start < 0 ? -1 : template.indexOf('%', start + 1);
+            if (end < 0) break;
+
+            int argument = indexOf(placeholders, template.substring(start + 1, end));
+            if (argument < 0) {
+                // Not a declared placeholder; keep the first '%' and look for the next one from the second.
+                literal.append(template, position, end);
+                position = end;
+                continue;
+            }
+            literal.append(template, position, start);
+            literals.add(literal.toString());
+            arguments.add(argument);
+            literal.setLength(0);
+            position = end + 1;
+        }
+        literal.append(template, position, template.length());
+        literals.add(literal.toString());
+
+        return new MessageTemplate(template,
+                literals.toArray(new String[0]),
+                arguments.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    private static int indexOf(String[] placeholders, String name) {
+        for (int i = 0; i < placeholders.length; i++) {
+            if (placeholders[i].equals(name)) return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,96 @@
+package me.barnaby.trial.stub;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.Server;
+import org.bukkit.UnsafeValues;
+import org.bukkit.configuration.serialization.ConfigurationSerialization;
+import org.bukkit.inventory.ItemFactory;
+import org.bukkit.inventory.meta.ItemMeta;
+import org.bukkit.material.MaterialData;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Objects;
+import java.util.logging.Logger;
+
+/**
+ * A minimal Bukkit server for running plugin code outside Minecraft, in tests and benchmarks.
+ *
+ * Only what ItemStack needs is implemented: an item factory handing out
+ * {@link StubItemMeta} and the unsafe values used when items are serialized.
+ */
+public final class BukkitStub {
+
+    private static final int DATA_VERSION = 4189;
+    private static boolean installed;
+
+    private BukkitStub() {
+    }
+
+    /**
+     * Installs the stub server if no server is set yet.
+     */
+    public static synchronized void install() {
+        if (installed) return;
+        installed = true;
+
+        ItemFactory itemFactory = proxy(ItemFactory.class, (method, args) -> switch (method.getName()) {
+            case "getItemMeta" -> StubItemMeta.create();
+            case "isApplicable" -> true;
+            case "asMetaFor" -> ((ItemMeta) args[0]).clone();
+            case "equals" -> isEmpty((ItemMeta) args[0]) && isEmpty((ItemMeta) args[1])
+                    || Objects.equals(args[0], args[1]);
+            default -> null;
+        });
+        UnsafeValues unsafe = proxy(UnsafeValues.class, (method, args) -> switch (method.getName()) {
+            case "getDataVersion" -> DATA_VERSION;
+            case "toLegacy" -> args[0];
+            case "fromLegacy" -> args[0] instanceof MaterialData data ? data.getItemType() : args[0];
+            case "getMaterial" -> Material.matchMaterial((String) args[0]);
+            default -> null;
+        });
+        Logger logger = Logger.getLogger("BukkitStub");
+        Server server = proxy(Server.class, (method, args) -> switch (method.getName()) {
+            case "getItemFactory" -> itemFactory;
+            case "getUnsafe" -> unsafe;
+            case "getLogger" -> logger;
+            case "getName", "getVersion", "getBukkitVersion" -> "stub";
+            default -> null;
+        });
+        Bukkit.setServer(server);
+
+        ConfigurationSerialization.registerClass(StubItemMeta.class);
+    }
+
+    private static boolean isEmpty(ItemMeta meta) {
+        return meta == null || StubItemMeta.isEmpty(meta);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, Handler handler) {
+        return (T) Proxy.newProxyInstance(BukkitStub.class.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> {
+                    Object result = handler.invoke(method, args);
+                    return result == null ? defaultValue(method) : result;
+                });
+    }
+
+    private static Object defaultValue(Method method) {
+        Class<?> returnType = method.getReturnType();
+        if (returnType == boolean.class) return false;
+        if (returnType == int.class) return 0;
+        if (returnType == long.class) return 0L;
+        if (returnType == short.class) return (short) 0;
+        if (returnType == double.class) return 0.0;
+        if (returnType == float.class) return 0.0f;
+        if (returnType == byte.class) return (byte) 0;
+        if (returnType == char.class) return '\0';
+        return null;
+    }
+
+    @FunctionalInterface
+    private interface Handler {
+        Object invoke(Method method, Object[] args);
+    }
+}
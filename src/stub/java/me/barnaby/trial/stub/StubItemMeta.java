@@ -0,0 +1,158 @@
+package me.barnaby.trial.stub;
+
+import org.bukkit.configuration.serialization.ConfigurationSerializable;
+import org.bukkit.configuration.serialization.ConfigurationSerialization;
+import org.bukkit.inventory.meta.Damageable;
+import org.bukkit.inventory.meta.ItemMeta;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.*;
+
+/**
+ * Item meta for the stub server that only keeps a display name, an item name, lore and damage.
+ *
+ * The meta is a {@link Damageable} proxy over a map of those properties, keyed
+ * as they are serialized. Proxies are Serializable, so the meta replaces itself
+ * with an instance of this class when written; like CraftBukkit's meta, Bukkit's
+ * object streams then write it as its serialized map. Other getters return
+ * nothing and other setters are unsupported.
+ */
+public final class StubItemMeta implements ConfigurationSerializable {
+
+    // Serialized keys of the kept properties, by the name their accessors share.
+    private static final Map<String, String> PROPERTIES = Map.of(
+            "DisplayName", "display-name",
+            "ItemName", "item-name",
+            "Lore", "lore",
+            "Damage", "Damage");
+
+    // The serialized meta.
+    private final Map<String, Object> values;
+
+    private StubItemMeta(Map<String, Object> values) {
+        this.values = values;
+    }
+
+    /**
+     * @return New meta with no properties set.
+     */
+    static ItemMeta create() {
+        return create(new LinkedHashMap<>());
+    }
+
+    /**
+     * Reads meta written by its serialize method.
+     *
+     * @param values The serialized values.
+     * @return The meta.
+     */
+    public static ItemMeta deserialize(Map<String, Object> values) {
+        Map<String, Object> properties = new LinkedHashMap<>();
+        for (String key : PROPERTIES.values()) {
+            if (values.get(key) != null) properties.put(key, values.get(key));
+        }
+        return create(properties);
+    }
+
+    /**
+     * @param meta Meta made by the stub server.
+     * @return True if no property is set, like meta the server would drop from an item.
+     */
+    static boolean isEmpty(ItemMeta meta) {
+        return ((Handler) Proxy.getInvocationHandler(meta)).properties.isEmpty();
+    }
+
+    @Override
+    public Map<String, Object> serialize() {
+        return values;
+    }
+
+    private static ItemMeta create(Map<String, Object> properties) {
+        return (ItemMeta) Proxy.newProxyInstance(StubItemMeta.class.getClassLoader(),
+                new Class<?>[]{Damageable.class, Replaceable.class}, new Handler(properties));
+    }
+
+    // Gives the proxy class a writeReplace method for object streams to call.
+    private interface Replaceable {
+        Object writeReplace();
+    }
+
+    private record Handler(Map<String, Object> properties) implements InvocationHandler {
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            String name = method.getName();
+            switch (name) {
+                case "serialize" -> {
+                    Map<String, Object> values = new LinkedHashMap<>(properties);
+                    // Written after the proxy's own class name, so the map is read back through StubItemMeta.
+                    values.put(ConfigurationSerialization.SERIALIZED_TYPE_KEY,
+                            ConfigurationSerialization.getAlias(StubItemMeta.class));
+                    return values;
+                }
+                case "writeReplace" -> {
+                    return new StubItemMeta(new LinkedHashMap<>(properties));
+                }
+                case "clone" -> {
+                    return create(new LinkedHashMap<>(properties));
+                }
+                case "equals" -> {
+                    return args[0] != null && Proxy.isProxyClass(args[0].getClass())
+                            && Proxy.getInvocationHandler(args[0]) instanceof Handler other
+                            && properties.equals(other.properties);
+                }
+                case "hashCode" -> {
+                    return properties.hashCode();
+                }
+                case "toString" -> {
+                    return "StubItemMeta" + properties;
+                }
+                case "setVersion" -> {
+                    // Called when items are deserialized; the stub has no data to upgrade.
+                    return null;
+                }
+            }
+
+            String key = name.length() > 3 ? PROPERTIES.get(name.substring(3)) : null;
+            if (key != null && args == null && name.startsWith("has")) return properties.containsKey(key);
+            if (key != null && args == null && name.startsWith("get")) return get(key, method);
+            if (key != null && args != null && args.length == 1 && name.startsWith("set")) {
+                set(key, args[0]);
+                return null;
+            }
+            if (method.getReturnType() == void.class) throw new UnsupportedOperationException(name);
+            return defaultValue(method.getReturnType());
+        }
+
+        private Object get(String key, Method method) {
+            Object value = properties.get(key);
+            if (value == null) return defaultValue(method.getReturnType());
+            return value instanceof List<?> lore ? new ArrayList<>(lore) : value;
+        }
+
+        private void set(String key, Object value) {
+            // Unset like the server's meta: no lore for an empty list and no damage at 0.
+            boolean unset = value == null
+                    || value instanceof List<?> lore && lore.isEmpty()
+                    || value instanceof Integer damage && damage == 0;
+            if (unset) {
+                properties.remove(key);
+            } else {
+                properties.put(key, value instanceof List<?> lore ? new ArrayList<>(lore) : value);
+            }
+        }
+
+        private static Object defaultValue(Class<?> type) {
+            if (type == boolean.class) return false;
+            if (type == int.class) return 0;
+            if (type == long.class) return 0L;
+            if (type == double.class) return 0.0;
+            if (type == float.class) return 0.0f;
+            if (type == Map.class) return Collections.emptyMap();
+            if (type == Set.class) return Collections.emptySet();
+            return null;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package me.barnaby.trial.config;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.permissions.Permissible;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks how {@link ListingLimits} picks the cap of a player.
+ */
+class ListingLimitsTest {
+
+    private static final ListingLimits LIMITS = new ListingLimits(3, "marketplace.limit.",
+            Map.of("vip", 10, "mvp", 25, "staff", -1));
+
+    // A player holding exactly the given permissions.
+    private static Permissible player(String... permissions) {
+        Set<String> held = Set.of(permissions);
+        return (Permissible) Proxy.newProxyInstance(Permissible.class.getClassLoader(), new Class<?>[]{Permissible.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("hasPermission") && args[0] instanceof String permission) {
+                        return held.contains(permission);
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    @Test
+    void playerWithoutAGroupGetsTheDefault() {
+        assertEquals(3, LIMITS.limitFor(player()));
+        assertEquals(3, LIMITS.limitFor(player("marketplace.limit.unknown")));
+    }
+
+    @Test
+    void groupRaisesTheCap() {
+        assertEquals(10, LIMITS.limitFor(player("marketplace.limit.vip")));
+    }
+
+    @Test
+    void highestGroupWins() {
+        assertEquals(25, LIMITS.limitFor(player("marketplace.limit.vip", "marketplace.limit.mvp")));
+    }
+
+    @Test
+    void groupBelowTheDefaultDoesNotLowerIt() {
+        ListingLimits limits = new ListingLimits(5, "marketplace.limit.", Map.of("trial", 2));
+
+        assertEquals(5, limits.limitFor(player("marketplace.limit.trial")));
+    }
+
+    @Test
+    void unlimitedGroupRemovesTheCap() {
+        assertEquals(-1, LIMITS.limitFor(player("marketplace.limit.mvp", "marketplace.limit.staff")));
+    }
+
+    @Test
+    void negativeDefaultMeansNoLimit() {
+        ListingLimits limits = new ListingLimits(-1, "marketplace.limit.", Map.of("vip", 10));
+
+        assertEquals(-1, limits.limitFor(player("marketplace.limit.vip")));
+    }
+
+    @Test
+    void limitsAreReadFromConfig() {
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("listing-limits.default", 4);
+        config.set("listing-limits.permission-prefix", "shop.cap.");
+        config.set("listing-limits.groups.vip", 8);
+
+        ListingLimits limits = ListingLimits.from(config);
+
+        assertEquals(new ListingLimits(4, "shop.cap.", Map.of("vip", 8)), limits);
+        assertEquals(8, limits.limitFor(player("shop.cap.vip")));
+        assertEquals(4, limits.limitFor(player("marketplace.limit.vip")));
+    }
+
+    @Test
+    void missingSectionMeansNoLimit() {
+        ListingLimits limits = ListingLimits.from(new YamlConfiguration());
+
+        assertEquals(-1, limits.limitFor(player()));
+    }
+}
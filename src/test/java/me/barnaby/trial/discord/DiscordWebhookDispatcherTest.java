@@ -0,0 +1,220 @@
+package me.barnaby.trial.discord;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the dispatcher against a stub webhook served by the JDK's HttpServer.
+ */
+class DiscordWebhookDispatcherTest {
+
+    private static final Logger LOGGER = Logger.getLogger(DiscordWebhookDispatcherTest.class.getName());
+    private static final Pattern EMBED_NUMBER = Pattern.compile("\"n\":(\\d+)");
+
+    @TempDir
+    Path tempDir;
+
+    private HttpServer server;
+    private String webhookUrl;
+    private final ConcurrentLinkedQueue<String> bodies = new ConcurrentLinkedQueue<>();
+    // Status codes to answer with, in order; 204 once they run out.
+    private final ConcurrentLinkedQueue<Integer> statuses = new ConcurrentLinkedQueue<>();
+    private volatile CountDownLatch hold;
+    private volatile CountDownLatch firstRequest = new CountDownLatch(1);
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/webhook", this::handle);
+        server.start();
+        webhookUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/webhook";
+    }
+
+    @AfterEach
+    void stopServer() {
+        if (hold != null) hold.countDown();
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            bodies.add(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        firstRequest.countDown();
+        CountDownLatch latch = hold;
+        if (latch != null) {
+            try {
+                latch.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        Integer status = statuses.poll();
+        int code = status == null ? 204 : status;
+        if (code == 429) exchange.getResponseHeaders().add("Retry-After", "0");
+        exchange.sendResponseHeaders(code, -1);
+        exchange.close();
+    }
+
+    @Test
+    void deliversQueuedEmbeds() throws InterruptedException {
+        DiscordWebhookDispatcher dispatcher = newDispatcher(100);
+        for (int i = 0; i < 25; i++) {
+            dispatcher.enqueue(embed(i));
+        }
+
+        await(() -> delivered().size() == 25);
+        dispatcher.shutdown(5, TimeUnit.SECONDS);
+
+        assertEquals(range(0, 25), delivered());
+        for (String body : bodies) {
+            assertTrue(countEmbeds(body) <= DiscordWebhookDispatcher.MAX_EMBEDS_PER_MESSAGE, body);
+        }
+        assertFalse(spillFile().exists());
+    }
+
+    @Test
+    void retriesAfterRateLimitAndServerError() throws InterruptedException {
+        statuses.add(429);
+        statuses.add(503);
+        DiscordWebhookDispatcher dispatcher = newDispatcher(100);
+        dispatcher.enqueue(embed(7));
+
+        await(() -> bodies.size() == 3);
+        dispatcher.shutdown(5, TimeUnit.SECONDS);
+
+        // The same message is sent until it is accepted.
+        List<String> sent = new ArrayList<>(bodies);
+        assertEquals(sent.get(0), sent.get(1));
+        assertEquals(sent.get(0), sent.get(2));
+        assertFalse(spillFile().exists());
+    }
+
+    @Test
+    void spillsMessageThatStaysRateLimited() throws Exception {
+        for (int i = 0; i < 5; i++) statuses.add(429);
+        DiscordWebhookDispatcher dispatcher = newDispatcher(100);
+        dispatcher.enqueue(embed(3));
+        await(() -> spillFile().exists());
+        assertEquals(5, bodies.size());
+
+        // The worker moves on to later messages instead of waiting on the rate limit forever.
+        dispatcher.enqueue(embed(4));
+        await(() -> bodies.size() == 6);
+        dispatcher.shutdown(5, TimeUnit.SECONDS);
+
+        assertEquals(List.of(embed(3)), Files.readAllLines(spillFile().toPath()));
+    }
+
+    @Test
+    void spillsWhenQueueIsFullAndReplaysOnNextStart() throws Exception {
+        hold = new CountDownLatch(1);
+        DiscordWebhookDispatcher dispatcher = newDispatcher(10);
+
+        // Keep the worker busy on the first message so the queue fills up.
+        dispatcher.enqueue(embed(0));
+        assertTrue(firstRequest.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i <= 15; i++) {
+            dispatcher.enqueue(embed(i));
+        }
+        assertEquals(10, dispatcher.getQueuedCount());
+        // The caller never writes the overflow itself; the busy worker does once it is free.
+        assertFalse(spillFile().exists());
+
+        hold.countDown();
+        hold = null;
+        await(() -> delivered().size() == 11);
+        dispatcher.shutdown(5, TimeUnit.SECONDS);
+        assertEquals(range(0, 11), delivered());
+        List<String> spilled = Files.readAllLines(spillFile().toPath());
+        assertEquals(List.of(embed(11), embed(12), embed(13), embed(14), embed(15)), spilled);
+
+        // The next start queues the spilled embeds again and removes the spill file.
+        DiscordWebhookDispatcher restarted = newDispatcher(10);
+        await(() -> delivered().size() == 16);
+        restarted.shutdown(5, TimeUnit.SECONDS);
+        assertEquals(range(0, 16), delivered());
+        assertFalse(spillFile().exists());
+    }
+
+    @Test
+    void missingOrInvalidUrlDisablesTheDispatcher() {
+        for (String url : new String[]{null, "", "not a url", "ftp://example.com/hook", "https:///no-host"}) {
+            DiscordWebhookDispatcher dispatcher = new DiscordWebhookDispatcher(url, LOGGER, spillFile(), 10);
+            assertFalse(dispatcher.isEnabled(), String.valueOf(url));
+            dispatcher.enqueue(embed(1));
+            dispatcher.shutdown(1, TimeUnit.SECONDS);
+        }
+        assertTrue(bodies.isEmpty());
+        assertFalse(spillFile().exists());
+    }
+
+    private DiscordWebhookDispatcher newDispatcher(int capacity) {
+        DiscordWebhookDispatcher dispatcher = new DiscordWebhookDispatcher(webhookUrl, LOGGER, spillFile(), capacity);
+        assertTrue(dispatcher.isEnabled());
+        return dispatcher;
+    }
+
+    private File spillFile() {
+        return tempDir.resolve("discord-spill.jsonl").toFile();
+    }
+
+    private static String embed(int number) {
+        return "{\"n\":" + number + "}";
+    }
+
+    private Set<Integer> delivered() {
+        Set<Integer> numbers = new TreeSet<>();
+        for (String body : bodies) {
+            Matcher matcher = EMBED_NUMBER.matcher(body);
+            while (matcher.find()) numbers.add(Integer.parseInt(matcher.group(1)));
+        }
+        return numbers;
+    }
+
+    private static int countEmbeds(String body) {
+        Matcher matcher = EMBED_NUMBER.matcher(body);
+        int count = 0;
+        while (matcher.find()) count++;
+        return count;
+    }
+
+    private static Set<Integer> range(int from, int to) {
+        Set<Integer> numbers = new TreeSet<>();
+        for (int i = from; i < to; i++) numbers.add(i);
+        return numbers;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) fail("Timed out waiting for delivery");
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,606 @@
+package me.barnaby.trial.mongo;
+
+import com.mongodb.Function;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.MongoCommandException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.ChangeStreamIterable;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.MongoIterable;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.DeleteOneModel;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.WriteModel;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.result.DeleteResult;
+import com.mongodb.client.result.InsertManyResult;
+import com.mongodb.client.result.UpdateResult;
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentReader;
+import org.bson.BsonDouble;
+import org.bson.BsonInt32;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.DocumentCodec;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * An in-memory stand-in for a MongoDB database that covers the collection
+ * operations the tests drive. Filters, projections and sorts are rendered to
+ * BSON and evaluated here, so the production query code runs unchanged.
+ *
+ * Every operation on a collection holds that collection's lock, which makes
+ * findOneAndDelete atomic the way it is on the server. Writes are logged as
+ * change events for watch(); a standalone stand-in rejects change streams
+ * with the server's error instead.
+ */
+final class FakeMongo {
+
+    // Returned by standalone servers for $changeStream.
+    private static final int CHANGE_STREAMS_UNSUPPORTED = 40573;
+    // Returned for a write that reuses an _id.
+    static final int DUPLICATE_KEY = 11000;
+    // Returned for a document that fails the collection's validator.
+    private static final int DOCUMENT_VALIDATION_FAILURE = 121;
+
+    private static final CodecRegistry REGISTRY = MongoClientSettings.getDefaultCodecRegistry();
+    private static final DocumentCodec DOCUMENT_CODEC = new DocumentCodec();
+
+    private final boolean replicaSet;
+    private final Map<String, FakeCollection> collections = new ConcurrentHashMap<>();
+    private final MongoDatabase database = proxy(MongoDatabase.class, (self, name, args) -> switch (name) {
+        case "getCollection" -> collection((String) args[0]).proxy;
+        case "getName" -> "fake";
+        default -> throw unsupported("MongoDatabase", name);
+    });
+
+    /**
+     * @param replicaSet True to support change streams, false to behave like a standalone server.
+     */
+    FakeMongo(boolean replicaSet) {
+        this.replicaSet = replicaSet;
+    }
+
+    FakeMongo() {
+        this(true);
+    }
+
+    MongoDatabase database() {
+        return database;
+    }
+
+    FakeCollection collection(String name) {
+        return collections.computeIfAbsent(name, n -> new FakeCollection(this, n));
+    }
+
+    /**
+     * One collection, kept in insertion order.
+     */
+    static final class FakeCollection {
+
+        private final FakeMongo mongo;
+        private final String name;
+        private final Map<BsonValue, BsonDocument> documents = new LinkedHashMap<>();
+        private final List<Change> changes = new ArrayList<>();
+        private int deletes;
+        private int openStreams;
+        // Runs once a find has read its matches, before they are returned.
+        private volatile Runnable afterFind;
+        // Runs before each bulk write; throwing from it fails the whole write, as an unreachable server does.
+        private volatile Runnable beforeBulkWrite;
+        // Inserts of these _ids fail document validation.
+        private final Set<BsonValue> rejected = new HashSet<>();
+        final Object proxy;
+
+        private FakeCollection(FakeMongo mongo, String name) {
+            this.mongo = mongo;
+            this.name = name;
+            this.proxy = proxy(MongoCollection.class, (self, method, args) -> switch (method) {
+                case "insertOne" -> {
+                    insert((Document) args[0]);
+                    yield null;
+                }
+                case "bulkWrite" -> bulkWrite(writeModels(args[0]), args.length < 2 || ((BulkWriteOptions) args[1]).isOrdered());
+                case "insertMany" -> insertMany(documents(args[0]), args.length < 2 || ((InsertManyOptions) args[1]).isOrdered());
+                case "find" -> findIterable(args.length == 0 || args[0] instanceof Class<?> ? new BsonDocument() : bson(args[0]));
+                case "findOneAndDelete" -> findOneAndDelete(bson(args[0]));
+                case "findOneAndUpdate" -> findOneAndUpdate(bson(args[0]), bson(args[1]),
+                        args.length < 3 ? new FindOneAndUpdateOptions() : (FindOneAndUpdateOptions) args[2]);
+                case "updateOne", "updateMany" -> updateMatching(bson(args[0]), bson(args[1]), method.equals("updateMany"));
+                case "deleteOne", "deleteMany" -> deleteMatching(bson(args[0]), method.equals("deleteMany"));
+                case "countDocuments" -> (long) find(args.length == 0 ? new BsonDocument() : bson(args[0])).size();
+                case "estimatedDocumentCount" -> (long) size();
+                case "watch" -> changeStream();
+                default -> throw unsupported("MongoCollection " + name, method);
+            });
+        }
+
+        /**
+         * Stores a document, giving it an ObjectId if it has no _id.
+         */
+        synchronized void insert(Document document) {
+            if (!document.containsKey("_id")) document.put("_id", new ObjectId());
+            BsonDocument stored = bson(document);
+            if (documents.putIfAbsent(stored.get("_id"), stored) != null) {
+                throw new IllegalStateException("Duplicate _id " + stored.get("_id") + " in " + name);
+            }
+            record("insert", stored.get("_id"), stored.clone());
+        }
+
+        /**
+         * Applies the $set and $unset of an update to a document, as another server would.
+         *
+         * @return True if the document exists.
+         */
+        synchronized boolean update(Object id, Bson update) {
+            BsonDocument document = documents.get(bson(new Document("_id", id)).get("_id"));
+            if (document == null) return false;
+            apply(document, bson(update));
+            return true;
+        }
+
+        /**
+         * Deletes a document, as another server would.
+         *
+         * @return True if the document existed.
+         */
+        synchronized boolean delete(Object id) {
+            BsonValue key = bson(new Document("_id", id)).get("_id");
+            if (documents.remove(key) == null) return false;
+            record("delete", key, null);
+            return true;
+        }
+
+        synchronized BulkWriteResult bulkWrite(List<WriteModel<Document>> models, boolean ordered) {
+            Runnable action = beforeBulkWrite;
+            if (action != null) action.run();
+            List<BulkWriteError> errors = new ArrayList<>();
+            int inserted = 0;
+            int deleted = 0;
+            for (int i = 0; i < models.size() && (errors.isEmpty() || !ordered); i++) {
+                WriteModel<Document> model = models.get(i);
+                if (model instanceof DeleteOneModel<Document> delete) {
+                    deleted += (int) deleteMatching(bson(delete.getFilter()), false).getDeletedCount();
+                    continue;
+                }
+                Document document = ((InsertOneModel<Document>) model).getDocument();
+                if (rejected.contains(bson(new Document("_id", document.get("_id"))).get("_id"))) {
+                    errors.add(new BulkWriteError(DOCUMENT_VALIDATION_FAILURE, "Document failed validation", new BsonDocument(), i));
+                    continue;
+                }
+                try {
+                    insert(document);
+                    inserted++;
+                } catch (IllegalStateException e) {
+                    errors.add(new BulkWriteError(DUPLICATE_KEY, e.getMessage(), new BsonDocument(), i));
+                }
+            }
+            BulkWriteResult result = BulkWriteResult.acknowledged(inserted, 0, deleted, 0, List.of());
+            if (!errors.isEmpty()) throw new MongoBulkWriteException(result, errors, null, new ServerAddress());
+            return result;
+        }
+
+        synchronized Object insertMany(List<Document> inserts, boolean ordered) {
+            List<BulkWriteError> errors = new ArrayList<>();
+            int inserted = 0;
+            for (int i = 0; i < inserts.size(); i++) {
+                try {
+                    insert(inserts.get(i));
+                    inserted++;
+                } catch (IllegalStateException e) {
+                    errors.add(new BulkWriteError(DUPLICATE_KEY, e.getMessage(), new BsonDocument(), i));
+                    if (ordered) break;
+                }
+            }
+            if (!errors.isEmpty()) {
+                throw new MongoBulkWriteException(BulkWriteResult.acknowledged(inserted, 0, 0, 0, List.of()),
+                        errors, null, new ServerAddress());
+            }
+            return InsertManyResult.acknowledged(Map.of());
+        }
+
+        synchronized Document findOneAndUpdate(BsonDocument filter, BsonDocument update, FindOneAndUpdateOptions options) {
+            List<BsonDocument> matches = find(filter);
+            if (options.getSort() != null) matches.sort(comparator(bson(options.getSort())));
+            if (matches.isEmpty()) return null;
+            BsonDocument document = matches.get(0);
+            BsonDocument before = document.clone();
+            apply(document, update);
+            BsonDocument projection = options.getProjection() == null ? null : bson(options.getProjection());
+            return decode(project(options.getReturnDocument() == ReturnDocument.AFTER ? document : before, projection));
+        }
+
+        synchronized UpdateResult updateMatching(BsonDocument filter, BsonDocument update, boolean many) {
+            List<BsonDocument> matches = find(filter);
+            if (!many && matches.size() > 1) matches = matches.subList(0, 1);
+            for (BsonDocument document : matches) apply(document, update);
+            return UpdateResult.acknowledged(matches.size(), (long) matches.size(), null);
+        }
+
+        synchronized DeleteResult deleteMatching(BsonDocument filter, boolean many) {
+            List<BsonDocument> matches = find(filter);
+            if (!many && matches.size() > 1) matches = matches.subList(0, 1);
+            for (BsonDocument document : matches) {
+                documents.remove(document.get("_id"));
+                deletes++;
+                record("delete", document.get("_id"), null);
+            }
+            return DeleteResult.acknowledged(matches.size());
+        }
+
+        // Applies the $set and $unset of an update.
+        private void apply(BsonDocument document, BsonDocument update) {
+            for (Map.Entry<String, BsonValue> operator : update.entrySet()) {
+                for (Map.Entry<String, BsonValue> field : operator.getValue().asDocument().entrySet()) {
+                    switch (operator.getKey()) {
+                        case "$set" -> document.put(field.getKey(), field.getValue());
+                        case "$unset" -> document.remove(field.getKey());
+                        default -> throw new UnsupportedOperationException("Update operator " + operator.getKey());
+                    }
+                }
+            }
+            record("update", document.get("_id"), null);
+        }
+
+        synchronized Document findOneAndDelete(BsonDocument filter) {
+            List<BsonDocument> matches = find(filter);
+            if (matches.isEmpty()) return null;
+            BsonDocument removed = documents.remove(matches.get(0).get("_id"));
+            deletes++;
+            record("delete", removed.get("_id"), null);
+            return decode(removed);
+        }
+
+        synchronized List<BsonDocument> find(BsonDocument filter) {
+            List<BsonDocument> matches = new ArrayList<>();
+            for (BsonDocument document : documents.values()) {
+                if (matches(document, filter)) matches.add(document);
+            }
+            return matches;
+        }
+
+        /**
+         * @return The number of documents deleted through the collection, as opposed to {@link #delete}.
+         */
+        synchronized int deletes() {
+            return deletes;
+        }
+
+        synchronized int size() {
+            return documents.size();
+        }
+
+        /**
+         * @return The number of change stream cursors currently open.
+         */
+        synchronized int openStreams() {
+            return openStreams;
+        }
+
+        void afterFind(Runnable action) {
+            afterFind = action;
+        }
+
+        void beforeBulkWrite(Runnable action) {
+            beforeBulkWrite = action;
+        }
+
+        /**
+         * Makes every later insert of the _id fail document validation.
+         */
+        synchronized void reject(Object id) {
+            rejected.add(bson(new Document("_id", id)).get("_id"));
+        }
+
+        private void record(String operationType, BsonValue id, BsonDocument inserted) {
+            changes.add(new Change(operationType, id, inserted));
+            notifyAll();
+        }
+
+        private Object changeStream() {
+            int[] resumeAfter = {-1};
+            return proxy(ChangeStreamIterable.class, (self, method, args) -> switch (method) {
+                case "fullDocument", "maxAwaitTime" -> self;
+                case "resumeAfter" -> {
+                    resumeAfter[0] = ((BsonDocument) args[0]).getInt32("_data").getValue();
+                    yield self;
+                }
+                case "cursor" -> openCursor(resumeAfter[0]);
+                default -> throw unsupported("ChangeStreamIterable", method);
+            });
+        }
+
+        private synchronized Object openCursor(int resumeAfter) {
+            if (!mongo.replicaSet) {
+                throw new MongoCommandException(new BsonDocument("ok", new BsonDouble(0))
+                        .append("code", new BsonInt32(CHANGE_STREAMS_UNSUPPORTED))
+                        .append("errmsg", new BsonString("The $changeStream stage is only supported on replica sets")),
+                        new ServerAddress());
+            }
+            openStreams++;
+            // The next change to return; the resume token names the last one returned.
+            int[] position = {resumeAfter < 0 ? changes.size() : resumeAfter + 1};
+            boolean[] closed = {false};
+            return proxy(MongoChangeStreamCursor.class, (self, method, args) -> switch (method) {
+                case "tryNext" -> nextChange(position);
+                case "getResumeToken" -> new BsonDocument("_data", new BsonInt32(position[0] - 1));
+                case "close" -> {
+                    synchronized (this) {
+                        if (!closed[0]) openStreams--;
+                        closed[0] = true;
+                    }
+                    yield null;
+                }
+                default -> throw unsupported("MongoChangeStreamCursor", method);
+            });
+        }
+
+        // Waits briefly for a change, like a tailable cursor's await.
+        private synchronized ChangeStreamDocument<Document> nextChange(int[] position) throws InterruptedException {
+            if (position[0] >= changes.size()) wait(20);
+            if (position[0] >= changes.size()) return null;
+            Change change = changes.get(position[0]++);
+            BsonDocument fullDocument = switch (change.operationType()) {
+                case "insert" -> change.inserted();
+                // Updates look the document up when the event is read, as with UPDATE_LOOKUP.
+                case "update" -> documents.get(change.id());
+                default -> null;
+            };
+            return new ChangeStreamDocument<>(change.operationType(),
+                    new BsonDocument("_data", new BsonInt32(position[0] - 1)),
+                    new BsonDocument("db", new BsonString("fake")).append("coll", new BsonString(name)), null,
+                    fullDocument == null ? null : decode(fullDocument), null,
+                    new BsonDocument("_id", change.id()), null, null, null, null, null, null);
+        }
+
+        private Object findIterable(BsonDocument filter) {
+            BsonDocument[] projection = {null};
+            BsonDocument[] sort = {null};
+            int[] skipAndLimit = {0, 0};
+            return proxy(FindIterable.class, (self, method, args) -> switch (method) {
+                case "projection" -> {
+                    projection[0] = args[0] == null ? null : bson(args[0]);
+                    yield self;
+                }
+                case "sort" -> {
+                    sort[0] = args[0] == null ? null : bson(args[0]);
+                    yield self;
+                }
+                case "skip" -> {
+                    skipAndLimit[0] = (Integer) args[0];
+                    yield self;
+                }
+                case "limit" -> {
+                    skipAndLimit[1] = (Integer) args[0];
+                    yield self;
+                }
+                case "batchSize" -> self;
+                case "map" -> {
+                    @SuppressWarnings("unchecked")
+                    Function<Document, Object> mapper = (Function<Document, Object>) args[0];
+                    yield mappedIterable(() -> results(filter, projection[0], sort[0], skipAndLimit[0], skipAndLimit[1])
+                            .stream().map(mapper::apply).toList());
+                }
+                case "first" -> {
+                    List<Document> results = results(filter, projection[0], sort[0], skipAndLimit[0], 1);
+                    yield results.isEmpty() ? null : results.get(0);
+                }
+                case "into" -> {
+                    @SuppressWarnings("unchecked")
+                    Collection<Document> target = (Collection<Document>) args[0];
+                    target.addAll(results(filter, projection[0], sort[0], skipAndLimit[0], skipAndLimit[1]));
+                    yield target;
+                }
+                case "iterator", "cursor" -> {
+                    Iterator<Document> results = results(filter, projection[0], sort[0], skipAndLimit[0], skipAndLimit[1]).iterator();
+                    yield proxy(MongoCursor.class, (cursor, cursorMethod, cursorArgs) -> switch (cursorMethod) {
+                        case "hasNext" -> results.hasNext();
+                        case "next" -> results.next();
+                        case "tryNext" -> results.hasNext() ? results.next() : null;
+                        case "close" -> null;
+                        default -> throw unsupported("MongoCursor", cursorMethod);
+                    });
+                }
+                default -> throw unsupported("FindIterable", method);
+            });
+        }
+
+        private static Object mappedIterable(Supplier<List<Object>> results) {
+            return proxy(MongoIterable.class, (self, method, args) -> switch (method) {
+                case "first" -> {
+                    List<Object> mapped = results.get();
+                    yield mapped.isEmpty() ? null : mapped.get(0);
+                }
+                case "into" -> {
+                    @SuppressWarnings("unchecked")
+                    Collection<Object> target = (Collection<Object>) args[0];
+                    target.addAll(results.get());
+                    yield target;
+                }
+                default -> throw unsupported("MongoIterable", method);
+            });
+        }
+
+        private List<Document> results(BsonDocument filter, BsonDocument projection, BsonDocument sort, int skip, int limit) {
+            List<BsonDocument> matches = find(filter);
+            Runnable action = afterFind;
+            if (action != null) action.run();
+            if (sort != null) matches.sort(comparator(sort));
+            List<Document> results = new ArrayList<>();
+            for (int i = skip; i < matches.size() && (limit <= 0 || results.size() < limit); i++) {
+                results.add(decode(project(matches.get(i), projection)));
+            }
+            return results;
+        }
+    }
+
+    static boolean matches(BsonDocument document, BsonDocument filter) {
+        for (Map.Entry<String, BsonValue> entry : filter.entrySet()) {
+            BsonValue condition = entry.getValue();
+            boolean matched = switch (entry.getKey()) {
+                case "$and" -> condition.asArray().stream().allMatch(c -> matches(document, c.asDocument()));
+                case "$or" -> condition.asArray().stream().anyMatch(c -> matches(document, c.asDocument()));
+                default -> matchesField(document.get(entry.getKey()), condition);
+            };
+            if (!matched) return false;
+        }
+        return true;
+    }
+
+    private static boolean matchesField(BsonValue value, BsonValue condition) {
+        if (!condition.isDocument() || condition.asDocument().isEmpty()
+                || !condition.asDocument().getFirstKey().startsWith("$")) {
+            return equal(value, condition);
+        }
+        for (Map.Entry<String, BsonValue> operator : condition.asDocument().entrySet()) {
+            BsonValue argument = operator.getValue();
+            boolean matched = switch (operator.getKey()) {
+                case "$eq" -> equal(value, argument);
+                case "$ne" -> !equal(value, argument);
+                case "$in" -> argument.asArray().stream().anyMatch(a -> equal(value, a));
+                case "$nin" -> argument.asArray().stream().noneMatch(a -> equal(value, a));
+                case "$exists" -> (value != null) == argument.asBoolean().getValue();
+                case "$gt" -> comparable(value, argument) && compare(value, argument) > 0;
+                case "$gte" -> comparable(value, argument) && compare(value, argument) >= 0;
+                case "$lt" -> comparable(value, argument) && compare(value, argument) < 0;
+                case "$lte" -> comparable(value, argument) && compare(value, argument) <= 0;
+                default -> throw new UnsupportedOperationException("Query operator " + operator.getKey());
+            };
+            if (!matched) return false;
+        }
+        return true;
+    }
+
+    // Like the server, null matches a missing field and numbers compare by value.
+    private static boolean equal(BsonValue value, BsonValue expected) {
+        if (expected.isNull()) return value == null || value.isNull();
+        if (value == null) return false;
+        if (value.isArray() && !expected.isArray()) return value.asArray().contains(expected);
+        return comparable(value, expected) ? compare(value, expected) == 0 : value.equals(expected);
+    }
+
+    private static boolean comparable(BsonValue a, BsonValue b) {
+        return a != null && b != null && rank(a) == rank(b);
+    }
+
+    private static Comparator<BsonDocument> comparator(BsonDocument sort) {
+        Comparator<BsonDocument> comparator = (a, b) -> 0;
+        for (Map.Entry<String, BsonValue> key : sort.entrySet()) {
+            int direction = key.getValue().asNumber().intValue();
+            comparator = comparator.thenComparing((a, b) -> direction * compare(a.get(key.getKey()), b.get(key.getKey())));
+        }
+        return comparator;
+    }
+
+    // Values of different types sort in the server's type order; missing sorts first.
+    private static int compare(BsonValue a, BsonValue b) {
+        int byRank = Integer.compare(rank(a), rank(b));
+        if (byRank != 0) return byRank;
+        if (a == null || a.isNull()) return 0;
+        if (a.isNumber()) {
+            if (a.isDouble() || b.isDouble()) return Double.compare(a.asNumber().doubleValue(), b.asNumber().doubleValue());
+            return Long.compare(a.asNumber().longValue(), b.asNumber().longValue());
+        }
+        if (a.isString()) return a.asString().getValue().compareTo(b.asString().getValue());
+        if (a.isObjectId()) return a.asObjectId().getValue().compareTo(b.asObjectId().getValue());
+        if (a.isBoolean()) return Boolean.compare(a.asBoolean().getValue(), b.asBoolean().getValue());
+        if (a.isTimestamp()) return a.asTimestamp().compareTo(b.asTimestamp());
+        return a.equals(b) ? 0 : Integer.compare(a.hashCode(), b.hashCode());
+    }
+
+    private static int rank(BsonValue value) {
+        if (value == null || value.isNull()) return 0;
+        if (value.isNumber()) return 1;
+        if (value.isString()) return 2;
+        if (value.isDocument()) return 3;
+        if (value.isArray()) return 4;
+        if (value.isBinary()) return 5;
+        if (value.isObjectId()) return 6;
+        if (value.isBoolean()) return 7;
+        if (value.isDateTime()) return 8;
+        if (value.isTimestamp()) return 9;
+        return 10;
+    }
+
+    // Only inclusion projections are used by the plugin.
+    static BsonDocument project(BsonDocument document, BsonDocument projection) {
+        if (projection == null || projection.isEmpty()) return document.clone();
+        BsonDocument projected = new BsonDocument();
+        boolean withId = !projection.containsKey("_id") || projection.get("_id").asNumber().intValue() != 0;
+        if (withId && document.containsKey("_id")) projected.put("_id", document.get("_id"));
+        for (String field : projection.keySet()) {
+            if (!field.equals("_id") && document.containsKey(field)) projected.put(field, document.get(field));
+        }
+        return projected;
+    }
+
+    private record Change(String operationType, BsonValue id, BsonDocument inserted) {
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<WriteModel<Document>> writeModels(Object value) {
+        return new ArrayList<>((List<WriteModel<Document>>) value);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Document> documents(Object value) {
+        return new ArrayList<>((List<Document>) value);
+    }
+
+    static BsonDocument bson(Object value) {
+        if (value instanceof BsonDocument document) return document;
+        return ((Bson) value).toBsonDocument(BsonDocument.class, REGISTRY);
+    }
+
+    static Document decode(BsonDocument document) {
+        return DOCUMENT_CODEC.decode(new BsonDocumentReader(document), DecoderContext.builder().build());
+    }
+
+    static UnsupportedOperationException unsupported(String type, String method) {
+        return new UnsupportedOperationException(type + "." + method + " is not supported by FakeMongo");
+    }
+
+    interface Handler {
+        Object handle(Object self, String method, Object[] args) throws Exception;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> T proxy(Class<T> type, Handler handler) {
+        return (T) Proxy.newProxyInstance(FakeMongo.class.getClassLoader(), new Class<?>[]{type}, (self, method, args) -> {
+            Object[] arguments = args == null ? new Object[0] : args;
+            return switch (method.getName()) {
+                case "equals" -> self == arguments[0];
+                case "hashCode" -> System.identityHashCode(self);
+                case "toString" -> "Fake" + type.getSimpleName();
+                default -> handler.handle(self, method.getName(), arguments);
+            };
+        });
+    }
+}
@@ -0,0 +1,147 @@
+package me.barnaby.trial.mongo;
+
+import me.barnaby.trial.stub.BukkitStub;
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.Damageable;
+import org.bukkit.inventory.meta.ItemMeta;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Round-trips items through {@link ItemCodec} on the stub Bukkit server.
+ */
+class ItemCodecTest {
+
+    @BeforeAll
+    static void installServer() {
+        BukkitStub.install();
+    }
+
+    private static ItemStack item(Material material, int amount, String name, List<String> lore) {
+        ItemStack item = new ItemStack(material, amount);
+        ItemMeta meta = item.getItemMeta();
+        if (name != null) meta.setDisplayName(name);
+        if (lore != null) meta.setLore(lore);
+        item.setItemMeta(meta);
+        return item;
+    }
+
+    private static ItemStack roundTrip(ItemStack item) {
+        return ItemCodec.decode(ItemCodec.encode(item));
+    }
+
+    private static int occurrences(byte[] data, String text) {
+        byte[] needle = text.getBytes(StandardCharsets.UTF_8);
+        int count = 0;
+        for (int i = 0; i + needle.length <= data.length; i++) {
+            int j = 0;
+            while (j < needle.length && data[i + j] == needle[j]) j++;
+            if (j == needle.length) count++;
+        }
+        return count;
+    }
+
+    @Test
+    void plainItemRoundTrips() {
+        ItemStack item = new ItemStack(Material.DIAMOND, 12);
+
+        ItemStack decoded = roundTrip(item);
+
+        assertEquals(item, decoded);
+        assertEquals(12, decoded.getAmount());
+        assertEquals(1, ItemCodec.encode(item)[0]);
+    }
+
+    @Test
+    void namedItemRoundTrips() {
+        ItemStack item = item(Material.DIAMOND_SWORD, 1, "§bExcalibur", null);
+
+        ItemStack decoded = roundTrip(item);
+
+        assertEquals(item, decoded);
+        assertEquals("§bExcalibur", decoded.getItemMeta().getDisplayName());
+    }
+
+    @Test
+    void loreRoundTrips() {
+        ItemStack item = item(Material.PAPER, 3, "Note", List.of("first line", "", "§7third line"));
+
+        ItemStack decoded = roundTrip(item);
+
+        assertEquals(item, decoded);
+        assertEquals(List.of("first line", "", "§7third line"), decoded.getItemMeta().getLore());
+    }
+
+    @Test
+    void largeItemIsDeflatedAndRoundTrips() {
+        List<String> lore = new ArrayList<>();
+        for (int i = 0; i < 40; i++) lore.add("Line " + i + " of a long description that is not repeated");
+        ItemStack item = item(Material.WRITTEN_BOOK, 1, "Tome", lore);
+
+        byte[] encoded = ItemCodec.encode(item);
+
+        assertEquals(2, encoded[0]);
+        assertEquals(item, ItemCodec.decode(encoded));
+    }
+
+    @Test
+    void repeatedStringsAreWrittenOnce() {
+        String line = "§7The same line, over and over";
+        ItemStack item = item(Material.PAPER, 1, null, Collections.nCopies(8, line));
+
+        byte[] encoded = ItemCodec.encode(item);
+
+        // Small enough to stay plain, so the string can be found in the bytes.
+        assertEquals(1, encoded[0]);
+        assertEquals(1, occurrences(encoded, line));
+        assertEquals(Collections.nCopies(8, line), ItemCodec.decode(encoded).getItemMeta().getLore());
+    }
+
+    @Test
+    void negativeNumbersRoundTrip() {
+        for (int damage : new int[]{-1, -64, -300, Integer.MIN_VALUE}) {
+            ItemStack item = new ItemStack(Material.IRON_PICKAXE);
+            Damageable meta = (Damageable) item.getItemMeta();
+            meta.setDamage(damage);
+            item.setItemMeta(meta);
+
+            ItemStack decoded = roundTrip(item);
+
+            assertEquals(item, decoded, "damage " + damage);
+            assertEquals(damage, ((Damageable) decoded.getItemMeta()).getDamage());
+        }
+    }
+
+    @Test
+    void unknownFormatIsRejected() {
+        byte[] encoded = ItemCodec.encode(new ItemStack(Material.STONE));
+        encoded[0] = 9;
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> ItemCodec.decode(encoded));
+        assertTrue(e.getMessage().contains("Unknown item format"), e.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> ItemCodec.decode(new byte[0]));
+    }
+
+    @Test
+    void unknownTagIsRejected() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> ItemCodec.decode(new byte[]{1, 99}));
+        assertTrue(e.getCause().getMessage().contains("Unknown tag 99"), e.getCause().getMessage());
+    }
+
+    @Test
+    void dataWithoutAnItemIsRejected() {
+        // The string "hi", its length zigzag encoded: valid data, but not an item.
+        byte[] encoded = {1, 1, 4, 'h', 'i'};
+
+        assertThrows(IllegalArgumentException.class, () -> ItemCodec.decode(encoded));
+    }
+}
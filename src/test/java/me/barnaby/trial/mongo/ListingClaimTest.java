@@ -0,0 +1,128 @@
+package me.barnaby.trial.mongo;
+
+import com.mongodb.client.model.Updates;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs {@link MongoDBManager#claimItemListing} against {@link FakeMongo}.
+ */
+class ListingClaimTest {
+
+    private static final Logger LOGGER = Logger.getLogger(ListingClaimTest.class.getName());
+    private static final int THREADS = 16;
+    private static final int ROUNDS = 50;
+
+    private FakeMongo mongo;
+    private MongoDBManager mongoDBManager;
+
+    @BeforeEach
+    void setUp() {
+        mongo = new FakeMongo();
+        mongoDBManager = new MongoDBManager(null);
+        mongoDBManager.useDatabase(mongo.database(), LOGGER);
+    }
+
+    private Document list(double price) {
+        Document listing = new Document("_id", new ObjectId())
+                .append("playerId", "00000000-0000-0000-0000-000000000001")
+                .append("sellerName", "seller")
+                .append("material", "DIAMOND")
+                .append("itemName", "Diamond")
+                .append("price", price)
+                .append("timestamp", System.currentTimeMillis())
+                .append("isBlackMarket", false);
+        mongo.collection("itemListings").insert(listing);
+        mongoDBManager.getListingIndex().add(listing);
+        return listing;
+    }
+
+    @Test
+    void exactlyOneConcurrentClaimWins() throws Exception {
+        ExecutorService buyers = Executors.newFixedThreadPool(THREADS);
+        try {
+            for (int round = 1; round <= ROUNDS; round++) {
+                Object id = list(100.0).get("_id");
+                CountDownLatch start = new CountDownLatch(1);
+                List<Callable<Document>> claims = new ArrayList<>();
+                for (int i = 0; i < THREADS; i++) {
+                    claims.add(() -> {
+                        start.await();
+                        return mongoDBManager.claimItemListing(id, 100.0);
+                    });
+                }
+                List<Future<Document>> results = new ArrayList<>();
+                for (Callable<Document> claim : claims) results.add(buyers.submit(claim));
+                start.countDown();
+
+                int winners = 0;
+                for (Future<Document> result : results) {
+                    Document claimed = result.get(10, TimeUnit.SECONDS);
+                    if (claimed != null) {
+                        winners++;
+                        assertEquals(id, claimed.get("_id"));
+                    }
+                }
+                assertEquals(1, winners, "round " + round);
+                assertEquals(round, mongo.collection("itemListings").deletes(), "round " + round);
+                assertEquals(0, mongo.collection("itemListings").size());
+                assertNull(mongoDBManager.getListingIndex().get(id));
+            }
+        } finally {
+            buyers.shutdownNow();
+        }
+    }
+
+    @Test
+    void claimAtAnotherPriceFails() {
+        Object id = list(100.0).get("_id");
+
+        assertNull(mongoDBManager.claimItemListing(id, 90.0));
+        assertEquals(1, mongo.collection("itemListings").size());
+        assertNotNull(mongoDBManager.getListingIndex().get(id));
+    }
+
+    @Test
+    void listingBeingExpiredCannotBeClaimed() {
+        Object id = list(100.0).get("_id");
+        mongo.collection("itemListings").update(id, Updates.set(ListingExpiry.MARK_FIELD, "sweep"));
+
+        assertNull(mongoDBManager.claimItemListing(id, 100.0));
+        assertEquals(1, mongo.collection("itemListings").size());
+    }
+
+    @Test
+    void listingWithQueuedDeleteCannotBeClaimed() {
+        Object id = list(100.0).get("_id");
+        mongoDBManager.getWriteBehind().delete("itemListings", id);
+
+        assertNull(mongoDBManager.claimItemListing(id, 100.0));
+        assertEquals(0, mongo.collection("itemListings").deletes());
+    }
+
+    @Test
+    void restoredListingCanBeClaimedAgain() {
+        Object id = list(100.0).get("_id");
+        Document claimed = mongoDBManager.claimItemListing(id, 100.0);
+        assertNotNull(claimed);
+
+        mongoDBManager.restoreItemListing(claimed);
+        assertNotNull(mongoDBManager.getListingIndex().get(id));
+        assertNotNull(mongoDBManager.claimItemListing(id, 100.0));
+        assertEquals(2, mongo.collection("itemListings").deletes());
+    }
+}
@@ -0,0 +1,187 @@
+package me.barnaby.trial.mongo;
+
+import com.mongodb.client.model.Updates;
+import org.bson.Document;
+import org.bson.types.Binary;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs {@link ListingExpiry} against {@link FakeMongo}.
+ */
+class ListingExpiryTest {
+
+    private static final Logger LOGGER = Logger.getLogger(ListingExpiryTest.class.getName());
+    private static final String SELLER = "00000000-0000-0000-0000-000000000001";
+    private static final String OTHER_SELLER = "00000000-0000-0000-0000-000000000002";
+    private static final long LIFETIME = TimeUnit.DAYS.toMillis(2);
+    private static final long EXPIRED = System.currentTimeMillis() - LIFETIME - TimeUnit.HOURS.toMillis(1);
+
+    private FakeMongo mongo;
+    private MongoDBManager mongoDBManager;
+    private ListingExpiry expiry;
+
+    @BeforeEach
+    void setUp() {
+        mongo = new FakeMongo();
+        mongoDBManager = new MongoDBManager(null);
+        mongoDBManager.useDatabase(mongo.database(), LOGGER);
+        expiry = new ListingExpiry(mongoDBManager);
+    }
+
+    private FakeMongo.FakeCollection listings() {
+        return mongo.collection("itemListings");
+    }
+
+    private FakeMongo.FakeCollection mailbox() {
+        return mongo.collection("mailbox");
+    }
+
+    private Document list(String seller, long timestamp) {
+        Document listing = new Document("_id", new ObjectId())
+                .append("playerId", seller)
+                .append("sellerName", "seller")
+                .append("material", "DIAMOND")
+                .append("itemName", "Diamond")
+                .append("price", 100.0)
+                .append(ItemCodec.FIELD, new Binary(new byte[]{1, 2, 3}))
+                .append("timestamp", timestamp)
+                .append("isBlackMarket", false);
+        listings().insert(listing);
+        mongoDBManager.getListingIndex().add(listing);
+        return listing;
+    }
+
+    private void mark(Object id, String token, long markedAt) {
+        listings().update(id, Updates.combine(Updates.set(ListingExpiry.MARK_FIELD, token),
+                Updates.set("expiringAt", markedAt)));
+    }
+
+    private Document mailOf(Object id) {
+        return mailbox().find(FakeMongo.bson(new Document("_id", id))).stream()
+                .map(FakeMongo::decode).findFirst().orElse(null);
+    }
+
+    @Test
+    void expiredListingsAreMailedToTheirSellers() {
+        Object expired = list(SELLER, EXPIRED).get("_id");
+        Object otherExpired = list(OTHER_SELLER, EXPIRED).get("_id");
+        Object current = list(SELLER, System.currentTimeMillis()).get("_id");
+
+        Set<String> sellers = expiry.sweep(LIFETIME);
+
+        assertEquals(Set.of(SELLER, OTHER_SELLER), sellers);
+        assertEquals(1, listings().size());
+        assertNull(mongoDBManager.getListingIndex().get(expired));
+        assertNotNull(mongoDBManager.getListingIndex().get(current));
+
+        Document mail = mailOf(expired);
+        assertEquals(SELLER, mail.getString("playerId"));
+        assertEquals(EXPIRED, mail.getLong("listedAt"));
+        assertEquals(new Binary(new byte[]{1, 2, 3}), mail.get(ItemCodec.FIELD));
+        assertNotNull(mailOf(otherExpired));
+        assertEquals(2, mailbox().size());
+    }
+
+    @Test
+    void blackMarketListingsAreLeftAlone() {
+        Object id = list(SELLER, EXPIRED).get("_id");
+        listings().update(id, Updates.set("isBlackMarket", true));
+
+        assertEquals(Set.of(), expiry.sweep(LIFETIME));
+        assertEquals(1, listings().size());
+        assertEquals(0, mailbox().size());
+    }
+
+    @Test
+    void listingMarkedByARunningSweepIsLeftToIt() {
+        Object id = list(SELLER, EXPIRED).get("_id");
+        mark(id, "running", System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(1));
+
+        assertEquals(Set.of(), expiry.sweep(LIFETIME));
+        assertEquals(1, listings().size());
+        assertEquals(0, mailbox().size());
+    }
+
+    @Test
+    void staleMarkIsTakenOverAfterFiveMinutes() {
+        Object id = list(SELLER, EXPIRED).get("_id");
+        mark(id, "stopped", System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(5) - 1000);
+
+        assertEquals(Set.of(SELLER), expiry.sweep(LIFETIME));
+        assertEquals(0, listings().size());
+        assertNotNull(mailOf(id));
+    }
+
+    @Test
+    void mailAlreadySentByAnInterruptedSweepIsKept() {
+        Document listing = list(SELLER, EXPIRED);
+        Object id = listing.get("_id");
+        Object other = list(SELLER, EXPIRED).get("_id");
+        // The interrupted sweep mailed the listing but stopped before deleting it.
+        mark(id, "stopped", System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(10));
+        mailbox().insert(new Document("_id", id).append("playerId", SELLER).append("createdAt", 1L));
+
+        assertEquals(Set.of(SELLER), expiry.sweep(LIFETIME));
+
+        assertEquals(0, listings().size());
+        assertEquals(2, mailbox().size());
+        assertEquals(1L, mailOf(id).getLong("createdAt"));
+        assertNotNull(mailOf(other));
+    }
+
+    @Test
+    void listingBeingExpiredCannotBeClaimedOrRelisted() {
+        Document listing = list(SELLER, EXPIRED);
+        Object id = listing.get("_id");
+        // A buyer and the seller act between the sweep marking the listing and reading it back.
+        AtomicInteger finds = new AtomicInteger();
+        AtomicInteger claimed = new AtomicInteger();
+        listings().afterFind(() -> {
+            if (finds.incrementAndGet() != 2) return;
+            if (mongoDBManager.claimItemListing(id, 100.0) != null) claimed.incrementAndGet();
+            if (mongoDBManager.relistItemListing(id, EXPIRED) != null) claimed.incrementAndGet();
+        });
+
+        assertEquals(Set.of(SELLER), expiry.sweep(LIFETIME));
+
+        assertTrue(finds.get() >= 2);
+        assertEquals(0, claimed.get());
+        assertNotNull(mailOf(id));
+        assertEquals(0, listings().size());
+    }
+
+    @Test
+    void listingClaimedBeforeTheMarkIsNotMailed() {
+        Object id = list(SELLER, EXPIRED).get("_id");
+        // A buyer claims the listing after the sweep found it but before the sweep marks it.
+        AtomicInteger finds = new AtomicInteger();
+        listings().afterFind(() -> {
+            if (finds.incrementAndGet() == 1) assertNotNull(mongoDBManager.claimItemListing(id, 100.0));
+        });
+
+        assertEquals(Set.of(), expiry.sweep(LIFETIME));
+
+        assertEquals(0, mailbox().size());
+        assertEquals(1, listings().deletes());
+    }
+
+    @Test
+    void relistedListingIsNotMailed() {
+        Object id = list(SELLER, EXPIRED).get("_id");
+
+        assertNotNull(mongoDBManager.relistItemListing(id, EXPIRED));
+        assertEquals(Set.of(), expiry.sweep(LIFETIME));
+
+        assertEquals(1, listings().size());
+        assertEquals(0, mailbox().size());
+    }
+}
@@ -0,0 +1,155 @@
+package me.barnaby.trial.mongo;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that {@link ListingIndex} keeps each seller's listings in step with
+ * the partitions.
+ */
+class ListingIndexTest {
+
+    private static final String SELLER = "00000000-0000-0000-0000-000000000001";
+    private static final String OTHER_SELLER = "00000000-0000-0000-0000-000000000002";
+
+    // Every listing carries its material and item name, so nothing is decoded.
+    private final ListingIndex index = new ListingIndex(listing -> {
+        throw new AssertionError("decoded " + listing.get("_id"));
+    });
+
+    private static Document listing(String seller, long timestamp) {
+        return new Document("_id", new ObjectId())
+                .append("playerId", seller)
+                .append("sellerName", "seller")
+                .append("material", "DIAMOND")
+                .append("itemName", "Diamond")
+                .append("price", 100.0)
+                .append("timestamp", timestamp)
+                .append("isBlackMarket", false);
+    }
+
+    private List<Object> sellerIds(String seller) {
+        return index.getBySeller(seller).stream().map(listing -> listing.get("_id")).toList();
+    }
+
+    @Test
+    void unknownSellerHasNoListings() {
+        assertEquals(0, index.countBySeller(SELLER));
+        assertEquals(List.of(), index.getBySeller(SELLER));
+    }
+
+    @Test
+    void listingsAreGroupedBySellerInListingOrder() {
+        Document second = listing(SELLER, 200);
+        Document first = listing(SELLER, 100);
+        Document other = listing(OTHER_SELLER, 150);
+        index.add(second);
+        index.add(other);
+        index.add(first);
+
+        assertEquals(2, index.countBySeller(SELLER));
+        assertEquals(List.of(first.get("_id"), second.get("_id")), sellerIds(SELLER));
+        assertEquals(1, index.countBySeller(OTHER_SELLER));
+    }
+
+    @Test
+    void loadReplacesSellerListings() {
+        index.add(listing(SELLER, 100));
+        Document loaded = listing(OTHER_SELLER, 100);
+
+        index.load(List.of(loaded));
+
+        assertEquals(0, index.countBySeller(SELLER));
+        assertEquals(List.of(loaded.get("_id")), sellerIds(OTHER_SELLER));
+    }
+
+    @Test
+    void removeDropsTheListingFromItsSeller() {
+        Document kept = listing(SELLER, 100);
+        Document removed = listing(SELLER, 200);
+        index.add(kept);
+        index.add(removed);
+
+        index.remove(removed.get("_id"));
+
+        assertEquals(1, index.countBySeller(SELLER));
+        assertEquals(List.of(kept.get("_id")), sellerIds(SELLER));
+        index.remove(kept.get("_id"));
+        assertEquals(0, index.countBySeller(SELLER));
+    }
+
+    @Test
+    void relistMovesTheListingWithoutCountingItTwice() {
+        Document relisted = listing(SELLER, 100);
+        Document newer = listing(SELLER, 200);
+        index.add(relisted);
+        index.add(newer);
+
+        // A relist stores a new copy with a new listing time, as MongoDBManager#relistItemListing does.
+        index.update(new Document(relisted).append("timestamp", 300L));
+
+        assertEquals(2, index.countBySeller(SELLER));
+        assertEquals(List.of(newer.get("_id"), relisted.get("_id")), sellerIds(SELLER));
+        assertEquals(300L, index.getBySeller(SELLER).get(1).getLong("timestamp"));
+    }
+
+    @Test
+    void listingMutatedInPlaceIsStillRemovedFromItsSeller() {
+        Document listing = listing(SELLER, 100);
+        index.add(listing);
+        index.add(listing(SELLER, 200));
+
+        // The sort key changed under the index, so the seller's set can only find it by a scan.
+        listing.put("timestamp", 500L);
+        index.remove(listing.get("_id"));
+
+        assertEquals(1, index.countBySeller(SELLER));
+        assertFalse(sellerIds(SELLER).contains(listing.get("_id")));
+    }
+
+    @Test
+    void partitionMovesKeepTheListingWithItsSeller() {
+        Document listing = listing(SELLER, 100);
+        index.add(listing);
+
+        index.update(new Document(listing).append("isBlackMarket", true).append("originalPrice", 100.0)
+                .append("price", 50.0));
+
+        assertEquals(1, index.countBySeller(SELLER));
+        assertTrue(index.getBySeller(SELLER).get(0).getBoolean("isBlackMarket"));
+        assertEquals(0, index.size(false));
+        assertEquals(1, index.size(true));
+
+        index.update(new Document(listing).append("timestamp", 400L));
+
+        assertEquals(1, index.countBySeller(SELLER));
+        assertFalse(index.getBySeller(SELLER).get(0).getBoolean("isBlackMarket"));
+        assertEquals(1, index.size(false));
+        assertEquals(0, index.size(true));
+    }
+
+    @Test
+    void listingChangingSellerMovesBetweenSellers() {
+        Document listing = listing(SELLER, 100);
+        index.add(listing);
+
+        index.update(new Document(listing).append("playerId", OTHER_SELLER));
+
+        assertEquals(0, index.countBySeller(SELLER));
+        assertEquals(List.of(listing.get("_id")), sellerIds(OTHER_SELLER));
+    }
+
+    @Test
+    void sellerListingsAreACopy() {
+        index.add(listing(SELLER, 100));
+
+        index.getBySeller(SELLER).clear();
+
+        assertEquals(1, index.countBySeller(SELLER));
+    }
+}
@@ -0,0 +1,330 @@
+package me.barnaby.trial.mongo;
+
+import com.mongodb.client.model.Updates;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs {@link ListingSync} against {@link FakeMongo}, as a replica set with
+ * change streams and as a standalone server that has to be polled.
+ */
+class ListingSyncTest {
+
+    private static final Logger LOGGER = Logger.getLogger(ListingSyncTest.class.getName());
+    private static final long POLL_INTERVAL_MILLIS = 20;
+    private static final long RARELY = TimeUnit.HOURS.toMillis(1);
+
+    private FakeMongo mongo;
+    private MongoDBManager mongoDBManager;
+    private ListingSync sync;
+
+    private void connect(boolean replicaSet) {
+        connect(replicaSet, RARELY);
+    }
+
+    private void connect(boolean replicaSet, long reconcileIntervalMillis) {
+        mongo = new FakeMongo(replicaSet);
+        mongoDBManager = new MongoDBManager(null);
+        mongoDBManager.useDatabase(mongo.database(), LOGGER);
+        sync = new ListingSync(mongoDBManager, LOGGER, POLL_INTERVAL_MILLIS, reconcileIntervalMillis);
+    }
+
+    @AfterEach
+    void stopSync() {
+        if (sync != null) sync.stop();
+    }
+
+    private FakeMongo.FakeCollection listings() {
+        return mongo.collection("itemListings");
+    }
+
+    private static Document listing(double price) {
+        return new Document("_id", new ObjectId())
+                .append("playerId", "00000000-0000-0000-0000-000000000001")
+                .append("sellerName", "seller")
+                .append("material", "DIAMOND")
+                .append("itemName", "Diamond")
+                .append("price", price)
+                .append("timestamp", System.currentTimeMillis())
+                .append("isBlackMarket", false)
+                .append(ListingSync.UPDATED_AT_FIELD, System.currentTimeMillis());
+    }
+
+    // An update as another server writes it, with a new change time.
+    private static Bson change(Bson update) {
+        return Updates.combine(update, Updates.set(ListingSync.UPDATED_AT_FIELD, System.currentTimeMillis()));
+    }
+
+    private Document indexed(Object id) {
+        return mongoDBManager.getListingIndex().get(id);
+    }
+
+    private static void await(BooleanSupplier condition, String description) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) fail("Timed out waiting for " + description);
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    void changeStreamAppliesInsertsUpdatesAndDeletes() throws Exception {
+        connect(true);
+        sync.start(null);
+        await(() -> listings().openStreams() == 1, "the change stream to open");
+
+        Document listing = listing(100.0);
+        Object id = listing.get("_id");
+        listings().insert(listing);
+        await(() -> indexed(id) != null, "the insert");
+
+        listings().update(id, Updates.set("price", 75.0));
+        await(() -> indexed(id).getDouble("price") == 75.0, "the update");
+
+        listings().delete(id);
+        await(() -> indexed(id) == null, "the delete");
+        assertEquals(1, listings().openStreams());
+    }
+
+    @Test
+    void changeStreamResyncsListingsWrittenBeforeItOpened() throws Exception {
+        connect(true);
+        Document listing = listing(100.0);
+        listings().insert(listing);
+
+        sync.start(null);
+        await(() -> indexed(listing.get("_id")) != null, "the resync");
+    }
+
+    @Test
+    void changeStreamSkipsListingsWithQueuedDelete() throws Exception {
+        connect(true);
+        sync.start(null);
+        await(() -> listings().openStreams() == 1, "the change stream to open");
+
+        Document deleted = listing(100.0);
+        mongoDBManager.getWriteBehind().delete("itemListings", deleted.get("_id"));
+        listings().insert(deleted);
+        Document other = listing(50.0);
+        listings().insert(other);
+
+        // Changes are applied in order, so once the second insert is in the first has been skipped.
+        await(() -> indexed(other.get("_id")) != null, "the second insert");
+        assertNull(indexed(deleted.get("_id")));
+    }
+
+    @Test
+    void standaloneServerFallsBackToPolling() throws Exception {
+        connect(false, POLL_INTERVAL_MILLIS);
+        sync.start(null);
+
+        Document listing = listing(100.0).append("isBlackMarket", true).append("blackMarketUntil", 1L);
+        Object id = listing.get("_id");
+        listings().insert(listing);
+        await(() -> indexed(id) != null, "the polled insert");
+
+        listings().update(id, change(Updates.combine(Updates.set("isBlackMarket", false), Updates.unset("blackMarketUntil"))));
+        await(() -> !indexed(id).getBoolean("isBlackMarket"), "the polled update");
+        assertFalse(indexed(id).containsKey("blackMarketUntil"));
+        assertEquals(1, mongoDBManager.getListingIndex().size(false));
+        assertEquals(0, mongoDBManager.getListingIndex().size(true));
+
+        listings().delete(id);
+        await(() -> indexed(id) == null, "the polled delete");
+        assertEquals(0, listings().openStreams());
+    }
+
+    @Test
+    void reconcileRemovesFieldsUnsetOnTheStoredListing() {
+        connect(false);
+        Document listing = listing(100.0).append("originalPrice", 120.0);
+        listings().insert(listing);
+        mongoDBManager.getListingIndex().add(listing);
+
+        listings().update(listing.get("_id"), Updates.unset("originalPrice"));
+        sync.reconcile();
+
+        assertFalse(indexed(listing.get("_id")).containsKey("originalPrice"));
+        assertEquals(100.0, indexed(listing.get("_id")).getDouble("price"));
+    }
+
+    @Test
+    void reconcileDoesNotReaddListingRemovedWhileReading() {
+        connect(false);
+        Document listing = listing(100.0);
+        Object id = listing.get("_id");
+        listings().insert(listing);
+        mongoDBManager.getListingIndex().add(listing);
+
+        // This server claims the listing after the reconcile read it but before it is applied.
+        AtomicBoolean claimed = new AtomicBoolean();
+        listings().afterFind(() -> {
+            if (claimed.compareAndSet(false, true)) mongoDBManager.getListingIndex().remove(id);
+        });
+        sync.reconcile();
+
+        assertTrue(claimed.get());
+        assertNull(indexed(id));
+    }
+
+    @Test
+    void reconcileKeepsListingAddedWhileReading() {
+        connect(false);
+        Document listing = listing(100.0);
+        Object id = listing.get("_id");
+
+        // This server lists an item after the reconcile read the collection; its insert is not visible yet.
+        AtomicBoolean listed = new AtomicBoolean();
+        listings().afterFind(() -> {
+            if (listed.compareAndSet(false, true)) mongoDBManager.getListingIndex().add(listing);
+        });
+        sync.reconcile();
+
+        assertTrue(listed.get());
+        assertNotNull(indexed(id));
+    }
+
+    @Test
+    void reconcileSkipsListingsWithQueuedDelete() {
+        connect(false);
+        Document listing = listing(100.0);
+        listings().insert(listing);
+        mongoDBManager.getWriteBehind().delete("itemListings", listing.get("_id"));
+
+        sync.reconcile();
+
+        assertNull(indexed(listing.get("_id")));
+    }
+
+    @Test
+    void reconcileRemovesListingsDeletedElsewhere() {
+        connect(false);
+        Document listing = listing(100.0);
+        listings().insert(listing);
+        mongoDBManager.getListingIndex().add(listing);
+
+        listings().delete(listing.get("_id"));
+        sync.reconcile();
+
+        assertNull(indexed(listing.get("_id")));
+    }
+
+    @Test
+    void pollReadsOnlyListingsWithANewChangeTime() {
+        connect(false);
+        Document changed = listing(100.0);
+        // Last changed long before the poll, beyond any allowance for clock skew.
+        Document untouched = listing(100.0).append(ListingSync.UPDATED_AT_FIELD, 0L);
+        listings().insert(changed);
+        listings().insert(untouched);
+        sync.poll();
+
+        listings().update(changed.get("_id"), change(Updates.set("price", 80.0)));
+        // Written without a change time, so a poll does not see it.
+        listings().update(untouched.get("_id"), Updates.set("price", 60.0));
+        sync.poll();
+
+        assertEquals(80.0, indexed(changed.get("_id")).getDouble("price"));
+        assertEquals(100.0, indexed(untouched.get("_id")).getDouble("price"));
+    }
+
+    @Test
+    void pollFetchesListingsInsertedElsewhere() {
+        connect(false);
+        sync.poll();
+
+        Document listing = listing(100.0);
+        listings().insert(listing);
+        sync.poll();
+
+        assertNotNull(indexed(listing.get("_id")));
+        assertEquals("seller", indexed(listing.get("_id")).getString("sellerName"));
+    }
+
+    @Test
+    void pollLeavesDeletesToTheReconcile() {
+        connect(false);
+        Document listing = listing(100.0);
+        listings().insert(listing);
+        sync.poll();
+
+        listings().delete(listing.get("_id"));
+        sync.poll();
+        assertNotNull(indexed(listing.get("_id")));
+
+        sync.reconcile();
+        assertNull(indexed(listing.get("_id")));
+    }
+
+    @Test
+    void pollReconcilesWhenDue() {
+        connect(false, 0);
+        Document listing = listing(100.0);
+        listings().insert(listing);
+        sync.poll();
+
+        listings().delete(listing.get("_id"));
+        sync.poll();
+
+        assertNull(indexed(listing.get("_id")));
+    }
+
+    @Test
+    void pollDoesNotReaddListingClaimedWhileReading() {
+        connect(false);
+        sync.poll();
+        Document listing = listing(100.0);
+        Object id = listing.get("_id");
+        listings().insert(listing);
+        mongoDBManager.getListingIndex().add(listing);
+
+        // This server claims the listing after the poll read the changes.
+        AtomicBoolean claimed = new AtomicBoolean();
+        listings().afterFind(() -> {
+            if (claimed.compareAndSet(false, true)) {
+                listings().delete(id);
+                mongoDBManager.getListingIndex().remove(id);
+            }
+        });
+        sync.poll();
+
+        assertTrue(claimed.get());
+        assertNull(indexed(id));
+    }
+
+    @Test
+    void reconcileKeepsListingLeavingTheBlackMarketWhileReading() {
+        connect(false);
+        Document listing = listing(50.0).append("isBlackMarket", true).append("originalPrice", 100.0);
+        Object id = listing.get("_id");
+        listings().insert(listing);
+        mongoDBManager.getListingIndex().add(listing);
+
+        // Another server returns the listing to the marketplace while the listings are being read;
+        // walking the marketplace and then the black market would find it in neither.
+        AtomicBoolean moved = new AtomicBoolean();
+        listings().afterFind(() -> {
+            if (moved.compareAndSet(false, true)) {
+                listings().update(id, change(Updates.combine(Updates.set("isBlackMarket", false),
+                        Updates.set("price", 100.0), Updates.unset("originalPrice"))));
+            }
+        });
+        sync.reconcile();
+        assertTrue(moved.get());
+        assertNotNull(indexed(id));
+
+        sync.pollChanges();
+        assertFalse(indexed(id).getBoolean("isBlackMarket"));
+        assertEquals(1, mongoDBManager.getListingIndex().size(false));
+    }
+}
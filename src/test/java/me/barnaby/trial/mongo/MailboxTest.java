@@ -0,0 +1,198 @@
+package me.barnaby.trial.mongo;
+
+import com.mongodb.client.model.Updates;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the leased mailbox takes of {@link MongoDBManager} and
+ * {@link MailboxRepository} against {@link FakeMongo}.
+ */
+class MailboxTest {
+
+    private static final Logger LOGGER = Logger.getLogger(MailboxTest.class.getName());
+    private static final String PLAYER = "00000000-0000-0000-0000-000000000001";
+    private static final int THREADS = 8;
+
+    private FakeMongo mongo;
+    private MongoDBManager mongoDBManager;
+    private MailboxRepository mailboxRepository;
+
+    @BeforeEach
+    void setUp() {
+        mongo = new FakeMongo();
+        mongoDBManager = new MongoDBManager(null);
+        mongoDBManager.useDatabase(mongo.database(), LOGGER);
+        mailboxRepository = new MailboxRepository(mongoDBManager, Runnable::run);
+    }
+
+    private FakeMongo.FakeCollection mailbox() {
+        return mongo.collection("mailbox");
+    }
+
+    private Object mail(long createdAt) {
+        Document letter = new Document("_id", new ObjectId())
+                .append("playerId", PLAYER)
+                .append("material", "DIAMOND")
+                .append("createdAt", createdAt);
+        mailbox().insert(letter);
+        return letter.get("_id");
+    }
+
+    private static List<Object> ids(List<Document> mail) {
+        return mail.stream().map(letter -> letter.get("_id")).toList();
+    }
+
+    // Backdates the lease of taken mail, as if its server stopped that long ago.
+    private void expireLease(List<Document> mail) {
+        long expired = System.currentTimeMillis() - MongoDBManager.MAIL_LEASE_MILLIS - 1;
+        for (Document letter : mail) {
+            mailbox().update(letter.get("_id"), Updates.set(MongoDBManager.MAIL_TAKEN_AT_FIELD, expired));
+        }
+    }
+
+    @Test
+    void takeLeasesTheOldestMailWithoutDeletingIt() {
+        Object newest = mail(300);
+        Object oldest = mail(100);
+        Object middle = mail(200);
+
+        List<Document> taken = mongoDBManager.takeMail(PLAYER, 2);
+
+        assertEquals(List.of(oldest, middle), ids(taken));
+        assertEquals(3, mailbox().size());
+        assertEquals(0, mailbox().deletes());
+        assertEquals(1, mongoDBManager.countMail(PLAYER));
+        assertEquals(List.of(newest), ids(mongoDBManager.takeMail(PLAYER, 2)));
+        assertEquals(List.of(), mongoDBManager.takeMail(PLAYER, 2));
+    }
+
+    @Test
+    void deliveredMailIsDeleted() {
+        mail(100);
+        Object kept = mail(200);
+        List<Document> taken = mongoDBManager.takeMail(PLAYER, 1);
+
+        mongoDBManager.deleteMail(taken);
+
+        assertEquals(1, mailbox().size());
+        assertEquals(List.of(kept), ids(mongoDBManager.takeMail(PLAYER, 5)));
+    }
+
+    @Test
+    void returnedMailCanBeTakenAgain() {
+        Object id = mail(100);
+        List<Document> taken = mongoDBManager.takeMail(PLAYER, 1);
+
+        mongoDBManager.returnMail(taken);
+
+        assertEquals(1, mongoDBManager.countMail(PLAYER));
+        assertEquals(List.of(id), ids(mongoDBManager.takeMail(PLAYER, 1)));
+    }
+
+    @Test
+    void mailOfAStoppedServerIsTakenAgainOnceTheLeaseRunsOut() {
+        Object id = mail(100);
+        List<Document> taken = mongoDBManager.takeMail(PLAYER, 1);
+        // The server stops before delivering, so the mail is neither deleted nor returned.
+        assertEquals(List.of(), mongoDBManager.takeMail(PLAYER, 1));
+
+        expireLease(taken);
+
+        assertEquals(List.of(id), ids(mongoDBManager.takeMail(PLAYER, 1)));
+    }
+
+    @Test
+    void deleteAfterTheLeaseWasTakenOverLeavesTheMail() {
+        mail(100);
+        List<Document> stale = mongoDBManager.takeMail(PLAYER, 1);
+        expireLease(stale);
+        List<Document> takenOver = mongoDBManager.takeMail(PLAYER, 1);
+
+        mongoDBManager.deleteMail(stale);
+        mongoDBManager.returnMail(stale);
+
+        assertEquals(1, mailbox().size());
+        // Still leased by the server that took it over.
+        assertEquals(List.of(), mongoDBManager.takeMail(PLAYER, 1));
+        mongoDBManager.deleteMail(takenOver);
+        assertEquals(0, mailbox().size());
+    }
+
+    @Test
+    void repositoryReportsWhatIsStillWaiting() {
+        for (int i = 0; i < 3; i++) mail(100 + i);
+
+        MailboxRepository.Batch batch = mailboxRepository.take(PLAYER, 2).join();
+        assertEquals(2, batch.mail().size());
+        assertEquals(1, batch.waiting());
+
+        mailboxRepository.delivered(batch.mail()).join();
+        batch = mailboxRepository.take(PLAYER, 2).join();
+        assertEquals(1, batch.mail().size());
+        assertEquals(0, batch.waiting());
+
+        mailboxRepository.restore(batch.mail()).join();
+        assertEquals(1, mongoDBManager.countMail(PLAYER));
+    }
+
+    @Test
+    void takeWithNoRoomTakesNothing() {
+        mail(100);
+
+        MailboxRepository.Batch batch = mailboxRepository.take(PLAYER, 0).join();
+
+        assertEquals(List.of(), batch.mail());
+        assertEquals(1, batch.waiting());
+    }
+
+    @Test
+    void concurrentTakesNeverShareMail() throws Exception {
+        int count = 50;
+        for (int i = 0; i < count; i++) mail(i);
+
+        ExecutorService servers = Executors.newFixedThreadPool(THREADS);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Callable<List<Object>>> takes = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                takes.add(() -> {
+                    start.await();
+                    List<Object> taken = new ArrayList<>();
+                    List<Document> batch;
+                    while (!(batch = mongoDBManager.takeMail(PLAYER, 3)).isEmpty()) taken.addAll(ids(batch));
+                    return taken;
+                });
+            }
+            List<Future<List<Object>>> results = new ArrayList<>();
+            for (Callable<List<Object>> take : takes) results.add(servers.submit(take));
+            start.countDown();
+
+            Set<Object> delivered = new HashSet<>();
+            for (Future<List<Object>> result : results) {
+                for (Object id : result.get(10, TimeUnit.SECONDS)) {
+                    assertTrue(delivered.add(id), "taken twice: " + id);
+                }
+            }
+            assertEquals(count, delivered.size());
+        } finally {
+            servers.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package me.barnaby.trial.mongo;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs {@link MongoDBManager#getTransactionHistoryPage} against {@link FakeMongo}.
+ */
+class TransactionHistoryTest {
+
+    private static final Logger LOGGER = Logger.getLogger(TransactionHistoryTest.class.getName());
+    private static final String PLAYER = "00000000-0000-0000-0000-000000000001";
+    private static final String OTHER = "00000000-0000-0000-0000-000000000002";
+
+    private FakeMongo mongo;
+    private MongoDBManager mongoDBManager;
+    // Every transaction of the player, newest first.
+    private final List<Object> newestFirst = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        mongo = new FakeMongo();
+        mongoDBManager = new MongoDBManager(null);
+        mongoDBManager.useDatabase(mongo.database(), LOGGER);
+    }
+
+    // Three transactions share each timestamp, so pages have to break ties on _id.
+    private void record(int count) {
+        List<Document> transactions = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            boolean bought = i % 2 == 0;
+            Document transaction = new Document("_id", new ObjectId())
+                    .append("buyerId", bought ? PLAYER : OTHER)
+                    .append("sellerId", bought ? OTHER : PLAYER)
+                    .append("price", 10.0)
+                    .append("timestamp", 1000L + i / 3);
+            mongo.collection("transactions").insert(transaction);
+            transactions.add(transaction);
+        }
+        transactions.sort((a, b) -> {
+            int byTime = Long.compare(b.getLong("timestamp"), a.getLong("timestamp"));
+            return byTime != 0 ? byTime : b.getObjectId("_id").compareTo(a.getObjectId("_id"));
+        });
+        transactions.forEach(transaction -> newestFirst.add(transaction.get("_id")));
+    }
+
+    private static List<Object> ids(TransactionHistoryPage page) {
+        return page.transactions().stream().map(transaction -> transaction.get("_id")).toList();
+    }
+
+    @Test
+    void pagesFollowOnWithoutGapsOrRepeats() {
+        record(25);
+
+        List<Object> seen = new ArrayList<>();
+        TransactionHistoryPage page;
+        int number = 1;
+        do {
+            page = mongoDBManager.getTransactionHistoryPage(PLAYER, number++, 4);
+            assertFalse(page.outOfReach());
+            seen.addAll(ids(page));
+        } while (page.hasNext());
+
+        assertEquals(newestFirst, seen);
+        assertEquals(7, page.page());
+    }
+
+    @Test
+    void keysetPageIgnoresNewerTransactions() {
+        record(10);
+        TransactionHistoryPage first = mongoDBManager.getTransactionHistoryPage(PLAYER, 1, 4);
+        assertEquals(newestFirst.subList(0, 4), ids(first));
+
+        // A new purchase must not shift the next page back onto the last one.
+        mongo.collection("transactions").insert(new Document("buyerId", PLAYER).append("sellerId", OTHER)
+                .append("price", 10.0).append("timestamp", 5000L));
+        assertEquals(newestFirst.subList(4, 8), ids(mongoDBManager.getTransactionHistoryPage(PLAYER, 2, 4)));
+    }
+
+    @Test
+    void pageWithoutCursorSkipsFromTheNearestServedPage() {
+        record(30);
+        mongoDBManager.getTransactionHistoryPage(PLAYER, 1, 4);
+        mongoDBManager.getTransactionHistoryPage(PLAYER, 2, 4);
+
+        assertEquals(newestFirst.subList(16, 20), ids(mongoDBManager.getTransactionHistoryPage(PLAYER, 5, 4)));
+
+        // Another server sharing the database has served no pages and skips from the newest transaction.
+        MongoDBManager otherServer = new MongoDBManager(null);
+        otherServer.useDatabase(mongo.database(), LOGGER);
+        assertEquals(newestFirst.subList(4, 8), ids(otherServer.getTransactionHistoryPage(PLAYER, 2, 4)));
+    }
+
+    @Test
+    void pagePastTheSkipCapIsOutOfReach() {
+        record(5);
+
+        TransactionHistoryPage page = mongoDBManager.getTransactionHistoryPage(PLAYER, 3000, 10);
+        assertTrue(page.outOfReach());
+        assertTrue(page.transactions().isEmpty());
+        assertFalse(mongoDBManager.getTransactionHistoryPage(PLAYER, 1001, 10).outOfReach());
+    }
+}
@@ -0,0 +1,231 @@
+package me.barnaby.trial.mongo;
+
+import com.mongodb.MongoTimeoutException;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs {@link WriteBehind} against {@link FakeMongo} with a journal in a
+ * temporary directory.
+ */
+class WriteBehindTest {
+
+    private static final Logger LOGGER = Logger.getLogger(WriteBehindTest.class.getName());
+    private static final long FLUSH_INTERVAL_MILLIS = 5;
+    private static final int BATCH_SIZE = 100;
+    // Matches WriteBehind's compaction threshold.
+    private static final long COMPACT_BYTES = 1024 * 1024;
+
+    @TempDir
+    Path directory;
+
+    private FakeMongo mongo;
+    private MongoDBManager mongoDBManager;
+    private File journalFile;
+    private final List<WriteBehind> started = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        mongo = new FakeMongo();
+        mongoDBManager = new MongoDBManager(null);
+        mongoDBManager.useDatabase(mongo.database(), LOGGER);
+        journalFile = directory.resolve("write-behind.journal").toFile();
+    }
+
+    @AfterEach
+    void closeWriteBehinds() {
+        transactions().beforeBulkWrite(null);
+        for (WriteBehind writeBehind : started) writeBehind.close();
+    }
+
+    private WriteBehind start() {
+        WriteBehind writeBehind = new WriteBehind(mongoDBManager, LOGGER, journalFile, FLUSH_INTERVAL_MILLIS, BATCH_SIZE);
+        writeBehind.start();
+        started.add(writeBehind);
+        return writeBehind;
+    }
+
+    private void stop(WriteBehind writeBehind) {
+        started.remove(writeBehind);
+        writeBehind.close();
+    }
+
+    private FakeMongo.FakeCollection transactions() {
+        return mongo.collection("transactions");
+    }
+
+    // Fails every bulk write, as an unreachable server does.
+    private void serverDown() {
+        transactions().beforeBulkWrite(() -> {
+            throw new MongoTimeoutException("MongoDB is down");
+        });
+    }
+
+    private void serverUp() {
+        transactions().beforeBulkWrite(null);
+    }
+
+    private static Document transaction(String padding) {
+        return new Document("_id", new ObjectId()).append("price", 10.0).append("note", padding);
+    }
+
+    private List<String> journalLines() throws IOException {
+        return Files.readAllLines(journalFile.toPath(), StandardCharsets.UTF_8);
+    }
+
+    private static void await(CompletableFuture<Void> write) throws Exception {
+        write.get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void writesReachMongoAndTheJournalIsTruncatedOnceTheQueueDrains() throws Exception {
+        WriteBehind writeBehind = start();
+        serverDown();
+        Document first = transaction("");
+        Document second = transaction("");
+        CompletableFuture<Void> firstWrite = writeBehind.insert("transactions", first);
+        CompletableFuture<Void> secondWrite = writeBehind.insert("transactions", second);
+        assertEquals(2, journalLines().size());
+
+        serverUp();
+        await(firstWrite);
+        await(secondWrite);
+
+        assertEquals(2, transactions().size());
+        assertEquals(0, writeBehind.getQueuedCount());
+        assertEquals(0, journalFile.length());
+    }
+
+    @Test
+    void journalLeftByAPreviousRunIsReplayed() throws Exception {
+        Document deleted = transaction("");
+        transactions().insert(deleted);
+        Document inserted = transaction("");
+
+        serverDown();
+        WriteBehind previousRun = start();
+        previousRun.insert("transactions", inserted);
+        previousRun.delete("transactions", deleted.get("_id"));
+        stop(previousRun);
+        assertEquals(2, journalLines().size());
+        assertEquals(1, transactions().size());
+
+        serverUp();
+        WriteBehind writeBehind = start();
+
+        assertEquals(1, transactions().size());
+        assertEquals(1, transactions().find(FakeMongo.bson(new Document("_id", inserted.get("_id")))).size());
+        assertFalse(writeBehind.isDeletePending(deleted.get("_id")));
+        assertEquals(0, writeBehind.getQueuedCount());
+        assertEquals(0, journalFile.length());
+    }
+
+    @Test
+    void insertAlreadyStoredIsASuccess() throws Exception {
+        Document document = transaction("");
+        // Stored before the process died, but still in the journal.
+        transactions().insert(new Document(document));
+        WriteBehind writeBehind = start();
+
+        await(writeBehind.insert("transactions", document));
+
+        assertEquals(1, transactions().size());
+    }
+
+    @Test
+    void rejectedWriteFailsOnlyItsOwnFuture() throws Exception {
+        WriteBehind writeBehind = start();
+        Document rejected = transaction("");
+        Document accepted = transaction("");
+        transactions().reject(rejected.get("_id"));
+        serverDown();
+        CompletableFuture<Void> rejectedWrite = writeBehind.insert("transactions", rejected);
+        CompletableFuture<Void> acceptedWrite = writeBehind.insert("transactions", accepted);
+
+        serverUp();
+        await(acceptedWrite);
+        ExecutionException e = assertThrows(ExecutionException.class, () -> await(rejectedWrite));
+
+        assertInstanceOf(IllegalStateException.class, e.getCause());
+        assertEquals(1, transactions().size());
+        // Rejected for good, so it is not retried from the journal either.
+        assertEquals(0, writeBehind.getQueuedCount());
+        assertEquals(0, journalFile.length());
+    }
+
+    @Test
+    void deleteIsPendingUntilItIsFlushed() throws Exception {
+        Document document = transaction("");
+        transactions().insert(document);
+        WriteBehind writeBehind = start();
+        serverDown();
+
+        CompletableFuture<Void> delete = writeBehind.delete("transactions", document.get("_id"));
+        assertTrue(writeBehind.isDeletePending(document.get("_id")));
+        Thread.sleep(FLUSH_INTERVAL_MILLIS * 4);
+        assertTrue(writeBehind.isDeletePending(document.get("_id")));
+
+        serverUp();
+        await(delete);
+
+        assertFalse(writeBehind.isDeletePending(document.get("_id")));
+        assertEquals(0, transactions().size());
+    }
+
+    @Test
+    void journalIsCompactedOnceItGrowsPastTheLimit() throws Exception {
+        // Three batches of about 4 KiB writes: 1.2 MiB, so the first batch leaves a journal past the limit.
+        String padding = "x".repeat(4096);
+        int writes = BATCH_SIZE * 3;
+        serverDown();
+        WriteBehind writeBehind = start();
+        List<Document> documents = new ArrayList<>();
+        for (int i = 0; i < writes; i++) {
+            Document document = transaction(padding);
+            documents.add(document);
+            writeBehind.insert("transactions", document);
+        }
+        assertTrue(journalFile.length() > COMPACT_BYTES);
+
+        // Only the first batch gets through before the server goes away again.
+        AtomicInteger bulkWrites = new AtomicInteger();
+        transactions().beforeBulkWrite(() -> {
+            if (bulkWrites.incrementAndGet() > 1) throw new MongoTimeoutException("MongoDB is down");
+        });
+        stop(writeBehind);
+
+        assertEquals(BATCH_SIZE, transactions().size());
+        List<String> lines = journalLines();
+        assertEquals(writes - BATCH_SIZE, lines.size());
+        assertTrue(journalFile.length() < COMPACT_BYTES);
+        for (Document sent : documents.subList(0, BATCH_SIZE)) {
+            String id = ((ObjectId) sent.get("_id")).toHexString();
+            assertTrue(lines.stream().noneMatch(line -> line.contains(id)), "sent write still journaled: " + id);
+        }
+
+        // The compacted journal still replays every write that was not sent.
+        serverUp();
+        start();
+        assertEquals(writes, transactions().size());
+        assertEquals(0, journalFile.length());
+    }
+}